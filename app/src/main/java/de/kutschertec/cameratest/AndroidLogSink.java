@@ -0,0 +1,32 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+/**
+ * {@link LogSink} that writes synchronously to {@link Log}.
+ */
+public class AndroidLogSink implements LogSink {
+
+    @Override
+    public void write(@NonNull Logger.Level level, @NonNull String tag, @NonNull String message, @Nullable Throwable t) {
+        switch (level) {
+            case VERBOSE:
+                Log.v(tag, message, t);
+                break;
+            case DEBUG:
+                Log.d(tag, message, t);
+                break;
+            case INFO:
+                Log.i(tag, message, t);
+                break;
+            case WARN:
+                Log.w(tag, message, t);
+                break;
+            default:
+                Log.e(tag, message, t);
+                break;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link LogSink} that hands the records to a {@link LogRingBuffer} and writes them to another
+ * sink on a single drain thread, so that logging threads never wait for the target sink.
+ * <p>
+ * The drain thread does not poll. Once the buffer is empty, it parks until a producer unparks it
+ * with the next record, so an idle sink causes no wakeups.
+ */
+public class AsyncLogSink implements LogSink, Closeable {
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final LogSink target;
+    private final LogRingBuffer buffer;
+    private final OverflowPolicy overflowPolicy;
+    private final Thread drainThread;
+
+    private final AtomicLong droppedRecords = new AtomicLong(0);
+    private final AtomicLong wakeups = new AtomicLong(0);
+    private volatile boolean running = true;
+    private volatile boolean idle = false;
+
+    /**
+     * What happens to a record if the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The record is dropped and counted, the logging thread does not wait.
+         */
+        DROP,
+
+        /**
+         * The logging thread waits until the drain thread has made room. No record is lost.
+         */
+        BLOCK
+    }
+
+    /**
+     * Create a new instance and start its drain thread.
+     *
+     * @param target         the sink the records are written to
+     * @param capacity       the number of records the ring buffer can hold
+     * @param overflowPolicy what happens to a record if the ring buffer is full
+     */
+    public AsyncLogSink(@NonNull LogSink target, int capacity, @NonNull OverflowPolicy overflowPolicy) {
+        this.target = target;
+        this.buffer = new LogRingBuffer(capacity);
+        this.overflowPolicy = overflowPolicy;
+
+        this.drainThread = new Thread(this::drain, "LogDrainThread");
+        this.drainThread.setDaemon(true);
+        this.drainThread.start();
+    }
+
+    @Override
+    public void write(@NonNull Logger.Level level, @NonNull String tag, @NonNull String message, @Nullable Throwable t) {
+        if (!running) {
+            // closed, write directly so that nothing is lost
+            target.write(level, tag, message, t);
+            return;
+        }
+
+        while (!buffer.offer(level, tag, message, t)) {
+            if ((overflowPolicy == OverflowPolicy.DROP) || (Thread.currentThread() == drainThread)) {
+                droppedRecords.incrementAndGet();
+                return;
+            }
+            LockSupport.unpark(drainThread);
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            if (!running) {
+                target.write(level, tag, message, t);
+                return;
+            }
+        }
+
+        if (idle) {
+            LockSupport.unpark(drainThread);
+        }
+    }
+
+    /**
+     * Returns the number of records that have been dropped because the ring buffer was full.
+     *
+     * @return the number of dropped records
+     */
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    /**
+     * Returns how often the drain thread has woken up from an empty buffer. While nothing is
+     * logged, it does not wake up at all.
+     *
+     * @return the number of drain thread wakeups
+     */
+    public long getWakeups() {
+        return wakeups.get();
+    }
+
+    /**
+     * Stops the drain thread after it has written all pending records. Records written after
+     * this call go directly to the target sink.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // records offered while the drain thread was finishing
+        drainPending();
+    }
+
+    private void drain() {
+        while (running) {
+            if (!drainPending()) {
+                // a producer publishes its record before it reads the idle flag, so either it sees
+                // the flag and unparks this thread, or the re-check sees the record
+                idle = true;
+                if (buffer.isEmpty() && running) {
+                    LockSupport.park(this);
+                    wakeups.incrementAndGet();
+                }
+                idle = false;
+            }
+        }
+        drainPending();
+    }
+
+    private boolean drainPending() {
+        boolean drained = false;
+        while (true) {
+            try {
+                if (!buffer.poll(target)) {
+                    return drained;
+                }
+                drained = true;
+            } catch (RuntimeException e) {
+                // a failing sink must not stop the drain thread
+                droppedRecords.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of direct {@link ByteBuffer}s, bucketed by power-of-two size classes.
+ * <p>
+ * Every buffer handed out by {@link #acquire(int)} has the capacity of its size class, so buffers
+ * of slightly different frame sizes can be reused for each other. The pool never holds more than
+ * {@code maxPooledBytes}; buffers released beyond that budget are evicted and left to the garbage
+ * collector. {@link #trim()} additionally evicts every pooled buffer that exceeds the peak demand
+ * of its size class since the previous trim, so buffers of a resolution that is no longer in use
+ * do not stay pinned.
+ */
+public class BufferPool {
+    /**
+     * The default smallest size class, 4 KB.
+     */
+    public static final int DEFAULT_MIN_CLASS_SHIFT = 12;
+
+    /**
+     * The default largest size class, 16 MB.
+     */
+    public static final int DEFAULT_MAX_CLASS_SHIFT = 24;
+
+    /**
+     * The default budget of pooled bytes, 16 MB.
+     */
+    public static final long DEFAULT_MAX_POOLED_BYTES = 16 * 1024 * 1024;
+
+    private static final int MAX_BUFFERS_PER_CLASS = 16;
+
+    private final int minClassShift;
+    private final int maxClassShift;
+    private final long maxPooledBytes;
+    private final SizeClass[] sizeClasses;
+
+    private final AtomicLong pooledBytes = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    /**
+     * The buffers of a single size class.
+     */
+    private static class SizeClass {
+        private final ByteBuffer[] buffers = new ByteBuffer[MAX_BUFFERS_PER_CLASS];
+        private int count = 0;
+        private int inUse = 0;
+        private int highWaterMark = 0;
+    }
+
+    /**
+     * Create a new instance with the default size classes and budget.
+     */
+    public BufferPool() {
+        this(DEFAULT_MIN_CLASS_SHIFT, DEFAULT_MAX_CLASS_SHIFT, DEFAULT_MAX_POOLED_BYTES);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param minClassShift  the smallest size class as a power of two
+     * @param maxClassShift  the largest size class as a power of two
+     * @param maxPooledBytes the maximum number of bytes kept in the pool
+     */
+    public BufferPool(int minClassShift, int maxClassShift, long maxPooledBytes) {
+        if ((minClassShift < 0) || (maxClassShift > 30) || (minClassShift > maxClassShift)) {
+            throw new IllegalArgumentException("Invalid size classes: " + minClassShift + ".." + maxClassShift);
+        }
+
+        this.minClassShift = minClassShift;
+        this.maxClassShift = maxClassShift;
+        this.maxPooledBytes = maxPooledBytes;
+        this.sizeClasses = new SizeClass[maxClassShift - minClassShift + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass();
+        }
+    }
+
+    /**
+     * Returns the capacity of the size class that holds buffers of the given size.
+     *
+     * @param size the requested size in bytes
+     * @return the capacity of the matching size class, or {@code size} if it is larger than the
+     * largest size class
+     */
+    public int getClassCapacity(int size) {
+        int index = getClassIndex(size);
+        return (index < 0) ? size : 1 << (index + minClassShift);
+    }
+
+    /**
+     * Returns a cleared direct buffer with a capacity of at least {@code size} bytes. The buffer
+     * should be handed back with {@link #release(ByteBuffer)} when it is no longer needed.
+     *
+     * @param size the minimum capacity in bytes
+     * @return a cleared direct buffer
+     */
+    @NonNull
+    public ByteBuffer acquire(int size) {
+        int index = getClassIndex(size);
+        if (index < 0) {
+            // larger than the largest size class, this buffer will never be pooled
+            misses.incrementAndGet();
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        SizeClass sizeClass = sizeClasses[index];
+        ByteBuffer buffer = null;
+        synchronized (sizeClass) {
+            sizeClass.inUse++;
+            if (sizeClass.inUse > sizeClass.highWaterMark) {
+                sizeClass.highWaterMark = sizeClass.inUse;
+            }
+            if (sizeClass.count > 0) {
+                buffer = sizeClass.buffers[--sizeClass.count];
+                sizeClass.buffers[sizeClass.count] = null;
+            }
+        }
+
+        if (buffer == null) {
+            misses.incrementAndGet();
+            return ByteBuffer.allocateDirect(1 << (index + minClassShift));
+        }
+
+        hits.incrementAndGet();
+        pooledBytes.addAndGet(-buffer.capacity());
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer back to the pool. Buffers that do not match a size class or exceed the
+     * budget of the pool are evicted.
+     *
+     * @param buffer the buffer to release
+     */
+    public void release(@NonNull ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int index = getClassIndex(capacity);
+        if ((index < 0) || (getClassCapacity(capacity) != capacity) || !buffer.isDirect()) {
+            evictions.incrementAndGet();
+            return;
+        }
+
+        SizeClass sizeClass = sizeClasses[index];
+        synchronized (sizeClass) {
+            if (sizeClass.inUse > 0) {
+                sizeClass.inUse--;
+            }
+
+            if ((sizeClass.count < MAX_BUFFERS_PER_CLASS) && reserve(capacity)) {
+                sizeClass.buffers[sizeClass.count++] = buffer;
+                return;
+            }
+        }
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * Evicts every pooled buffer that exceeds the peak number of buffers in use per size class
+     * since the previous trim, and starts a new measurement period.
+     */
+    public void trim() {
+        for (SizeClass sizeClass : sizeClasses) {
+            synchronized (sizeClass) {
+                int keep = Math.max(0, sizeClass.highWaterMark - sizeClass.inUse);
+                while (sizeClass.count > keep) {
+                    ByteBuffer buffer = sizeClass.buffers[--sizeClass.count];
+                    sizeClass.buffers[sizeClass.count] = null;
+                    pooledBytes.addAndGet(-buffer.capacity());
+                    evictions.incrementAndGet();
+                }
+                sizeClass.highWaterMark = sizeClass.inUse;
+            }
+        }
+    }
+
+    private boolean reserve(int capacity) {
+        while (true) {
+            long current = pooledBytes.get();
+            if (current + capacity > maxPooledBytes) {
+                return false;
+            }
+            if (pooledBytes.compareAndSet(current, current + capacity)) {
+                return true;
+            }
+        }
+    }
+
+    private int getClassIndex(int size) {
+        int shift = (size <= 1) ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+        if (shift > maxClassShift) {
+            return -1;
+        }
+        return Math.max(shift, minClassShift) - minClassShift;
+    }
+
+    /**
+     * Returns the number of bytes currently held by the pool.
+     *
+     * @return the number of bytes currently held by the pool
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * Returns the number of acquisitions served from the pool.
+     *
+     * @return the number of pool hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of acquisitions that had to allocate a new buffer.
+     *
+     * @return the number of pool misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of buffers that were dropped from the pool.
+     *
+     * @return the number of evicted buffers
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+}
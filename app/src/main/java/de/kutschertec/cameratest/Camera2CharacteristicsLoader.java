@@ -0,0 +1,86 @@
+package de.kutschertec.cameratest;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Range;
+import android.util.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link CameraCharacteristicsCache.Loader} that queries the {@link CameraManager}.
+ */
+public class Camera2CharacteristicsLoader implements CameraCharacteristicsCache.Loader {
+    private final CameraManager cameraManager;
+
+    /**
+     * Create a new instance.
+     *
+     * @param cameraManager the camera manager to query
+     */
+    public Camera2CharacteristicsLoader(@NonNull CameraManager cameraManager) {
+        this.cameraManager = cameraManager;
+    }
+
+    @NonNull
+    @Override
+    public String[] loadCameraIds() throws Exception {
+        return cameraManager.getCameraIdList();
+    }
+
+    @NonNull
+    @Override
+    public CameraCharacteristicsSnapshot load(@NonNull String cameraId) throws Exception {
+        // a single binder call for everything we need
+        CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+
+        StreamConfigurationMap streamConfigurationMap = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        List<CameraCharacteristicsSnapshot.OutputSize> jpegOutputSizes = toOutputSizes(streamConfigurationMap.getOutputSizes(ImageFormat.JPEG));
+        List<CameraCharacteristicsSnapshot.OutputSize> previewOutputSizes = toOutputSizes(streamConfigurationMap.getOutputSizes(SurfaceTexture.class));
+        List<CameraCharacteristicsSnapshot.OutputSize> yuvOutputSizes = toOutputSizes(streamConfigurationMap.getOutputSizes(ImageFormat.YUV_420_888));
+
+        List<CameraCharacteristicsSnapshot.FpsRange> fpsRanges = new ArrayList<>();
+        Range<Integer>[] ranges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (ranges != null) {
+            for (Range<Integer> range : ranges) {
+                fpsRanges.add(new CameraCharacteristicsSnapshot.FpsRange(range.getLower(), range.getUpper()));
+            }
+        }
+
+        Rect activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+
+        return new CameraCharacteristicsSnapshot(cameraId,
+                getOrDefault(characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL), -1),
+                jpegOutputSizes,
+                previewOutputSizes,
+                yuvOutputSizes,
+                fpsRanges,
+                getOrDefault(characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION), 0),
+                getOrDefault(characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE), CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_UNKNOWN),
+                (activeArray != null) ? activeArray.width() : 0,
+                (activeArray != null) ? activeArray.height() : 0,
+                getOrDefault(characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM), 1.0f));
+    }
+
+    @NonNull
+    private static List<CameraCharacteristicsSnapshot.OutputSize> toOutputSizes(@Nullable Size[] sizes) {
+        List<CameraCharacteristicsSnapshot.OutputSize> outputSizes = new ArrayList<>();
+        if (sizes != null) {
+            for (Size size : sizes) {
+                outputSizes.add(new CameraCharacteristicsSnapshot.OutputSize(size.getWidth(), size.getHeight()));
+            }
+        }
+        return outputSizes;
+    }
+
+    private static <T> T getOrDefault(@Nullable T value, @NonNull T defaultValue) {
+        return (value != null) ? value : defaultValue;
+    }
+}
@@ -17,11 +17,13 @@ import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CaptureRequest;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
 import android.media.Image;
 import android.media.ImageReader;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.ActivityCompat;
@@ -40,7 +42,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class Camera2Component implements CameraController {
@@ -55,12 +56,15 @@ public class Camera2Component implements CameraController {
 
     private HandlerThread backgroundThread;
     private Handler backgroundHandler;
-    private HandlerThread watchDogThread;
-    private Handler watchDogHandler;
 
     private TextureView textureView;
-    private SurfaceTexture previewTexture;
+    private volatile SurfaceTexture previewTexture;
     private ImageReader jpegImageReader;
+    private volatile ImageAcquisition imageAcquisition = ImageAcquisition.latestOnly(CameraTestConstants.JPEG_MAX_IMAGES);
+    private ImageReader yuvImageReader;
+    private YuvStream yuvStream;
+    private volatile YuvFrameListener yuvFrameListener = null;
+    private volatile Size yuvResolution = null;
 
     private int cameraWidth;
     private int cameraHeight;
@@ -69,48 +73,156 @@ public class Camera2Component implements CameraController {
     private Size cameraResolution = new Size(320, 240);
     private byte jpegQuality = 50;
     private boolean flash = false;
+    private volatile float targetZoomLevel = 0.0f;
+
+    /**
+     * The zoom level of the repeating request, follows {@link #targetZoomLevel} one step per frame.
+     * Only accessed on the background thread, like the crop region buffers below.
+     */
     private float zoomLevel = 0.0f;
+    private volatile ZoomTable zoomTable = null;
+    private final int[] cropBounds = new int[4];
+    private final Rect cropRegion = new Rect();
 
     private List<Size> cameraResolutions = new ArrayList<>();
 
+    private final CameraManager cameraManager;
+    private final CameraCharacteristicsCache characteristicsCache;
     private String cameraId;
     private CameraDevice cameraDevice;
     private Range<Integer> maxFpsRange;
 
-    private boolean frozen = false;
+    private final BufferPool bufferPool = new BufferPool();
+    private final FrameExchange frameExchange = new FrameExchange(bufferPool, 65535);
+    private final FrameBus frameBus = new FrameBus();
+    private final FrameStats frameStats = new FrameStats(frameExchange);
+    private Camera2FrameSource frameSource;
+    private final Object imageBufferLock = new Object();
+    private FrameLease imageBufferLease = null;
+
+    /**
+     * Runs timers on the camera background thread, which is awake for every frame anyway.
+     */
+    private final Scheduler cameraScheduler = new Scheduler() {
+        @Override
+        public void schedule(@NonNull Runnable task, long delayNanos) {
+            Handler handler = backgroundHandler;
+            if (handler != null) {
+                handler.postDelayed(task, (delayNanos + 999999) / 1000000);
+            }
+        }
+
+        @Override
+        public void cancel(@NonNull Runnable task) {
+            Handler handler = backgroundHandler;
+            if (handler != null) {
+                handler.removeCallbacks(task);
+            }
+        }
+    };
+
+    private final FrameWatchdog frameWatchdog = new FrameWatchdog(Clock.SYSTEM, cameraScheduler, this::recover);
+
+    /**
+     * Performs the recovery stages of the watchdog that the camera can take in its current state.
+     * Runs on the background thread.
+     */
+    private final CameraRecovery cameraRecovery = new CameraRecovery(new CameraRecovery.Camera() {
+        @Override
+        public boolean isDeviceOpen() {
+            return cameraDevice != null;
+        }
+
+        @Override
+        public boolean isOpening() {
+            return opening;
+        }
+
+        @Override
+        public boolean hasPreviewSurface() {
+            return previewTexture != null;
+        }
+
+        @Override
+        public void reissueRequest() {
+            try {
+                issueRepeatingRequest();
+            } catch (CameraAccessException | IllegalStateException e) {
+                logger.error("Error re-issuing repeating request.", e);
+            }
+        }
+
+        @Override
+        public void rebuildSession() {
+            restartCamera();
+        }
+
+        @Override
+        public void reopenDevice() {
+            reopenCamera();
+        }
+    });
+
+    private final StartupCoordinator startupCoordinator = new StartupCoordinator(Clock.SYSTEM, new StartupCoordinator.Backend() {
+        @Override
+        public void openDevice() {
+            Handler handler = backgroundHandler;
+            if (handler != null) {
+                handler.post(Camera2Component.this::openCamera);
+            }
+        }
 
-    private ByteBuffer imageBuffer = ByteBuffer.allocate(65535);
-    private ByteBuffer exchangeBuffer = ByteBuffer.allocate(65535);
-    private Semaphore imageBufferSemaphore = new Semaphore(1);
+        @Override
+        public void createSession() {
+            Handler handler = backgroundHandler;
+            if (handler != null) {
+                handler.post(Camera2Component.this::startPreview);
+            }
+        }
+    });
 
-    private AtomicLong watchDogTimer = new AtomicLong(0);
+    private final FramePyramid framePyramid = new FramePyramid(bufferPool);
+    private final JpegEncodeStage jpegEncodeStage = new JpegEncodeStage(bufferPool, CameraTestConstants.JPEG_ENCODER_THREADS);
+    private final ChangeDetector changeDetector = new ChangeDetector();
+    private volatile boolean changeDetection = false;
+    private final MotionAnalyzer motionAnalyzer = new MotionAnalyzer(Runtime.getRuntime().availableProcessors());
+    private volatile boolean motionAnalysis = false;
+    private final FramePipeline framePipeline = new FramePipeline(frameExchange, frameBus, frameStats, frameWatchdog, startupCoordinator, changeDetector, motionAnalyzer);
 
     /**
      * A {@link Semaphore} to prevent the app from exiting before closing the camera.
      */
     private Semaphore cameraOpenCloseSemaphore = new Semaphore(1);
+
+    /**
+     * Whether the camera device is being opened and its state callback is pending. Only accessed
+     * on the background thread.
+     */
+    private boolean opening = false;
     private CameraCaptureSession captureSession;
+    private CaptureRequest.Builder captureRequestBuilder;
+
+    /**
+     * Whether the outputs have changed while the session was being created, so that the camera is
+     * restarted once it has been configured. Only accessed on the background thread.
+     */
+    private boolean restartPending = false;
+
+    /**
+     * Start of the current reconfiguration, or 0 if there is none. A reconfiguration ends with the
+     * first completed capture of the request tagged with {@link #reconfigurationTag}, a newer
+     * reconfiguration replaces a pending one.
+     */
+    private volatile long reconfigurationStartNanos = 0;
+    private volatile Long reconfigurationTag = null;
+    private long reconfigurationCount = 0;
+    private final AtomicLong lastReconfigurationGapNanos = new AtomicLong(-1);
 
     private Runnable onCameraInitializedHandler = null;
     private Runnable onWatchDogTriggeredHandler = null;
 
     private OrientationEventListener orientationEventListener = null;
 
-    private Runnable watchdog = new Runnable() {
-        public void run() {
-            long t = watchDogTimer.get();
-            if ((t > 0) && (System.currentTimeMillis() > t + 1000)) {
-                restartCamera();
-
-                if (onWatchDogTriggeredHandler != null) {
-                    onWatchDogTriggeredHandler.run();
-                }
-            }
-
-            watchDogHandler.postDelayed(watchdog, 1000);
-        }
-    };
-
     /**
      * Create a new instance
      *
@@ -123,6 +235,8 @@ public class Camera2Component implements CameraController {
         this.context = context;
         this.textureView = textureView;
         this.deviceRotation = deviceRotation;
+        this.cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        this.characteristicsCache = new CameraCharacteristicsCache(new Camera2CharacteristicsLoader(cameraManager));
         logger.verbose("Camera2Component() ... done.");
     }
 
@@ -147,8 +261,8 @@ public class Camera2Component implements CameraController {
         // start the background thread
         startBackgroundThread();
 
-        // start the watchdog thread
-        startWatchDogThread();
+        // drop cached characteristics of cameras that have been (re)connected
+        cameraManager.registerAvailabilityCallback(availabilityCallback, backgroundHandler);
 
         // start the camera
         startCamera();
@@ -159,17 +273,16 @@ public class Camera2Component implements CameraController {
             public void onOrientationChanged(int orientation) {
                 int rotation = context.getWindowManager().getDefaultDisplay().getRotation();
                 if (rotation != deviceRotation) {
-                    logger.debug("Device rotated. Restarting camera.");
+                    logger.debug("Device rotated. Updating capture request.");
                     deviceRotation = rotation;
-                    restartCamera();
-                    logger.debug("Device rotated. Restarting camera ... done.");
+                    updateRepeatingRequest();
+                    logger.debug("Device rotated. Updating capture request ... done.");
                 }
             }
         };
 //        orientationEventListener.enable();
         logger.debug("Initializing orientation listener ... done.");
 
-        watchDogHandler.post(watchdog);
         logger.verbose("Camera2Component.onResume() ... done.");
     }
 
@@ -182,13 +295,14 @@ public class Camera2Component implements CameraController {
         orientationEventListener = null;
         logger.debug("Disabling orientation listener ... done.");
 
+        frameWatchdog.disarm();
+        startupCoordinator.stop();
+
         logger.debug("Closing camera.");
         closeCamera();
         logger.debug("Closing camera ... done.");
 
-        logger.debug("Stopping watchdog thread.");
-        stopWatchDogThread();
-        logger.debug("Stopping watchdog thread ... done.");
+        cameraManager.unregisterAvailabilityCallback(availabilityCallback);
 
         logger.debug("Stopping background thread.");
         stopBackgroundThread();
@@ -198,41 +312,74 @@ public class Camera2Component implements CameraController {
     }
 
     @Override
-    public ByteBuffer getImageBuffer() {
-        logger.verbose("Camera2Component.getImageBuffer()");
-        try {
-            // lock the semaphore and wait until we can aquire it
-            imageBufferSemaphore.acquire();
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        logger.verbose("Camera2Component.onDestroy()");
 
-            try {
-                if (imageBuffer.remaining() > 0) {
-                    // resize the exchange buffer, if the current image is larger
-                    if (imageBuffer.remaining() > exchangeBuffer.capacity()) {
-                        logger.debug("Resizing exchange buffer: " + imageBuffer.remaining() + "bytes");
-                        exchangeBuffer = ByteBuffer.allocate(imageBuffer.remaining());
-                        logger.debug("Resizing exchange buffer ... done.");
-                    }
+        logger.debug("Stopping motion analysis workers.");
+        motionAnalyzer.close();
+        logger.debug("Stopping motion analysis workers ... done.");
 
+        logger.debug("Stopping JPEG encoder workers.");
+        jpegEncodeStage.close();
+        logger.debug("Stopping JPEG encoder workers ... done.");
 
-                    exchangeBuffer.clear();
-                    exchangeBuffer.put(imageBuffer);
-                    exchangeBuffer.flip();
-                } else {
-                    exchangeBuffer.rewind();
-                }
+        logger.verbose("Camera2Component.onDestroy() ... done.");
+    }
+
+    @Override
+    public ByteBuffer getImageBuffer() {
+        logger.verbose("Camera2Component.getImageBuffer()");
+
+        // keep the lease of the returned buffer until the next call, so that its frame is not
+        // recycled while the caller is still reading it
+        synchronized (imageBufferLock) {
+            FrameLease lease = frameExchange.acquireLatest();
+            if (lease == null) {
                 logger.verbose("Camera2Component.getImageBuffer() ... done.");
-                return exchangeBuffer;
-            } finally {
-                // safely release the semaphore
-                imageBufferSemaphore.release();
+                return ByteBuffer.allocate(0);
             }
-        } catch (InterruptedException e) {
-            logger.error("Error while waiting for the image buffer semaphore.", e);
-            Thread.currentThread().interrupt();
-            return ByteBuffer.allocate(0);
+
+            frameStats.recordRead(System.nanoTime() - lease.getCopyTime());
+            if (imageBufferLease != null) {
+                imageBufferLease.close();
+            }
+            imageBufferLease = lease;
+
+            logger.verbose("Camera2Component.getImageBuffer() ... done.");
+            return lease.getBuffer();
         }
     }
 
+    @Override
+    @Nullable
+    public FrameMetadata getImageMetadata() {
+        synchronized (imageBufferLock) {
+            return (imageBufferLease != null) ? imageBufferLease.getMetadata() : null;
+        }
+    }
+
+    @Override
+    @Nullable
+    public FrameLease acquireLatestFrame() {
+        FrameLease lease = frameExchange.acquireLatest();
+        if (lease != null) {
+            frameStats.recordRead(System.nanoTime() - lease.getCopyTime());
+        }
+        return lease;
+    }
+
+    @Override
+    @NonNull
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    @Override
+    @NonNull
+    public FrameBus getFrameBus() {
+        return frameBus;
+    }
+
 //    private void configureTransform(int width, int height) {
 //        if (configureTransformConsumer != null) {
 //            configureTransformConsumer.accept(width, height);
@@ -324,38 +471,50 @@ public class Camera2Component implements CameraController {
     }
 
     /**
-     * Opens the camera.
-     *
-     * @param width  the width of the camera
-     * @param height the height of the camera
+     * Loads the camera characteristics, sets up the outputs and opens the camera. Does not need
+     * the preview surface, so it runs on the background thread while the surface is created.
      */
-    private void openCamera(int width, int height) {
-        logger.verbose("Camera2Component.openCamera(width=" + width + ";height=" + height + ")");
-        cameraWidth = width;
-        cameraHeight = height;
-
-        setupCameraOutputs(width, height);
-        configureTransform(width, height);
+    private void openCamera() {
+        logger.verbose("Camera2Component.openCamera()");
+        logger.event(CameraEvents.OPEN, cameraResolution.getWidth(), cameraResolution.getHeight());
+
+        // never wait on the background thread, the state callbacks that release the semaphore run
+        // on it as well
+        if (!cameraOpenCloseSemaphore.tryAcquire()) {
+            logger.debug("Camera is being opened or closed, not opening it.");
+            return;
+        }
 
-        CameraManager manager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
         try {
-            if (!cameraOpenCloseSemaphore.tryAcquire(2500, TimeUnit.MILLISECONDS)) {
-                throw new RuntimeException("Time out waiting to lock camera opening.");
+            // the camera may have been closed on purpose while this was pending, check before the
+            // outputs are created, closeCamera() would not close them again
+            if (!startupCoordinator.isRunning()) {
+                logger.debug("Camera has been stopped, not opening it.");
+                cameraOpenCloseSemaphore.release();
+                return;
             }
 
+            // holding the semaphore, so that closeCamera() waits for the outputs
+            restartPending = false;
+            setupCameraOutputs();
+            startupCoordinator.onCharacteristicsLoaded();
+
             // check that we have camera permission
             if (ActivityCompat.checkSelfPermission(context, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED) {
                 logger.verbose("Using CameraManager to open the camera.");
-                manager.openCamera(cameraId, stateCallback, backgroundHandler);
+                opening = true;
+                cameraManager.openCamera(cameraId, stateCallback, backgroundHandler);
 
                 logger.verbose("Using CameraManager to open the camera ... done.");
             } else {
                 logger.warn("We don't have the permission to open the camera.");
+                // the state callback will not release it
+                cameraOpenCloseSemaphore.release();
             }
         } catch (CameraAccessException e) {
             logger.error("Error accessing camera.", e);
-        } catch (InterruptedException e) {
-            throw new RuntimeException("Interrupted while trying to lock camera opening.", e);
+            opening = false;
+            cameraOpenCloseSemaphore.release();
         }
         logger.verbose("Camera2Component.openCamera() ... done.");
     }
@@ -365,6 +524,8 @@ public class Camera2Component implements CameraController {
      */
     private void closeCamera() {
         logger.verbose("Camera2Component.closeCamera()");
+        logger.event(CameraEvents.CLOSE);
+        startupCoordinator.onDeviceClosed();
         try {
             cameraOpenCloseSemaphore.acquire();
 
@@ -373,6 +534,7 @@ public class Camera2Component implements CameraController {
                 logger.debug("Closing capture session.");
                 captureSession.close();
                 captureSession = null;
+                captureRequestBuilder = null;
                 logger.debug("Closing capture session ... done.");
             }
 
@@ -387,10 +549,14 @@ public class Camera2Component implements CameraController {
             // check if the JPEG reader is opened
             if (null != jpegImageReader) {
                 logger.debug("Closing JPEG reader.");
+                frameSource.stop();
+                frameSource = null;
                 jpegImageReader.close();
                 jpegImageReader = null;
                 logger.debug("Closing JPEG reader ... done.");
             }
+
+            closeYuvOutput();
         } catch (InterruptedException e) {
             throw new RuntimeException("Interrupted while trying to lock camera closing.", e);
         } finally {
@@ -435,179 +601,339 @@ public class Camera2Component implements CameraController {
         logger.verbose("Camera2Component.stopBackgroundThread() ... done");
     }
 
-    /**
-     * Starts a watchdog thread and its {@link Handler}.
-     */
-    private void startWatchDogThread() {
-        logger.verbose("Camera2Component.startWatchDogThread()");
+    private void setupCameraOutputs() {
+        logger.verbose("Camera2Component.setupCameraOutputs()");
+
+        List<String> cameraIds = characteristicsCache.getCameraIds();
+        logger.debug("Number of available cameras: {}", cameraIds.size());
+        if (cameraIds.isEmpty()) {
+            logger.error("No camera available.");
+            return;
+        }
+        cameraId = cameraIds.get(0);
+        logger.debug("Selected camera: {}", cameraId);
+
+        CameraCharacteristicsSnapshot characteristics = characteristicsCache.get(cameraId);
+        if (characteristics == null) {
+            logger.error("Error setting up camera.");
+            return;
+        }
+
+        logger.info("Supported hardware level: {}", characteristics.getHardwareLevel());
+
+        Size[] jpegOutputSizes = toSizes(characteristics.getJpegOutputSizes());
+
+        StringBuffer sizes = new StringBuffer();
+        cameraResolutions.clear();
+        for (Size size : jpegOutputSizes) {
+            sizes.append('[');
+            sizes.append(size);
+            sizes.append(']');
+
+            cameraResolutions.add(size);
+        }
+        logger.debug("Available camera sizes: {}", sizes);
+
+        Size jpegOutputSize = jpegOutputSizes[jpegOutputSizes.length - 1];
+        for (Size size : jpegOutputSizes) {
+            if ((size.getWidth() == cameraResolution.getWidth()) && (size.getHeight() == cameraResolution.getHeight())) {
+                jpegOutputSize = size;
+                break;
+            }
+        }
+        logger.debug("Selected camera size: {}", jpegOutputSize);
+
+        StringBuffer ranges = new StringBuffer();
+        maxFpsRange = null;
+        for (CameraCharacteristicsSnapshot.FpsRange fpsRange : characteristics.getFpsRanges()) {
+            if ((maxFpsRange == null) || (fpsRange.getUpper() > maxFpsRange.getUpper()) || (fpsRange.getLower() > maxFpsRange.getLower())) {
+                maxFpsRange = new Range<>(fpsRange.getLower(), fpsRange.getUpper());
+            }
+            ranges.append(fpsRange);
+        }
+        logger.debug("Available camera FPS ranges: {}", ranges);
 
-        logger.debug("Starting watchdog thread.");
-        watchDogThread = new HandlerThread("Camera Watchdog");
-        watchDogThread.start();
-        watchDogHandler = new Handler(watchDogThread.getLooper());
-        logger.debug("Starting watchdog thread ... done");
+        logger.debug("Creating JPEG image reader.");
+        ImageAcquisition acquisition = imageAcquisition;
+        logger.debug("JPEG image acquisition: {}", acquisition);
+        jpegImageReader = ImageReader.newInstance(jpegOutputSize.getWidth(), jpegOutputSize.getHeight(), ImageFormat.JPEG, acquisition.getMaxImages());
+        logger.debug("Creating JPEG image reader ... done.");
+
+        sensorOrientation = characteristics.getSensorOrientation();
+        logger.debug("Camera sensor orientation: {}", sensorOrientation);
+
+        // sensor timestamps of an unknown time base cannot be compared with the callback time
+        boolean realtimeTimestamps = (characteristics.getTimestampSource() == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME);
+        logger.debug("Camera timestamps are realtime: {}", realtimeTimestamps);
+
+        logger.debug("Starting frame source.");
+        frameSource = new Camera2FrameSource(jpegImageReader, acquisition.getMode(), backgroundHandler, realtimeTimestamps);
+        frameSource.start(framePipeline);
+        logger.debug("Starting frame source ... done.");
+
+        setupYuvOutput(characteristics);
+
+        if ((characteristics.getActiveArrayWidth() > 0) && (characteristics.getActiveArrayHeight() > 0)) {
+            logger.debug("Creating zoom table.");
+            zoomTable = new ZoomTable(characteristics.getActiveArrayWidth(), characteristics.getActiveArrayHeight(),
+                    characteristics.getMaxDigitalZoom(), characteristics.getMaxDigitalZoom() * 10);
+            logger.debug("Creating zoom table ... done.");
+        }
 
-        logger.verbose("Camera2Component.startWatchDogThread() ... done.");
+        logger.verbose("Camera2Component.setupCameraOutputs()");
     }
 
     /**
-     * Stops the watchdog thread and its {@link Handler}.
+     * Creates the YUV image reader and its analysis stream, if a YUV frame listener, levels of the
+     * frame pyramid, software JPEG outputs or the change detection are set.
+     *
+     * @param characteristics the characteristics of the camera
      */
-    private void stopWatchDogThread() {
-        logger.verbose("Camera2Component.stopWatchDogThread()");
-        if (watchDogThread != null) {
-            logger.debug("Stopping watchdog thread.");
-            watchDogThread.quitSafely();
-            try {
-                logger.debug("Waiting for watchdog thread to finish.");
-                watchDogThread.join();
-                logger.debug("Waiting for watchdog thread to finish ... done.");
-                watchDogThread = null;
-                watchDogHandler = null;
-            } catch (InterruptedException e) {
-                logger.error("Error while waiting for watchdog thread to finish.", e);
+    private void setupYuvOutput(@NonNull CameraCharacteristicsSnapshot characteristics) {
+        YuvFrameListener listener = yuvFrameListener;
+        Size resolution = yuvResolution;
+        if ((listener == null) || (resolution == null)) {
+            if (!isYuvOutputNeeded()) {
+                return;
             }
+            // the internal consumers alone get frames of the JPEG resolution
+            resolution = cameraResolution;
         }
-        logger.verbose("Camera2Component.stopWatchDogThread() ... done");
-    }
 
-    private void setupCameraOutputs(int width, int height) {
-        logger.verbose("Camera2Component.setupCameraOutputs()");
+        CameraCharacteristicsSnapshot.OutputSize yuvOutputSize = CameraCharacteristicsSnapshot.chooseOutputSize(characteristics.getYuvOutputSizes(), resolution.getWidth(), resolution.getHeight());
+        if (yuvOutputSize == null) {
+            logger.error("Camera does not support YUV output.");
+            return;
+        }
+        logger.debug("Selected YUV size: {}", yuvOutputSize);
+
+        logger.debug("Creating YUV image reader.");
+        yuvStream = new YuvStream(this::onYuvFrame);
+        // one image for the camera, one being copied and one in flight
+        yuvImageReader = ImageReader.newInstance(yuvOutputSize.getWidth(), yuvOutputSize.getHeight(), ImageFormat.YUV_420_888, 3);
+        yuvImageReader.setOnImageAvailableListener(this::onYuvImageAvailable, backgroundHandler);
+        logger.debug("Creating YUV image reader ... done.");
+    }
 
-        CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    /**
+     * Copies the latest YUV image with its strides into a frame of the analysis stream.
+     *
+     * @param imageReader the YUV image reader
+     */
+    private void onYuvImageAvailable(ImageReader imageReader) {
+        YuvStream stream = yuvStream;
+        Image image = null;
+        YuvFrame frame = null;
         try {
-            logger.debug("Number of available cameras: " + cameraManager.getCameraIdList().length);
-            cameraId = cameraManager.getCameraIdList()[0];
-            logger.debug("Selected camera: " + cameraId);
+            image = imageReader.acquireLatestImage();
+            if ((image == null) || (stream == null)) {
+                return;
+            }
 
-            Integer hardwareLevel = cameraManager.getCameraCharacteristics(cameraId).get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
-            logger.info("Supported hardware level: " + hardwareLevel);
+            frame = stream.obtainFrame(image.getWidth(), image.getHeight(), image.getTimestamp());
+            if (frame == null) {
+                return;
+            }
+
+            Image.Plane[] planes = image.getPlanes();
+            for (int i = 0; i < planes.length; i++) {
+                frame.getPlane(i).copyFrom(planes[i].getBuffer(), planes[i].getRowStride(), planes[i].getPixelStride());
+            }
+            stream.publish(frame);
+            frame = null;
+        } catch (RuntimeException e) {
+            logger.error("Error copying YUV image.", e);
+        } finally {
+            if (frame != null) {
+                stream.recycle(frame);
+            }
+            if (image != null) {
+                image.close();
+            }
+        }
+    }
+
+    /**
+     * Scales the levels of the frame pyramid and passes the frame on to the YUV frame listener.
+     *
+     * @param frame the latest YUV frame
+     */
+    private void onYuvFrame(@NonNull YuvFrame frame) {
+        if (changeDetection) {
+            changeDetector.onYuvFrame(frame);
+        }
+        if (motionAnalysis) {
+            motionAnalyzer.onYuvFrame(frame);
+        }
+        framePyramid.onYuvFrame(frame);
+        jpegEncodeStage.onYuvFrame(frame);
 
-            StreamConfigurationMap streamConfigurationMap = cameraManager.getCameraCharacteristics(cameraId).get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-            Size[] jpegOutputSizes = streamConfigurationMap.getOutputSizes(ImageFormat.JPEG);
+        YuvFrameListener listener = yuvFrameListener;
+        if (listener != null) {
+            listener.onYuvFrame(frame);
+        }
+    }
 
-            StringBuffer sizes = new StringBuffer();
-            for (Size size : jpegOutputSizes) {
-                sizes.append('[');
-                sizes.append(size);
-                sizes.append(']');
+    private boolean isYuvOutputNeeded() {
+        return (yuvFrameListener != null) || framePyramid.hasLevels() || jpegEncodeStage.hasOutputs() || changeDetection || motionAnalysis;
+    }
 
-                cameraResolutions.add(size);
+    /**
+     * Restarts the camera if the YUV output has to be created or closed. Can be called from any
+     * thread.
+     */
+    private void updateYuvOutput() {
+        postRestart(() -> {
+            if (isYuvOutputNeeded() != (yuvImageReader != null)) {
+                restartOpenCamera();
             }
-            logger.debug("Available camera sizes: " + sizes.toString());
+        });
+    }
 
-            Size jpegOutputSize = jpegOutputSizes[jpegOutputSizes.length - 1];
-            for (Size size : jpegOutputSizes) {
-                if ((size.getWidth() == cameraResolution.getWidth()) && (size.getHeight() == cameraResolution.getHeight())) {
-                    jpegOutputSize = size;
-                    break;
-                }
-            }
-            logger.debug("Selected camera size: " + jpegOutputSize);
-
-            Point displaySize = new Point();
-            context.getWindowManager().getDefaultDisplay().getSize(displaySize);
-            Size largest = Collections.max(
-                    Arrays.asList(streamConfigurationMap.getOutputSizes(ImageFormat.JPEG)),
-                    new CompareSizesByArea());
-
-            previewSize = chooseOptimalSize(streamConfigurationMap.getOutputSizes(SurfaceTexture.class), width, height, displaySize.x, displaySize.y, largest);
-
-            StringBuffer ranges = new StringBuffer();
-            maxFpsRange = null;
-            Range<Integer> fpsRanges[] = cameraManager.getCameraCharacteristics(cameraId).get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
-            for (Range<Integer> fpsRange : fpsRanges) {
-                if ((maxFpsRange == null) || (fpsRange.getUpper() > maxFpsRange.getUpper()) || (fpsRange.getLower() > maxFpsRange.getLower())) {
-                    maxFpsRange = fpsRange;
-                }
-                ranges.append('[');
-                ranges.append(fpsRange.getLower());
-                ranges.append(':');
-                ranges.append(fpsRange.getUpper());
-                ranges.append(']');
-            }
-            logger.debug("Available camera FPS ranges: " + ranges.toString());
+    /**
+     * Restarts the camera with new outputs on the background thread, which owns the session and
+     * the readers. Can be called from any thread.
+     */
+    private void requestRestart() {
+        postRestart(this::restartOpenCamera);
+    }
 
-            logger.debug("Creating JPEG image reader.");
-            jpegImageReader = ImageReader.newInstance(jpegOutputSize.getWidth(), jpegOutputSize.getHeight(), ImageFormat.JPEG, 2);
-            jpegImageReader.setOnImageAvailableListener(this::onImageAvailable, backgroundHandler);
-            logger.debug("Creating JPEG image reader ... done.");
+    private void postRestart(Runnable restart) {
+        Handler handler = backgroundHandler;
+        if (handler == null) {
+            logger.debug("Camera not started, outputs will be created when it has been started.");
+            return;
+        }
 
-            sensorOrientation = cameraManager.getCameraCharacteristics(cameraId).get(CameraCharacteristics.SENSOR_ORIENTATION);
-            logger.debug("Camera sensor orientation: " + sensorOrientation);
-        } catch (CameraAccessException e) {
-            logger.error("Error setting up camera.", e);
+        handler.post(restart);
+    }
+
+    /**
+     * Restarts the camera if it is open. A restart while the session is still being created is
+     * deferred until it has been configured. Must be called on the background thread.
+     */
+    private void restartOpenCamera() {
+        if (cameraDevice == null) {
+            // the outputs are created when the camera is opened
+            return;
+        }
+        if (captureSession == null) {
+            restartPending = true;
+            return;
         }
 
-        logger.verbose("Camera2Component.setupCameraOutputs()");
+        restartPending = false;
+        // an intended restart, not a stall
+        frameWatchdog.arm();
+        restartCamera();
     }
 
-    private void onImageAvailable(ImageReader imageReader) {
-        logger.verbose("Camera2Component.onImageAvailable()");
+    private void closeYuvOutput() {
+        // check if the YUV reader is opened
+        if (null != yuvImageReader) {
+            logger.debug("Closing YUV reader.");
+            yuvImageReader.close();
+            yuvImageReader = null;
+            yuvStream.close();
+            yuvStream = null;
+            logger.debug("Closing YUV reader ... done.");
+        }
+    }
 
-        watchDogTimer.set(System.currentTimeMillis());
+    /**
+     * Chooses the preview size for the size of the texture view and configures the transformation
+     * of the texture view.
+     *
+     * @param width  the width of the texture view
+     * @param height the height of the texture view
+     */
+    private void setupPreview(int width, int height) {
+        logger.verbose("Camera2Component.setupPreview(width={};height={})", width, height);
 
-//        int count = countDown.addAndGet(-1);
-//        if (count ==0) {
-//            try {
-//                Thread.sleep(5000);
-//            } catch (InterruptedException e) {
-//                e.printStackTrace();
-//            }
-//
-//            countDown.set(500);
-//        } else {
-//            logger.info("Count: " + count);
-//        }
+        CameraCharacteristicsSnapshot characteristics = characteristicsCache.get(cameraId);
+        if (characteristics == null) {
+            logger.error("Error setting up preview.");
+            return;
+        }
 
-        try {
-            Image image = imageReader.acquireLatestImage();
-            if (image != null) {
-                ByteBuffer originalBuffer = image.getPlanes()[0].getBuffer();
-
-                boolean permit = false;
-                try {
-                    permit = imageBufferSemaphore.tryAcquire();
-                    if ((permit) && (!frozen)) {
-                        if (originalBuffer.remaining() > imageBuffer.capacity()) {
-                            imageBuffer = ByteBuffer.allocate(originalBuffer.remaining());
-                        }
+        Size[] jpegOutputSizes = toSizes(characteristics.getJpegOutputSizes());
+        Point displaySize = new Point();
+        context.getWindowManager().getDefaultDisplay().getSize(displaySize);
+        Size largest = Collections.max(Arrays.asList(jpegOutputSizes), new CompareSizesByArea());
 
-                        imageBuffer.clear();
-                        imageBuffer.put(originalBuffer);
-                        imageBuffer.flip();
-                    }
-                } finally {
-                    if (permit) {
-                        imageBufferSemaphore.release();
-                    }
-                }
+        previewSize = chooseOptimalSize(toSizes(characteristics.getPreviewOutputSizes()), width, height, displaySize.x, displaySize.y, largest);
+        logger.debug("Selected preview size: {}", previewSize);
 
-                image.close();
-            }
-        } catch (Exception e) {
-            logger.error("Error in image loop.", e);
+        context.runOnUiThread(() -> configureTransform(width, height));
+
+        logger.verbose("Camera2Component.setupPreview() ... done.");
+    }
+
+    /**
+     * Creates the capture session once the camera device and the preview surface are ready. Runs
+     * on the background thread.
+     */
+    private void startPreview() {
+        logger.verbose("Camera2Component.startPreview()");
+
+        if ((cameraDevice == null) || (previewTexture == null)) {
+            logger.debug("Camera device or preview surface has gone.");
+            return;
         }
 
-        logger.verbose("Camera2Component.onImageAvailable() ... done.");
+        setupPreview(cameraWidth, cameraHeight);
+
+        logger.debug("Create preview session.");
+        createCameraPreviewSession();
+        logger.debug("Create preview session ... done.");
+
+        if (onCameraInitializedHandler != null) {
+            onCameraInitializedHandler.run();
+        }
+
+        logger.verbose("Camera2Component.startPreview() ... done.");
+    }
+
+    @NonNull
+    private static Size[] toSizes(@NonNull List<CameraCharacteristicsSnapshot.OutputSize> outputSizes) {
+        Size[] sizes = new Size[outputSizes.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            CameraCharacteristicsSnapshot.OutputSize outputSize = outputSizes.get(i);
+            sizes[i] = new Size(outputSize.getWidth(), outputSize.getHeight());
+        }
+        return sizes;
     }
 
     private void createCameraPreviewSession() {
         logger.verbose("Camera2Component.createCameraPreviewSession()");
 
-        previewTexture.setDefaultBufferSize(textureView.getWidth(), textureView.getHeight());
+        SurfaceTexture texture = previewTexture;
+        if ((cameraDevice == null) || (texture == null)) {
+            // the startup coordinator creates the session once both are ready again
+            logger.debug("Camera device or preview surface has gone.");
+            return;
+        }
+        texture.setDefaultBufferSize(textureView.getWidth(), textureView.getHeight());
 
-        watchDogTimer.set(0);
+        logger.event(CameraEvents.SESSION_CREATE);
 
         logger.debug("Create output surface.");
-        Surface surface = new Surface(previewTexture);
+        Surface surface = new Surface(texture);
 
         try {
             logger.debug("Create new capture session.");
-            cameraDevice.createCaptureSession(Arrays.asList(surface, jpegImageReader.getSurface()), new CameraCaptureSession.StateCallback() {
+            List<Surface> outputs = new ArrayList<>(Arrays.asList(surface, jpegImageReader.getSurface()));
+            ImageReader yuvReader = yuvImageReader;
+            if (yuvReader != null) {
+                outputs.add(yuvReader.getSurface());
+            }
+            cameraDevice.createCaptureSession(outputs, new CameraCaptureSession.StateCallback() {
                 @Override
                 public void onConfigured(@NonNull CameraCaptureSession session) {
                     logger.verbose("Camera2Component.StateCallback.onConfigured()");
+                    logger.event(CameraEvents.SESSION_CONFIGURED);
+                    startupCoordinator.onSessionConfigured();
+                    framePipeline.beginSession();
 
                     if (cameraDevice == null) {
                         logger.debug("CameraDevice not configured.");
@@ -619,8 +945,7 @@ public class Camera2Component implements CameraController {
                         Camera2Component.this.captureSession = session;
 
                         logger.debug("Creating new capture request.");
-                        CaptureRequest.Builder captureRequestBuilder = cameraDevice
-                                .createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+                        captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
 
                         logger.debug("Adding preview surface as target.");
                         captureRequestBuilder.addTarget(surface);
@@ -628,35 +953,25 @@ public class Camera2Component implements CameraController {
                         logger.debug("Adding JPEG reader as target.");
                         captureRequestBuilder.addTarget(jpegImageReader.getSurface());
 
-                        logger.debug("Setting target FPS range to " + maxFpsRange);
-                        captureRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, maxFpsRange);
-
-                        int rotation = getJpegOrientation();
-                        logger.debug("Setting JPEG orientation to " + rotation);
-                        captureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, rotation);
-
-                        logger.debug("Setting JPEG quality to " + jpegQuality);
-                        captureRequestBuilder.set(CaptureRequest.JPEG_QUALITY, jpegQuality);
-
-                        logger.debug("Setting torch mode to " + flash);
-                        captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
-                        captureRequestBuilder.set(CaptureRequest.FLASH_MODE, flash ? CaptureRequest.FLASH_MODE_TORCH : CaptureRequest.FLASH_MODE_OFF);
-
-                        logger.debug("setting zoom level to " + zoomLevel);
-                        Rect zoomRect = getZoomRect(zoomLevel);
-                        if (zoomRect != null) {
-                            logger.debug("Setting crop region to " + zoomRect);
-                            captureRequestBuilder.set(CaptureRequest.SCALER_CROP_REGION, zoomRect);
+                        if (yuvReader != null) {
+                            logger.debug("Adding YUV reader as target.");
+                            captureRequestBuilder.addTarget(yuvReader.getSurface());
                         }
 
+                        logger.debug("Setting target FPS range to {}", maxFpsRange);
+                        captureRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, maxFpsRange);
+
                         logger.debug("Enabling video stabilization.");
                         captureRequestBuilder.set(CaptureRequest.CONTROL_VIDEO_STABILIZATION_MODE, CaptureRequest.CONTROL_VIDEO_STABILIZATION_MODE_ON);
 
-                        CaptureRequest request = captureRequestBuilder.build();
-                        logger.debug("Request created.");
-
                         logger.debug("Start repeating request.");
-                        session.setRepeatingRequest(request, null, backgroundHandler);
+                        issueRepeatingRequest();
+
+                        Handler handler = backgroundHandler;
+                        if (restartPending && (handler != null)) {
+                            logger.debug("Outputs changed while the session was created.");
+                            handler.post(Camera2Component.this::restartOpenCamera);
+                        }
                     } catch (CameraAccessException e) {
                         logger.error("Error configuring capture request.");
                     }
@@ -679,6 +994,187 @@ public class Camera2Component implements CameraController {
         logger.verbose("Camera2Component.createCameraPreviewSession() ... done.");
     }
 
+    /**
+     * Applies the current torch, zoom, JPEG quality and orientation settings to the capture
+     * request builder and (re-)issues it as the repeating request of the current session. Must be
+     * called on the background thread.
+     *
+     * @throws CameraAccessException if the repeating request cannot be set
+     */
+    private void issueRepeatingRequest() throws CameraAccessException {
+        logger.verbose("Camera2Component.issueRepeatingRequest()");
+
+        if ((captureSession == null) || (captureRequestBuilder == null)) {
+            logger.debug("No capture session, settings will be applied when it has been created.");
+            return;
+        }
+
+        int rotation = getJpegOrientation();
+        logger.debug("Setting JPEG orientation to {}", rotation);
+        captureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, rotation);
+        framePipeline.setJpegOrientation(rotation);
+
+        logger.debug("Setting JPEG quality to {}", jpegQuality);
+        captureRequestBuilder.set(CaptureRequest.JPEG_QUALITY, jpegQuality);
+
+        logger.debug("Setting torch mode to {}", flash);
+        captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE, CaptureRequest.CONTROL_AE_MODE_ON);
+        captureRequestBuilder.set(CaptureRequest.FLASH_MODE, flash ? CaptureRequest.FLASH_MODE_TORCH : CaptureRequest.FLASH_MODE_OFF);
+
+        logger.debug("setting zoom level to {}", zoomLevel);
+        if (applyZoomLevel(captureRequestBuilder)) {
+            logger.debug("Setting crop region to {}", cropRegion);
+        }
+
+        // tag the request, so that we can tell when the new settings have reached the sensor
+        Long tag = ++reconfigurationCount;
+        captureRequestBuilder.setTag(tag);
+        if (reconfigurationStartNanos != 0) {
+            reconfigurationTag = tag;
+        }
+
+        captureSession.setRepeatingRequest(captureRequestBuilder.build(), captureCallback, backgroundHandler);
+
+        logger.verbose("Camera2Component.issueRepeatingRequest() ... done.");
+    }
+
+    /**
+     * Updates the repeating request of the current session with the current settings, keeping the
+     * session and its surfaces. Can be called from any thread.
+     */
+    private void updateRepeatingRequest() {
+        logger.verbose("Camera2Component.updateRepeatingRequest()");
+
+        Handler handler = backgroundHandler;
+        if (handler == null) {
+            logger.debug("Camera not started, settings will be applied when it has been started.");
+            return;
+        }
+
+        handler.post(() -> {
+            beginReconfiguration();
+            try {
+                issueRepeatingRequest();
+            } catch (CameraAccessException | IllegalStateException e) {
+                logger.error("Error updating repeating request.", e);
+            }
+        });
+
+        logger.verbose("Camera2Component.updateRepeatingRequest() ... done.");
+    }
+
+    /**
+     * Sets the crop region of the current zoom level on the capture request builder. Must be called
+     * on the background thread.
+     *
+     * @param builder the capture request builder
+     * @return {@code true} if the crop region has been set, {@code false} if the zoom table is not
+     * available yet
+     */
+    private boolean applyZoomLevel(CaptureRequest.Builder builder) {
+        ZoomTable table = zoomTable;
+        if (table == null) {
+            return false;
+        }
+
+        table.getCropRegion(zoomLevel, cropBounds);
+        cropRegion.set(cropBounds[0], cropBounds[1], cropBounds[2], cropBounds[3]);
+        // the builder copies the value, so the rectangle can be reused
+        builder.set(CaptureRequest.SCALER_CROP_REGION, cropRegion);
+        return true;
+    }
+
+    /**
+     * Moves the zoom level one step towards the target zoom level and updates the repeating
+     * request, so that a zoom ramp advances at the frame rate. Called on the background thread for
+     * every completed capture.
+     */
+    private void stepZoomRamp() {
+        // a restart may close the session between two completed captures
+        ZoomTable table = zoomTable;
+        CameraCaptureSession session = captureSession;
+        CaptureRequest.Builder builder = captureRequestBuilder;
+        float target = targetZoomLevel;
+        if ((table == null) || (zoomLevel == target) || (session == null) || (builder == null)) {
+            return;
+        }
+
+        float step = table.getMaxZoomLevel() / CameraTestConstants.ZOOM_RAMP_FRAMES;
+        if (Math.abs(target - zoomLevel) <= step) {
+            zoomLevel = target;
+        } else {
+            zoomLevel += (target > zoomLevel) ? step : -step;
+        }
+
+        applyZoomLevel(builder);
+        try {
+            session.setRepeatingRequest(builder.build(), captureCallback, backgroundHandler);
+        } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
+            // the session has been closed or reconfigured, the next session applies the zoom level
+            logger.warn("Error updating zoom level.", e);
+        }
+    }
+
+    /**
+     * Performs a recovery action of the {@link FrameWatchdog}. Runs on the background thread.
+     *
+     * @param stage the recovery stage
+     */
+    private void recover(@NonNull FrameWatchdog.Stage stage) {
+        logger.warn("Frame delivery stalled, recovery stage {}", stage);
+        logger.event(CameraEvents.WATCHDOG, stage.ordinal());
+
+        cameraRecovery.recover(stage);
+
+        if (onWatchDogTriggeredHandler != null) {
+            onWatchDogTriggeredHandler.run();
+        }
+    }
+
+    private void reopenCamera() {
+        logger.verbose("Camera2Component.reopenCamera()");
+
+        logger.debug("Closing camera.");
+        closeCamera();
+        logger.debug("Closing camera ... done.");
+
+        // the session is created again once the device has been opened
+        logger.debug("Opening camera.");
+        openCamera();
+        logger.debug("Opening camera ... done.");
+
+        logger.verbose("Camera2Component.reopenCamera() ... done.");
+    }
+
+    private void beginReconfiguration() {
+        reconfigurationTag = null;
+        reconfigurationStartNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * {@link CameraCaptureSession.CaptureCallback} that measures the gap of a reconfiguration and
+     * reports the frame duration to the missed frame count.
+     */
+    private final CameraCaptureSession.CaptureCallback captureCallback = new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+            Long tag = reconfigurationTag;
+            if ((tag != null) && tag.equals(request.getTag())) {
+                long gap = SystemClock.elapsedRealtimeNanos() - reconfigurationStartNanos;
+                reconfigurationTag = null;
+                reconfigurationStartNanos = 0;
+                lastReconfigurationGapNanos.set(gap);
+                logger.debug("Reconfiguration gap: {}ms", gap / 1000000);
+            }
+
+            // not reported by every device, the frame stats fall back to the average interval
+            Long frameDuration = result.get(CaptureResult.SENSOR_FRAME_DURATION);
+            frameStats.setFrameDuration((frameDuration != null) ? frameDuration : 0);
+
+            stepZoomRamp();
+        }
+    };
+
     private void closeCameraPreviewSession() {
         logger.verbose("Camera2Component.closeCameraPreviewSession()");
 
@@ -687,17 +1183,22 @@ public class Camera2Component implements CameraController {
             logger.debug("Closing capture session.");
             captureSession.close();
             captureSession = null;
+            captureRequestBuilder = null;
             logger.debug("Closing capture session ... done.");
         }
 
         // check if the JPEG reader is opened
         if (null != jpegImageReader) {
             logger.debug("Closing JPEG reader.");
+            frameSource.stop();
+            frameSource = null;
             jpegImageReader.close();
             jpegImageReader = null;
             logger.debug("Closing JPEG reader ... done.");
         }
 
+        closeYuvOutput();
+
         logger.verbose("Camera2Component.closeCameraPreviewSession() ... done.");
     }
 
@@ -711,11 +1212,7 @@ public class Camera2Component implements CameraController {
         public void onSurfaceTextureAvailable(SurfaceTexture texture, int width, int height) {
             logger.verbose("Camera2Component.SurfaceTextureListener.onSurfaceTextureAvailable()");
 
-            Camera2Component.this.previewTexture = texture;
-
-            logger.debug("Opening camera.");
-            openCamera(width, height);
-            logger.debug("Opening camera ... done.");
+            onPreviewSurfaceReady(texture, width, height);
 
             logger.verbose("Camera2Component.SurfaceTextureListener.onSurfaceTextureAvailable() ... done.");
         }
@@ -729,6 +1226,8 @@ public class Camera2Component implements CameraController {
         @Override
         public boolean onSurfaceTextureDestroyed(SurfaceTexture texture) {
             logger.verbose("Camera2Component.SurfaceTextureListener.onSurfaceTextureDestroyed()");
+            previewTexture = null;
+            startupCoordinator.onSurfaceDestroyed();
             return true;
         }
 
@@ -739,6 +1238,32 @@ public class Camera2Component implements CameraController {
         }
     };
 
+    /**
+     * {@link CameraManager.AvailabilityCallback} invalidates the cached camera characteristics
+     * when cameras are connected or disconnected.
+     */
+    private final CameraManager.AvailabilityCallback availabilityCallback = new CameraManager.AvailabilityCallback() {
+        @Override
+        public void onCameraAvailable(@NonNull String cameraId) {
+            // closing the camera makes it available again, only a newly connected camera changes
+            // the camera ID list
+            if (!characteristicsCache.isKnownCamera(cameraId)) {
+                characteristicsCache.invalidate(cameraId);
+            }
+        }
+
+        @Override
+        public void onCameraUnavailable(@NonNull String cameraId) {
+            // a disconnected camera cannot be told apart from one opened by another client, so
+            // only the camera ID list is reloaded; the characteristics of an ID do not change
+            // while it is connected, and a camera connected again under the same ID is unknown to
+            // the reloaded list and invalidated in onCameraAvailable()
+            if (!cameraId.equals(Camera2Component.this.cameraId) && characteristicsCache.isKnownCamera(cameraId)) {
+                characteristicsCache.invalidateCameraIds();
+            }
+        }
+    };
+
     /**
      * {@link CameraDevice.StateCallback} is called when {@link CameraDevice} changes its state.
      */
@@ -747,56 +1272,83 @@ public class Camera2Component implements CameraController {
         @Override
         public void onOpened(@NonNull CameraDevice cameraDevice) {
             // This method is called when the camera is opened.  We start camera preview here.
-            logger.verbose("Camera2Component.SurfaceTextureListener.onOpened(CameraDevice=" + cameraDevice + ")");
+            logger.verbose("Camera2Component.StateCallback.onOpened(CameraDevice={})", cameraDevice);
+
+            logger.event(CameraEvents.DEVICE_OPENED);
 
             logger.debug("Releasing camera semaphore.");
+            opening = false;
             cameraOpenCloseSemaphore.release();
 
             Camera2Component.this.cameraDevice = cameraDevice;
 
-            logger.debug("Create preview session.");
-            createCameraPreviewSession();
-            logger.debug("Create preview session ... done.");
-
-            if (onCameraInitializedHandler != null) {
-                onCameraInitializedHandler.run();
-            }
-            logger.verbose("Camera2Component.SurfaceTextureListener.onOpened() ... done.");
+            // creates the preview session as soon as the preview surface is ready as well
+            startupCoordinator.onDeviceOpened();
+            logger.verbose("Camera2Component.StateCallback.onOpened() ... done.");
         }
 
         @Override
         public void onDisconnected(@NonNull CameraDevice cameraDevice) {
-            logger.verbose("Camera2Component.SurfaceTextureListener.onDisconnected(CameraDevice=\" + cameraDevice +\")");
-
-            logger.debug("Releasing camera semaphore.");
-            cameraOpenCloseSemaphore.release();
+            logger.verbose("Camera2Component.StateCallback.onDisconnected(CameraDevice={})", cameraDevice);
+            logger.event(CameraEvents.DISCONNECTED);
+            startupCoordinator.onDeviceClosed();
+
+            // an open device has already released the semaphore in onOpened()
+            if (opening) {
+                logger.debug("Releasing camera semaphore.");
+                opening = false;
+                cameraOpenCloseSemaphore.release();
+            }
 
             logger.debug("Closing camera device.");
             cameraDevice.close();
             Camera2Component.this.cameraDevice = null;
             logger.debug("Closing camera device ... done.");
 
-            logger.verbose("Camera2Component.SurfaceTextureListener.onDisconnected() ... done.");
+            restartWatchdogAfterDeviceLoss();
+
+            logger.verbose("Camera2Component.StateCallback.onDisconnected() ... done.");
         }
 
         @Override
         public void onError(@NonNull CameraDevice cameraDevice, int error) {
-            logger.verbose("Camera2Component.SurfaceTextureListener.onDisconnected(CameraDevice=\" + cameraDevice +\";error=" + error + ")");
+            logger.verbose("Camera2Component.StateCallback.onError(CameraDevice={};error={})", cameraDevice, error);
 
-            logger.error("Camera Error: " + error);
+            logger.error("Camera Error: {}", error);
+            logger.event(CameraEvents.ERROR, error);
+            startupCoordinator.onDeviceClosed();
 
-            logger.debug("Releasing camera semaphore.");
-            cameraOpenCloseSemaphore.release();
+            // an open device has already released the semaphore in onOpened()
+            if (opening) {
+                logger.debug("Releasing camera semaphore.");
+                opening = false;
+                cameraOpenCloseSemaphore.release();
+            }
 
             logger.debug("Closing camera device.");
             cameraDevice.close();
             Camera2Component.this.cameraDevice = null;
             logger.debug("Closing camera device ... done.");
 
-            logger.verbose("Camera2Component.SurfaceTextureListener.onDisconnected() ... done.");
+            restartWatchdogAfterDeviceLoss();
+
+            logger.verbose("Camera2Component.StateCallback.onError() ... done.");
         }
     };
 
+    /**
+     * Restarts the stall timer of the watchdog after the device has been lost, so that it is
+     * reopened once the startup threshold has passed without frames. Runs on the background thread.
+     */
+    private void restartWatchdogAfterDeviceLoss() {
+        if (startupCoordinator.isRunning()) {
+            logger.debug("Camera device lost, the watchdog reopens it.");
+            frameWatchdog.arm();
+        } else {
+            frameWatchdog.disarm();
+        }
+    }
+
     private int getJpegOrientation() {
         SparseIntArray orientations = new SparseIntArray(4);
         orientations.append(Surface.ROTATION_0, 90);
@@ -818,31 +1370,46 @@ public class Camera2Component implements CameraController {
     }
 
     private void startCamera() {
+        frameWatchdog.arm();
+
+        // load the characteristics and open the camera on the background thread right away, the
+        // preview session is created when both the camera and the surface are ready
+        logger.debug("Opening camera.");
+        startupCoordinator.start();
+        logger.debug("Opening camera ... done.");
+
         // When the screen is turned off and turned back on, the SurfaceTexture is already
-        // available, and "onSurfaceTextureAvailable" will not be called. In that case, we can open
-        // a camera and start preview from here (otherwise, we wait until the surface is ready in
-        // the SurfaceTextureListener).
+        // available, and "onSurfaceTextureAvailable" will not be called. In that case, the
+        // surface is ready right away (otherwise, we wait until the surface is ready in the
+        // SurfaceTextureListener).
         if (textureView.isAvailable()) {
             logger.verbose("TextureView is available.");
-
-            logger.debug("Opening camera.");
-            openCamera(textureView.getWidth(), textureView.getHeight());
-            logger.debug("Opening camera ... done.");
+            onPreviewSurfaceReady(textureView.getSurfaceTexture(), textureView.getWidth(), textureView.getHeight());
         } else {
             logger.debug("TextureView is not available.");
             textureView.setSurfaceTextureListener(surfaceTextureListener);
         }
     }
 
+    private void onPreviewSurfaceReady(@NonNull SurfaceTexture texture, int width, int height) {
+        previewTexture = texture;
+        cameraWidth = width;
+        cameraHeight = height;
+        startupCoordinator.onSurfaceReady();
+    }
+
     private void restartCamera() {
         logger.verbose("Camera2Component.restartCamera()");
+        logger.event(CameraEvents.RESTART, cameraResolution.getWidth(), cameraResolution.getHeight());
+
+        beginReconfiguration();
 
         logger.debug("Closing preview session.");
         closeCameraPreviewSession();
         logger.debug("Closing preview session ... done.");
 
         logger.debug("Create new camera outputs.");
-        setupCameraOutputs(cameraWidth, cameraHeight);
+        setupCameraOutputs();
 //        configureTransform(cameraWidth, cameraHeight);
         logger.debug("Create new camera outputs ... done.");
 
@@ -854,33 +1421,142 @@ public class Camera2Component implements CameraController {
     }
 
     public void setCameraResolution(Size cameraResolution) {
-        logger.verbose("Camera2Component.setCameraResolution(cameraResolution=" + cameraResolution + ")");
+        logger.verbose("Camera2Component.setCameraResolution(cameraResolution={})", cameraResolution);
 
         logger.debug("Changing camera resolution.");
         this.cameraResolution = cameraResolution;
-        restartCamera();
+        requestRestart();
         logger.debug("Changing camera resolution ... done.");
 
         logger.verbose("Camera2Component.setCameraResolution() ... done.");
     }
 
+    @Override
+    public void setYuvFrameListener(@Nullable YuvFrameListener listener, @Nullable Size resolution) {
+        logger.verbose("Camera2Component.setYuvFrameListener(resolution={})", resolution);
+
+        logger.debug("Changing YUV analysis stream.");
+        this.yuvFrameListener = listener;
+        this.yuvResolution = resolution;
+        requestRestart();
+        logger.debug("Changing YUV analysis stream ... done.");
+
+        logger.verbose("Camera2Component.setYuvFrameListener() ... done.");
+    }
+
+    @Override
+    public void setImageAcquisition(@NonNull ImageAcquisition acquisition) {
+        logger.verbose("Camera2Component.setImageAcquisition(acquisition={})", acquisition);
+
+        logger.debug("Changing image acquisition.");
+        this.imageAcquisition = acquisition;
+        requestRestart();
+        logger.debug("Changing image acquisition ... done.");
+
+        logger.verbose("Camera2Component.setImageAcquisition() ... done.");
+    }
+
+    @Override
+    @NonNull
+    public ImageAcquisition getImageAcquisition() {
+        return imageAcquisition;
+    }
+
+    @Override
+    public void setPyramidLevels(@NonNull List<PyramidLevel> levels) {
+        logger.verbose("Camera2Component.setPyramidLevels(levels={})", levels);
+
+        logger.debug("Changing frame pyramid levels.");
+        framePyramid.setLevels(levels);
+        updateYuvOutput();
+        logger.debug("Changing frame pyramid levels ... done.");
+
+        logger.verbose("Camera2Component.setPyramidLevels() ... done.");
+    }
+
+    @Override
+    public void setChangeDetection(boolean enabled) {
+        logger.verbose("Camera2Component.setChangeDetection(enabled={})", enabled);
+
+        logger.debug("Changing change detection.");
+        changeDetection = enabled;
+        // without analysis, every frame is tagged as changed again
+        changeDetector.reset();
+        updateYuvOutput();
+        logger.debug("Changing change detection ... done.");
+
+        logger.verbose("Camera2Component.setChangeDetection() ... done.");
+    }
+
+    @Override
+    @NonNull
+    public ChangeDetector getChangeDetector() {
+        return changeDetector;
+    }
+
+    @Override
+    public void setMotionAnalysis(boolean enabled) {
+        logger.verbose("Camera2Component.setMotionAnalysis(enabled={})", enabled);
+
+        logger.debug("Changing motion analysis.");
+        motionAnalysis = enabled;
+        // drops the regions of the last analysis from the following frames
+        motionAnalyzer.reset();
+        updateYuvOutput();
+        logger.debug("Changing motion analysis ... done.");
+
+        logger.verbose("Camera2Component.setMotionAnalysis() ... done.");
+    }
+
+    @Override
+    @NonNull
+    public MotionAnalyzer getMotionAnalyzer() {
+        return motionAnalyzer;
+    }
+
+    @Override
+    @NonNull
+    public JpegEncodeStage.Output addJpegOutput(@NonNull JpegSettings settings) {
+        logger.verbose("Camera2Component.addJpegOutput(settings={})", settings);
+
+        logger.debug("Adding software JPEG output.");
+        JpegEncodeStage.Output output = jpegEncodeStage.addOutput(settings);
+        updateYuvOutput();
+        logger.debug("Adding software JPEG output ... done.");
+
+        logger.verbose("Camera2Component.addJpegOutput() ... done.");
+        return output;
+    }
+
+    @Override
+    public void removeJpegOutput(@NonNull JpegEncodeStage.Output output) {
+        logger.verbose("Camera2Component.removeJpegOutput(output={})", output);
+
+        logger.debug("Removing software JPEG output.");
+        jpegEncodeStage.removeOutput(output);
+        updateYuvOutput();
+        logger.debug("Removing software JPEG output ... done.");
+
+        logger.verbose("Camera2Component.removeJpegOutput() ... done.");
+    }
+
     public void setJpegQuality(byte jpegQuality) {
-        logger.verbose("Camera2Component.setJpegQuality(jpegQuality=" + jpegQuality + ")");
+        logger.verbose("Camera2Component.setJpegQuality(jpegQuality={})", jpegQuality);
 
         logger.debug("Changing JPEG quality.");
         this.jpegQuality = jpegQuality;
-        restartCamera();
+        updateRepeatingRequest();
         logger.debug("Changing JPEG quality ... done.");
 
         logger.verbose("Camera2Component.setJpegQuality() ... done.");
     }
 
     public void setDeviceRotation(int deviceRotation) {
-        logger.verbose("Camera2Component.setDeviceRotation(deviceRoation=" + deviceRotation + ")");
+        logger.verbose("Camera2Component.setDeviceRotation(deviceRoation={})", deviceRotation);
 
         logger.debug("Changing device rotation.");
         this.deviceRotation = deviceRotation;
-        restartCamera();
+        updateRepeatingRequest();
         logger.debug("Changing device rotation ... done.");
 
         logger.verbose("Camera2Component.setDeviceRotation() ... done.");
@@ -906,66 +1582,72 @@ public class Camera2Component implements CameraController {
 
     @Override
     public void setTorchMode(boolean on) {
+        logger.verbose("Camera2Component.setTorchMode(on={})", on);
         this.flash = on;
 
-        restartCamera();
+        updateRepeatingRequest();
+        logger.verbose("Camera2Component.setTorchMode() ... done.");
     }
 
     @Override
     public void setZoomLevel(float zoomLevel) {
-        this.zoomLevel = zoomLevel;
+        logger.verbose("Camera2Component.setZoomLevel(zoomLevel={})", zoomLevel);
+        // the capture callback ramps the crop region towards the new zoom level
+        this.targetZoomLevel = zoomLevel;
 
-        restartCamera();
-    }
-
-    @Nullable
-    private Rect getZoomRect(float zoomLevel) {
-        try {
-            CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
-            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
-
-            float maxZoom = (characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM)) * 10;
-            Rect activeRect = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
-
-            if ((zoomLevel <= maxZoom) && (zoomLevel > 1)) {
-                int minW = (int) (activeRect.width() / maxZoom);
-                int minH = (int) (activeRect.height() / maxZoom);
-                int difW = activeRect.width() - minW;
-                int difH = activeRect.height() - minH;
-                int cropW = difW / 100 * (int) zoomLevel;
-                int cropH = difH / 100 * (int) zoomLevel;
-                cropW -= cropW & 3;
-                cropH -= cropH & 3;
-                return new Rect(cropW, cropH, activeRect.width() - cropW, activeRect.height() - cropH);
-            } else if (zoomLevel == 0) {
-                return new Rect(0, 0, activeRect.width(), activeRect.height());
-            }
-
-            return null;
-        } catch (Exception e) {
-            logger.error("Error calculating zoom rectangle.", e);
-            return null;
-        }
+        logger.verbose("Camera2Component.setZoomLevel() ... done.");
     }
 
     @Override
     public float getMaxZoom() {
+        ZoomTable table = zoomTable;
+        if (table != null) {
+            return table.getMaxZoomLevel();
+        }
         try {
-            CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
-            return (cameraManager.getCameraCharacteristics(cameraId).get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM)) * 10;
+            return characteristicsCache.get(cameraId).getMaxDigitalZoom() * 10;
         } catch (Exception e) {
             logger.error("Error accessing camera.", e);
             return -1;
         }
     }
 
+    @Override
+    public long getLastReconfigurationGapNanos() {
+        return lastReconfigurationGapNanos.get();
+    }
+
+    @Override
+    @NonNull
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
+    @Override
+    @NonNull
+    public FrameWatchdog getFrameWatchdog() {
+        return frameWatchdog;
+    }
+
+    @Override
+    @NonNull
+    public StartupCoordinator getStartupCoordinator() {
+        return startupCoordinator;
+    }
+
+    @Override
+    @NonNull
+    public FramePyramid getFramePyramid() {
+        return framePyramid;
+    }
+
     @Override
     public void setFreeze(boolean freeze) {
-        this.frozen = freeze;
+        framePipeline.setFrozen(freeze);
     }
 
     @Override
     public boolean getFreeze() {
-        return frozen;
+        return framePipeline.isFrozen();
     }
 }
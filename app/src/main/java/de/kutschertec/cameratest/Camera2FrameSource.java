@@ -0,0 +1,112 @@
+package de.kutschertec.cameratest;
+
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+/**
+ * {@link FrameSource} that delivers the JPEG images of a camera2 {@link ImageReader}, either only
+ * the latest or every image, as described by its {@link ImageAcquisition}.
+ */
+public class Camera2FrameSource implements FrameSource, ImageReader.OnImageAvailableListener {
+    private final Logger logger = new Logger(this);
+
+    private final ImageReader imageReader;
+    private final ImageAcquisition.Mode mode;
+    private final Handler handler;
+    private final boolean realtimeTimestamps;
+
+    private volatile FrameSink sink = null;
+
+    /**
+     * Create a new instance.
+     *
+     * @param imageReader        the reader the camera writes the JPEG images to
+     * @param mode               whether only the latest or every image is delivered
+     * @param handler            the handler the images are delivered on
+     * @param realtimeTimestamps {@code true} if the sensor timestamps share the time base of
+     *                           {@link SystemClock#elapsedRealtimeNanos()}
+     */
+    public Camera2FrameSource(@NonNull ImageReader imageReader, @NonNull ImageAcquisition.Mode mode, @NonNull Handler handler,
+                              boolean realtimeTimestamps) {
+        this.imageReader = imageReader;
+        this.mode = mode;
+        this.handler = handler;
+        this.realtimeTimestamps = realtimeTimestamps;
+    }
+
+    @NonNull
+    @Override
+    public Format getFormat() {
+        return Format.JPEG;
+    }
+
+    @Override
+    public int getWidth() {
+        return imageReader.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return imageReader.getHeight();
+    }
+
+    @Override
+    public void start(@NonNull FrameSink sink) {
+        this.sink = sink;
+        imageReader.setOnImageAvailableListener(this, handler);
+    }
+
+    @Override
+    public void stop() {
+        imageReader.setOnImageAvailableListener(null, null);
+        this.sink = null;
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader imageReader) {
+        logger.verbose("Camera2FrameSource.onImageAvailable()");
+
+        try {
+            if (mode == ImageAcquisition.Mode.LATEST) {
+                // the reader discards the older images, they show up as gaps in the timestamps
+                deliver(imageReader.acquireLatestImage());
+            } else {
+                // drain the queue in order, a callback may stand for several images
+                Image image;
+                while ((image = imageReader.acquireNextImage()) != null) {
+                    deliver(image);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error in image loop.", e);
+        }
+
+        logger.verbose("Camera2FrameSource.onImageAvailable() ... done.");
+    }
+
+    /**
+     * Passes an image to the sink and closes it.
+     *
+     * @param image the image, or {@code null} if there is none
+     */
+    private void deliver(Image image) {
+        if (image == null) {
+            return;
+        }
+
+        long arrivalTime = System.nanoTime();
+        long arrivalRealtime = realtimeTimestamps ? SystemClock.elapsedRealtimeNanos() : 0;
+        try {
+            FrameSink sink = this.sink;
+            if (sink != null) {
+                sink.onFrame(image.getPlanes()[0].getBuffer(), image.getTimestamp(), arrivalTime,
+                        realtimeTimestamps ? arrivalRealtime - image.getTimestamp() : -1);
+            }
+        } finally {
+            image.close();
+        }
+    }
+}
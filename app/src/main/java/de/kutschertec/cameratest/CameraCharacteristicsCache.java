@@ -0,0 +1,169 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the camera ID list and a {@link CameraCharacteristicsSnapshot} per camera ID, so that
+ * each of them is only queried once from the camera service.
+ */
+public class CameraCharacteristicsCache {
+    private final Logger logger = new Logger(this);
+
+    private final Loader loader;
+    private final ConcurrentHashMap<String, CameraCharacteristicsSnapshot> snapshots = new ConcurrentHashMap<>();
+    private volatile List<String> cameraIds = null;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong loads = new AtomicLong(0);
+
+    /**
+     * Loads the camera ID list and the characteristics of a camera, e.g. from the {@code
+     * CameraManager}.
+     */
+    public interface Loader {
+        /**
+         * Returns the IDs of all available cameras.
+         *
+         * @return the IDs of all available cameras
+         * @throws Exception if the camera IDs cannot be queried
+         */
+        @NonNull
+        String[] loadCameraIds() throws Exception;
+
+        /**
+         * Returns a snapshot of the characteristics of a camera.
+         *
+         * @param cameraId the ID of the camera
+         * @return a snapshot of the characteristics of the camera
+         * @throws Exception if the characteristics cannot be queried
+         */
+        @NonNull
+        CameraCharacteristicsSnapshot load(@NonNull String cameraId) throws Exception;
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param loader the loader that queries the camera service
+     */
+    public CameraCharacteristicsCache(@NonNull Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Returns the IDs of all available cameras, loading them on first use.
+     *
+     * @return the IDs of all available cameras, empty if they cannot be queried
+     */
+    @NonNull
+    public List<String> getCameraIds() {
+        List<String> ids = cameraIds;
+        if (ids != null) {
+            hits.incrementAndGet();
+            return ids;
+        }
+
+        try {
+            loads.incrementAndGet();
+            ids = Collections.unmodifiableList(Arrays.asList(loader.loadCameraIds()));
+            cameraIds = ids;
+            return ids;
+        } catch (Exception e) {
+            logger.error("Error loading camera IDs.", e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Returns the characteristics of a camera, loading them on first use.
+     *
+     * @param cameraId the ID of the camera
+     * @return the characteristics of the camera or {@code null} if they cannot be loaded
+     */
+    @Nullable
+    public CameraCharacteristicsSnapshot get(@NonNull String cameraId) {
+        CameraCharacteristicsSnapshot snapshot = snapshots.get(cameraId);
+        if (snapshot != null) {
+            hits.incrementAndGet();
+            return snapshot;
+        }
+
+        try {
+            logger.debug("Loading characteristics of camera {}", cameraId);
+            loads.incrementAndGet();
+            snapshot = loader.load(cameraId);
+            snapshots.put(cameraId, snapshot);
+            logger.debug("Loading characteristics of camera {} ... done.", cameraId);
+            return snapshot;
+        } catch (Exception e) {
+            logger.error("Error loading characteristics of camera {}", cameraId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether a camera is part of the cached camera ID list. Does not load the list.
+     *
+     * @param cameraId the ID of the camera
+     * @return {@code true} if the camera ID list is cached and contains the camera
+     */
+    public boolean isKnownCamera(@NonNull String cameraId) {
+        List<String> ids = cameraIds;
+        return (ids != null) && ids.contains(cameraId);
+    }
+
+    /**
+     * Drops the cached characteristics of a camera and the camera ID list, e.g. because the
+     * camera has been connected or disconnected.
+     *
+     * @param cameraId the ID of the camera
+     */
+    public void invalidate(@NonNull String cameraId) {
+        logger.debug("Invalidating characteristics of camera {}", cameraId);
+        snapshots.remove(cameraId);
+        cameraIds = null;
+    }
+
+    /**
+     * Drops the camera ID list, but keeps the cached characteristics, e.g. because a camera may
+     * have been disconnected.
+     */
+    public void invalidateCameraIds() {
+        logger.debug("Invalidating camera IDs.");
+        cameraIds = null;
+    }
+
+    /**
+     * Drops all cached characteristics and the camera ID list.
+     */
+    public void invalidateAll() {
+        logger.debug("Invalidating all camera characteristics.");
+        snapshots.clear();
+        cameraIds = null;
+    }
+
+    /**
+     * Returns the number of requests served from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of queries to the camera service.
+     *
+     * @return the number of loads
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+}
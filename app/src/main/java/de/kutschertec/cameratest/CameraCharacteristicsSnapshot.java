@@ -0,0 +1,298 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the camera characteristics that are needed to configure a capture
+ * session. Unlike {@code CameraCharacteristics} it is a plain Java value object, so it can be
+ * cached and faked in tests.
+ */
+public final class CameraCharacteristicsSnapshot {
+    private final String cameraId;
+    private final int hardwareLevel;
+    private final List<OutputSize> jpegOutputSizes;
+    private final List<OutputSize> previewOutputSizes;
+    private final List<OutputSize> yuvOutputSizes;
+    private final List<FpsRange> fpsRanges;
+    private final int sensorOrientation;
+    private final int timestampSource;
+    private final int activeArrayWidth;
+    private final int activeArrayHeight;
+    private final float maxDigitalZoom;
+
+    /**
+     * The size of an output stream.
+     */
+    public static final class OutputSize {
+        private final int width;
+        private final int height;
+
+        /**
+         * Create a new instance.
+         *
+         * @param width  the width in pixels
+         * @param height the height in pixels
+         */
+        public OutputSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Returns the width of the output.
+         *
+         * @return the width in pixels
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Returns the height of the output.
+         *
+         * @return the height in pixels
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof OutputSize)) {
+                return false;
+            }
+            OutputSize other = (OutputSize) o;
+            return (width == other.width) && (height == other.height);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * width + height;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height;
+        }
+    }
+
+    /**
+     * A target FPS range of the auto exposure.
+     */
+    public static final class FpsRange {
+        private final int lower;
+        private final int upper;
+
+        /**
+         * Create a new instance.
+         *
+         * @param lower the lower bound in frames per second
+         * @param upper the upper bound in frames per second
+         */
+        public FpsRange(int lower, int upper) {
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        /**
+         * Returns the lower bound of the range.
+         *
+         * @return the lower bound in frames per second
+         */
+        public int getLower() {
+            return lower;
+        }
+
+        /**
+         * Returns the upper bound of the range.
+         *
+         * @return the upper bound in frames per second
+         */
+        public int getUpper() {
+            return upper;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + lower + ":" + upper + "]";
+        }
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param cameraId           the ID of the camera
+     * @param hardwareLevel      the supported hardware level
+     * @param jpegOutputSizes    the output sizes of the JPEG format
+     * @param previewOutputSizes the output sizes for a {@code SurfaceTexture}
+     * @param yuvOutputSizes     the output sizes of the YUV_420_888 format
+     * @param fpsRanges          the available target FPS ranges of the auto exposure
+     * @param sensorOrientation  the clockwise rotation of the sensor in degrees
+     * @param timestampSource    the time base of the sensor timestamps
+     * @param activeArrayWidth   the width of the active pixel array
+     * @param activeArrayHeight  the height of the active pixel array
+     * @param maxDigitalZoom     the maximum digital zoom factor
+     */
+    public CameraCharacteristicsSnapshot(@NonNull String cameraId, int hardwareLevel,
+                                         @NonNull List<OutputSize> jpegOutputSizes,
+                                         @NonNull List<OutputSize> previewOutputSizes,
+                                         @NonNull List<OutputSize> yuvOutputSizes,
+                                         @NonNull List<FpsRange> fpsRanges, int sensorOrientation,
+                                         int timestampSource, int activeArrayWidth,
+                                         int activeArrayHeight, float maxDigitalZoom) {
+        this.cameraId = cameraId;
+        this.hardwareLevel = hardwareLevel;
+        this.jpegOutputSizes = Collections.unmodifiableList(new ArrayList<>(jpegOutputSizes));
+        this.previewOutputSizes = Collections.unmodifiableList(new ArrayList<>(previewOutputSizes));
+        this.yuvOutputSizes = Collections.unmodifiableList(new ArrayList<>(yuvOutputSizes));
+        this.fpsRanges = Collections.unmodifiableList(new ArrayList<>(fpsRanges));
+        this.sensorOrientation = sensorOrientation;
+        this.timestampSource = timestampSource;
+        this.activeArrayWidth = activeArrayWidth;
+        this.activeArrayHeight = activeArrayHeight;
+        this.maxDigitalZoom = maxDigitalZoom;
+    }
+
+    /**
+     * Returns the ID of the camera.
+     *
+     * @return the ID of the camera
+     */
+    @NonNull
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    /**
+     * Returns the hardware level the camera supports.
+     *
+     * @return the supported hardware level
+     */
+    public int getHardwareLevel() {
+        return hardwareLevel;
+    }
+
+    /**
+     * Returns the output sizes of the JPEG format.
+     *
+     * @return the JPEG output sizes
+     */
+    @NonNull
+    public List<OutputSize> getJpegOutputSizes() {
+        return jpegOutputSizes;
+    }
+
+    /**
+     * Returns the output sizes for a {@code SurfaceTexture}.
+     *
+     * @return the preview output sizes
+     */
+    @NonNull
+    public List<OutputSize> getPreviewOutputSizes() {
+        return previewOutputSizes;
+    }
+
+    /**
+     * Returns the output sizes of the YUV_420_888 format.
+     *
+     * @return the YUV output sizes
+     */
+    @NonNull
+    public List<OutputSize> getYuvOutputSizes() {
+        return yuvOutputSizes;
+    }
+
+    /**
+     * Chooses the smallest output size that covers the requested size, or the largest one if
+     * none is large enough.
+     *
+     * @param sizes  the available output sizes
+     * @param width  the requested width
+     * @param height the requested height
+     * @return the chosen output size, or {@code null} if there are no output sizes
+     */
+    @Nullable
+    public static OutputSize chooseOutputSize(@NonNull List<OutputSize> sizes, int width, int height) {
+        OutputSize smallestCovering = null;
+        OutputSize largest = null;
+        for (OutputSize size : sizes) {
+            long area = (long) size.getWidth() * size.getHeight();
+            if ((size.getWidth() >= width) && (size.getHeight() >= height)
+                    && ((smallestCovering == null) || (area < (long) smallestCovering.getWidth() * smallestCovering.getHeight()))) {
+                smallestCovering = size;
+            }
+            if ((largest == null) || (area > (long) largest.getWidth() * largest.getHeight())) {
+                largest = size;
+            }
+        }
+        return (smallestCovering != null) ? smallestCovering : largest;
+    }
+
+    /**
+     * Returns the available target FPS ranges of the auto exposure.
+     *
+     * @return the available FPS ranges
+     */
+    @NonNull
+    public List<FpsRange> getFpsRanges() {
+        return fpsRanges;
+    }
+
+    /**
+     * Returns the clockwise rotation of the sensor.
+     *
+     * @return the sensor orientation in degrees
+     */
+    public int getSensorOrientation() {
+        return sensorOrientation;
+    }
+
+    /**
+     * Returns the time base of the sensor timestamps.
+     *
+     * @return the timestamp source
+     */
+    public int getTimestampSource() {
+        return timestampSource;
+    }
+
+    /**
+     * Returns the width of the active pixel array.
+     *
+     * @return the active array width in pixels
+     */
+    public int getActiveArrayWidth() {
+        return activeArrayWidth;
+    }
+
+    /**
+     * Returns the height of the active pixel array.
+     *
+     * @return the active array height in pixels
+     */
+    public int getActiveArrayHeight() {
+        return activeArrayHeight;
+    }
+
+    /**
+     * Returns the maximum digital zoom factor.
+     *
+     * @return the maximum digital zoom factor
+     */
+    public float getMaxDigitalZoom() {
+        return maxDigitalZoom;
+    }
+
+    @Override
+    public String toString() {
+        return "CameraCharacteristicsSnapshot[cameraId=" + cameraId + ";hardwareLevel=" + hardwareLevel
+                + ";jpegOutputSizes=" + jpegOutputSizes + ";fpsRanges=" + fpsRanges
+                + ";sensorOrientation=" + sensorOrientation + ";activeArray=" + activeArrayWidth + "x"
+                + activeArrayHeight + ";maxDigitalZoom=" + maxDigitalZoom + "]";
+    }
+}
@@ -2,6 +2,7 @@ package de.kutschertec.cameratest;
 
 import android.arch.lifecycle.DefaultLifecycleObserver;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Size;
 
 import java.nio.ByteBuffer;
@@ -43,6 +44,101 @@ public interface CameraController extends DefaultLifecycleObserver {
      */
     void setJpegQuality(byte jpegQuality);
 
+    /**
+     * Sets how the JPEG images are taken from the camera: the depth of the image reader and
+     * whether only the latest or every image is processed. A running camera is restarted on its
+     * background thread, this method does not wait for it. Frames that are lost either way are
+     * counted by {@link FrameStats#getMissedFrames()}.
+     *
+     * @param acquisition the image acquisition
+     */
+    void setImageAcquisition(@NonNull ImageAcquisition acquisition);
+
+    /**
+     * Returns how the JPEG images are taken from the camera.
+     *
+     * @return the image acquisition
+     */
+    @NonNull
+    ImageAcquisition getImageAcquisition();
+
+    /**
+     * Sets the listener of an additional uncompressed YUV_420_888 stream for image analysis, so
+     * that analysis consumers do not have to decode JPEG frames. The stream is captured at its
+     * own resolution, the smallest supported size that covers the requested one. Its frames are
+     * delivered on a separate thread, latest frame only. Changing the listener restarts the
+     * camera on its background thread.
+     *
+     * @param listener   the listener of the YUV frames, or {@code null} to disable the stream
+     * @param resolution the requested resolution of the YUV frames
+     */
+    void setYuvFrameListener(@Nullable YuvFrameListener listener, @Nullable Size resolution);
+
+    /**
+     * Sets the levels of the frame pyramid, downscaled I420 copies of every analysis frame for
+     * consumers that do not need the full resolution. The levels are scaled once per frame from
+     * the YUV stream, at the resolution of {@link #setYuvFrameListener(YuvFrameListener, Size)}
+     * or else at the camera resolution. An empty list disables the pyramid.
+     *
+     * @param levels the sizes of the levels
+     */
+    void setPyramidLevels(@NonNull List<PyramidLevel> levels);
+
+    /**
+     * Enables the change detection, which tags every frame with its similarity to the last change
+     * of the scene, so that subscribers with {@link DeliveryPolicy#onlyOnChange()} skip
+     * near-identical frames. It analyzes the YUV stream. While it is disabled, every frame counts
+     * as changed.
+     *
+     * @param enabled {@code true} to enable the change detection
+     */
+    void setChangeDetection(boolean enabled);
+
+    /**
+     * Returns the change detector, which holds the threshold and the counters of the change
+     * detection.
+     *
+     * @return the change detector
+     */
+    @NonNull
+    ChangeDetector getChangeDetector();
+
+    /**
+     * Enables the motion analysis, which tags every frame with the bounding boxes of the regions
+     * that have moved since the previous analysis frame. It analyzes the YUV stream in tiles on
+     * all available cores.
+     *
+     * @param enabled {@code true} to enable the motion analysis
+     */
+    void setMotionAnalysis(boolean enabled);
+
+    /**
+     * Returns the motion analyzer, which holds the thresholds and the counters of the motion
+     * analysis.
+     *
+     * @return the motion analyzer
+     */
+    @NonNull
+    MotionAnalyzer getMotionAnalyzer();
+
+    /**
+     * Adds a software JPEG output with its own quality or target size, encoded from the YUV
+     * stream on a pool of worker threads. Unlike {@link #setJpegQuality(byte)}, this does not
+     * affect the camera output or other consumers.
+     *
+     * @param settings the quality or target size of the output
+     * @return the output, which provides the latest file and the encode times
+     */
+    @NonNull
+    JpegEncodeStage.Output addJpegOutput(@NonNull JpegSettings settings);
+
+    /**
+     * Removes a software JPEG output.
+     *
+     * @param output an output returned by {@link #addJpegOutput(JpegSettings)}
+     */
+    void removeJpegOutput(@NonNull JpegEncodeStage.Output output);
+
     /**
      * Sets the rotation of the device.
      *
@@ -51,14 +147,53 @@ public interface CameraController extends DefaultLifecycleObserver {
     void setDeviceRotation(int deviceRotation);
 
     /**
-     * Returns a {@link ByteBuffer} that contains a copy of the current image buffer. The {@link
-     * ByteBuffer} is flipped and ready for reading.
+     * Returns a read-only {@link ByteBuffer} that contains the latest camera image. The {@link
+     * ByteBuffer} is flipped and ready for reading. Its content stays valid until the next call of
+     * this method, consumers that need the frame for longer should use {@link
+     * #acquireLatestFrame()} instead.
      *
      * @return a ByteBuffer that contains the current camera image
      */
     @NonNull
     ByteBuffer getImageBuffer();
 
+    /**
+     * Returns the metadata of the image returned by the last call of {@link #getImageBuffer()}:
+     * its size, restart interval and EXIF orientation from the JPEG header, its sensor timestamp
+     * and the JPEG orientation it has been captured with. Like the buffer, it stays valid until
+     * the next call of {@link #getImageBuffer()}.
+     *
+     * @return the metadata of the image or {@code null} if no image has been returned yet
+     */
+    @Nullable
+    FrameMetadata getImageMetadata();
+
+    /**
+     * Returns a read-only, zero-copy lease on the latest camera frame. The frame stays valid until
+     * the lease is closed, every lease must be closed by the caller.
+     *
+     * @return a lease on the latest camera frame or {@code null} if no frame is available yet
+     */
+    @Nullable
+    FrameLease acquireLatestFrame();
+
+    /**
+     * Returns the pool of direct buffers used for the camera frames. Consumers that need buffers
+     * of frame size should take them from this pool as well.
+     *
+     * @return the pool of direct buffers used for the camera frames
+     */
+    @NonNull
+    BufferPool getBufferPool();
+
+    /**
+     * Returns the {@link FrameBus} that pushes every new camera frame to its subscribers.
+     *
+     * @return the bus that pushes every new camera frame to its subscribers
+     */
+    @NonNull
+    FrameBus getFrameBus();
+
     /**
      * Sets the {@link Runnable} that will be called when the camera has been initialized.
      *
@@ -88,6 +223,49 @@ public interface CameraController extends DefaultLifecycleObserver {
      */
     public float getMaxZoom();
 
+    /**
+     * Returns the time between the last change of camera settings and the first frame captured
+     * with the new settings. Torch, zoom, JPEG quality and rotation changes only update the
+     * repeating request, resolution changes and watchdog restarts rebuild the capture session.
+     *
+     * @return the last reconfiguration gap in nanoseconds or {@code -1} if nothing has been
+     * reconfigured yet
+     */
+    public long getLastReconfigurationGapNanos();
+
+    /**
+     * Returns the latency histograms, frame rate and drop counters of the frame path from the
+     * sensor to the consumers.
+     *
+     * @return the frame statistics
+     */
+    @NonNull
+    public FrameStats getFrameStats();
+
+    /**
+     * Returns the watchdog that detects stalled frame delivery and recovers from it.
+     *
+     * @return the frame watchdog
+     */
+    @NonNull
+    public FrameWatchdog getFrameWatchdog();
+
+    /**
+     * Returns the coordinator of the camera startup, which traces the time to the first frame.
+     *
+     * @return the startup coordinator
+     */
+    @NonNull
+    public StartupCoordinator getStartupCoordinator();
+
+    /**
+     * Returns the frame pyramid, which caches the downscaled levels of the latest frame.
+     *
+     * @return the frame pyramid
+     */
+    @NonNull
+    public FramePyramid getFramePyramid();
+
     /**
      * Sets whether the current camera picture should be updated or not.
      *
@@ -0,0 +1,88 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * IDs of the events that {@link Camera2Component} writes to the {@link EventLog}.
+ */
+public final class CameraEvents {
+    /**
+     * Opening the camera device has been requested. Fields: width, height of the camera resolution.
+     */
+    public static final int OPEN = 1;
+
+    /**
+     * The camera device has been opened.
+     */
+    public static final int DEVICE_OPENED = 2;
+
+    /**
+     * Creating a capture session has been requested.
+     */
+    public static final int SESSION_CREATE = 3;
+
+    /**
+     * The capture session has been configured.
+     */
+    public static final int SESSION_CONFIGURED = 4;
+
+    /**
+     * The first frame of a capture session has been published. Fields: sensor timestamp.
+     */
+    public static final int FIRST_FRAME = 5;
+
+    /**
+     * The capture session is rebuilt. Fields: width, height of the camera resolution.
+     */
+    public static final int RESTART = 6;
+
+    /**
+     * The watchdog has not seen a frame in time and performs a recovery action. Fields: ordinal of
+     * the {@link FrameWatchdog.Stage}.
+     */
+    public static final int WATCHDOG = 7;
+
+    /**
+     * The camera device is closed.
+     */
+    public static final int CLOSE = 8;
+
+    /**
+     * The camera device has been disconnected.
+     */
+    public static final int DISCONNECTED = 9;
+
+    /**
+     * The camera device reported an error. Fields: error code.
+     */
+    public static final int ERROR = 10;
+
+    /**
+     * Frames are delivered again after a watchdog recovery. Fields: ordinal of the
+     * {@link FrameWatchdog.Stage} that ended the stall.
+     */
+    public static final int RECOVERED = 11;
+
+    private static final String[] NAMES = {
+            "UNKNOWN", "OPEN", "DEVICE_OPENED", "SESSION_CREATE", "SESSION_CONFIGURED", "FIRST_FRAME",
+            "RESTART", "WATCHDOG", "CLOSE", "DISCONNECTED", "ERROR", "RECOVERED"
+    };
+
+    private CameraEvents() {
+        // hidden constructor
+    }
+
+    /**
+     * Returns the name of an event ID.
+     *
+     * @param eventId the event ID
+     * @return the name of the event, or the ID itself if it is unknown
+     */
+    @NonNull
+    public static String getName(int eventId) {
+        if ((eventId > 0) && (eventId < NAMES.length)) {
+            return NAMES[eventId];
+        }
+        return String.valueOf(eventId);
+    }
+}
@@ -0,0 +1,114 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Performs the recovery actions of a {@link FrameWatchdog} on a camera, adapted to the state the
+ * camera is in.
+ * <p>
+ * A stage is only performed if the camera can take it: while the device is being opened, nothing
+ * is done, because the open is answered by a state callback on the same thread that runs the
+ * recovery, and waiting for it would block that thread for good. Without a device, e.g. after it
+ * has been disconnected, every stage reopens it. Without a preview surface, the session is not
+ * rebuilt; it is created once the surface is ready.
+ */
+public class CameraRecovery implements FrameWatchdog.RecoveryHandler {
+    private final Logger logger = new Logger(this);
+
+    private final Camera camera;
+
+    private long skippedActions = 0;
+
+    /**
+     * The camera the recovery actions are performed on. All methods are called on the thread of
+     * the watchdog's {@link Scheduler}, which must also be the thread of the camera callbacks.
+     */
+    public interface Camera {
+        /**
+         * Returns whether a camera device is open.
+         *
+         * @return {@code true} if a camera device is open
+         */
+        boolean isDeviceOpen();
+
+        /**
+         * Returns whether the camera device is being opened and its state callback is pending.
+         *
+         * @return {@code true} if an open is in flight
+         */
+        boolean isOpening();
+
+        /**
+         * Returns whether the preview surface is ready.
+         *
+         * @return {@code true} if the preview surface is ready
+         */
+        boolean hasPreviewSurface();
+
+        /**
+         * Issues the repeating request again.
+         */
+        void reissueRequest();
+
+        /**
+         * Closes and rebuilds the capture session.
+         */
+        void rebuildSession();
+
+        /**
+         * Closes and reopens the camera device. Must not wait for the state callback.
+         */
+        void reopenDevice();
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param camera the camera to recover
+     */
+    public CameraRecovery(@NonNull Camera camera) {
+        this.camera = camera;
+    }
+
+    @Override
+    public void recover(@NonNull FrameWatchdog.Stage stage) {
+        if (camera.isOpening()) {
+            logger.debug("Camera is being opened, skipping recovery stage {}", stage);
+            skippedActions++;
+            return;
+        }
+        if (!camera.isDeviceOpen()) {
+            logger.debug("No camera device, reopening instead of {}", stage);
+            camera.reopenDevice();
+            return;
+        }
+
+        switch (stage) {
+            case REISSUE_REQUEST:
+                camera.reissueRequest();
+                break;
+            case REBUILD_SESSION:
+                if (!camera.hasPreviewSurface()) {
+                    // the startup coordinator creates the session once the surface is ready
+                    logger.debug("No preview surface, the session is created when it is ready.");
+                    skippedActions++;
+                    return;
+                }
+                camera.rebuildSession();
+                break;
+            case REOPEN_DEVICE:
+                camera.reopenDevice();
+                break;
+        }
+    }
+
+    /**
+     * Returns the number of recovery actions that have been skipped because the camera could not
+     * take them.
+     *
+     * @return the number of skipped actions
+     */
+    public long getSkippedActions() {
+        return skippedActions;
+    }
+}
@@ -9,6 +9,99 @@ public abstract class CameraTestConstants {
      */
     public static final String APPNAME = "CameraTest";
 
+    /**
+     * Whether the embedded MJPEG streaming server is started. Off by default, it is a debugging
+     * aid and streams without authentication.
+     */
+    public static final boolean MJPEG_ENABLED = false;
+
+    /**
+     * The port of the embedded MJPEG streaming server.
+     */
+    public static final int MJPEG_PORT = 8080;
+
+    /**
+     * Whether debug builds accept MJPEG clients from the network. The stream is not authenticated,
+     * so by default, and always in release builds, the server only listens on the loopback
+     * interface and is reached with {@code adb forward tcp:8080 tcp:8080}.
+     */
+    public static final boolean MJPEG_NETWORK_ACCESS = false;
+
+    /**
+     * Whether the camera frames are recorded to segment files in the app's internal storage. Off
+     * by default, a recording writes continuously and takes up to {@link #RECORDING_SIZE_BUDGET}
+     * bytes.
+     */
+    public static final boolean RECORDING_ENABLED = false;
+
+    /**
+     * The name of the directory that holds the recorded camera frames.
+     */
+    public static final String RECORDING_DIRECTORY = "recording";
+
+    /**
+     * The size of a single recording segment in bytes.
+     */
+    public static final int RECORDING_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The maximum size of all recording segments in bytes.
+     */
+    public static final long RECORDING_SIZE_BUDGET = 256L * 1024 * 1024;
+
+    /**
+     * The number of frames a zoom ramp over the full zoom range takes.
+     */
+    public static final int ZOOM_RAMP_FRAMES = 30;
+
+    /**
+     * The interval in milliseconds in which the frame statistics are logged.
+     */
+    public static final long FRAME_STATS_LOG_INTERVAL = 10000;
+
+    /**
+     * The number of log records that can be pending for the log drain thread.
+     */
+    public static final int LOG_BUFFER_CAPACITY = 1024;
+
+    /**
+     * The name of the structured event log file.
+     */
+    public static final String EVENT_LOG_FILE = "events.bin";
+
+    /**
+     * The number of records of the structured event log.
+     */
+    public static final int EVENT_LOG_CAPACITY = 65536;
+
+    /**
+     * The interval in milliseconds in which pooled buffers are trimmed and frame statistics are
+     * sampled.
+     */
+    public static final long HOUSEKEEPING_INTERVAL = 1000;
+
+    /**
+     * The number of worker threads of the software JPEG encoder.
+     */
+    public static final int JPEG_ENCODER_THREADS = 2;
+
+    /**
+     * The number of images of the JPEG image reader for latest-only acquisition.
+     */
+    public static final int JPEG_MAX_IMAGES = 2;
+
+    /**
+     * The number of images of the JPEG image reader while every frame is recorded, which buffers
+     * bursts of slow processing.
+     */
+    public static final int RECORDING_MAX_IMAGES = 6;
+
+    /**
+     * The number of frames queued for the recorder, enough to cover a segment change. Frames that
+     * arrive while the queue is full are not recorded.
+     */
+    public static final int RECORDING_QUEUE_CAPACITY = 32;
+
     private CameraTestConstants() {
         // hidden constructor
     }
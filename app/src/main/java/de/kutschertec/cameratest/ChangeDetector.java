@@ -0,0 +1,160 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Detects whether the scene has changed, so that consumers can skip near-identical frames.
+ * <p>
+ * The detector computes a {@link LumaSignature} of every analysis frame and compares it with the
+ * signature of the last frame that counted as a change, not with the previous frame, so a slow
+ * drift is detected as well. The frames of the frame pipeline are tagged with the similarity of
+ * the latest analysis; a change is reported on the next tagged frame only, so that only one
+ * frame of a change is delivered to subscribers with {@link DeliveryPolicy#onlyOnChange()}.
+ * Frames are tagged as changed while no analysis has been done, e.g. without a YUV stream.
+ */
+public class ChangeDetector implements YuvFrameListener {
+    /**
+     * The default similarity below which a frame counts as changed.
+     */
+    public static final float DEFAULT_THRESHOLD = 0.98f;
+
+    private final LumaSignature signature = new LumaSignature();
+    private final LumaSignature reference = new LumaSignature();
+    private final LatencyHistogram analysisTimes = new LatencyHistogram();
+
+    private volatile float threshold = DEFAULT_THRESHOLD;
+
+    private boolean hasReference = false;
+    private boolean pendingChange = false;
+    private float similarity = FrameMetadata.UNKNOWN_SIMILARITY;
+
+    private long analyzedFrames = 0;
+    private long changes = 0;
+    private long changedFrames = 0;
+    private long unchangedFrames = 0;
+
+    /**
+     * Sets the similarity below which a frame counts as changed.
+     *
+     * @param threshold the threshold from 0 (never changed) to 1 (every difference is a change)
+     */
+    public void setThreshold(float threshold) {
+        if ((threshold < 0) || (threshold > 1)) {
+            throw new IllegalArgumentException("Invalid threshold: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the similarity below which a frame counts as changed.
+     *
+     * @return the threshold from 0 (never changed) to 1 (every difference is a change)
+     */
+    public float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Forgets the reference frame, e.g. at the start of a capture session, so that the next
+     * analyzed frame counts as a change.
+     */
+    public synchronized void reset() {
+        hasReference = false;
+        pendingChange = false;
+        similarity = FrameMetadata.UNKNOWN_SIMILARITY;
+        analyzedFrames = 0;
+    }
+
+    @Override
+    public void onYuvFrame(@NonNull YuvFrame frame) {
+        long start = System.nanoTime();
+        YuvFrame.Plane luma = frame.getPlane(YuvFrame.Y);
+        // only the analysis thread writes the signature
+        signature.compute(luma.getBuffer(), 0, frame.getWidth(), frame.getHeight(), luma.getRowStride(), luma.getPixelStride());
+        analyze(signature);
+        analysisTimes.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Compares a signature with the reference.
+     *
+     * @param current the signature of the latest frame
+     * @return the similarity to the reference, {@link FrameMetadata#UNKNOWN_SIMILARITY} for the
+     * first frame
+     */
+    public synchronized float analyze(@NonNull LumaSignature current) {
+        float currentSimilarity = hasReference ? current.similarity(reference) : FrameMetadata.UNKNOWN_SIMILARITY;
+        if (!hasReference || (currentSimilarity < threshold)) {
+            reference.set(current);
+            hasReference = true;
+            pendingChange = true;
+            changes++;
+        }
+        similarity = currentSimilarity;
+        analyzedFrames++;
+        return currentSimilarity;
+    }
+
+    /**
+     * Tags the metadata of a frame with the result of the latest analysis.
+     *
+     * @param metadata the metadata of the frame
+     * @return {@code true} if the frame is tagged as changed
+     */
+    public synchronized boolean tag(@NonNull FrameMetadata metadata) {
+        boolean changed = (analyzedFrames == 0) || pendingChange;
+        pendingChange = false;
+        metadata.setChange(similarity, changed);
+        if (changed) {
+            changedFrames++;
+        } else {
+            unchangedFrames++;
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the times it took to analyze a frame.
+     *
+     * @return the analysis times in nanoseconds
+     */
+    @NonNull
+    public LatencyHistogram getAnalysisTimes() {
+        return analysisTimes;
+    }
+
+    /**
+     * Returns the number of detected changes of the scene.
+     *
+     * @return the number of changes
+     */
+    public synchronized long getChanges() {
+        return changes;
+    }
+
+    /**
+     * Returns the number of frames tagged as changed.
+     *
+     * @return the number of changed frames
+     */
+    public synchronized long getChangedFrames() {
+        return changedFrames;
+    }
+
+    /**
+     * Returns the number of frames tagged as unchanged, which subscribers with
+     * {@link DeliveryPolicy#onlyOnChange()} do not get.
+     *
+     * @return the number of unchanged frames
+     */
+    public synchronized long getUnchangedFrames() {
+        return unchangedFrames;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ChangeDetector[threshold=" + threshold + ";similarity=" + similarity + ";changes=" + changes
+                + ";changed=" + changedFrames + ";unchanged=" + unchangedFrames
+                + ";analysis=" + analysisTimes.getPercentile(99) / 1000 + "us]";
+    }
+}
@@ -0,0 +1,18 @@
+package de.kutschertec.cameratest;
+
+/**
+ * Source of monotonic time, replaceable in tests.
+ */
+public interface Clock {
+    /**
+     * The clock of {@link System#nanoTime()}.
+     */
+    Clock SYSTEM = System::nanoTime;
+
+    /**
+     * Returns the current time of this clock.
+     *
+     * @return the current time in nanoseconds
+     */
+    long nanoTime();
+}
@@ -0,0 +1,135 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Describes how a {@link FrameBus} delivers frames to a subscriber that cannot keep up with the
+ * camera.
+ */
+public final class DeliveryPolicy {
+    private final int stride;
+    private final int queueCapacity;
+    private final boolean onlyOnChange;
+    private final boolean dropNewest;
+
+    private DeliveryPolicy(int stride, int queueCapacity) {
+        this(stride, queueCapacity, false, false);
+    }
+
+    private DeliveryPolicy(int stride, int queueCapacity, boolean onlyOnChange, boolean dropNewest) {
+        if (stride < 1) {
+            throw new IllegalArgumentException("Stride must be at least 1: " + stride);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1: " + queueCapacity);
+        }
+        this.stride = stride;
+        this.queueCapacity = queueCapacity;
+        this.onlyOnChange = onlyOnChange;
+        this.dropNewest = dropNewest;
+    }
+
+    /**
+     * Returns a policy that only keeps the latest frame. Frames that arrive while the subscriber
+     * is busy replace the pending frame.
+     *
+     * @return a policy that only keeps the latest frame
+     */
+    @NonNull
+    public static DeliveryPolicy latestOnly() {
+        return new DeliveryPolicy(1, 1);
+    }
+
+    /**
+     * Returns a policy that queues up to {@code capacity} frames and drops the oldest queued frame
+     * when the queue is full.
+     *
+     * @param capacity the maximum number of queued frames
+     * @return a policy with a bounded queue that drops the oldest frame
+     */
+    @NonNull
+    public static DeliveryPolicy dropOldest(int capacity) {
+        return new DeliveryPolicy(1, capacity);
+    }
+
+    /**
+     * Returns a policy that only offers every {@code n}th frame to the subscriber and otherwise
+     * behaves like {@link #latestOnly()}.
+     *
+     * @param n the distance between two offered frames
+     * @return a policy that offers every {@code n}th frame
+     */
+    @NonNull
+    public static DeliveryPolicy everyNth(int n) {
+        return new DeliveryPolicy(n, 1);
+    }
+
+    /**
+     * Returns a policy that only offers frames that show a change of the scene, as tagged by the
+     * {@link ChangeDetector}, and otherwise behaves like {@link #latestOnly()}.
+     *
+     * @return a policy that only offers changed frames
+     */
+    @NonNull
+    public static DeliveryPolicy onlyOnChange() {
+        return new DeliveryPolicy(1, 1, true, false);
+    }
+
+    /**
+     * Returns a policy that queues up to {@code capacity} frames and drops the new frame when the
+     * queue is full, e.g. for a recorder, which prefers a single gap over a queue that keeps
+     * skipping ahead.
+     * <p>
+     * This policy loses frames: publishing never waits for the subscriber, so every frame that
+     * arrives while the queue is full is dropped and counted as overflowed.
+     *
+     * @param capacity the maximum number of queued frames
+     * @return a policy with a bounded queue that drops the newest frame
+     */
+    @NonNull
+    public static DeliveryPolicy dropNewest(int capacity) {
+        return new DeliveryPolicy(1, capacity, false, true);
+    }
+
+    /**
+     * Returns whether the new frame is dropped instead of the oldest queued frame when the queue
+     * is full.
+     *
+     * @return {@code true} if the newest frame is dropped
+     */
+    public boolean isDropNewest() {
+        return dropNewest;
+    }
+
+    /**
+     * Returns whether only frames that show a change of the scene are offered to the subscriber.
+     *
+     * @return {@code true} if unchanged frames are suppressed
+     */
+    public boolean isOnlyOnChange() {
+        return onlyOnChange;
+    }
+
+    /**
+     * Returns the distance between two frames offered to the subscriber.
+     *
+     * @return the distance between two offered frames
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Returns the maximum number of frames queued for the subscriber.
+     *
+     * @return the maximum number of queued frames
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return "DeliveryPolicy[stride=" + stride + ";queueCapacity=" + queueCapacity + ";onlyOnChange=" + onlyOnChange + ";dropNewest=" + dropNewest + "]";
+    }
+}
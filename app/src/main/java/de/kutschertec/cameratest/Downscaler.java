@@ -0,0 +1,149 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Downscales a single 8 bit image plane by area averaging in fixed-point arithmetic.
+ * <p>
+ * Every destination pixel is the mean of the source pixels it covers. The span boundaries and the
+ * 8.24 fixed-point reciprocals of all possible span areas are computed once in
+ * {@link #configure(int, int, int, int)}, so {@link #scale(ByteBuffer, int, int, int, byte[], int)}
+ * does not allocate and does not divide. A source row is bulk copied into a line buffer and summed
+ * into per-column integer accumulators, so the inner loops run over plain arrays without branches.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class Downscaler {
+    /**
+     * Enough fraction bits that the rounding error of a reciprocal stays below one level even for
+     * the span areas of a thumbnail of a full sensor image.
+     */
+    private static final int FRACTION_BITS = 24;
+    private static final int ROUNDING = 1 << (FRACTION_BITS - 1);
+
+    private int sourceWidth = 0;
+    private int sourceHeight = 0;
+    private int destinationWidth = 0;
+    private int destinationHeight = 0;
+
+    private int[] columnStart = new int[1];
+    private int[] rowStart = new int[1];
+    private int[] reciprocals = new int[1];
+    private int[] sums = new int[0];
+    private byte[] line = new byte[0];
+
+    /**
+     * Prepares the scaling of a plane. Does nothing if the sizes have not changed.
+     *
+     * @param sourceWidth       the width of the source plane
+     * @param sourceHeight      the height of the source plane
+     * @param destinationWidth  the width of the destination plane, at most the source width
+     * @param destinationHeight the height of the destination plane, at most the source height
+     */
+    public void configure(int sourceWidth, int sourceHeight, int destinationWidth, int destinationHeight) {
+        if ((sourceWidth == this.sourceWidth) && (sourceHeight == this.sourceHeight)
+                && (destinationWidth == this.destinationWidth) && (destinationHeight == this.destinationHeight)) {
+            return;
+        }
+        if ((destinationWidth <= 0) || (destinationHeight <= 0) || (destinationWidth > sourceWidth) || (destinationHeight > sourceHeight)) {
+            throw new IllegalArgumentException("Cannot scale " + sourceWidth + "x" + sourceHeight + " to " + destinationWidth + "x" + destinationHeight);
+        }
+
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.destinationWidth = destinationWidth;
+        this.destinationHeight = destinationHeight;
+
+        columnStart = spans(sourceWidth, destinationWidth);
+        rowStart = spans(sourceHeight, destinationHeight);
+        sums = new int[destinationWidth];
+
+        int maxArea = ceilDiv(sourceWidth, destinationWidth) * ceilDiv(sourceHeight, destinationHeight);
+        reciprocals = new int[maxArea + 1];
+        for (int area = 1; area <= maxArea; area++) {
+            reciprocals[area] = ((1 << FRACTION_BITS) + area / 2) / area;
+        }
+    }
+
+    /**
+     * Scales a plane. The position of the source buffer is left unchanged.
+     *
+     * @param source            the source plane
+     * @param sourceOffset      the index of the first source pixel
+     * @param rowStride         the distance between two source rows in bytes
+     * @param pixelStride       the distance between two source pixels of a row in bytes
+     * @param destination       receives the scaled plane, without padding
+     * @param destinationOffset the index of the first destination pixel
+     */
+    public void scale(@NonNull ByteBuffer source, int sourceOffset, int rowStride, int pixelStride, @NonNull byte[] destination, int destinationOffset) {
+        if (sourceWidth == 0) {
+            throw new IllegalStateException("Downscaler has not been configured.");
+        }
+
+        // the last row of a camera plane usually has no padding
+        int lineLength = (sourceWidth - 1) * pixelStride + 1;
+        if (line.length < lineLength) {
+            line = new byte[lineLength];
+        }
+
+        int position = source.position();
+        int out = destinationOffset;
+        for (int dy = 0; dy < destinationHeight; dy++) {
+            Arrays.fill(sums, 0);
+            int firstRow = rowStart[dy];
+            int lastRow = rowStart[dy + 1];
+            for (int sy = firstRow; sy < lastRow; sy++) {
+                source.position(sourceOffset + sy * rowStride);
+                source.get(line, 0, lineLength);
+                if (pixelStride == 1) {
+                    accumulate(line);
+                } else {
+                    accumulate(line, pixelStride);
+                }
+            }
+
+            int rows = lastRow - firstRow;
+            for (int dx = 0; dx < destinationWidth; dx++) {
+                int area = (columnStart[dx + 1] - columnStart[dx]) * rows;
+                // a reciprocal rounded up may still push a saturated span just past 255
+                destination[out++] = (byte) Math.min(255, (sums[dx] * (long) reciprocals[area] + ROUNDING) >>> FRACTION_BITS);
+            }
+        }
+        source.position(position);
+    }
+
+    private void accumulate(byte[] line) {
+        for (int dx = 0; dx < destinationWidth; dx++) {
+            int sum = 0;
+            for (int sx = columnStart[dx], end = columnStart[dx + 1]; sx < end; sx++) {
+                sum += line[sx] & 0xFF;
+            }
+            sums[dx] += sum;
+        }
+    }
+
+    private void accumulate(byte[] line, int pixelStride) {
+        for (int dx = 0; dx < destinationWidth; dx++) {
+            int sum = 0;
+            for (int sx = columnStart[dx], end = columnStart[dx + 1]; sx < end; sx++) {
+                sum += line[sx * pixelStride] & 0xFF;
+            }
+            sums[dx] += sum;
+        }
+    }
+
+    private static int[] spans(int source, int destination) {
+        int[] start = new int[destination + 1];
+        for (int i = 0; i <= destination; i++) {
+            start[i] = (int) ((long) i * source / destination);
+        }
+        return start;
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+}
@@ -0,0 +1,191 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary log of structured events in a memory-mapped file.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes, followed by a ring of fixed-size
+ * records. The newest records overwrite the oldest ones once the ring is full. All values are
+ * little endian. A record holds:
+ * <pre>
+ *  0  long  sequence number + 1, written last, 0 while the record is incomplete
+ *  8  long  System.nanoTime() of the event
+ * 16  long  ID of the logging thread
+ * 24  int   event ID
+ * 28  int   number of used fields
+ * 32  long  field 0 .. field 3
+ * </pre>
+ * Writing a record takes one atomic increment and a few absolute puts into the mapping, it does
+ * not allocate and does not lock. Records can be read with {@link EventLogDecoder}.
+ */
+public class EventLog implements Closeable {
+    /**
+     * Magic number at the start of the file, "EVLG".
+     */
+    public static final int MAGIC = 0x45564C47;
+
+    /**
+     * The version of the file layout.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the file header in bytes.
+     */
+    public static final int HEADER_SIZE = 64;
+
+    /**
+     * The size of a record in bytes.
+     */
+    public static final int RECORD_SIZE = 64;
+
+    /**
+     * The maximum number of numeric fields of a record.
+     */
+    public static final int MAX_FIELDS = 4;
+
+    static final int SEQUENCE_OFFSET = 0;
+    static final int TIMESTAMP_OFFSET = 8;
+    static final int THREAD_OFFSET = 16;
+    static final int EVENT_OFFSET = 24;
+    static final int FIELD_COUNT_OFFSET = 28;
+    static final int FIELDS_OFFSET = 32;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final AtomicLong sequence = new AtomicLong(0);
+
+    /**
+     * Create a new instance, replacing an existing file.
+     *
+     * @param file     the log file
+     * @param capacity the number of records of the ring
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public EventLog(@NonNull File file, int capacity) throws IOException {
+        if ((capacity <= 0) || (capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE)) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        this.file = new RandomAccessFile(file, "rw");
+        try {
+            // truncating first zeroes the records of a previous run
+            this.file.setLength(0);
+            this.file.setLength(size);
+            this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, RECORD_SIZE);
+        buffer.putInt(12, MAX_FIELDS);
+        buffer.putInt(16, capacity);
+    }
+
+    /**
+     * Returns the number of records of the ring.
+     *
+     * @return the number of records of the ring
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of records written so far, including overwritten ones.
+     *
+     * @return the number of records written so far
+     */
+    public long getWrittenRecords() {
+        return sequence.get();
+    }
+
+    /**
+     * Writes an event without fields.
+     *
+     * @param eventId the ID of the event
+     */
+    public void log(int eventId) {
+        write(eventId, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Writes an event with one field.
+     *
+     * @param eventId the ID of the event
+     * @param a       the first field
+     */
+    public void log(int eventId, long a) {
+        write(eventId, 1, a, 0, 0, 0);
+    }
+
+    /**
+     * Writes an event with two fields.
+     *
+     * @param eventId the ID of the event
+     * @param a       the first field
+     * @param b       the second field
+     */
+    public void log(int eventId, long a, long b) {
+        write(eventId, 2, a, b, 0, 0);
+    }
+
+    /**
+     * Writes an event with four fields.
+     *
+     * @param eventId the ID of the event
+     * @param a       the first field
+     * @param b       the second field
+     * @param c       the third field
+     * @param d       the fourth field
+     */
+    public void log(int eventId, long a, long b, long c, long d) {
+        write(eventId, 4, a, b, c, d);
+    }
+
+    /**
+     * Flushes the mapping to the file and closes it. Events logged afterwards are lost.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private void write(int eventId, int fieldCount, long a, long b, long c, long d) {
+        long timestamp = System.nanoTime();
+        long number = sequence.getAndIncrement();
+        int offset = HEADER_SIZE + (int) (number % capacity) * RECORD_SIZE;
+
+        // invalidate the record first, it may still hold an event of the previous lap
+        buffer.putLong(offset + SEQUENCE_OFFSET, 0);
+        buffer.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+        buffer.putLong(offset + THREAD_OFFSET, Thread.currentThread().getId());
+        buffer.putInt(offset + EVENT_OFFSET, eventId);
+        buffer.putInt(offset + FIELD_COUNT_OFFSET, fieldCount);
+        buffer.putLong(offset + FIELDS_OFFSET, a);
+        buffer.putLong(offset + FIELDS_OFFSET + 8, b);
+        buffer.putLong(offset + FIELDS_OFFSET + 16, c);
+        buffer.putLong(offset + FIELDS_OFFSET + 24, d);
+        buffer.putLong(offset + SEQUENCE_OFFSET, number + 1);
+    }
+}
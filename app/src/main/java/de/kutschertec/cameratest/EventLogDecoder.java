@@ -0,0 +1,177 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the events of a file written by {@link EventLog}, e.g. after pulling it from a device.
+ */
+public class EventLogDecoder {
+
+    /**
+     * A decoded event.
+     */
+    public static final class Event {
+        private final long sequence;
+        private final long timestamp;
+        private final long threadId;
+        private final int eventId;
+        private final long[] fields;
+
+        Event(long sequence, long timestamp, long threadId, int eventId, @NonNull long[] fields) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.threadId = threadId;
+            this.eventId = eventId;
+            this.fields = fields;
+        }
+
+        /**
+         * Returns the sequence number of the event in its log.
+         *
+         * @return the sequence number
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Returns the {@link System#nanoTime()} at which the event has been logged.
+         *
+         * @return the timestamp in nanoseconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns the ID of the thread that logged the event.
+         *
+         * @return the thread ID
+         */
+        public long getThreadId() {
+            return threadId;
+        }
+
+        /**
+         * Returns the ID of the event.
+         *
+         * @return the event ID
+         */
+        public int getEventId() {
+            return eventId;
+        }
+
+        /**
+         * Returns the number of fields of the event.
+         *
+         * @return the number of fields
+         */
+        public int getFieldCount() {
+            return fields.length;
+        }
+
+        /**
+         * Returns a field of the event.
+         *
+         * @param index the index of the field
+         * @return the value of the field
+         */
+        public long getField(int index) {
+            return fields[index];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder event = new StringBuilder();
+            event.append(sequence).append(' ').append(timestamp).append(" [").append(threadId).append("] ");
+            event.append(CameraEvents.getName(eventId));
+            for (long field : fields) {
+                event.append(' ').append(field);
+            }
+            return event.toString();
+        }
+    }
+
+    private EventLogDecoder() {
+        // hidden constructor
+    }
+
+    /**
+     * Reads all complete events of an event log file, oldest first.
+     *
+     * @param file the event log file
+     * @return the events of the file
+     * @throws IOException if the file cannot be read or is not an event log
+     */
+    @NonNull
+    public static List<Event> decode(@NonNull File file) throws IOException {
+        byte[] content;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() > Integer.MAX_VALUE) {
+                throw new IOException("Event log too large: " + file);
+            }
+            content = new byte[(int) raf.length()];
+            raf.readFully(content);
+        }
+        return decode(ByteBuffer.wrap(content));
+    }
+
+    /**
+     * Reads all complete events of the content of an event log file, oldest first.
+     *
+     * @param content the content of an event log file
+     * @return the events of the content
+     * @throws IOException if the content is not an event log
+     */
+    @NonNull
+    public static List<Event> decode(@NonNull ByteBuffer content) throws IOException {
+        ByteBuffer buffer = content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if ((buffer.remaining() < EventLog.HEADER_SIZE) || (buffer.getInt(0) != EventLog.MAGIC)) {
+            throw new IOException("Not an event log.");
+        }
+        if (buffer.getInt(4) != EventLog.VERSION) {
+            throw new IOException("Unsupported event log version: " + buffer.getInt(4));
+        }
+
+        int recordSize = buffer.getInt(8);
+        int maxFields = buffer.getInt(12);
+        int capacity = buffer.getInt(16);
+        if ((recordSize < EventLog.FIELDS_OFFSET + 8 * maxFields) || (capacity < 0)) {
+            throw new IOException("Corrupt event log header.");
+        }
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < capacity; i++) {
+            int offset = EventLog.HEADER_SIZE + i * recordSize;
+            if (offset + recordSize > buffer.limit()) {
+                break;
+            }
+
+            long sequence = buffer.getLong(offset + EventLog.SEQUENCE_OFFSET);
+            int fieldCount = buffer.getInt(offset + EventLog.FIELD_COUNT_OFFSET);
+            if ((sequence == 0) || (fieldCount < 0) || (fieldCount > maxFields)) {
+                // never written or incomplete
+                continue;
+            }
+
+            long[] fields = new long[fieldCount];
+            for (int f = 0; f < fieldCount; f++) {
+                fields[f] = buffer.getLong(offset + EventLog.FIELDS_OFFSET + 8 * f);
+            }
+            events.add(new Event(sequence - 1, buffer.getLong(offset + EventLog.TIMESTAMP_OFFSET),
+                    buffer.getLong(offset + EventLog.THREAD_OFFSET), buffer.getInt(offset + EventLog.EVENT_OFFSET), fields));
+        }
+
+        Collections.sort(events, (a, b) -> Long.compare(a.sequence, b.sequence));
+        return events;
+    }
+}
@@ -0,0 +1,114 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the durations of the camera lifecycle phases from the events of an {@link EventLog}.
+ * <p>
+ * A phase starts with one event and ends with the next occurrence of another event. Run it on a
+ * pulled event log with {@code java de.kutschertec.cameratest.EventLogSummary events.bin}.
+ */
+public class EventLogSummary {
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+
+    private static final class Phase {
+        private final int startEvent;
+        private final int endEvent;
+        private final LatencyHistogram durations = new LatencyHistogram();
+        private long startTimestamp = -1;
+
+        private Phase(int startEvent, int endEvent) {
+            this.startEvent = startEvent;
+            this.endEvent = endEvent;
+        }
+    }
+
+    /**
+     * Create a new instance with the phases of {@link Camera2Component}.
+     */
+    public EventLogSummary() {
+        addPhase("open device", CameraEvents.OPEN, CameraEvents.DEVICE_OPENED);
+        addPhase("configure session", CameraEvents.SESSION_CREATE, CameraEvents.SESSION_CONFIGURED);
+        addPhase("first frame", CameraEvents.SESSION_CONFIGURED, CameraEvents.FIRST_FRAME);
+        addPhase("startup", CameraEvents.OPEN, CameraEvents.FIRST_FRAME);
+        addPhase("restart", CameraEvents.RESTART, CameraEvents.FIRST_FRAME);
+        addPhase("watchdog recovery", CameraEvents.WATCHDOG, CameraEvents.RECOVERED);
+    }
+
+    /**
+     * Adds a phase. A later start event restarts a phase that has not ended yet.
+     *
+     * @param name       the name of the phase
+     * @param startEvent the ID of the event that starts the phase
+     * @param endEvent   the ID of the event that ends the phase
+     */
+    public void addPhase(@NonNull String name, int startEvent, int endEvent) {
+        phases.put(name, new Phase(startEvent, endEvent));
+    }
+
+    /**
+     * Adds the durations of the phases in a list of events. Phases do not span lists.
+     *
+     * @param events the events, oldest first
+     */
+    public void add(@NonNull List<EventLogDecoder.Event> events) {
+        for (Phase phase : phases.values()) {
+            phase.startTimestamp = -1;
+        }
+        for (EventLogDecoder.Event event : events) {
+            for (Phase phase : phases.values()) {
+                if ((event.getEventId() == phase.endEvent) && (phase.startTimestamp >= 0)) {
+                    phase.durations.record(event.getTimestamp() - phase.startTimestamp);
+                    phase.startTimestamp = -1;
+                }
+                if (event.getEventId() == phase.startEvent) {
+                    phase.startTimestamp = event.getTimestamp();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the durations of a phase.
+     *
+     * @param name the name of the phase
+     * @return the durations of the phase in nanoseconds
+     */
+    @NonNull
+    public LatencyHistogram getDurations(@NonNull String name) {
+        Phase phase = phases.get(name);
+        if (phase == null) {
+            throw new IllegalArgumentException("Unknown phase: " + name);
+        }
+        return phase.durations;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            summary.append(entry.getKey()).append(": ").append(entry.getValue().durations).append('\n');
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Prints the phase durations of the given event log files.
+     *
+     * @param args the event log files
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        EventLogSummary summary = new EventLogSummary();
+        for (String arg : args) {
+            summary.add(EventLogDecoder.decode(new File(arg)));
+        }
+        System.out.print(summary);
+    }
+}
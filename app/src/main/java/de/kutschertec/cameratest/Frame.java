@@ -0,0 +1,163 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference-counted camera frame owned by a {@link FrameExchange}. Frames are recycled by the
+ * exchange once the last reference has been released, so consumers only ever see them through a
+ * {@link FrameLease}.
+ */
+class Frame {
+    /**
+     * A frame gives its buffer back to the pool once the data fits into a size class this many
+     * times smaller, so that buffers of a larger resolution do not stay pinned.
+     */
+    private static final int SHRINK_FACTOR = 4;
+
+    private final FrameExchange owner;
+    private final BufferPool bufferPool;
+    private final AtomicInteger references = new AtomicInteger(0);
+
+    private ByteBuffer buffer;
+    private int size;
+    private long sequence;
+    private long timestamp;
+    private long copyTime;
+    private final FrameMetadata metadata = new FrameMetadata();
+
+    private volatile boolean leased;
+
+    Frame(@NonNull FrameExchange owner, @NonNull BufferPool bufferPool, int capacity) {
+        this.owner = owner;
+        this.bufferPool = bufferPool;
+        this.buffer = bufferPool.acquire(capacity);
+    }
+
+    /**
+     * Copies the remaining bytes of the given buffer into this frame, growing the backing buffer
+     * if necessary. Must only be called while the frame is not referenced.
+     *
+     * @param source    the buffer to copy from
+     * @param sequence  the sequence number of the frame
+     * @param timestamp the sensor timestamp of the frame in nanoseconds
+     * @param metadata  the metadata of the frame, or {@code null} if there is none
+     */
+    void fill(@NonNull ByteBuffer source, long sequence, long timestamp, @Nullable FrameMetadata metadata) {
+        size = source.remaining();
+        if ((size > buffer.capacity())
+                || (buffer.capacity() >= SHRINK_FACTOR * bufferPool.getClassCapacity(size))) {
+            bufferPool.release(buffer);
+            buffer = bufferPool.acquire(size);
+        }
+
+        buffer.clear();
+        buffer.put(source);
+        buffer.flip();
+
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        if (metadata != null) {
+            this.metadata.set(metadata);
+        } else {
+            this.metadata.clear();
+        }
+        this.copyTime = System.nanoTime();
+        this.leased = false;
+        references.set(1);
+    }
+
+    /**
+     * Hands the backing buffer back to the pool. Must only be called on a frame without
+     * references that will not be used again.
+     */
+    void dispose() {
+        bufferPool.release(buffer);
+        buffer = null;
+    }
+
+    /**
+     * Adds a reference to this frame, unless it has already been released.
+     *
+     * @return {@code true} if the reference has been added
+     */
+    boolean retain() {
+        while (true) {
+            int count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                leased = true;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a reference to this frame and hands it back to its exchange after the last
+     * reference has been released.
+     */
+    void release() {
+        int count = references.decrementAndGet();
+        if (count == 0) {
+            owner.recycle(this);
+        } else if (count < 0) {
+            throw new IllegalStateException("Frame released more often than retained.");
+        }
+    }
+
+    /**
+     * Reports the time a lease has held this frame to its exchange.
+     *
+     * @param holdNanos the time the lease has been held
+     */
+    void recordHold(long holdNanos) {
+        owner.recordHold(holdNanos);
+    }
+
+    /**
+     * Creates a new read-only view of the frame data. The view is flipped and ready for reading.
+     *
+     * @return a new read-only view of the frame data
+     */
+    @NonNull
+    ByteBuffer createView() {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.position(0);
+        view.limit(size);
+        return view;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    long getCopyTime() {
+        return copyTime;
+    }
+
+    @NonNull
+    FrameMetadata getMetadata() {
+        return metadata;
+    }
+
+    boolean isLeased() {
+        return leased;
+    }
+
+    int getReferenceCount() {
+        return references.get();
+    }
+}
@@ -0,0 +1,280 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes camera frames to any number of subscribers.
+ * <p>
+ * Every subscriber has its own executor and its own bounded queue, described by its {@link
+ * DeliveryPolicy}. Publishing only adds a lease to each queue and never waits for a subscriber, so
+ * a slow subscriber only ever drops its own frames and does not stall the camera or any other
+ * subscriber.
+ */
+public class FrameBus {
+    private final Logger logger = new Logger(this);
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * A subscription of a {@link FrameListener} to a {@link FrameBus}.
+     */
+    public final class Subscription {
+        private final FrameListener listener;
+        private final DeliveryPolicy policy;
+        private final ExecutorService executor;
+        private final boolean ownsExecutor;
+
+        private final ArrayDeque<FrameLease> queue;
+        private boolean draining = false;
+        private boolean cancelled = false;
+        private boolean overflowing = false;
+        private long offered = 0;
+
+        private final AtomicLong deliveredFrames = new AtomicLong(0);
+        private final AtomicLong droppedFrames = new AtomicLong(0);
+        private final AtomicLong skippedFrames = new AtomicLong(0);
+        private final AtomicLong suppressedFrames = new AtomicLong(0);
+        private final AtomicLong overflowedFrames = new AtomicLong(0);
+
+        private final Runnable drain = this::drain;
+
+        private Subscription(FrameListener listener, DeliveryPolicy policy, ExecutorService executor, boolean ownsExecutor) {
+            this.listener = listener;
+            this.policy = policy;
+            this.executor = executor;
+            this.ownsExecutor = ownsExecutor;
+            this.queue = new ArrayDeque<>(policy.getQueueCapacity());
+        }
+
+        private void offer(FrameLease frame) {
+            FrameLease dropped = null;
+            boolean schedule = false;
+
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+
+                if (policy.isOnlyOnChange() && !frame.getMetadata().isChanged()) {
+                    suppressedFrames.incrementAndGet();
+                    return;
+                }
+
+                if ((offered++ % policy.getStride()) != 0) {
+                    skippedFrames.incrementAndGet();
+                    return;
+                }
+
+                if ((queue.size() >= policy.getQueueCapacity()) && policy.isDropNewest()) {
+                    // the queued frames are kept, so the subscriber gets a single gap
+                    overflowedFrames.incrementAndGet();
+                    droppedFrames.incrementAndGet();
+                    if (!overflowing) {
+                        overflowing = true;
+                        logger.warn("Frame subscriber {} fell behind by {} frames, dropping new frames.", listener, queue.size());
+                    }
+                    return;
+                }
+                overflowing = false;
+
+                if (queue.size() >= policy.getQueueCapacity()) {
+                    dropped = queue.pollFirst();
+                }
+                queue.addLast(frame.retain());
+
+                if (!draining) {
+                    draining = true;
+                    schedule = true;
+                }
+            }
+
+            if (dropped != null) {
+                droppedFrames.incrementAndGet();
+                dropped.close();
+            }
+
+            if (schedule) {
+                try {
+                    executor.execute(drain);
+                } catch (RejectedExecutionException e) {
+                    logger.warn("Frame subscriber rejected delivery.", e);
+                    cancel();
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                FrameLease frame;
+                synchronized (this) {
+                    frame = queue.pollFirst();
+                    if (frame == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+
+                try {
+                    listener.onFrame(frame);
+                    deliveredFrames.incrementAndGet();
+                } catch (RuntimeException e) {
+                    logger.error("Error in frame listener.", e);
+                } finally {
+                    frame.close();
+                }
+            }
+        }
+
+        /**
+         * Removes this subscription from the bus and releases all queued frames. Frames that are
+         * currently being delivered are not interrupted.
+         */
+        public void cancel() {
+            subscriptions.remove(this);
+
+            synchronized (this) {
+                cancelled = true;
+                FrameLease frame;
+                while ((frame = queue.pollFirst()) != null) {
+                    droppedFrames.incrementAndGet();
+                    frame.close();
+                }
+            }
+
+            if (ownsExecutor) {
+                executor.shutdown();
+            }
+        }
+
+        /**
+         * Returns the {@link DeliveryPolicy} of this subscription.
+         *
+         * @return the delivery policy of this subscription
+         */
+        @NonNull
+        public DeliveryPolicy getPolicy() {
+            return policy;
+        }
+
+        /**
+         * Returns the number of frames delivered to the listener.
+         *
+         * @return the number of delivered frames
+         */
+        public long getDeliveredFrames() {
+            return deliveredFrames.get();
+        }
+
+        /**
+         * Returns the number of frames that were queued for the listener, but dropped because the
+         * listener did not keep up.
+         *
+         * @return the number of dropped frames
+         */
+        public long getDroppedFrames() {
+            return droppedFrames.get();
+        }
+
+        /**
+         * Returns the number of new frames a {@link DeliveryPolicy#dropNewest(int)} subscription has
+         * dropped because its queue was full. They are included in {@link #getDroppedFrames()}.
+         *
+         * @return the number of overflowed frames
+         */
+        public long getOverflowedFrames() {
+            return overflowedFrames.get();
+        }
+
+        /**
+         * Returns the number of frames that were not offered to the listener because of the stride
+         * of the delivery policy.
+         *
+         * @return the number of skipped frames
+         */
+        public long getSkippedFrames() {
+            return skippedFrames.get();
+        }
+
+        /**
+         * Returns the number of frames that were not offered to the listener because they did
+         * not show a change of the scene.
+         *
+         * @return the number of suppressed frames
+         */
+        public long getSuppressedFrames() {
+            return suppressedFrames.get();
+        }
+    }
+
+    /**
+     * Subscribes a listener that is called on its own single-threaded executor.
+     *
+     * @param listener the listener to subscribe
+     * @param policy   the delivery policy of the subscription
+     * @return the new subscription
+     */
+    @NonNull
+    public Subscription subscribe(@NonNull FrameListener listener, @NonNull DeliveryPolicy policy) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "FrameBus-" + listener.getClass().getSimpleName()));
+        return subscribe(listener, policy, executor, true);
+    }
+
+    /**
+     * Subscribes a listener that is called on the given executor. The executor is not shut down
+     * when the subscription is cancelled.
+     *
+     * @param listener the listener to subscribe
+     * @param policy   the delivery policy of the subscription
+     * @param executor the executor that calls the listener
+     * @return the new subscription
+     */
+    @NonNull
+    public Subscription subscribe(@NonNull FrameListener listener, @NonNull DeliveryPolicy policy, @NonNull ExecutorService executor) {
+        return subscribe(listener, policy, executor, false);
+    }
+
+    private Subscription subscribe(FrameListener listener, DeliveryPolicy policy, ExecutorService executor, boolean ownsExecutor) {
+        logger.debug("Subscribing {} with {}", listener, policy);
+        Subscription subscription = new Subscription(listener, policy, executor, ownsExecutor);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Returns whether the bus has any subscribers.
+     *
+     * @return {@code true} if the bus has any subscribers
+     */
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Offers a frame to every subscriber. Every subscriber takes its own lease on the frame, so
+     * the caller keeps ownership of the given lease.
+     *
+     * @param frame a lease on the frame to publish
+     */
+    public void publish(@NonNull FrameLease frame) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(frame);
+        }
+    }
+
+    /**
+     * Cancels all subscriptions.
+     */
+    public void shutdown() {
+        for (Subscription subscription : subscriptions) {
+            subscription.cancel();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free exchange that hands the latest camera frame from a single producer to any number of
+ * consumers.
+ * <p>
+ * The producer copies each frame into a recycled {@link Frame} and publishes it with one atomic
+ * swap, so it never waits for a consumer and never has to skip a frame because a consumer is busy.
+ * Consumers take reference-counted {@link FrameLease}s on the latest frame and read it in place,
+ * without copying. A frame goes back to the pool of free frames once the exchange has replaced it
+ * and the last lease on it has been closed. Frames that are replaced before anyone leased them are
+ * counted as superseded. The frame buffers are taken from a {@link BufferPool}.
+ * <p>
+ * {@link #publish(ByteBuffer, long)} must only be called from one thread at a time.
+ */
+public class FrameExchange {
+    private static final int DEFAULT_POOL_SIZE = 8;
+
+    private final BufferPool bufferPool;
+    private final int initialCapacity;
+
+    /**
+     * The latest published frame. The exchange holds one reference on it.
+     */
+    private final AtomicReference<Frame> latest = new AtomicReference<>(null);
+
+    /**
+     * Free frames that can be filled by the producer. Every slot is claimed and released with a
+     * single compare-and-set, so neither side takes a lock.
+     */
+    private final AtomicReferenceArray<Frame> freeFrames;
+
+    private long sequence = 0;
+
+    private final AtomicLong publishedFrames = new AtomicLong(0);
+    private final AtomicLong supersededFrames = new AtomicLong(0);
+    private final AtomicLong leases = new AtomicLong(0);
+    private final AtomicLong copies = new AtomicLong(0);
+    private final AtomicLong allocatedFrames = new AtomicLong(0);
+    private final AtomicLong recycledFrames = new AtomicLong(0);
+    private final LatencyHistogram holdTimes = new LatencyHistogram();
+
+    /**
+     * Create a new instance.
+     *
+     * @param bufferPool      the pool that provides the frame buffers
+     * @param initialCapacity the initial capacity of the frame buffers in bytes
+     */
+    public FrameExchange(@NonNull BufferPool bufferPool, int initialCapacity) {
+        this(bufferPool, initialCapacity, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param bufferPool      the pool that provides the frame buffers
+     * @param initialCapacity the initial capacity of the frame buffers in bytes
+     * @param poolSize        the maximum number of free frames kept for reuse
+     */
+    public FrameExchange(@NonNull BufferPool bufferPool, int initialCapacity, int poolSize) {
+        this.bufferPool = bufferPool;
+        this.initialCapacity = initialCapacity;
+        this.freeFrames = new AtomicReferenceArray<>(poolSize);
+    }
+
+    /**
+     * Copies the remaining bytes of the given buffer into a new frame and publishes it as the
+     * latest frame. This method never blocks.
+     *
+     * @param source    the buffer that contains the frame data
+     * @param timestamp the sensor timestamp of the frame in nanoseconds
+     */
+    public void publish(@NonNull ByteBuffer source, long timestamp) {
+        publish(source, timestamp, null);
+    }
+
+    /**
+     * Copies the remaining bytes of the given buffer and its metadata into a new frame and
+     * publishes it as the latest frame. This method never blocks.
+     *
+     * @param source    the buffer that contains the frame data
+     * @param timestamp the sensor timestamp of the frame in nanoseconds
+     * @param metadata  the metadata of the frame, or {@code null} if there is none
+     */
+    public void publish(@NonNull ByteBuffer source, long timestamp, @Nullable FrameMetadata metadata) {
+        Frame frame = takeFreeFrame();
+        if (frame == null) {
+            frame = new Frame(this, bufferPool, initialCapacity);
+            allocatedFrames.incrementAndGet();
+        }
+
+        frame.fill(source, ++sequence, timestamp, metadata);
+        copies.incrementAndGet();
+
+        Frame previous = latest.getAndSet(frame);
+        publishedFrames.incrementAndGet();
+        if (previous != null) {
+            if (!previous.isLeased()) {
+                supersededFrames.incrementAndGet();
+            }
+            previous.release();
+        }
+    }
+
+    /**
+     * Returns a lease on the latest published frame. The lease must be closed by the caller.
+     *
+     * @return a lease on the latest frame or {@code null} if nothing has been published yet
+     */
+    @Nullable
+    public FrameLease acquireLatest() {
+        while (true) {
+            Frame frame = latest.get();
+            if (frame == null) {
+                return null;
+            }
+
+            // the frame might have been replaced and recycled since we read it, try again then
+            if (frame.retain()) {
+                leases.incrementAndGet();
+                return new FrameLease(frame);
+            }
+        }
+    }
+
+    /**
+     * Hands a frame without references back to the pool of free frames.
+     *
+     * @param frame the frame to recycle
+     */
+    void recycle(@NonNull Frame frame) {
+        recycledFrames.incrementAndGet();
+        for (int i = 0; i < freeFrames.length(); i++) {
+            if (freeFrames.compareAndSet(i, null, frame)) {
+                return;
+            }
+        }
+        // the pool is full, hand the buffer back and let the frame be garbage collected
+        frame.dispose();
+    }
+
+    /**
+     * Records the time a lease on one of the frames has been held, from its creation until it
+     * has been closed.
+     *
+     * @param holdNanos the time the lease has been held
+     */
+    void recordHold(long holdNanos) {
+        holdTimes.record(holdNanos);
+    }
+
+    @Nullable
+    private Frame takeFreeFrame() {
+        for (int i = 0; i < freeFrames.length(); i++) {
+            Frame frame = freeFrames.get(i);
+            if ((frame != null) && freeFrames.compareAndSet(i, frame, null)) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the {@link BufferPool} that provides the frame buffers.
+     *
+     * @return the pool that provides the frame buffers
+     */
+    @NonNull
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Returns the number of frames published by the producer.
+     *
+     * @return the number of frames published by the producer
+     */
+    public long getPublishedFrames() {
+        return publishedFrames.get();
+    }
+
+    /**
+     * Returns the number of frames that were replaced by a newer frame before anyone leased them.
+     *
+     * @return the number of superseded frames
+     */
+    public long getSupersededFrames() {
+        return supersededFrames.get();
+    }
+
+    /**
+     * Returns the number of leases handed out by {@link #acquireLatest()}.
+     *
+     * @return the number of leases handed out
+     */
+    public long getLeases() {
+        return leases.get();
+    }
+
+    /**
+     * Returns the number of frame copies made by the exchange. There is exactly one copy per
+     * published frame, leases never copy.
+     *
+     * @return the number of frame copies made by the exchange
+     */
+    public long getCopies() {
+        return copies.get();
+    }
+
+    /**
+     * Returns the number of frames allocated because no free frame was available.
+     *
+     * @return the number of allocated frames
+     */
+    public long getAllocatedFrames() {
+        return allocatedFrames.get();
+    }
+
+    /**
+     * Returns the number of frames that have been released by all holders.
+     *
+     * @return the number of recycled frames
+     */
+    public long getRecycledFrames() {
+        return recycledFrames.get();
+    }
+
+    /**
+     * Returns the histogram of the times the leases on the frames have been held, whether they
+     * have been acquired with {@link #acquireLatest()} or retained from another lease.
+     *
+     * @return the histogram of the hold times
+     */
+    @NonNull
+    public LatencyHistogram getHoldTimes() {
+        return holdTimes;
+    }
+}
@@ -0,0 +1,121 @@
+package de.kutschertec.cameratest;
+
+/**
+ * Counts the frames the sensor has captured, but that never reached the frame pipeline, from the
+ * gaps between the sensor timestamps of the delivered frames.
+ * <p>
+ * The counter keeps an exponentially weighted moving average of the frame interval. An interval
+ * of at least {@link #GAP_FACTOR} times the average is a gap and counts as the number of frames
+ * that would have fit into it; gaps do not change the average. A shorter interval than
+ * {@link #RESET_FACTOR} times the average replaces it, e.g. after the frame rate has been raised or
+ * if the first interval has been a gap. A frame duration reported by the camera takes the place of
+ * the average, so that frames that are missed from the start are counted as well.
+ * This covers images discarded by the image reader as well as frames the camera dropped because
+ * the reader was full, but also stalls of the camera itself.
+ */
+public class FrameGapCounter {
+    /**
+     * The interval relative to the average above which frames have been missed.
+     */
+    public static final double GAP_FACTOR = 1.5;
+
+    /**
+     * The interval relative to the average below which the average is replaced.
+     */
+    public static final double RESET_FACTOR = 0.7;
+
+    private static final double ALPHA = 1.0 / 16;
+
+    private long lastTimestamp = 0;
+    private boolean hasTimestamp = false;
+    private double meanInterval = 0;
+    private long frameDuration = 0;
+    private long missedFrames = 0;
+    private long gaps = 0;
+
+    /**
+     * Reports the sensor timestamp of a delivered frame.
+     *
+     * @param timestamp the sensor timestamp in nanoseconds
+     * @return the number of frames missed before this one
+     */
+    public synchronized long onFrame(long timestamp) {
+        long interval = timestamp - lastTimestamp;
+        boolean first = !hasTimestamp;
+        lastTimestamp = timestamp;
+        hasTimestamp = true;
+        if (first || (interval <= 0)) {
+            // nothing to compare with, or a timestamp of another time base
+            return 0;
+        }
+
+        if ((meanInterval == 0) || (interval < RESET_FACTOR * meanInterval)) {
+            meanInterval = interval;
+        } else if (interval < GAP_FACTOR * meanInterval) {
+            meanInterval += ALPHA * (interval - meanInterval);
+        }
+
+        double expected = (frameDuration > 0) ? frameDuration : meanInterval;
+        if (interval < GAP_FACTOR * expected) {
+            return 0;
+        }
+
+        long missed = Math.round(interval / expected) - 1;
+        missedFrames += missed;
+        gaps++;
+        return missed;
+    }
+
+    /**
+     * Sets the frame duration the camera reports for its captures, e.g. {@code
+     * SENSOR_FRAME_DURATION}. It replaces the average interval, which is only learned from the
+     * delivered frames and therefore too long if frames are missed from the start.
+     *
+     * @param frameDurationNanos the frame duration in nanoseconds, or 0 to use the average interval
+     *                           again
+     */
+    public synchronized void setFrameDuration(long frameDurationNanos) {
+        frameDuration = Math.max(0, frameDurationNanos);
+    }
+
+    /**
+     * Forgets the last timestamp, e.g. at the start of a capture session, so that the time in
+     * between does not count as a gap. The average interval and the counters are kept.
+     */
+    public synchronized void restart() {
+        hasTimestamp = false;
+    }
+
+    /**
+     * Returns the number of frames missed between delivered frames.
+     *
+     * @return the number of missed frames
+     */
+    public synchronized long getMissedFrames() {
+        return missedFrames;
+    }
+
+    /**
+     * Returns the number of gaps, each of one or more missed frames.
+     *
+     * @return the number of gaps
+     */
+    public synchronized long getGaps() {
+        return gaps;
+    }
+
+    /**
+     * Returns the interval between two sensor frames, the reported frame duration if it is known
+     * or the average interval otherwise.
+     *
+     * @return the frame interval in nanoseconds, 0 before the first interval
+     */
+    public synchronized long getFrameIntervalNanos() {
+        return (frameDuration > 0) ? frameDuration : (long) meanInterval;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FrameGapCounter[interval=" + getFrameIntervalNanos() / 1000 + "us;missed=" + missedFrames + ";gaps=" + gaps + "]";
+    }
+}
@@ -0,0 +1,138 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A read-only, reference-counted view of a camera frame. The frame data is not copied; it stays
+ * valid until the lease is closed. The backing buffer is recycled only after every lease on the
+ * frame has been closed, so a lease must always be closed, preferably with try-with-resources.
+ */
+public final class FrameLease implements Closeable {
+    private final Frame frame;
+    private final ByteBuffer buffer;
+    private final long leaseTime;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * Create a new instance. The caller must already hold a reference on the frame, which is
+     * transferred to the lease.
+     *
+     * @param frame the leased frame
+     */
+    FrameLease(@NonNull Frame frame) {
+        this.frame = frame;
+        this.buffer = frame.createView();
+        this.leaseTime = System.nanoTime();
+    }
+
+    /**
+     * Returns a read-only {@link ByteBuffer} with the frame data. The buffer is flipped and ready
+     * for reading, its position and limit belong to this lease only.
+     *
+     * @return a read-only buffer with the frame data
+     */
+    @NonNull
+    public ByteBuffer getBuffer() {
+        checkOpen();
+        return buffer;
+    }
+
+    /**
+     * Returns the size of the frame data in bytes.
+     *
+     * @return the size of the frame data in bytes
+     */
+    public int getSize() {
+        checkOpen();
+        return frame.getSize();
+    }
+
+    /**
+     * Returns the sequence number of the frame. The first published frame has the sequence
+     * number 1.
+     *
+     * @return the sequence number of the frame
+     */
+    public long getSequence() {
+        checkOpen();
+        return frame.getSequence();
+    }
+
+    /**
+     * Returns the sensor timestamp of the frame in nanoseconds.
+     *
+     * @return the sensor timestamp of the frame in nanoseconds
+     */
+    public long getTimestamp() {
+        checkOpen();
+        return frame.getTimestamp();
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the frame data had been copied into the
+     * exchange.
+     *
+     * @return the time of the copy in nanoseconds
+     */
+    public long getCopyTime() {
+        checkOpen();
+        return frame.getCopyTime();
+    }
+
+    /**
+     * Returns the metadata of the frame. It must not be modified.
+     *
+     * @return the metadata of the frame, cleared if the producer has not provided any
+     */
+    @NonNull
+    public FrameMetadata getMetadata() {
+        checkOpen();
+        return frame.getMetadata();
+    }
+
+    /**
+     * Creates an additional, independent lease on the same frame, e.g. to hand the frame to
+     * another thread. Both leases have to be closed.
+     *
+     * @return a new lease on the same frame
+     */
+    @NonNull
+    public FrameLease retain() {
+        checkOpen();
+        if (!frame.retain()) {
+            throw new IllegalStateException("Frame has already been recycled.");
+        }
+        return new FrameLease(frame);
+    }
+
+    /**
+     * Returns whether this lease has been closed.
+     *
+     * @return {@code true} if this lease has been closed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Releases this lease and records how long it has been held. Calling this method more than
+     * once has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            frame.recordHold(System.nanoTime() - leaseTime);
+            frame.release();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("Frame lease has already been closed.");
+        }
+    }
+}
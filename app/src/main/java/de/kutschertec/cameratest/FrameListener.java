@@ -0,0 +1,17 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Listener that receives camera frames pushed by a {@link FrameBus}.
+ */
+public interface FrameListener {
+    /**
+     * Called for every frame delivered to the listener. The lease is closed by the bus after this
+     * method returns, listeners that need the frame for longer have to {@link FrameLease#retain()}
+     * it.
+     *
+     * @param frame a lease on the delivered frame
+     */
+    void onFrame(@NonNull FrameLease frame);
+}
@@ -0,0 +1,312 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Compact metadata of a camera frame: the properties of its JPEG header, read by
+ * {@link JpegHeaderParser}, and the capture properties the pipeline knows about the frame.
+ * <p>
+ * Instances are reused from frame to frame. The metadata of a {@link FrameLease} stays valid
+ * until the lease is closed.
+ */
+public final class FrameMetadata {
+    /**
+     * The EXIF orientation of a frame without an EXIF orientation tag.
+     */
+    public static final int NO_EXIF_ORIENTATION = 0;
+
+    /**
+     * The similarity of a frame that has not been compared with a previous one.
+     */
+    public static final float UNKNOWN_SIMILARITY = -1.0f;
+
+    private boolean valid;
+    private int width;
+    private int height;
+    private int components;
+    private int precision;
+    private int restartInterval;
+    private int exifOrientation;
+    private int headerLength;
+    private int jpegOrientation;
+    private long timestamp;
+    private float similarity = UNKNOWN_SIMILARITY;
+    private boolean changed = true;
+    private final int[] motionRegions = new int[4 * MotionAnalyzer.MAX_REGIONS];
+    private int motionRegionCount = 0;
+
+    /**
+     * Returns whether the frame has a JPEG header with a frame header and a scan.
+     *
+     * @return {@code true} if the header fields are valid
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Returns the width of the image from the frame header.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image from the frame header.
+     *
+     * @return the height in pixels, 0 if it is defined by the DNL marker after the first scan
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of color components, e.g. 3 for YCbCr.
+     *
+     * @return the number of components
+     */
+    public int getComponents() {
+        return components;
+    }
+
+    /**
+     * Returns the sample precision.
+     *
+     * @return the sample precision in bits
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns the restart interval.
+     *
+     * @return the number of MCUs between restart markers, 0 if there are none
+     */
+    public int getRestartInterval() {
+        return restartInterval;
+    }
+
+    /**
+     * Returns the EXIF orientation tag.
+     *
+     * @return the orientation from 1 to 8, or {@link #NO_EXIF_ORIENTATION}
+     */
+    public int getExifOrientation() {
+        return exifOrientation;
+    }
+
+    /**
+     * Returns the length of the header up to the first entropy coded byte.
+     *
+     * @return the header length in bytes
+     */
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    /**
+     * Returns the JPEG orientation the frame has been captured with.
+     *
+     * @return the clockwise rotation of the image in degrees
+     */
+    public int getJpegOrientation() {
+        return jpegOrientation;
+    }
+
+    /**
+     * Returns the sensor timestamp of the frame.
+     *
+     * @return the timestamp in nanoseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the similarity of the scene to the last change, as measured by the
+     * {@link ChangeDetector}.
+     *
+     * @return the similarity from 0 to 1, or {@link #UNKNOWN_SIMILARITY}
+     */
+    public float getSimilarity() {
+        return similarity;
+    }
+
+    /**
+     * Returns whether the frame shows a change of the scene. Frames that have not been compared
+     * count as changed.
+     *
+     * @return {@code true} if the frame shows a change
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    /**
+     * Returns the number of regions that have moved since the previous frame, as found by the
+     * {@link MotionAnalyzer}.
+     *
+     * @return the number of moved regions, 0 if there is no motion or no analysis
+     */
+    public int getMotionRegionCount() {
+        return motionRegionCount;
+    }
+
+    /**
+     * Returns the left edge of the bounding box of a moved region.
+     *
+     * @param region the index of the region
+     * @return the left edge in pixels of the analysis frame, inclusive
+     */
+    public int getMotionRegionLeft(int region) {
+        return motionRegions[4 * checkMotionRegion(region)];
+    }
+
+    /**
+     * Returns the top edge of the bounding box of a moved region.
+     *
+     * @param region the index of the region
+     * @return the top edge in pixels of the analysis frame, inclusive
+     */
+    public int getMotionRegionTop(int region) {
+        return motionRegions[4 * checkMotionRegion(region) + 1];
+    }
+
+    /**
+     * Returns the right edge of the bounding box of a moved region.
+     *
+     * @param region the index of the region
+     * @return the right edge in pixels of the analysis frame, exclusive
+     */
+    public int getMotionRegionRight(int region) {
+        return motionRegions[4 * checkMotionRegion(region) + 2];
+    }
+
+    /**
+     * Returns the bottom edge of the bounding box of a moved region.
+     *
+     * @param region the index of the region
+     * @return the bottom edge in pixels of the analysis frame, exclusive
+     */
+    public int getMotionRegionBottom(int region) {
+        return motionRegions[4 * checkMotionRegion(region) + 3];
+    }
+
+    /**
+     * Copies all fields of another instance.
+     *
+     * @param other the metadata to copy
+     */
+    public void set(@NonNull FrameMetadata other) {
+        valid = other.valid;
+        width = other.width;
+        height = other.height;
+        components = other.components;
+        precision = other.precision;
+        restartInterval = other.restartInterval;
+        exifOrientation = other.exifOrientation;
+        headerLength = other.headerLength;
+        jpegOrientation = other.jpegOrientation;
+        timestamp = other.timestamp;
+        similarity = other.similarity;
+        changed = other.changed;
+        setMotionRegions(other.motionRegions, other.motionRegionCount);
+    }
+
+    /**
+     * Sets the capture properties of the frame.
+     *
+     * @param timestamp       the sensor timestamp in nanoseconds
+     * @param jpegOrientation the JPEG orientation in degrees
+     */
+    public void setCapture(long timestamp, int jpegOrientation) {
+        this.timestamp = timestamp;
+        this.jpegOrientation = jpegOrientation;
+    }
+
+    /**
+     * Sets the result of the change detection.
+     *
+     * @param similarity the similarity from 0 to 1, or {@link #UNKNOWN_SIMILARITY}
+     * @param changed    {@code true} if the frame shows a change
+     */
+    public void setChange(float similarity, boolean changed) {
+        this.similarity = similarity;
+        this.changed = changed;
+    }
+
+    /**
+     * Sets the result of the motion analysis.
+     *
+     * @param regions the bounding boxes of the moved regions as left, top, right and bottom
+     * @param count   the number of regions, at most {@link MotionAnalyzer#MAX_REGIONS}
+     */
+    public void setMotionRegions(@NonNull int[] regions, int count) {
+        if ((count < 0) || (count > MotionAnalyzer.MAX_REGIONS)) {
+            throw new IllegalArgumentException("Invalid number of regions: " + count);
+        }
+        System.arraycopy(regions, 0, motionRegions, 0, 4 * count);
+        motionRegionCount = count;
+    }
+
+    /**
+     * Resets all fields.
+     */
+    public void clear() {
+        clearHeader();
+        jpegOrientation = 0;
+        timestamp = 0;
+        similarity = UNKNOWN_SIMILARITY;
+        changed = true;
+        motionRegionCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameMetadata[valid=" + valid + ";size=" + width + "x" + height + ";components=" + components
+                + ";restartInterval=" + restartInterval + ";exifOrientation=" + exifOrientation
+                + ";jpegOrientation=" + jpegOrientation + ";timestamp=" + timestamp
+                + ";similarity=" + similarity + ";changed=" + changed + ";motionRegions=" + motionRegionCount + "]";
+    }
+
+    private int checkMotionRegion(int region) {
+        if ((region < 0) || (region >= motionRegionCount)) {
+            throw new IndexOutOfBoundsException("Invalid region: " + region);
+        }
+        return region;
+    }
+
+    void clearHeader() {
+        valid = false;
+        width = 0;
+        height = 0;
+        components = 0;
+        precision = 0;
+        restartInterval = 0;
+        exifOrientation = NO_EXIF_ORIENTATION;
+        headerLength = 0;
+    }
+
+    void setFrameHeader(int precision, int width, int height, int components) {
+        this.precision = precision;
+        this.width = width;
+        this.height = height;
+        this.components = components;
+    }
+
+    void setRestartInterval(int restartInterval) {
+        this.restartInterval = restartInterval;
+    }
+
+    void setExifOrientation(int exifOrientation) {
+        this.exifOrientation = exifOrientation;
+    }
+
+    void setHeaderEnd(int headerLength, boolean valid) {
+        this.headerLength = headerLength;
+        this.valid = valid;
+    }
+}
@@ -0,0 +1,158 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The frame path behind a {@link FrameSource}: feeds the {@link FrameWatchdog}, tags the frames
+ * with the results of the {@link ChangeDetector} and the {@link MotionAnalyzer}, publishes them
+ * with their {@link FrameMetadata} to the {@link FrameExchange} and the {@link FrameBus} and
+ * records the {@link FrameStats}.
+ * It does not depend on the camera hardware, so the whole path can be run with a synthetic source.
+ */
+public class FramePipeline implements FrameSink {
+    private final Logger logger = new Logger(this);
+
+    private final FrameExchange frameExchange;
+    private final FrameBus frameBus;
+    private final FrameStats frameStats;
+    private final FrameWatchdog frameWatchdog;
+    private final StartupCoordinator startupCoordinator;
+    private final ChangeDetector changeDetector;
+    private final MotionAnalyzer motionAnalyzer;
+
+    private volatile boolean frozen = false;
+    private volatile boolean firstFrameOfSession = false;
+    private volatile int jpegOrientation = 0;
+    private final FrameMetadata metadata = new FrameMetadata();
+    private long housekeepingTime = 0;
+    private long frameStatsLogTime = 0;
+
+    /**
+     * Create a new instance.
+     *
+     * @param frameExchange      the exchange the frames are published to
+     * @param frameBus           the bus the frames are pushed to
+     * @param frameStats         the statistics of the frame path
+     * @param frameWatchdog      the watchdog that is fed with every frame
+     * @param startupCoordinator the coordinator that traces the first frame of a startup
+     * @param changeDetector     the detector whose latest result the frames are tagged with
+     * @param motionAnalyzer     the analyzer whose latest regions the frames are tagged with
+     */
+    public FramePipeline(@NonNull FrameExchange frameExchange, @NonNull FrameBus frameBus, @NonNull FrameStats frameStats,
+                         @NonNull FrameWatchdog frameWatchdog, @NonNull StartupCoordinator startupCoordinator,
+                         @NonNull ChangeDetector changeDetector, @NonNull MotionAnalyzer motionAnalyzer) {
+        this.frameExchange = frameExchange;
+        this.frameBus = frameBus;
+        this.frameStats = frameStats;
+        this.frameWatchdog = frameWatchdog;
+        this.startupCoordinator = startupCoordinator;
+        this.changeDetector = changeDetector;
+        this.motionAnalyzer = motionAnalyzer;
+    }
+
+    /**
+     * Marks the start of a capture session, so that its first frame is reported.
+     */
+    public void beginSession() {
+        firstFrameOfSession = true;
+        frameStats.restartTimeline();
+        changeDetector.reset();
+        motionAnalyzer.reset();
+    }
+
+    /**
+     * Freezes the pipeline. Frames of a frozen pipeline still feed the watchdog, but are not
+     * published.
+     *
+     * @param frozen {@code true} to freeze the pipeline
+     */
+    public void setFrozen(boolean frozen) {
+        this.frozen = frozen;
+    }
+
+    /**
+     * Sets the JPEG orientation the following frames are captured with, which is recorded in
+     * their metadata.
+     *
+     * @param jpegOrientation the clockwise rotation of the images in degrees
+     */
+    public void setJpegOrientation(int jpegOrientation) {
+        this.jpegOrientation = jpegOrientation;
+    }
+
+    /**
+     * Returns whether the pipeline is frozen.
+     *
+     * @return {@code true} if the pipeline is frozen
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public void onFrame(@NonNull ByteBuffer data, long timestamp, long arrivalTime, long sourceLatency) {
+        FrameWatchdog.Stage recoveredStage = frameWatchdog.onFrame();
+        if (recoveredStage != null) {
+            logger.info("Frame delivery recovered after {}", recoveredStage);
+            logger.event(CameraEvents.RECOVERED, recoveredStage.ordinal());
+        }
+        // frames the image reader discarded never get here, but leave a gap in the timestamps
+        frameStats.recordTimestamp(timestamp);
+        if (arrivalTime - housekeepingTime >= TimeUnit.MILLISECONDS.toNanos(CameraTestConstants.HOUSEKEEPING_INTERVAL)) {
+            housekeepingTime = arrivalTime;
+            housekeeping(arrivalTime);
+        }
+
+        if (frozen) {
+            return;
+        }
+
+        JpegHeaderParser.parse(data, metadata);
+        metadata.setCapture(timestamp, jpegOrientation);
+        changeDetector.tag(metadata);
+        motionAnalyzer.tag(metadata);
+        frameExchange.publish(data, timestamp, metadata);
+        frameStats.recordFrame(sourceLatency, System.nanoTime() - arrivalTime);
+
+        if (firstFrameOfSession) {
+            firstFrameOfSession = false;
+            logger.event(CameraEvents.FIRST_FRAME, timestamp);
+            StartupTrace trace = startupCoordinator.onFirstFrame();
+            if (trace != null) {
+                logger.info("{}", trace);
+            }
+        }
+
+        if (frameBus.hasSubscribers()) {
+            FrameLease frame = frameExchange.acquireLatest();
+            if (frame != null) {
+                frameBus.publish(frame);
+                frame.close();
+            }
+        }
+    }
+
+    /**
+     * Trims the buffer pool and samples the frame statistics. Runs on the frame path instead of a
+     * timer, so that it does not wake the CPU.
+     *
+     * @param now the current {@link System#nanoTime()}
+     */
+    private void housekeeping(long now) {
+        // drop pooled buffers that have not been needed since the last run, e.g. after the
+        // camera resolution has been reduced
+        frameExchange.getBufferPool().trim();
+
+        frameStats.sample(now);
+        if (now - frameStatsLogTime >= TimeUnit.MILLISECONDS.toNanos(CameraTestConstants.FRAME_STATS_LOG_INTERVAL)) {
+            frameStatsLogTime = now;
+            logger.info("{}", frameStats);
+            logger.info("{}", frameWatchdog);
+            logger.info("{}", changeDetector);
+            logger.info("{}", motionAnalyzer);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Computes downscaled copies of every analysis frame once and caches them for any number of
+ * consumers.
+ * <p>
+ * Every level is an I420 image: the luma plane followed by the U and V planes, each chroma plane
+ * with half the width and height rounded up, all without padding. A level is scaled with a
+ * {@link Downscaler} from the smallest larger level that covers it, or from the frame itself, so
+ * e.g. a quarter level costs a fourth of a half level. Each level is published to its own
+ * {@link FrameExchange}, consumers lease it like a full frame and never trigger another scale.
+ * <p>
+ * {@link #onYuvFrame(YuvFrame)} must only be called from one thread at a time.
+ */
+public class FramePyramid implements YuvFrameListener {
+    private static final int INITIAL_CAPACITY = 160 * 120 * 3 / 2;
+
+    private final BufferPool bufferPool;
+
+    /**
+     * The levels in the configured order, replaced as a whole when the configuration changes.
+     */
+    private volatile Level[] levels = new Level[0];
+
+    /**
+     * The levels of {@link #levels} sorted from large to small, used by the scaling thread only.
+     */
+    private Level[] order = new Level[0];
+    private Level[] resolvedLevels = null;
+    private int sourceWidth = 0;
+    private int sourceHeight = 0;
+
+    private volatile long processedFrames = 0;
+
+    private static class Level {
+        private final PyramidLevel spec;
+        private final FrameExchange exchange;
+        private final Downscaler[] scalers = {new Downscaler(), new Downscaler(), new Downscaler()};
+
+        private volatile int width = 0;
+        private volatile int height = 0;
+        private final int[] offsets = new int[3];
+        private byte[] data = new byte[0];
+        private ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        /**
+         * The level this level is scaled from, or {@code null} to scale from the frame.
+         */
+        private Level source = null;
+
+        private Level(@NonNull PyramidLevel spec, @NonNull FrameExchange exchange) {
+            this.spec = spec;
+            this.exchange = exchange;
+        }
+
+        private int getArea() {
+            return width * height;
+        }
+    }
+
+    /**
+     * Create a new instance without levels.
+     *
+     * @param bufferPool the pool that provides the buffers of the cached levels
+     */
+    public FramePyramid(@NonNull BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Replaces the levels. Leases on the previous levels stay valid.
+     *
+     * @param levels the sizes of the levels
+     */
+    public void setLevels(@NonNull List<PyramidLevel> levels) {
+        Level[] newLevels = new Level[levels.size()];
+        for (int i = 0; i < newLevels.length; i++) {
+            newLevels[i] = new Level(levels.get(i), new FrameExchange(bufferPool, INITIAL_CAPACITY));
+        }
+        this.levels = newLevels;
+    }
+
+    /**
+     * Returns the sizes of the levels.
+     *
+     * @return the sizes of the levels
+     */
+    @NonNull
+    public List<PyramidLevel> getLevels() {
+        Level[] current = levels;
+        List<PyramidLevel> specs = new ArrayList<>(current.length);
+        for (Level level : current) {
+            specs.add(level.spec);
+        }
+        return Collections.unmodifiableList(specs);
+    }
+
+    /**
+     * Returns whether levels are configured.
+     *
+     * @return {@code true} if at least one level is configured
+     */
+    public boolean hasLevels() {
+        return levels.length > 0;
+    }
+
+    /**
+     * Returns a lease on the latest image of a level. The lease must be closed by the caller.
+     *
+     * @param index the index of the level in the configured order
+     * @return a lease on the latest image of the level, or {@code null} if there is no such level
+     * or nothing has been scaled yet
+     */
+    @Nullable
+    public FrameLease acquireLatest(int index) {
+        Level[] current = levels;
+        if ((index < 0) || (index >= current.length)) {
+            return null;
+        }
+        return current[index].exchange.acquireLatest();
+    }
+
+    /**
+     * Returns the width of the latest image of a level.
+     *
+     * @param index the index of the level in the configured order
+     * @return the width in pixels, 0 if nothing has been scaled yet
+     */
+    public int getWidth(int index) {
+        return levels[index].width;
+    }
+
+    /**
+     * Returns the height of the latest image of a level.
+     *
+     * @param index the index of the level in the configured order
+     * @return the height in pixels, 0 if nothing has been scaled yet
+     */
+    public int getHeight(int index) {
+        return levels[index].height;
+    }
+
+    /**
+     * Returns the number of frames that have been scaled.
+     *
+     * @return the number of processed frames
+     */
+    public long getProcessedFrames() {
+        return processedFrames;
+    }
+
+    @Override
+    public void onYuvFrame(@NonNull YuvFrame frame) {
+        Level[] current = levels;
+        if (current.length == 0) {
+            return;
+        }
+        if ((current != resolvedLevels) || (frame.getWidth() != sourceWidth) || (frame.getHeight() != sourceHeight)) {
+            resolve(current, frame.getWidth(), frame.getHeight());
+        }
+
+        for (Level level : order) {
+            if (level.source == null) {
+                scaleFromFrame(frame, level);
+            } else {
+                scaleFromLevel(level.source, level);
+            }
+            level.buffer.clear();
+            level.exchange.publish(level.buffer, frame.getTimestamp());
+        }
+        processedFrames++;
+    }
+
+    /**
+     * Computes the sizes of the levels for a frame size and chooses the source of each level.
+     */
+    private void resolve(Level[] current, int width, int height) {
+        for (Level level : current) {
+            int levelWidth = level.spec.getWidth(width);
+            int levelHeight = level.spec.getHeight(height);
+            int size = levelWidth * levelHeight + 2 * chromaSize(levelWidth) * chromaSize(levelHeight);
+            if (level.data.length != size) {
+                level.data = new byte[size];
+                level.buffer = ByteBuffer.wrap(level.data);
+            }
+            level.width = levelWidth;
+            level.height = levelHeight;
+            level.offsets[YuvFrame.U] = levelWidth * levelHeight;
+            level.offsets[YuvFrame.V] = level.offsets[YuvFrame.U] + chromaSize(levelWidth) * chromaSize(levelHeight);
+        }
+
+        Level[] sorted = Arrays.copyOf(current, current.length);
+        Arrays.sort(sorted, new Comparator<Level>() {
+            @Override
+            public int compare(Level a, Level b) {
+                return Integer.compare(b.getArea(), a.getArea());
+            }
+        });
+        for (int i = 0; i < sorted.length; i++) {
+            Level level = sorted[i];
+            level.source = null;
+            for (int j = 0; j < i; j++) {
+                // the smallest larger level that covers this one, scaling a copy is a waste
+                Level candidate = sorted[j];
+                if ((candidate.width >= level.width) && (candidate.height >= level.height)
+                        && (candidate.getArea() > level.getArea())) {
+                    level.source = candidate;
+                }
+            }
+        }
+
+        order = sorted;
+        resolvedLevels = current;
+        sourceWidth = width;
+        sourceHeight = height;
+    }
+
+    private static void scaleFromFrame(YuvFrame frame, Level level) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        for (int i = 0; i < 3; i++) {
+            YuvFrame.Plane plane = frame.getPlane(i);
+            Downscaler scaler = level.scalers[i];
+            if (i == YuvFrame.Y) {
+                scaler.configure(width, height, level.width, level.height);
+            } else {
+                scaler.configure(chromaSize(width), chromaSize(height), chromaSize(level.width), chromaSize(level.height));
+            }
+            scaler.scale(plane.getBuffer(), 0, plane.getRowStride(), plane.getPixelStride(), level.data, level.offsets[i]);
+        }
+    }
+
+    private static void scaleFromLevel(Level source, Level level) {
+        for (int i = 0; i < 3; i++) {
+            Downscaler scaler = level.scalers[i];
+            int rowStride;
+            if (i == YuvFrame.Y) {
+                scaler.configure(source.width, source.height, level.width, level.height);
+                rowStride = source.width;
+            } else {
+                scaler.configure(chromaSize(source.width), chromaSize(source.height), chromaSize(level.width), chromaSize(level.height));
+                rowStride = chromaSize(source.width);
+            }
+            scaler.scale(source.buffer, source.offsets[i], rowStride, 1, level.data, level.offsets[i]);
+        }
+    }
+
+    private static int chromaSize(int size) {
+        return (size + 1) / 2;
+    }
+}
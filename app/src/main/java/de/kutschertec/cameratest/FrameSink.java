@@ -0,0 +1,23 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the frames produced by a {@link FrameSource}.
+ */
+public interface FrameSink {
+    /**
+     * Called for every frame of the source, always on the same thread. The data is only valid
+     * during the call.
+     *
+     * @param data          the frame data between position and limit
+     * @param timestamp     the timestamp of the frame in nanoseconds, in the time base of the
+     *                      source
+     * @param arrivalTime   the {@link System#nanoTime()} when the frame arrived from the source
+     * @param sourceLatency the time from the capture to the arrival in nanoseconds, or a negative
+     *                      value if it is not known
+     */
+    void onFrame(@NonNull ByteBuffer data, long timestamp, long arrivalTime, long sourceLatency);
+}
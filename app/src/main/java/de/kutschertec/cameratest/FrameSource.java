@@ -0,0 +1,60 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A source of camera frames, e.g. the camera2 API or a synthetic generator. Separates the
+ * hardware from the frame path behind it, so that the frame path can be tested and load tested
+ * without a camera.
+ */
+public interface FrameSource {
+    /**
+     * The formats of the frame data.
+     */
+    enum Format {
+        /**
+         * A JPEG stream.
+         */
+        JPEG,
+
+        /**
+         * YUV 4:2:0 with a full resolution Y plane followed by the U and V planes at quarter
+         * resolution, without padding.
+         */
+        YUV_420
+    }
+
+    /**
+     * Returns the format of the frames.
+     *
+     * @return the format of the frames
+     */
+    @NonNull
+    Format getFormat();
+
+    /**
+     * Returns the width of the frames.
+     *
+     * @return the width of the frames in pixels
+     */
+    int getWidth();
+
+    /**
+     * Returns the height of the frames.
+     *
+     * @return the height of the frames in pixels
+     */
+    int getHeight();
+
+    /**
+     * Starts delivering frames.
+     *
+     * @param sink the sink that receives the frames
+     */
+    void start(@NonNull FrameSink sink);
+
+    /**
+     * Stops delivering frames. No frame is delivered after this method returns.
+     */
+    void stop();
+}
@@ -0,0 +1,229 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and counters of the frame path, from the sensor to the consumer.
+ * <p>
+ * The stages are:
+ * <ul>
+ * <li>sensor to callback: from the start of exposure to the image available callback, only if the
+ * sensor timestamps share the time base of the callback clock</li>
+ * <li>callback to copy: from the image available callback until the frame has been copied into
+ * the {@link FrameExchange}</li>
+ * <li>copy to read: from the copy until a consumer acquires the frame</li>
+ * <li>hold: from a consumer acquiring the frame until it releases it, recorded by every
+ * {@link FrameLease} on the frames of the {@link FrameExchange} when it is closed</li>
+ * </ul>
+ * Frames superseded in the {@link FrameExchange} before any consumer acquired them count as
+ * dropped. Frames the sensor captured, but that never reached the frame path, count as missed;
+ * they are derived from the sensor timestamps by a {@link FrameGapCounter}. None of the record
+ * methods allocate.
+ */
+public class FrameStats {
+    private final FrameExchange frameExchange;
+
+    private final LatencyHistogram sensorToCallback = new LatencyHistogram();
+    private final LatencyHistogram callbackToCopy = new LatencyHistogram();
+    private final LatencyHistogram copyToRead = new LatencyHistogram();
+    private final LatencyHistogram hold;
+
+    private final AtomicLong frames = new AtomicLong(0);
+    private final FrameGapCounter gapCounter = new FrameGapCounter();
+
+    private final Object sampleLock = new Object();
+    private long sampleFrames = 0;
+    private long sampleNanos = 0;
+    private volatile float fps = 0;
+
+    /**
+     * Create a new instance.
+     *
+     * @param frameExchange the exchange the frames are published to
+     */
+    public FrameStats(@NonNull FrameExchange frameExchange) {
+        this.frameExchange = frameExchange;
+        this.hold = frameExchange.getHoldTimes();
+    }
+
+    /**
+     * Records a frame that has been published.
+     *
+     * @param sensorToCallbackNanos the time from the sensor timestamp to the callback, or a
+     *                              negative value if it is not known
+     * @param callbackToCopyNanos   the time from the callback until the frame had been copied
+     */
+    public void recordFrame(long sensorToCallbackNanos, long callbackToCopyNanos) {
+        frames.incrementAndGet();
+        if (sensorToCallbackNanos >= 0) {
+            sensorToCallback.record(sensorToCallbackNanos);
+        }
+        callbackToCopy.record(callbackToCopyNanos);
+    }
+
+    /**
+     * Records the sensor timestamp of a frame that has reached the frame path, whether it is
+     * published or not.
+     *
+     * @param timestamp the sensor timestamp in nanoseconds
+     * @return the number of frames missed before this one
+     */
+    public long recordTimestamp(long timestamp) {
+        return gapCounter.onFrame(timestamp);
+    }
+
+    /**
+     * Sets the frame duration the camera reports for its captures, so that frames that are missed
+     * from the start of a session are counted as well.
+     *
+     * @param frameDurationNanos the frame duration in nanoseconds, or 0 if it is not known
+     */
+    public void setFrameDuration(long frameDurationNanos) {
+        gapCounter.setFrameDuration(frameDurationNanos);
+    }
+
+    /**
+     * Forgets the last sensor timestamp, e.g. at the start of a capture session, so that the time
+     * in between does not count as missed frames.
+     */
+    public void restartTimeline() {
+        gapCounter.restart();
+    }
+
+    /**
+     * Records a consumer acquiring a frame.
+     *
+     * @param copyToReadNanos the time from the copy of the frame until it has been acquired
+     */
+    public void recordRead(long copyToReadNanos) {
+        copyToRead.record(copyToReadNanos);
+    }
+
+    /**
+     * Updates the frame rate from the frames published since the previous call. Meant to be called
+     * periodically, e.g. by a watchdog.
+     *
+     * @param nowNanos the current {@link System#nanoTime()}
+     */
+    public void sample(long nowNanos) {
+        synchronized (sampleLock) {
+            long currentFrames = frames.get();
+            if ((sampleNanos != 0) && (nowNanos > sampleNanos)) {
+                fps = (currentFrames - sampleFrames) * 1e9f / (nowNanos - sampleNanos);
+            }
+            sampleFrames = currentFrames;
+            sampleNanos = nowNanos;
+        }
+    }
+
+    /**
+     * Returns the histogram of the times from the sensor timestamp of a frame to its image
+     * available callback. It stays empty if the sensor timestamps use another time base.
+     *
+     * @return the sensor to callback histogram
+     */
+    @NonNull
+    public LatencyHistogram getSensorToCallback() {
+        return sensorToCallback;
+    }
+
+    /**
+     * Returns the histogram of the times from the image available callback until the frame has
+     * been copied into the {@link FrameExchange}.
+     *
+     * @return the callback to copy histogram
+     */
+    @NonNull
+    public LatencyHistogram getCallbackToCopy() {
+        return callbackToCopy;
+    }
+
+    /**
+     * Returns the histogram of the times from the copy of a frame until a consumer acquired it.
+     *
+     * @return the copy to read histogram
+     */
+    @NonNull
+    public LatencyHistogram getCopyToRead() {
+        return copyToRead;
+    }
+
+    /**
+     * Returns the histogram of the times consumers held a frame, shared with the {@link
+     * FrameExchange}.
+     *
+     * @return the hold histogram
+     */
+    @NonNull
+    public LatencyHistogram getHold() {
+        return hold;
+    }
+
+    /**
+     * Returns the number of published frames.
+     *
+     * @return the number of published frames
+     */
+    public long getFrames() {
+        return frames.get();
+    }
+
+    /**
+     * Returns the number of frames that have been superseded before any consumer acquired them.
+     *
+     * @return the number of dropped frames
+     */
+    public long getDroppedFrames() {
+        return frameExchange.getSupersededFrames();
+    }
+
+    /**
+     * Returns the number of frames the sensor captured, but that never reached the frame path,
+     * e.g. because the image reader discarded or had no room for them.
+     *
+     * @return the number of missed frames
+     */
+    public long getMissedFrames() {
+        return gapCounter.getMissedFrames();
+    }
+
+    /**
+     * Returns the counter that derives the missed frames from the sensor timestamps.
+     *
+     * @return the frame gap counter
+     */
+    @NonNull
+    public FrameGapCounter getGapCounter() {
+        return gapCounter;
+    }
+
+    /**
+     * Returns the frame rate between the last two calls of {@link #sample(long)}.
+     *
+     * @return the frame rate in frames per second
+     */
+    public float getFps() {
+        return fps;
+    }
+
+    /**
+     * Clears all histograms. The frame counters are kept.
+     */
+    public void reset() {
+        sensorToCallback.reset();
+        callbackToCopy.reset();
+        copyToRead.reset();
+        hold.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "FrameStats[fps=" + fps + ";frames=" + getFrames() + ";dropped=" + getDroppedFrames()
+                + ";missed=" + getMissedFrames() + "]\n  sensor to callback: " + sensorToCallback
+                + "\n  callback to copy:   " + callbackToCopy
+                + "\n  copy to read:       " + copyToRead
+                + "\n  hold:               " + hold;
+    }
+}
@@ -0,0 +1,198 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The intervals and sizes of a sequence of frames, e.g. recorded from a camera with a
+ * {@link Recorder} or generated with {@link #generate(int, float, float, int, long)}. Replayed by a
+ * {@link SyntheticFrameSource}.
+ * <p>
+ * The text form has one frame per line, the interval to the previous frame in nanoseconds and
+ * the size in bytes, separated by a space. Lines starting with {@code #} are ignored.
+ */
+public class FrameTrace {
+    private long[] intervals = new long[64];
+    private int[] sizes = new int[64];
+    private int count = 0;
+
+    /**
+     * Appends a frame.
+     *
+     * @param intervalNanos the interval to the previous frame in nanoseconds
+     * @param size          the size of the frame in bytes
+     */
+    public synchronized void add(long intervalNanos, int size) {
+        if (count == intervals.length) {
+            intervals = Arrays.copyOf(intervals, count * 2);
+            sizes = Arrays.copyOf(sizes, count * 2);
+        }
+        intervals[count] = intervalNanos;
+        sizes[count] = size;
+        count++;
+    }
+
+    /**
+     * Returns the number of frames.
+     *
+     * @return the number of frames
+     */
+    public synchronized int getFrameCount() {
+        return count;
+    }
+
+    /**
+     * Returns the interval of a frame to its predecessor.
+     *
+     * @param index the index of the frame
+     * @return the interval in nanoseconds
+     */
+    public synchronized long getInterval(int index) {
+        checkIndex(index);
+        return intervals[index];
+    }
+
+    /**
+     * Returns the size of a frame.
+     *
+     * @param index the index of the frame
+     * @return the size in bytes
+     */
+    public synchronized int getFrameSize(int index) {
+        checkIndex(index);
+        return sizes[index];
+    }
+
+    /**
+     * Returns the largest frame size.
+     *
+     * @return the largest frame size in bytes, 0 for an empty trace
+     */
+    public synchronized int getMaxFrameSize() {
+        int max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, sizes[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Adds a stall to every n-th frame by making its interval longer.
+     *
+     * @param period     the number of frames between two stalls
+     * @param stallNanos the duration of a stall in nanoseconds
+     */
+    public synchronized void addStalls(int period, long stallNanos) {
+        for (int i = period; i < count; i += period) {
+            intervals[i] += stallNanos;
+        }
+    }
+
+    /**
+     * Generates a trace of frames at a fixed rate with random jitter.
+     *
+     * @param frames    the number of frames
+     * @param fps       the frame rate
+     * @param jitter    the maximum deviation of an interval as a fraction of the interval, e.g.
+     *                  0.1 for +-10%
+     * @param frameSize the size of the frames in bytes
+     * @param seed      the seed of the jitter
+     * @return the generated trace
+     */
+    @NonNull
+    public static FrameTrace generate(int frames, float fps, float jitter, int frameSize, long seed) {
+        FrameTrace trace = new FrameTrace();
+        Random random = new Random(seed);
+        double interval = 1e9 / fps;
+        for (int i = 0; i < frames; i++) {
+            double deviation = (2 * random.nextDouble() - 1) * jitter;
+            trace.add(Math.max(0, Math.round(interval * (1 + deviation))), frameSize);
+        }
+        return trace;
+    }
+
+    /**
+     * Reads a trace in its text form.
+     *
+     * @param reader the reader to read from
+     * @return the trace
+     * @throws IOException if the trace cannot be read or is malformed
+     */
+    @NonNull
+    public static FrameTrace read(@NonNull Reader reader) throws IOException {
+        FrameTrace trace = new FrameTrace();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            try {
+                trace.add(Long.parseLong(fields[0]), Integer.parseInt(fields[1]));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Malformed frame trace line: " + line, e);
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Writes the trace in its text form.
+     *
+     * @param writer the writer to write to
+     * @throws IOException if the trace cannot be written
+     */
+    public synchronized void write(@NonNull Writer writer) throws IOException {
+        writer.write("# interval_ns size_bytes\n");
+        for (int i = 0; i < count; i++) {
+            writer.write(intervals[i] + " " + sizes[i] + "\n");
+        }
+        writer.flush();
+    }
+
+    private void checkIndex(int index) {
+        if ((index < 0) || (index >= count)) {
+            throw new IndexOutOfBoundsException("Invalid frame index: " + index);
+        }
+    }
+
+    /**
+     * {@link FrameSink} that records the arrival intervals and sizes of the frames into a trace
+     * and passes the frames on.
+     */
+    public static class Recorder implements FrameSink {
+        private final FrameTrace trace;
+        private final FrameSink next;
+        private long lastArrivalTime = -1;
+
+        /**
+         * Create a new instance.
+         *
+         * @param trace the trace to record into
+         * @param next  the sink to pass the frames on to, or {@code null}
+         */
+        public Recorder(@NonNull FrameTrace trace, @Nullable FrameSink next) {
+            this.trace = trace;
+            this.next = next;
+        }
+
+        @Override
+        public void onFrame(@NonNull ByteBuffer data, long timestamp, long arrivalTime, long sourceLatency) {
+            trace.add((lastArrivalTime < 0) ? 0 : arrivalTime - lastArrivalTime, data.remaining());
+            lastArrivalTime = arrivalTime;
+            if (next != null) {
+                next.onFrame(data, timestamp, arrivalTime, sourceLatency);
+            }
+        }
+    }
+}
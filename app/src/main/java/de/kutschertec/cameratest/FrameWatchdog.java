@@ -0,0 +1,333 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watchdog that detects stalled frame delivery and recovers in escalating stages.
+ * <p>
+ * The stall threshold follows the measured frame interval: the watchdog keeps an exponentially
+ * weighted moving average of the interval and its variance, estimates the 99th percentile as
+ * mean + 2.33 standard deviations and treats {@link #STALL_MULTIPLIER} times that estimate, but at
+ * least {@link #MIN_STALL_NANOS}, as a stall. Until enough frames have been seen,
+ * {@link #INITIAL_STALL_NANOS} is used.
+ * <p>
+ * The watchdog does not poll. Every frame moves the deadline of a timer on a {@link Scheduler},
+ * so the timer only fires if frames stop arriving and there are no wakeups while frames flow.
+ * <p>
+ * A stall triggers the first {@link Stage}. If no frame arrives within the threshold, but at least
+ * {@link #RECOVERY_GRACE_NANOS}, after a recovery action, the next stage is tried; the last stage
+ * is repeated until frames arrive again. The time from the first action to the next frame is
+ * recorded per stage that ended the stall.
+ */
+public class FrameWatchdog {
+    /**
+     * Smallest stall threshold, so that a very steady frame rate does not cause false alarms.
+     */
+    public static final long MIN_STALL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    /**
+     * Stall threshold until the frame interval has been measured.
+     */
+    public static final long INITIAL_STALL_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    /**
+     * Minimum time a recovery action gets before the next stage is tried.
+     */
+    public static final long RECOVERY_GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(2000);
+
+    /**
+     * Smallest stall threshold for the first frame after {@link #arm()}, which includes opening
+     * the camera and configuring the session.
+     */
+    public static final long STARTUP_STALL_NANOS = TimeUnit.MILLISECONDS.toNanos(3000);
+
+    /**
+     * The stall threshold as a multiple of the estimated 99th percentile of the frame interval.
+     */
+    public static final double STALL_MULTIPLIER = 4.0;
+
+    /**
+     * The number of frame intervals to measure before the estimate is used.
+     */
+    public static final int WARMUP_FRAMES = 8;
+
+    private static final double ALPHA = 1.0 / 16;
+    private static final double P99_DEVIATIONS = 2.33;
+
+    private final Clock clock;
+    private final Scheduler scheduler;
+    private final RecoveryHandler recoveryHandler;
+    private final Runnable timer = this::onTimer;
+
+    private boolean armed = false;
+    private boolean awaitingFirstFrame = false;
+    private long lastFrameTime;
+    private long samples;
+    private double meanInterval;
+    private double intervalVariance;
+
+    /**
+     * The stage of the last recovery action, or {@code null} if frames are delivered.
+     */
+    private Stage stage = null;
+    private long stallStartTime;
+    private long lastActionTime;
+
+    private long wakeups;
+    private final long[] actions = new long[Stage.values().length];
+    private final LatencyHistogram[] recoveryTimes = new LatencyHistogram[Stage.values().length];
+
+    /**
+     * The stages of the recovery, in the order they are tried.
+     */
+    public enum Stage {
+        /**
+         * Issue the repeating request again.
+         */
+        REISSUE_REQUEST,
+
+        /**
+         * Close and rebuild the capture session.
+         */
+        REBUILD_SESSION,
+
+        /**
+         * Close and reopen the camera device.
+         */
+        REOPEN_DEVICE
+    }
+
+    /**
+     * Performs the recovery actions of the watchdog.
+     */
+    public interface RecoveryHandler {
+        /**
+         * Performs a recovery action. Called on the thread of the {@link Scheduler}.
+         *
+         * @param stage the recovery stage to perform
+         */
+        void recover(@NonNull Stage stage);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param clock           the clock to measure frame intervals with
+     * @param scheduler       runs the stall timer
+     * @param recoveryHandler performs the recovery actions
+     */
+    public FrameWatchdog(@NonNull Clock clock, @NonNull Scheduler scheduler, @NonNull RecoveryHandler recoveryHandler) {
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.recoveryHandler = recoveryHandler;
+        for (int i = 0; i < recoveryTimes.length; i++) {
+            recoveryTimes[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Starts watching, e.g. when the camera has been started. The first frame is expected within
+     * the current stall threshold, but at least {@link #STARTUP_STALL_NANOS}.
+     */
+    public synchronized void arm() {
+        armed = true;
+        awaitingFirstFrame = true;
+        stage = null;
+        lastFrameTime = clock.nanoTime();
+        rearm(getCurrentThresholdNanos());
+    }
+
+    /**
+     * Stops watching, e.g. when the camera is closed on purpose.
+     */
+    public synchronized void disarm() {
+        armed = false;
+        stage = null;
+        scheduler.cancel(timer);
+    }
+
+    /**
+     * Reports a delivered frame.
+     *
+     * @return the recovery stage that ended a stall with this frame, or {@code null} if there was
+     * no stall
+     */
+    public synchronized Stage onFrame() {
+        Stage recovered = stage;
+        long now = clock.nanoTime();
+        if (stage != null) {
+            // neither the interval across a stall nor the startup time say anything about the
+            // frame rate
+            recoveryTimes[stage.ordinal()].record(now - stallStartTime);
+            stage = null;
+        } else if (armed && !awaitingFirstFrame) {
+            updateEstimate(now - lastFrameTime);
+        }
+        awaitingFirstFrame = false;
+        lastFrameTime = now;
+        if (armed) {
+            rearm(getStallThresholdNanos());
+        }
+        return recovered;
+    }
+
+    /**
+     * Checks for a stall and performs the next recovery action if necessary. Called by the stall
+     * timer, calling it in between does no harm.
+     *
+     * @return the recovery stage that has been performed, or {@code null} if there was no action
+     */
+    public Stage check() {
+        Stage action;
+        synchronized (this) {
+            if (!armed) {
+                return null;
+            }
+
+            long now = clock.nanoTime();
+            long threshold = getCurrentThresholdNanos();
+            long grace = Math.max(threshold, RECOVERY_GRACE_NANOS);
+            if (stage == null) {
+                long idle = now - lastFrameTime;
+                if (idle <= threshold) {
+                    // a frame has moved the deadline after the timer had been dispatched
+                    rearm(threshold - idle);
+                    return null;
+                }
+                stallStartTime = now;
+                stage = Stage.REISSUE_REQUEST;
+            } else {
+                long elapsed = now - lastActionTime;
+                if (elapsed <= grace) {
+                    rearm(grace - elapsed);
+                    return null;
+                }
+                if (stage.ordinal() + 1 < Stage.values().length) {
+                    stage = Stage.values()[stage.ordinal() + 1];
+                }
+            }
+
+            lastActionTime = now;
+            actions[stage.ordinal()]++;
+            action = stage;
+            rearm(grace);
+        }
+
+        // outside of the lock, the handler may report frames or re-arm
+        recoveryHandler.recover(action);
+        return action;
+    }
+
+    /**
+     * Returns the current stall threshold.
+     *
+     * @return the current stall threshold in nanoseconds
+     */
+    public synchronized long getStallThresholdNanos() {
+        if (samples < WARMUP_FRAMES) {
+            return INITIAL_STALL_NANOS;
+        }
+        return Math.max(MIN_STALL_NANOS, (long) (STALL_MULTIPLIER * getP99IntervalNanos()));
+    }
+
+    /**
+     * Returns the estimated 99th percentile of the frame interval.
+     *
+     * @return the estimated 99th percentile of the frame interval in nanoseconds, 0 before the
+     * first interval has been measured
+     */
+    public synchronized long getP99IntervalNanos() {
+        return (long) (meanInterval + P99_DEVIATIONS * Math.sqrt(intervalVariance));
+    }
+
+    /**
+     * Returns how often the stall timer has fired. While frames are delivered in time, the timer
+     * does not fire at all.
+     *
+     * @return the number of timer wakeups
+     */
+    public synchronized long getWakeups() {
+        return wakeups;
+    }
+
+    /**
+     * Returns the current recovery stage.
+     *
+     * @return the stage of the last recovery action, or {@code null} if frames are delivered
+     */
+    public synchronized Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * Returns how often a recovery stage has been performed.
+     *
+     * @param stage the recovery stage
+     * @return the number of actions of the stage
+     */
+    public synchronized long getActions(@NonNull Stage stage) {
+        return actions[stage.ordinal()];
+    }
+
+    /**
+     * Returns the times from the start of a stall to the next frame, for the stalls that ended
+     * after the given stage.
+     *
+     * @param stage the recovery stage
+     * @return the times to recover in nanoseconds
+     */
+    @NonNull
+    public LatencyHistogram getRecoveryTimes(@NonNull Stage stage) {
+        return recoveryTimes[stage.ordinal()];
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder watchdog = new StringBuilder();
+        watchdog.append("FrameWatchdog[threshold=").append(getStallThresholdNanos() / 1000000).append("ms");
+        watchdog.append(";wakeups=").append(wakeups);
+        for (Stage s : Stage.values()) {
+            watchdog.append(';').append(s).append('=').append(actions[s.ordinal()]);
+        }
+        watchdog.append(']');
+        return watchdog.toString();
+    }
+
+    private void onTimer() {
+        synchronized (this) {
+            wakeups++;
+        }
+        check();
+    }
+
+    /**
+     * Moves the stall timer, so that it fires once the given time has passed.
+     */
+    private void rearm(long delayNanos) {
+        scheduler.cancel(timer);
+        // stalls are detected strictly after the threshold
+        scheduler.schedule(timer, delayNanos + 1);
+    }
+
+    private long getCurrentThresholdNanos() {
+        long threshold = getStallThresholdNanos();
+        if (awaitingFirstFrame) {
+            threshold = Math.max(threshold, STARTUP_STALL_NANOS);
+        }
+        return threshold;
+    }
+
+    private void updateEstimate(long interval) {
+        if (samples == 0) {
+            meanInterval = interval;
+            intervalVariance = 0;
+        } else {
+            double difference = interval - meanInterval;
+            meanInterval += ALPHA * difference;
+            intervalVariance = (1 - ALPHA) * (intervalVariance + ALPHA * difference * difference);
+        }
+        samples++;
+    }
+}
@@ -0,0 +1,88 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Describes how the JPEG images are taken from the camera: the number of images the image reader
+ * holds and whether only the latest or every image is processed.
+ */
+public final class ImageAcquisition {
+    /**
+     * How the images are taken from the image reader.
+     */
+    public enum Mode {
+        /**
+         * Only the latest image is processed. Images that arrive while a frame is processed are
+         * discarded by the reader, which keeps the latency low.
+         */
+        LATEST,
+
+        /**
+         * Every image is processed in order. The reader is a bounded queue of
+         * {@link #getMaxImages()} images; only when it is full, the camera drops frames.
+         */
+        ALL
+    }
+
+    private final Mode mode;
+    private final int maxImages;
+
+    private ImageAcquisition(@NonNull Mode mode, int maxImages) {
+        this.mode = mode;
+        this.maxImages = maxImages;
+    }
+
+    /**
+     * Returns an acquisition that only processes the latest image.
+     *
+     * @param maxImages the number of images of the reader, at least 2, so that the camera can
+     *                  write an image while the latest one is processed
+     * @return an acquisition that only processes the latest image
+     */
+    @NonNull
+    public static ImageAcquisition latestOnly(int maxImages) {
+        if (maxImages < 2) {
+            throw new IllegalArgumentException("Latest-only acquisition needs at least 2 images: " + maxImages);
+        }
+        return new ImageAcquisition(Mode.LATEST, maxImages);
+    }
+
+    /**
+     * Returns an acquisition that processes every image, e.g. for recording.
+     *
+     * @param maxImages the number of images of the reader, which buffers bursts of slow
+     *                  processing
+     * @return an acquisition that processes every image
+     */
+    @NonNull
+    public static ImageAcquisition processAll(int maxImages) {
+        if (maxImages < 1) {
+            throw new IllegalArgumentException("Acquisition needs at least 1 image: " + maxImages);
+        }
+        return new ImageAcquisition(Mode.ALL, maxImages);
+    }
+
+    /**
+     * Returns whether only the latest or every image is processed.
+     *
+     * @return the acquisition mode
+     */
+    @NonNull
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the number of images the image reader holds.
+     *
+     * @return the maximum number of images
+     */
+    public int getMaxImages() {
+        return maxImages;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageAcquisition[mode=" + mode + ";maxImages=" + maxImages + "]";
+    }
+}
@@ -0,0 +1,303 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes YUV frames to JPEG in software, once per output with its own quality or target size.
+ * <p>
+ * Each {@link Output} owns a {@link JpegEncoder}, so its tables and output buffer are reused from
+ * frame to frame, and publishes its files to its own {@link FrameExchange}. The outputs of a frame
+ * are encoded in parallel on a pool of worker threads. {@link #onYuvFrame(YuvFrame)} returns once
+ * all outputs are done, because the frame is reused afterwards; when the encoders are slower than
+ * the camera, the {@link YuvStream} in front of the stage drops frames instead.
+ * <p>
+ * An output with a target size re-encodes a frame once if it exceeds the target by more than
+ * {@link #MAX_OVERSHOOT}, so that e.g. the first frame of a stream does not flood a slow uplink.
+ */
+public class JpegEncodeStage implements YuvFrameListener, Closeable {
+    /**
+     * The factor by which a frame may exceed the target size before it is encoded again.
+     */
+    public static final double MAX_OVERSHOOT = 1.5;
+
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 10;
+
+    private final Logger logger = new Logger(this);
+
+    private final BufferPool bufferPool;
+    private final ThreadPoolExecutor executor;
+    private final List<Output> outputs = new CopyOnWriteArrayList<>();
+
+    private final Object lock = new Object();
+    private int pendingOutputs = 0;
+
+    /**
+     * An output of the stage.
+     */
+    public class Output {
+        private final JpegSettings settings;
+        private final JpegEncoder encoder = new JpegEncoder();
+        private final JpegQualityController qualityController;
+        private final FrameExchange exchange;
+        private final LatencyHistogram encodeTimes = new LatencyHistogram();
+        private final Runnable task = this::encode;
+
+        /**
+         * The frame to encode, handed over by the executor.
+         */
+        private YuvFrame frame;
+
+        private volatile long lastEncodeNanos = 0;
+        private volatile int lastQuality = 0;
+        private volatile int lastSize = 0;
+        private volatile long encodedFrames = 0;
+        private volatile long reencodedFrames = 0;
+
+        private Output(@NonNull JpegSettings settings) {
+            this.settings = settings;
+            this.qualityController = settings.hasTargetSize() ? new JpegQualityController(settings.getTargetSize()) : null;
+            this.exchange = new FrameExchange(bufferPool, settings.hasTargetSize() ? settings.getTargetSize() : 65535);
+        }
+
+        /**
+         * Returns a lease on the latest JPEG file of this output. The lease must be closed by the
+         * caller.
+         *
+         * @return a lease on the latest file or {@code null} if nothing has been encoded yet
+         */
+        @Nullable
+        public FrameLease acquireLatest() {
+            return exchange.acquireLatest();
+        }
+
+        /**
+         * Returns the settings the frames of this output are encoded with.
+         *
+         * @return the JPEG settings of this output
+         */
+        @NonNull
+        public JpegSettings getSettings() {
+            return settings;
+        }
+
+        /**
+         * Returns the times it took to encode a frame, including a second pass.
+         *
+         * @return the encode times in nanoseconds
+         */
+        @NonNull
+        public LatencyHistogram getEncodeTimes() {
+            return encodeTimes;
+        }
+
+        /**
+         * Returns the time it took to encode the latest frame.
+         *
+         * @return the encode time in nanoseconds
+         */
+        public long getLastEncodeNanos() {
+            return lastEncodeNanos;
+        }
+
+        /**
+         * Returns the quality of the latest frame.
+         *
+         * @return the quality
+         */
+        public int getLastQuality() {
+            return lastQuality;
+        }
+
+        /**
+         * Returns the size of the latest frame.
+         *
+         * @return the size in bytes
+         */
+        public int getLastSize() {
+            return lastSize;
+        }
+
+        /**
+         * Returns the number of frames encoded for this output.
+         *
+         * @return the number of encoded frames
+         */
+        public long getEncodedFrames() {
+            return encodedFrames;
+        }
+
+        /**
+         * Returns how often a frame has been encoded a second time because it was too large.
+         *
+         * @return the number of re-encoded frames
+         */
+        public long getReencodedFrames() {
+            return reencodedFrames;
+        }
+
+        @Override
+        public String toString() {
+            return "JpegOutput[" + settings + ";quality=" + lastQuality + ";size=" + lastSize
+                    + ";encode=" + lastEncodeNanos / 1000 + "us;frames=" + encodedFrames + "]";
+        }
+
+        /**
+         * Encodes a frame synchronously.
+         */
+        void encode(@NonNull YuvFrame frame) {
+            long start = System.nanoTime();
+            int quality = (qualityController != null) ? qualityController.getQuality() : settings.getQuality();
+            int size = encoder.encode(frame, quality);
+            if (qualityController != null) {
+                boolean changed = qualityController.update(size);
+                if (changed && (size > MAX_OVERSHOOT * qualityController.getTargetSize())) {
+                    quality = qualityController.getQuality();
+                    size = encoder.encode(frame, quality);
+                    qualityController.update(size);
+                    reencodedFrames++;
+                }
+            }
+            exchange.publish(encoder.getOutput(), frame.getTimestamp());
+
+            long encodeNanos = System.nanoTime() - start;
+            encodeTimes.record(encodeNanos);
+            lastEncodeNanos = encodeNanos;
+            lastQuality = quality;
+            lastSize = size;
+            encodedFrames++;
+        }
+
+        private void encode() {
+            try {
+                encode(frame);
+            } catch (RuntimeException e) {
+                logger.error("Error encoding JPEG frame.", e);
+            } finally {
+                frame = null;
+                onOutputDone();
+            }
+        }
+    }
+
+    /**
+     * Create a new instance without outputs. The worker threads are started on demand and stop
+     * when they have been idle for a while.
+     *
+     * @param bufferPool the pool that provides the buffers of the encoded files
+     * @param workers    the number of worker threads
+     */
+    public JpegEncodeStage(@NonNull BufferPool bufferPool, int workers) {
+        this.bufferPool = bufferPool;
+
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        this.executor = new ThreadPoolExecutor(workers, workers, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), task -> new Thread(task, "JpegEncoder-" + threadNumber.incrementAndGet()));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Adds an output.
+     *
+     * @param settings the quality or target size of the output
+     * @return the output
+     */
+    @NonNull
+    public Output addOutput(@NonNull JpegSettings settings) {
+        Output output = new Output(settings);
+        outputs.add(output);
+        return output;
+    }
+
+    /**
+     * Removes an output. Leases on its files stay valid.
+     *
+     * @param output the output
+     */
+    public void removeOutput(@NonNull Output output) {
+        outputs.remove(output);
+    }
+
+    /**
+     * Returns whether outputs have been added.
+     *
+     * @return {@code true} if there is at least one output
+     */
+    public boolean hasOutputs() {
+        return !outputs.isEmpty();
+    }
+
+    /**
+     * Returns the outputs.
+     *
+     * @return a copy of the list of outputs
+     */
+    @NonNull
+    public List<Output> getOutputs() {
+        return new ArrayList<>(outputs);
+    }
+
+    @Override
+    public void onYuvFrame(@NonNull YuvFrame frame) {
+        if (outputs.isEmpty()) {
+            return;
+        }
+
+        synchronized (lock) {
+            for (Output output : outputs) {
+                output.frame = frame;
+                pendingOutputs++;
+                try {
+                    executor.execute(output.task);
+                } catch (RejectedExecutionException e) {
+                    logger.error("JPEG encode stage has been closed.");
+                    output.frame = null;
+                    pendingOutputs--;
+                }
+            }
+
+            // the frame is reused once this method returns
+            boolean interrupted = false;
+            while (pendingOutputs > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads. Frames must not be passed to the stage afterwards.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void onOutputDone() {
+        synchronized (lock) {
+            pendingOutputs--;
+            lock.notifyAll();
+        }
+    }
+}
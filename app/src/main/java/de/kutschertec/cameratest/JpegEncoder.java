@@ -0,0 +1,541 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Baseline JPEG encoder for YUV 4:2:0 images in plain Java.
+ * <p>
+ * The encoder writes JFIF files with 2x2 subsampled chroma, the quantization tables of the JPEG
+ * standard scaled like libjpeg does for a quality from 1 to 100, and the standard Huffman tables.
+ * It uses the floating point AAN forward DCT with the quantization folded into its output scale.
+ * <p>
+ * The Huffman codes are built once for all encoders, the scaled quantization tables are only
+ * recomputed when the quality changes and the output buffer only grows, so encoding a stream of
+ * frames does not allocate. Instances are not thread-safe, use one per thread or stream.
+ */
+public class JpegEncoder {
+    /**
+     * The lowest quality.
+     */
+    public static final int MIN_QUALITY = 1;
+
+    /**
+     * The highest quality.
+     */
+    public static final int MAX_QUALITY = 100;
+
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10,
+            17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34,
+            27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36,
+            29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46,
+            53, 60, 61, 54, 47, 55, 62, 63};
+
+    private static final int[] LUMA_QUANTIZATION = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99};
+
+    private static final int[] CHROMA_QUANTIZATION = {
+            17, 18, 24, 47, 99, 99, 99, 99,
+            18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99,
+            47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99};
+
+    private static final double[] AAN_SCALE = {
+            1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.541196100, 0.275899379};
+
+    private static final int[] DC_LUMA_BITS = {0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] DC_CHROMA_BITS = {0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0};
+    private static final int[] DC_VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+
+    private static final int[] AC_LUMA_BITS = {0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d};
+    private static final int[] AC_LUMA_VALUES = {
+            0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+            0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+            0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+            0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+            0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+            0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+            0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+            0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+            0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+            0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa};
+
+    private static final int[] AC_CHROMA_BITS = {0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77};
+    private static final int[] AC_CHROMA_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+            0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+            0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+            0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+            0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+            0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+            0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+            0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+            0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+            0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa};
+
+    private static final HuffmanTable DC_LUMA = new HuffmanTable(DC_LUMA_BITS, DC_VALUES);
+    private static final HuffmanTable DC_CHROMA = new HuffmanTable(DC_CHROMA_BITS, DC_VALUES);
+    private static final HuffmanTable AC_LUMA = new HuffmanTable(AC_LUMA_BITS, AC_LUMA_VALUES);
+    private static final HuffmanTable AC_CHROMA = new HuffmanTable(AC_CHROMA_BITS, AC_CHROMA_VALUES);
+
+    /**
+     * The largest size of an entropy coded MCU, six blocks of 64 coefficients with at most 32 bits
+     * each, doubled for byte stuffing.
+     */
+    private static final int MAX_MCU_SIZE = 6 * 64 * 4 * 2;
+
+    private static final int HEADER_SIZE = 1024;
+
+    private static final int MAX_AC = 1023;
+
+    /**
+     * The quality of the current tables.
+     */
+    private int quality = -1;
+    private final int[] lumaTable = new int[64];
+    private final int[] chromaTable = new int[64];
+    private final float[] lumaDivisors = new float[64];
+    private final float[] chromaDivisors = new float[64];
+
+    private final ByteBuffer[] planeBuffers = new ByteBuffer[3];
+    private final int[] planeOffsets = new int[3];
+    private final int[] rowStrides = new int[3];
+    private final int[] pixelStrides = new int[3];
+
+    private final float[] block = new float[64];
+    private final int[] coefficients = new int[64];
+
+    private byte[] output = new byte[0];
+    private ByteBuffer outputView = ByteBuffer.wrap(output).asReadOnlyBuffer();
+    private int size = 0;
+    private long bitBuffer = 0;
+    private int bitCount = 0;
+
+    /**
+     * Huffman codes of a table of the JPEG standard.
+     */
+    private static class HuffmanTable {
+        private final int[] bits;
+        private final int[] values;
+        private final int[] codes = new int[256];
+        private final int[] lengths = new int[256];
+
+        private HuffmanTable(int[] bits, int[] values) {
+            this.bits = bits;
+            this.values = values;
+
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < bits[length - 1]; i++) {
+                    codes[values[k]] = code++;
+                    lengths[values[k]] = length;
+                    k++;
+                }
+                code <<= 1;
+            }
+        }
+    }
+
+    /**
+     * Encodes a frame of a {@link YuvStream}.
+     *
+     * @param frame   the frame
+     * @param quality the quality from {@link #MIN_QUALITY} to {@link #MAX_QUALITY}
+     * @return the size of the JPEG file in bytes
+     */
+    public int encode(@NonNull YuvFrame frame, int quality) {
+        for (int i = 0; i < 3; i++) {
+            YuvFrame.Plane plane = frame.getPlane(i);
+            setPlane(i, plane.getBuffer(), 0, plane.getRowStride(), plane.getPixelStride());
+        }
+        return encode(frame.getWidth(), frame.getHeight(), quality);
+    }
+
+    /**
+     * Encodes an I420 image without padding, like the levels of a {@link FramePyramid}.
+     *
+     * @param data    the image, starting at index 0
+     * @param width   the width of the image
+     * @param height  the height of the image
+     * @param quality the quality from {@link #MIN_QUALITY} to {@link #MAX_QUALITY}
+     * @return the size of the JPEG file in bytes
+     */
+    public int encodeI420(@NonNull ByteBuffer data, int width, int height, int quality) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        setPlane(YuvFrame.Y, data, 0, width, 1);
+        setPlane(YuvFrame.U, data, width * height, chromaWidth, 1);
+        setPlane(YuvFrame.V, data, width * height + chromaWidth * chromaHeight, chromaWidth, 1);
+        return encode(width, height, quality);
+    }
+
+    /**
+     * Returns the last encoded JPEG file. The buffer is reused by the next call of an encode
+     * method.
+     *
+     * @return a read-only buffer from position 0 to the end of the file
+     */
+    @NonNull
+    public ByteBuffer getOutput() {
+        outputView.limit(size);
+        outputView.position(0);
+        return outputView;
+    }
+
+    /**
+     * Returns the size of the last encoded JPEG file.
+     *
+     * @return the size in bytes
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the quality of the last encoded JPEG file.
+     *
+     * @return the quality, -1 if nothing has been encoded yet
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    private void setPlane(int index, ByteBuffer buffer, int offset, int rowStride, int pixelStride) {
+        planeBuffers[index] = buffer;
+        planeOffsets[index] = offset;
+        rowStrides[index] = rowStride;
+        pixelStrides[index] = pixelStride;
+    }
+
+    private int encode(int width, int height, int quality) {
+        if ((width <= 0) || (height <= 0) || (width > 65535) || (height > 65535)) {
+            throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+        }
+        setQuality(Math.max(MIN_QUALITY, Math.min(MAX_QUALITY, quality)));
+
+        size = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+        ensureCapacity(HEADER_SIZE);
+        writeHeaders(width, height);
+
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        int lumaDc = 0;
+        int blueDc = 0;
+        int redDc = 0;
+        for (int y = 0; y < height; y += 16) {
+            for (int x = 0; x < width; x += 16) {
+                ensureCapacity(MAX_MCU_SIZE);
+                lumaDc = encodeBlock(YuvFrame.Y, x, y, width, height, lumaDivisors, lumaDc, DC_LUMA, AC_LUMA);
+                lumaDc = encodeBlock(YuvFrame.Y, x + 8, y, width, height, lumaDivisors, lumaDc, DC_LUMA, AC_LUMA);
+                lumaDc = encodeBlock(YuvFrame.Y, x, y + 8, width, height, lumaDivisors, lumaDc, DC_LUMA, AC_LUMA);
+                lumaDc = encodeBlock(YuvFrame.Y, x + 8, y + 8, width, height, lumaDivisors, lumaDc, DC_LUMA, AC_LUMA);
+                blueDc = encodeBlock(YuvFrame.U, x / 2, y / 2, chromaWidth, chromaHeight, chromaDivisors, blueDc, DC_CHROMA, AC_CHROMA);
+                redDc = encodeBlock(YuvFrame.V, x / 2, y / 2, chromaWidth, chromaHeight, chromaDivisors, redDc, DC_CHROMA, AC_CHROMA);
+            }
+        }
+
+        // pad the last byte with 1 bits
+        if (bitCount > 0) {
+            writeBits((1 << (8 - bitCount)) - 1, 8 - bitCount);
+        }
+        ensureCapacity(2);
+        writeMarker(0xD9);
+        return size;
+    }
+
+    private void setQuality(int quality) {
+        if (quality == this.quality) {
+            return;
+        }
+        this.quality = quality;
+
+        int scale = (quality < 50) ? 5000 / quality : 200 - 2 * quality;
+        for (int i = 0; i < 64; i++) {
+            lumaTable[i] = Math.max(1, Math.min(255, (LUMA_QUANTIZATION[i] * scale + 50) / 100));
+            chromaTable[i] = Math.max(1, Math.min(255, (CHROMA_QUANTIZATION[i] * scale + 50) / 100));
+        }
+        for (int row = 0; row < 8; row++) {
+            for (int column = 0; column < 8; column++) {
+                int i = row * 8 + column;
+                double aan = AAN_SCALE[row] * AAN_SCALE[column] * 8.0;
+                lumaDivisors[i] = (float) (1.0 / (lumaTable[i] * aan));
+                chromaDivisors[i] = (float) (1.0 / (chromaTable[i] * aan));
+            }
+        }
+    }
+
+    private void writeHeaders(int width, int height) {
+        writeMarker(0xD8);
+
+        writeMarker(0xE0);
+        writeShort(16);
+        writeByte('J');
+        writeByte('F');
+        writeByte('I');
+        writeByte('F');
+        writeByte(0);
+        writeShort(0x0101);
+        writeByte(0);
+        writeShort(1);
+        writeShort(1);
+        writeShort(0);
+
+        writeMarker(0xDB);
+        writeShort(2 + 2 * 65);
+        writeByte(0);
+        for (int i = 0; i < 64; i++) {
+            writeByte(lumaTable[ZIGZAG[i]]);
+        }
+        writeByte(1);
+        for (int i = 0; i < 64; i++) {
+            writeByte(chromaTable[ZIGZAG[i]]);
+        }
+
+        writeMarker(0xC0);
+        writeShort(17);
+        writeByte(8);
+        writeShort(height);
+        writeShort(width);
+        writeByte(3);
+        writeComponent(1, 0x22, 0);
+        writeComponent(2, 0x11, 1);
+        writeComponent(3, 0x11, 1);
+
+        writeMarker(0xC4);
+        writeShort(2 + tableLength(DC_LUMA) + tableLength(AC_LUMA) + tableLength(DC_CHROMA) + tableLength(AC_CHROMA));
+        writeHuffmanTable(0x00, DC_LUMA);
+        writeHuffmanTable(0x10, AC_LUMA);
+        writeHuffmanTable(0x01, DC_CHROMA);
+        writeHuffmanTable(0x11, AC_CHROMA);
+
+        writeMarker(0xDA);
+        writeShort(12);
+        writeByte(3);
+        writeShort(0x0100);
+        writeShort(0x0211);
+        writeShort(0x0311);
+        writeByte(0);
+        writeByte(63);
+        writeByte(0);
+    }
+
+    private void writeComponent(int id, int sampling, int table) {
+        writeByte(id);
+        writeByte(sampling);
+        writeByte(table);
+    }
+
+    private static int tableLength(HuffmanTable table) {
+        return 1 + 16 + table.values.length;
+    }
+
+    private void writeHuffmanTable(int classAndId, HuffmanTable table) {
+        writeByte(classAndId);
+        for (int count : table.bits) {
+            writeByte(count);
+        }
+        for (int value : table.values) {
+            writeByte(value);
+        }
+    }
+
+    /**
+     * Transforms, quantizes and writes an 8x8 block. Pixels outside of the plane repeat the edge.
+     *
+     * @return the DC coefficient of the block
+     */
+    private int encodeBlock(int plane, int x0, int y0, int width, int height, float[] divisors, int previousDc,
+                            HuffmanTable dcTable, HuffmanTable acTable) {
+        ByteBuffer buffer = planeBuffers[plane];
+        int offset = planeOffsets[plane];
+        int rowStride = rowStrides[plane];
+        int pixelStride = pixelStrides[plane];
+        // blocks of a 16x16 MCU may start outside of a plane with an odd size
+        int startX = Math.min(x0, width - 1);
+        int startY = Math.min(y0, height - 1);
+        for (int row = 0; row < 8; row++) {
+            int rowOffset = offset + Math.min(startY + row, height - 1) * rowStride;
+            for (int column = 0; column < 8; column++) {
+                int x = Math.min(startX + column, width - 1);
+                block[row * 8 + column] = (buffer.get(rowOffset + x * pixelStride) & 0xFF) - 128;
+            }
+        }
+
+        forwardDct(block);
+        coefficients[0] = Math.round(block[0] * divisors[0]);
+        for (int i = 1; i < 64; i++) {
+            int natural = ZIGZAG[i];
+            // rounding must not leave the 10 bit categories of the standard AC tables
+            coefficients[i] = Math.max(-MAX_AC, Math.min(MAX_AC, Math.round(block[natural] * divisors[natural])));
+        }
+
+        int dc = coefficients[0];
+        writeCoefficient(dcTable, 0, dc - previousDc);
+
+        int run = 0;
+        for (int i = 1; i < 64; i++) {
+            int coefficient = coefficients[i];
+            if (coefficient == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                writeBits(acTable.codes[0xF0], acTable.lengths[0xF0]);
+                run -= 16;
+            }
+            writeCoefficient(acTable, run << 4, coefficient);
+            run = 0;
+        }
+        if (run > 0) {
+            writeBits(acTable.codes[0x00], acTable.lengths[0x00]);
+        }
+        return dc;
+    }
+
+    private void writeCoefficient(HuffmanTable table, int runBits, int value) {
+        int magnitude = Math.abs(value);
+        int category = 32 - Integer.numberOfLeadingZeros(magnitude);
+        int symbol = runBits | category;
+        writeBits(table.codes[symbol], table.lengths[symbol]);
+        if (category > 0) {
+            // negative values are written as the one's complement of their magnitude
+            int bits = (value < 0) ? value - 1 : value;
+            writeBits(bits & ((1 << category) - 1), category);
+        }
+    }
+
+    /**
+     * The floating point AAN forward DCT. The output is scaled by the AAN factors and 8, which
+     * the quantization divisors compensate.
+     */
+    private static void forwardDct(float[] data) {
+        for (int i = 0; i < 64; i += 8) {
+            float tmp0 = data[i] + data[i + 7];
+            float tmp7 = data[i] - data[i + 7];
+            float tmp1 = data[i + 1] + data[i + 6];
+            float tmp6 = data[i + 1] - data[i + 6];
+            float tmp2 = data[i + 2] + data[i + 5];
+            float tmp5 = data[i + 2] - data[i + 5];
+            float tmp3 = data[i + 3] + data[i + 4];
+            float tmp4 = data[i + 3] - data[i + 4];
+
+            float tmp10 = tmp0 + tmp3;
+            float tmp13 = tmp0 - tmp3;
+            float tmp11 = tmp1 + tmp2;
+            float tmp12 = tmp1 - tmp2;
+            data[i] = tmp10 + tmp11;
+            data[i + 4] = tmp10 - tmp11;
+            float z1 = (tmp12 + tmp13) * 0.707106781f;
+            data[i + 2] = tmp13 + z1;
+            data[i + 6] = tmp13 - z1;
+
+            tmp10 = tmp4 + tmp5;
+            tmp11 = tmp5 + tmp6;
+            tmp12 = tmp6 + tmp7;
+            float z5 = (tmp10 - tmp12) * 0.382683433f;
+            float z2 = 0.541196100f * tmp10 + z5;
+            float z4 = 1.306562965f * tmp12 + z5;
+            float z3 = tmp11 * 0.707106781f;
+            float z11 = tmp7 + z3;
+            float z13 = tmp7 - z3;
+            data[i + 5] = z13 + z2;
+            data[i + 3] = z13 - z2;
+            data[i + 1] = z11 + z4;
+            data[i + 7] = z11 - z4;
+        }
+
+        for (int i = 0; i < 8; i++) {
+            float tmp0 = data[i] + data[i + 56];
+            float tmp7 = data[i] - data[i + 56];
+            float tmp1 = data[i + 8] + data[i + 48];
+            float tmp6 = data[i + 8] - data[i + 48];
+            float tmp2 = data[i + 16] + data[i + 40];
+            float tmp5 = data[i + 16] - data[i + 40];
+            float tmp3 = data[i + 24] + data[i + 32];
+            float tmp4 = data[i + 24] - data[i + 32];
+
+            float tmp10 = tmp0 + tmp3;
+            float tmp13 = tmp0 - tmp3;
+            float tmp11 = tmp1 + tmp2;
+            float tmp12 = tmp1 - tmp2;
+            data[i] = tmp10 + tmp11;
+            data[i + 32] = tmp10 - tmp11;
+            float z1 = (tmp12 + tmp13) * 0.707106781f;
+            data[i + 16] = tmp13 + z1;
+            data[i + 48] = tmp13 - z1;
+
+            tmp10 = tmp4 + tmp5;
+            tmp11 = tmp5 + tmp6;
+            tmp12 = tmp6 + tmp7;
+            float z5 = (tmp10 - tmp12) * 0.382683433f;
+            float z2 = 0.541196100f * tmp10 + z5;
+            float z4 = 1.306562965f * tmp12 + z5;
+            float z3 = tmp11 * 0.707106781f;
+            float z11 = tmp7 + z3;
+            float z13 = tmp7 - z3;
+            data[i + 40] = z13 + z2;
+            data[i + 24] = z13 - z2;
+            data[i + 8] = z11 + z4;
+            data[i + 56] = z11 - z4;
+        }
+    }
+
+    private void writeBits(int bits, int length) {
+        bitBuffer = (bitBuffer << length) | bits;
+        bitCount += length;
+        while (bitCount >= 8) {
+            int b = (int) (bitBuffer >> (bitCount - 8)) & 0xFF;
+            output[size++] = (byte) b;
+            if (b == 0xFF) {
+                // a 0xFF in the entropy coded data must not look like a marker
+                output[size++] = 0;
+            }
+            bitCount -= 8;
+        }
+    }
+
+    private void writeMarker(int marker) {
+        output[size++] = (byte) 0xFF;
+        output[size++] = (byte) marker;
+    }
+
+    private void writeShort(int value) {
+        output[size++] = (byte) (value >> 8);
+        output[size++] = (byte) value;
+    }
+
+    private void writeByte(int value) {
+        output[size++] = (byte) value;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional <= output.length) {
+            return;
+        }
+        byte[] grown = new byte[Math.max(size + additional, 2 * output.length)];
+        System.arraycopy(output, 0, grown, 0, size);
+        output = grown;
+        outputView = ByteBuffer.wrap(output).asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,169 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the header of a JPEG file up to its first scan, without decoding or copying the image.
+ * <p>
+ * The parser walks the marker segments with absolute reads, so the position of the buffer is not
+ * changed and nothing is allocated. It takes the dimensions from the frame header (SOF0 to SOF15),
+ * the restart interval from a DRI segment and the orientation tag from the first IFD of an EXIF
+ * APP1 segment. Malformed input never throws, it just yields invalid metadata.
+ */
+public final class JpegHeaderParser {
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int DRI = 0xDD;
+    private static final int APP1 = 0xE1;
+    private static final int TEM = 0x01;
+    private static final int RST0 = 0xD0;
+    private static final int RST7 = 0xD7;
+    private static final int DHT = 0xC4;
+    private static final int JPG = 0xC8;
+    private static final int DAC = 0xCC;
+
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+    private static final int TIFF_SHORT = 3;
+
+    private JpegHeaderParser() {
+        // hidden constructor
+    }
+
+    /**
+     * Parses the header of the JPEG file between position and limit of a buffer into the header
+     * fields of the metadata. The capture properties of the metadata are not changed.
+     *
+     * @param data     the JPEG file
+     * @param metadata receives the header fields
+     * @return {@code true} if a frame header and the start of a scan have been found
+     */
+    public static boolean parse(@NonNull ByteBuffer data, @NonNull FrameMetadata metadata) {
+        metadata.clearHeader();
+
+        int start = data.position();
+        int end = data.limit();
+        if ((end - start < 4) || (u8(data, start) != 0xFF) || (u8(data, start + 1) != SOI)) {
+            return false;
+        }
+
+        boolean frameHeader = false;
+        int pos = start + 2;
+        while (true) {
+            if ((pos >= end) || (u8(data, pos) != 0xFF)) {
+                return false;
+            }
+            // any number of fill bytes may precede a marker
+            while ((pos < end) && (u8(data, pos) == 0xFF)) {
+                pos++;
+            }
+            if (pos >= end) {
+                return false;
+            }
+            int marker = u8(data, pos++);
+            if ((marker == TEM) || (marker == SOI) || ((marker >= RST0) && (marker <= RST7))) {
+                // markers without a segment
+                continue;
+            }
+            if ((marker == EOI) || (marker == 0x00) || (pos + 2 > end)) {
+                return false;
+            }
+
+            int length = u16(data, pos, false);
+            int segment = pos + 2;
+            int segmentEnd = pos + length;
+            if ((length < 2) || (segmentEnd > end) || (segmentEnd < pos)) {
+                return false;
+            }
+
+            if (isFrameHeader(marker)) {
+                if (length < 8) {
+                    return false;
+                }
+                metadata.setFrameHeader(u8(data, segment), u16(data, segment + 3, false), u16(data, segment + 1, false), u8(data, segment + 5));
+                frameHeader = true;
+            } else if (marker == DRI) {
+                if (length != 4) {
+                    return false;
+                }
+                metadata.setRestartInterval(u16(data, segment, false));
+            } else if (marker == APP1) {
+                parseExif(data, segment, segmentEnd, metadata);
+            } else if (marker == SOS) {
+                metadata.setHeaderEnd(segmentEnd - start, frameHeader);
+                return frameHeader;
+            }
+            pos = segmentEnd;
+        }
+    }
+
+    private static boolean isFrameHeader(int marker) {
+        return (marker >= 0xC0) && (marker <= 0xCF) && (marker != DHT) && (marker != JPG) && (marker != DAC);
+    }
+
+    /**
+     * Reads the orientation tag of an EXIF APP1 segment. Other APP1 segments, e.g. XMP, are
+     * ignored.
+     */
+    private static void parseExif(ByteBuffer data, int segment, int segmentEnd, FrameMetadata metadata) {
+        // "Exif\0\0" followed by a TIFF header of 8 bytes
+        if ((segmentEnd - segment < 14) || (u8(data, segment) != 'E') || (u8(data, segment + 1) != 'x')
+                || (u8(data, segment + 2) != 'i') || (u8(data, segment + 3) != 'f')
+                || (u8(data, segment + 4) != 0) || (u8(data, segment + 5) != 0)) {
+            return;
+        }
+
+        int tiff = segment + 6;
+        boolean littleEndian;
+        if ((u8(data, tiff) == 'I') && (u8(data, tiff + 1) == 'I')) {
+            littleEndian = true;
+        } else if ((u8(data, tiff) == 'M') && (u8(data, tiff + 1) == 'M')) {
+            littleEndian = false;
+        } else {
+            return;
+        }
+        if (u16(data, tiff + 2, littleEndian) != 42) {
+            return;
+        }
+
+        long ifdOffset = u32(data, tiff + 4, littleEndian);
+        if ((ifdOffset < 8) || (ifdOffset > segmentEnd - tiff - 2)) {
+            return;
+        }
+        int ifd = tiff + (int) ifdOffset;
+        int entries = u16(data, ifd, littleEndian);
+        int maxEntries = (segmentEnd - ifd - 2) / 12;
+        for (int i = 0, count = Math.min(entries, maxEntries); i < count; i++) {
+            int entry = ifd + 2 + 12 * i;
+            if (u16(data, entry, littleEndian) != EXIF_ORIENTATION_TAG) {
+                continue;
+            }
+            if ((u16(data, entry + 2, littleEndian) == TIFF_SHORT) && (u32(data, entry + 4, littleEndian) == 1)) {
+                // a single short is stored in the first two bytes of the value field
+                int orientation = u16(data, entry + 8, littleEndian);
+                if ((orientation >= 1) && (orientation <= 8)) {
+                    metadata.setExifOrientation(orientation);
+                }
+            }
+            return;
+        }
+    }
+
+    private static int u8(ByteBuffer data, int index) {
+        return data.get(index) & 0xFF;
+    }
+
+    private static int u16(ByteBuffer data, int index, boolean littleEndian) {
+        int a = u8(data, index);
+        int b = u8(data, index + 1);
+        return littleEndian ? (b << 8) | a : (a << 8) | b;
+    }
+
+    private static long u32(ByteBuffer data, int index, boolean littleEndian) {
+        long a = u16(data, index, littleEndian);
+        long b = u16(data, index + 2, littleEndian);
+        return littleEndian ? (b << 16) | a : (a << 16) | b;
+    }
+}
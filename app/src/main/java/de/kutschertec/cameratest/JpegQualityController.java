@@ -0,0 +1,78 @@
+package de.kutschertec.cameratest;
+
+/**
+ * Adjusts the JPEG quality of a stream of frames so that the frames have about a target size.
+ * <p>
+ * Consecutive frames compress alike, so the size of the last frame predicts the size of the next
+ * one at the same quality. The quality is moved proportionally to the logarithm of the ratio of
+ * the last size to the target size and is kept while the size is within
+ * {@link #TOLERANCE} of the target.
+ */
+public class JpegQualityController {
+    /**
+     * The quality of the first frame.
+     */
+    public static final int INITIAL_QUALITY = 75;
+
+    /**
+     * The relative deviation from the target size that does not change the quality.
+     */
+    public static final double TOLERANCE = 0.1;
+
+    /**
+     * The quality steps per e-fold deviation from the target size.
+     */
+    private static final double GAIN = 20;
+
+    private final int targetSize;
+    private int quality = INITIAL_QUALITY;
+
+    /**
+     * Create a new instance.
+     *
+     * @param targetSize the target size of a frame in bytes
+     */
+    public JpegQualityController(int targetSize) {
+        this.targetSize = targetSize;
+    }
+
+    /**
+     * Returns the quality for the next frame.
+     *
+     * @return the quality
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * Reports the size of a frame encoded with {@link #getQuality()}.
+     *
+     * @param size the size of the frame in bytes
+     * @return {@code true} if the quality has been changed
+     */
+    public boolean update(int size) {
+        double deviation = Math.log(Math.max(size, 1) / (double) targetSize);
+        if (Math.abs(deviation) <= Math.log(1 + TOLERANCE)) {
+            return false;
+        }
+
+        int step = (int) Math.round(-GAIN * deviation);
+        if (step == 0) {
+            step = (deviation > 0) ? -1 : 1;
+        }
+        int newQuality = Math.max(JpegEncoder.MIN_QUALITY, Math.min(JpegEncoder.MAX_QUALITY, quality + step));
+        boolean changed = (newQuality != quality);
+        quality = newQuality;
+        return changed;
+    }
+
+    /**
+     * Returns the target size.
+     *
+     * @return the target size in bytes
+     */
+    public int getTargetSize() {
+        return targetSize;
+    }
+}
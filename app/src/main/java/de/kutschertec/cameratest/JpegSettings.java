@@ -0,0 +1,78 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The settings of an output of the {@link JpegEncodeStage}, either a fixed quality or a target
+ * size the quality is adjusted to.
+ */
+public final class JpegSettings {
+    private final int quality;
+    private final int targetSize;
+
+    private JpegSettings(int quality, int targetSize) {
+        this.quality = quality;
+        this.targetSize = targetSize;
+    }
+
+    /**
+     * Returns settings with a fixed quality.
+     *
+     * @param quality the quality from {@link JpegEncoder#MIN_QUALITY} to
+     *                {@link JpegEncoder#MAX_QUALITY}
+     * @return the settings
+     */
+    @NonNull
+    public static JpegSettings quality(int quality) {
+        if ((quality < JpegEncoder.MIN_QUALITY) || (quality > JpegEncoder.MAX_QUALITY)) {
+            throw new IllegalArgumentException("Invalid quality: " + quality);
+        }
+        return new JpegSettings(quality, 0);
+    }
+
+    /**
+     * Returns settings that adjust the quality so that the frames have about the given size.
+     *
+     * @param targetSize the target size of a frame in bytes
+     * @return the settings
+     */
+    @NonNull
+    public static JpegSettings targetSize(int targetSize) {
+        if (targetSize <= 0) {
+            throw new IllegalArgumentException("Invalid target size: " + targetSize);
+        }
+        return new JpegSettings(0, targetSize);
+    }
+
+    /**
+     * Returns whether the quality is adjusted to a target size.
+     *
+     * @return {@code true} for a target size, {@code false} for a fixed quality
+     */
+    public boolean hasTargetSize() {
+        return targetSize > 0;
+    }
+
+    /**
+     * Returns the fixed quality.
+     *
+     * @return the quality, 0 for a target size
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * Returns the target size.
+     *
+     * @return the target size in bytes, 0 for a fixed quality
+     */
+    public int getTargetSize() {
+        return targetSize;
+    }
+
+    @Override
+    public String toString() {
+        return hasTargetSize() ? "target=" + targetSize + "B" : "quality=" + quality;
+    }
+}
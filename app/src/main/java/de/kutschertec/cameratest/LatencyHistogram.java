@@ -0,0 +1,154 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds with log-linear buckets.
+ * <p>
+ * Values below {@link #SUB_BUCKETS} get a bucket of their own, every power of two above is split
+ * into {@link #SUB_BUCKETS} linear buckets, so a recorded value is off by less than
+ * 1/{@link #SUB_BUCKETS} of its magnitude. The buckets cover the whole positive {@code long}
+ * range. Recording is a few atomic increments and never allocates, so it can be done on the camera
+ * thread for every frame.
+ */
+public class LatencyHistogram {
+    /**
+     * log2 of the number of linear buckets per power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The number of linear buckets per power of two.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current = max.get();
+        while ((value > current) && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the largest recorded value in nanoseconds, 0 if nothing has been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return the mean of the recorded values in nanoseconds, 0 if nothing has been recorded
+     */
+    public long getMean() {
+        long n = count.get();
+        return (n > 0) ? sum.get() / n : 0;
+    }
+
+    /**
+     * Returns the value at a percentile. The result is the upper bound of the bucket that holds the
+     * percentile, but never more than the largest recorded value. Values recorded concurrently may
+     * or may not be taken into account.
+     *
+     * @param percentile the percentile between 0 and 100
+     * @return the value at the percentile in nanoseconds, 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Returns a short summary with count, mean, median, 99th percentile and maximum in
+     * milliseconds.
+     *
+     * @return a short summary of the histogram
+     */
+    @Override
+    @NonNull
+    public String toString() {
+        return "n=" + getCount() + " mean=" + toMillis(getMean()) + "ms p50=" + toMillis(getPercentile(50))
+                + "ms p99=" + toMillis(getPercentile(99)) + "ms max=" + toMillis(getMax()) + "ms";
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static String toMillis(long nanos) {
+        return String.valueOf(nanos / 10000 / 100.0);
+    }
+}
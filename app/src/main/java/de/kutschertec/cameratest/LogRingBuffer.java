@@ -0,0 +1,134 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer, single-consumer queue of log records.
+ * <p>
+ * All slots are allocated up front and reused. Each slot has a sequence number that tells
+ * producers and the consumer whose turn it is: a producer claims the next free slot with a CAS on
+ * the tail, fills it and publishes it by advancing the sequence of the slot; the consumer reads
+ * published slots in order and hands them back by advancing the sequence by one lap. Neither side
+ * takes a lock, a full buffer is reported to the producer instead of waiting.
+ */
+public class LogRingBuffer {
+    private final int mask;
+    private final Logger.Level[] levels;
+    private final String[] tags;
+    private final String[] messages;
+    private final Throwable[] throwables;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong(0);
+    private long head = 0;
+
+    /**
+     * Create a new instance.
+     *
+     * @param capacity the number of records, rounded up to a power of two
+     */
+    public LogRingBuffer(int capacity) {
+        if ((capacity <= 0) || (capacity > (1 << 30))) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        this.mask = size - 1;
+        this.levels = new Logger.Level[size];
+        this.tags = new String[size];
+        this.messages = new String[size];
+        this.throwables = new Throwable[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Returns the number of records the buffer can hold.
+     *
+     * @return the capacity of the buffer
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds a record, unless the buffer is full. Can be called by any thread.
+     *
+     * @param level   the log level
+     * @param tag     the log tag
+     * @param message the formatted log message
+     * @param t       a throwable that should be logged, or {@code null}
+     * @return {@code true} if the record has been added, {@code false} if the buffer is full
+     */
+    public boolean offer(@NonNull Logger.Level level, @NonNull String tag, @NonNull String message, @Nullable Throwable t) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    levels[index] = level;
+                    tags[index] = tag;
+                    messages[index] = message;
+                    throwables[index] = t;
+                    // publishes the fields to the consumer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // the consumer has not yet handed back the slot of the previous lap
+                return false;
+            }
+            // another producer claimed the slot in the meantime, retry with the new tail
+        }
+    }
+
+    /**
+     * Removes the oldest record and writes it to a sink. Must only be called by the single
+     * consumer thread.
+     *
+     * @param sink the sink to write the record to
+     * @return {@code true} if a record has been written, {@code false} if there was no published
+     * record
+     */
+    public boolean poll(@NonNull LogSink sink) {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return false;
+        }
+
+        Logger.Level level = levels[index];
+        String tag = tags[index];
+        String message = messages[index];
+        Throwable t = throwables[index];
+        levels[index] = null;
+        tags[index] = null;
+        messages[index] = null;
+        throwables[index] = null;
+
+        // hands the slot back to the producers for the next lap
+        sequences.set(index, head + mask + 1);
+        head++;
+
+        sink.write(level, tag, message, t);
+        return true;
+    }
+
+    /**
+     * Returns whether the buffer holds no published records. Only exact on the consumer thread.
+     *
+     * @return {@code true} if there are no records to poll
+     */
+    public boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+}
@@ -0,0 +1,19 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Destination of the messages of a {@link Logger}.
+ */
+public interface LogSink {
+    /**
+     * Writes a log record. Called by any thread that logs, after the level has been checked.
+     *
+     * @param level   the log level
+     * @param tag     the log tag
+     * @param message the formatted log message
+     * @param t       a throwable that should be logged, or {@code null}
+     */
+    void write(@NonNull Logger.Level level, @NonNull String tag, @NonNull String message, @Nullable Throwable t);
+}
@@ -2,21 +2,59 @@ package de.kutschertec.cameratest;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.util.Log;
 
 /**
- * Class that provides logging methods on top of {@link Log}, for better formatting.
+ * Class that provides logging methods on top of a {@link LogSink}, for better formatting. All
+ * loggers share one sink, which writes synchronously to {@code android.util.Log} unless it is
+ * replaced with {@link #setSink(LogSink)}, e.g. by an {@link AsyncLogSink}.
+ * <p>
+ * In addition to text messages, loggers write structured events with numeric fields to the
+ * {@link EventLog} set with {@link #setEventLog(EventLog)}, for offline analysis.
+ * <p>
+ * Besides plain messages every level has parameterized variants, which replace each {@code {}} in
+ * the format with the next argument, and a {@link MessageSupplier} variant. Both do no work at all
+ * if the level is disabled, so they can be used on per-frame paths without building strings. Pass
+ * primitives to the {@code long} and {@code double} variants, so that they are not boxed.
  */
 public class Logger {
+    private static final String PLACEHOLDER = "{}";
+    private static final int MAX_BUILDER_CAPACITY = 4096;
+
+    /**
+     * Per thread message builder, reused for every message.
+     */
+    private static final ThreadLocal<StringBuilder> MESSAGE_BUILDER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
     private static Level globalLogLevel = Level.INFO;
+    private static volatile LogSink sink = new AndroidLogSink();
+    private static volatile EventLog eventLog = null;
 
     private Level logLevel;
     private final Class<?> context;
+    private final String name;
 
     public enum Level {
         VERBOSE, DEBUG, INFO, WARN, ERROR
     }
 
+    /**
+     * Supplies a log message. Only called if the level of the message is enabled.
+     */
+    public interface MessageSupplier {
+        /**
+         * Returns the log message.
+         *
+         * @return the log message
+         */
+        @NonNull
+        String get();
+    }
+
     /**
      * Sets the global log level.
      *
@@ -35,6 +73,35 @@ public class Logger {
         return globalLogLevel;
     }
 
+    /**
+     * Sets the sink of all loggers.
+     *
+     * @param logSink the sink of all loggers
+     */
+    public static void setSink(@NonNull LogSink logSink) {
+        sink = logSink;
+    }
+
+    /**
+     * Returns the sink of all loggers.
+     *
+     * @return the sink of all loggers
+     */
+    @NonNull
+    public static LogSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Sets the event log that receives the structured events of all loggers. Set this to
+     * <code>null</code> to drop structured events.
+     *
+     * @param log the event log of all loggers
+     */
+    public static void setEventLog(@Nullable EventLog log) {
+        eventLog = log;
+    }
+
     /**
      * Create a new instance.
      *
@@ -52,6 +119,10 @@ public class Logger {
     public Logger(@NonNull Class<?> context) {
         this.context = context;
         this.logLevel = null;
+
+        // anonymous and local classes have no canonical name
+        String canonicalName = context.getCanonicalName();
+        this.name = (canonicalName != null) ? canonicalName : context.getName();
     }
 
     /**
@@ -74,10 +145,63 @@ public class Logger {
         return (logLevel != null) ? logLevel : globalLogLevel;
     }
 
+    /**
+     * Returns whether messages of the given level are logged.
+     *
+     * @param level the log level
+     * @return {@code true} if messages of the given level are logged
+     */
+    public boolean isLoggable(@NonNull Level level) {
+        return checkLogLevel(level);
+    }
+
+    /**
+     * Writes a structured event without fields to the event log, independent of the log level.
+     *
+     * @param eventId the ID of the event
+     */
+    public void event(int eventId) {
+        EventLog log = eventLog;
+        if (log != null) {
+            log.log(eventId);
+        }
+    }
+
+    /**
+     * Writes a structured event with one field to the event log, independent of the log level.
+     *
+     * @param eventId the ID of the event
+     * @param a       the first field
+     */
+    public void event(int eventId, long a) {
+        EventLog log = eventLog;
+        if (log != null) {
+            log.log(eventId, a);
+        }
+    }
+
+    /**
+     * Writes a structured event with two fields to the event log, independent of the log level.
+     *
+     * @param eventId the ID of the event
+     * @param a       the first field
+     * @param b       the second field
+     */
+    public void event(int eventId, long a, long b) {
+        EventLog log = eventLog;
+        if (log != null) {
+            log.log(eventId, a, b);
+        }
+    }
+
     private boolean checkLogLevel(@NonNull Level level) {
         return level.ordinal() >= getLogLevel().ordinal();
     }
 
+    private static void print(@NonNull Level level, @NonNull String message, @Nullable Throwable t) {
+        sink.write(level, CameraTestConstants.APPNAME, message, t);
+    }
+
     @NonNull
     private String formatMessage(@NonNull Object context, @NonNull String message) {
         return formatMessage(message);
@@ -85,11 +209,113 @@ public class Logger {
 
     @NonNull
     private String formatMessage(@NonNull String message) {
-        StringBuilder msg = new StringBuilder();
-        msg.append(context.getCanonicalName());
-        msg.append(" - ");
+        StringBuilder msg = startMessage();
         msg.append(message);
-        return msg.toString();
+        return finishMessage(msg);
+    }
+
+    @NonNull
+    String formatMessage(@NonNull String format, long a) {
+        StringBuilder msg = startMessage();
+        int next = appendUntilPlaceholder(msg, format, 0);
+        if (next >= 0) {
+            msg.append(a);
+            appendRemainder(msg, format, next);
+        }
+        return finishMessage(msg);
+    }
+
+    @NonNull
+    String formatMessage(@NonNull String format, double a) {
+        StringBuilder msg = startMessage();
+        int next = appendUntilPlaceholder(msg, format, 0);
+        if (next >= 0) {
+            msg.append(a);
+            appendRemainder(msg, format, next);
+        }
+        return finishMessage(msg);
+    }
+
+    @NonNull
+    String formatMessage(@NonNull String format, @Nullable Object a) {
+        StringBuilder msg = startMessage();
+        int next = appendUntilPlaceholder(msg, format, 0);
+        if (next >= 0) {
+            msg.append(a);
+            appendRemainder(msg, format, next);
+        }
+        return finishMessage(msg);
+    }
+
+    @NonNull
+    String formatMessage(@NonNull String format, long a, long b) {
+        StringBuilder msg = startMessage();
+        int next = appendUntilPlaceholder(msg, format, 0);
+        if (next >= 0) {
+            msg.append(a);
+            next = appendUntilPlaceholder(msg, format, next);
+            if (next >= 0) {
+                msg.append(b);
+                appendRemainder(msg, format, next);
+            }
+        }
+        return finishMessage(msg);
+    }
+
+    @NonNull
+    String formatMessage(@NonNull String format, @Nullable Object a, @Nullable Object b) {
+        StringBuilder msg = startMessage();
+        int next = appendUntilPlaceholder(msg, format, 0);
+        if (next >= 0) {
+            msg.append(a);
+            next = appendUntilPlaceholder(msg, format, next);
+            if (next >= 0) {
+                msg.append(b);
+                appendRemainder(msg, format, next);
+            }
+        }
+        return finishMessage(msg);
+    }
+
+    @NonNull
+    private StringBuilder startMessage() {
+        StringBuilder msg = MESSAGE_BUILDER.get();
+        if (msg.capacity() > MAX_BUILDER_CAPACITY) {
+            // do not keep the memory of an unusually long message
+            msg = new StringBuilder(256);
+            MESSAGE_BUILDER.set(msg);
+        }
+        msg.setLength(0);
+        msg.append(name);
+        msg.append(" - ");
+        return msg;
+    }
+
+    @NonNull
+    private static String finishMessage(@NonNull StringBuilder msg) {
+        String message = msg.toString();
+        msg.setLength(0);
+        return message;
+    }
+
+    /**
+     * Appends the format up to the next placeholder.
+     *
+     * @return the index after the placeholder, or -1 if there is no placeholder left and the rest
+     * of the format has been appended
+     */
+    private static int appendUntilPlaceholder(@NonNull StringBuilder msg, @NonNull String format, int start) {
+        int index = format.indexOf(PLACEHOLDER, start);
+        if (index < 0) {
+            msg.append(format, start, format.length());
+            return -1;
+        }
+        msg.append(format, start, index);
+        return index + PLACEHOLDER.length();
+    }
+
+    private static void appendRemainder(@NonNull StringBuilder msg, @NonNull String format, int start) {
+        msg.append(format, start, format.length());
     }
 
     /**
@@ -99,7 +325,7 @@ public class Logger {
      */
     public void verbose(@NonNull String message) {
         if (checkLogLevel(Level.VERBOSE)) {
-            Log.v(CameraTestConstants.APPNAME, formatMessage(context, message));
+            print(Level.VERBOSE, formatMessage(context, message), null);
         }
     }
 
@@ -111,7 +337,80 @@ public class Logger {
      */
     public void verbose(@NonNull String message, @NonNull Throwable t) {
         if (checkLogLevel(Level.VERBOSE)) {
-            Log.v(CameraTestConstants.APPNAME, formatMessage(context, message), t);
+            print(Level.VERBOSE, formatMessage(context, message), t);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with verbose level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void verbose(@NonNull String format, long a) {
+        if (checkLogLevel(Level.VERBOSE)) {
+            print(Level.VERBOSE, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with verbose level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void verbose(@NonNull String format, double a) {
+        if (checkLogLevel(Level.VERBOSE)) {
+            print(Level.VERBOSE, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with verbose level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void verbose(@NonNull String format, @Nullable Object a) {
+        if (checkLogLevel(Level.VERBOSE)) {
+            print(Level.VERBOSE, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with verbose level.
+     *
+     * @param format the log message with two {@code {}} placeholders
+     * @param a      the first argument
+     * @param b      the second argument
+     */
+    public void verbose(@NonNull String format, long a, long b) {
+        if (checkLogLevel(Level.VERBOSE)) {
+            print(Level.VERBOSE, formatMessage(format, a, b), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with verbose level.
+     *
+     * @param format the log message with two {@code {}} placeholders
+     * @param a      the first argument
+     * @param b      the second argument
+     */
+    public void verbose(@NonNull String format, @Nullable Object a, @Nullable Object b) {
+        if (checkLogLevel(Level.VERBOSE)) {
+            print(Level.VERBOSE, formatMessage(format, a, b), null);
+        }
+    }
+
+    /**
+     * Logs a message with verbose level, which is only built if the level is enabled.
+     *
+     * @param supplier the supplier of the log message
+     */
+    public void verbose(@NonNull MessageSupplier supplier) {
+        if (checkLogLevel(Level.VERBOSE)) {
+            print(Level.VERBOSE, formatMessage(context, supplier.get()), null);
         }
     }
 
@@ -122,7 +421,7 @@ public class Logger {
      */
     public void debug(@NonNull String message) {
         if (checkLogLevel(Level.DEBUG)) {
-            Log.d(CameraTestConstants.APPNAME, formatMessage(context, message));
+            print(Level.DEBUG, formatMessage(context, message), null);
         }
     }
 
@@ -134,7 +433,80 @@ public class Logger {
      */
     public void debug(@NonNull String message, @NonNull Throwable t) {
         if (checkLogLevel(Level.DEBUG)) {
-            Log.d(CameraTestConstants.APPNAME, formatMessage(context, message), t);
+            print(Level.DEBUG, formatMessage(context, message), t);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with debug level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void debug(@NonNull String format, long a) {
+        if (checkLogLevel(Level.DEBUG)) {
+            print(Level.DEBUG, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with debug level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void debug(@NonNull String format, double a) {
+        if (checkLogLevel(Level.DEBUG)) {
+            print(Level.DEBUG, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with debug level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void debug(@NonNull String format, @Nullable Object a) {
+        if (checkLogLevel(Level.DEBUG)) {
+            print(Level.DEBUG, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with debug level.
+     *
+     * @param format the log message with two {@code {}} placeholders
+     * @param a      the first argument
+     * @param b      the second argument
+     */
+    public void debug(@NonNull String format, long a, long b) {
+        if (checkLogLevel(Level.DEBUG)) {
+            print(Level.DEBUG, formatMessage(format, a, b), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with debug level.
+     *
+     * @param format the log message with two {@code {}} placeholders
+     * @param a      the first argument
+     * @param b      the second argument
+     */
+    public void debug(@NonNull String format, @Nullable Object a, @Nullable Object b) {
+        if (checkLogLevel(Level.DEBUG)) {
+            print(Level.DEBUG, formatMessage(format, a, b), null);
+        }
+    }
+
+    /**
+     * Logs a message with debug level, which is only built if the level is enabled.
+     *
+     * @param supplier the supplier of the log message
+     */
+    public void debug(@NonNull MessageSupplier supplier) {
+        if (checkLogLevel(Level.DEBUG)) {
+            print(Level.DEBUG, formatMessage(context, supplier.get()), null);
         }
     }
 
@@ -145,7 +517,7 @@ public class Logger {
      */
     public void info(@NonNull String message) {
         if (checkLogLevel(Level.INFO)) {
-            Log.i(CameraTestConstants.APPNAME, formatMessage(context, message));
+            print(Level.INFO, formatMessage(context, message), null);
         }
     }
 
@@ -157,7 +529,80 @@ public class Logger {
      */
     public void info(@NonNull String message, @NonNull Throwable t) {
         if (checkLogLevel(Level.INFO)) {
-            Log.i(CameraTestConstants.APPNAME, formatMessage(context, message), t);
+            print(Level.INFO, formatMessage(context, message), t);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with info level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void info(@NonNull String format, long a) {
+        if (checkLogLevel(Level.INFO)) {
+            print(Level.INFO, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with info level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void info(@NonNull String format, double a) {
+        if (checkLogLevel(Level.INFO)) {
+            print(Level.INFO, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with info level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void info(@NonNull String format, @Nullable Object a) {
+        if (checkLogLevel(Level.INFO)) {
+            print(Level.INFO, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with info level.
+     *
+     * @param format the log message with two {@code {}} placeholders
+     * @param a      the first argument
+     * @param b      the second argument
+     */
+    public void info(@NonNull String format, long a, long b) {
+        if (checkLogLevel(Level.INFO)) {
+            print(Level.INFO, formatMessage(format, a, b), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with info level.
+     *
+     * @param format the log message with two {@code {}} placeholders
+     * @param a      the first argument
+     * @param b      the second argument
+     */
+    public void info(@NonNull String format, @Nullable Object a, @Nullable Object b) {
+        if (checkLogLevel(Level.INFO)) {
+            print(Level.INFO, formatMessage(format, a, b), null);
+        }
+    }
+
+    /**
+     * Logs a message with info level, which is only built if the level is enabled.
+     *
+     * @param supplier the supplier of the log message
+     */
+    public void info(@NonNull MessageSupplier supplier) {
+        if (checkLogLevel(Level.INFO)) {
+            print(Level.INFO, formatMessage(context, supplier.get()), null);
         }
     }
 
@@ -168,7 +613,7 @@ public class Logger {
      */
     public void warn(@NonNull String message) {
         if (checkLogLevel(Level.WARN)) {
-            Log.w(CameraTestConstants.APPNAME, formatMessage(context, message));
+            print(Level.WARN, formatMessage(context, message), null);
         }
     }
 
@@ -180,7 +625,80 @@ public class Logger {
      */
     public void warn(@NonNull String message, @NonNull Throwable t) {
         if (checkLogLevel(Level.WARN)) {
-            Log.w(CameraTestConstants.APPNAME, formatMessage(context, message), t);
+            print(Level.WARN, formatMessage(context, message), t);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with warn level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void warn(@NonNull String format, long a) {
+        if (checkLogLevel(Level.WARN)) {
+            print(Level.WARN, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with warn level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void warn(@NonNull String format, double a) {
+        if (checkLogLevel(Level.WARN)) {
+            print(Level.WARN, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with warn level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void warn(@NonNull String format, @Nullable Object a) {
+        if (checkLogLevel(Level.WARN)) {
+            print(Level.WARN, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with warn level.
+     *
+     * @param format the log message with two {@code {}} placeholders
+     * @param a      the first argument
+     * @param b      the second argument
+     */
+    public void warn(@NonNull String format, long a, long b) {
+        if (checkLogLevel(Level.WARN)) {
+            print(Level.WARN, formatMessage(format, a, b), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with warn level.
+     *
+     * @param format the log message with two {@code {}} placeholders
+     * @param a      the first argument
+     * @param b      the second argument
+     */
+    public void warn(@NonNull String format, @Nullable Object a, @Nullable Object b) {
+        if (checkLogLevel(Level.WARN)) {
+            print(Level.WARN, formatMessage(format, a, b), null);
+        }
+    }
+
+    /**
+     * Logs a message with warn level, which is only built if the level is enabled.
+     *
+     * @param supplier the supplier of the log message
+     */
+    public void warn(@NonNull MessageSupplier supplier) {
+        if (checkLogLevel(Level.WARN)) {
+            print(Level.WARN, formatMessage(context, supplier.get()), null);
         }
     }
 
@@ -191,7 +709,7 @@ public class Logger {
      */
     public void error(@NonNull String message) {
         if (checkLogLevel(Level.ERROR)) {
-            Log.e(CameraTestConstants.APPNAME, formatMessage(context, message));
+            print(Level.ERROR, formatMessage(context, message), null);
         }
     }
 
@@ -203,7 +721,93 @@ public class Logger {
      */
     public void error(@NonNull String message, @NonNull Throwable t) {
         if (checkLogLevel(Level.ERROR)) {
-            Log.e(CameraTestConstants.APPNAME, formatMessage(context, message), t);
+            print(Level.ERROR, formatMessage(context, message), t);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with error level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void error(@NonNull String format, long a) {
+        if (checkLogLevel(Level.ERROR)) {
+            print(Level.ERROR, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with error level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void error(@NonNull String format, double a) {
+        if (checkLogLevel(Level.ERROR)) {
+            print(Level.ERROR, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with error level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     */
+    public void error(@NonNull String format, @Nullable Object a) {
+        if (checkLogLevel(Level.ERROR)) {
+            print(Level.ERROR, formatMessage(format, a), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with error level.
+     *
+     * @param format the log message with two {@code {}} placeholders
+     * @param a      the first argument
+     * @param b      the second argument
+     */
+    public void error(@NonNull String format, long a, long b) {
+        if (checkLogLevel(Level.ERROR)) {
+            print(Level.ERROR, formatMessage(format, a, b), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message with error level.
+     *
+     * @param format the log message with two {@code {}} placeholders
+     * @param a      the first argument
+     * @param b      the second argument
+     */
+    public void error(@NonNull String format, @Nullable Object a, @Nullable Object b) {
+        if (checkLogLevel(Level.ERROR)) {
+            print(Level.ERROR, formatMessage(format, a, b), null);
+        }
+    }
+
+    /**
+     * Logs a parameterized message and a throwable with error level.
+     *
+     * @param format the log message with a {@code {}} placeholder
+     * @param a      the argument
+     * @param t      a throwable that should be logged
+     */
+    public void error(@NonNull String format, @Nullable Object a, @NonNull Throwable t) {
+        if (checkLogLevel(Level.ERROR)) {
+            print(Level.ERROR, formatMessage(format, a), t);
+        }
+    }
+
+    /**
+     * Logs a message with error level, which is only built if the level is enabled.
+     *
+     * @param supplier the supplier of the log message
+     */
+    public void error(@NonNull MessageSupplier supplier) {
+        if (checkLogLevel(Level.ERROR)) {
+            print(Level.ERROR, formatMessage(context, supplier.get()), null);
         }
     }
 }
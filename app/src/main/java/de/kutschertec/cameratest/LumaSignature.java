@@ -0,0 +1,132 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A perceptual signature of a luma plane: the mean brightness of a {@link #GRID}x{@link #GRID}
+ * grid of cells, each estimated from a few evenly spaced samples instead of every pixel.
+ * <p>
+ * Computing a signature reads ({@link #GRID} * {@link #SAMPLES})^2 pixels, independent of the
+ * resolution, and does not allocate. Two signatures are compared cell by cell relative to their
+ * mean brightness, so that a global exposure change does not count as a change of the scene. A
+ * 64 bit average hash of an 8x8 grid is derived for use as a compact key.
+ */
+public class LumaSignature {
+    /**
+     * The number of cells per row and column.
+     */
+    public static final int GRID = 16;
+
+    /**
+     * The number of samples per row and column of a cell.
+     */
+    public static final int SAMPLES = 3;
+
+    /**
+     * The difference in brightness, relative to the mean, from which a cell counts as changed.
+     */
+    public static final int CELL_TOLERANCE = 12;
+
+    private static final int CELLS = GRID * GRID;
+
+    private final int[] cells = new int[CELLS];
+    private int mean = 0;
+    private long hash = 0;
+
+    /**
+     * Computes the signature of a luma plane.
+     *
+     * @param luma        the plane
+     * @param offset      the index of the first pixel
+     * @param width       the width of the plane
+     * @param height      the height of the plane
+     * @param rowStride   the distance between two rows in bytes
+     * @param pixelStride the distance between two pixels of a row in bytes
+     */
+    public void compute(@NonNull ByteBuffer luma, int offset, int width, int height, int rowStride, int pixelStride) {
+        int total = 0;
+        for (int cy = 0; cy < GRID; cy++) {
+            for (int cx = 0; cx < GRID; cx++) {
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES; sy++) {
+                    // samples at the centers of a SAMPLES x SAMPLES subdivision of the cell
+                    int y = (int) (((long) (cy * SAMPLES + sy) * 2 + 1) * height / (2 * GRID * SAMPLES));
+                    int row = offset + y * rowStride;
+                    for (int sx = 0; sx < SAMPLES; sx++) {
+                        int x = (int) (((long) (cx * SAMPLES + sx) * 2 + 1) * width / (2 * GRID * SAMPLES));
+                        sum += luma.get(row + x * pixelStride) & 0xFF;
+                    }
+                }
+                int cell = sum / (SAMPLES * SAMPLES);
+                cells[cy * GRID + cx] = cell;
+                total += cell;
+            }
+        }
+        mean = total / CELLS;
+
+        hash = 0;
+        int half = GRID / 8;
+        for (int hy = 0; hy < 8; hy++) {
+            for (int hx = 0; hx < 8; hx++) {
+                int sum = 0;
+                for (int y = 0; y < half; y++) {
+                    for (int x = 0; x < half; x++) {
+                        sum += cells[(hy * half + y) * GRID + hx * half + x];
+                    }
+                }
+                if (sum >= mean * half * half) {
+                    hash |= 1L << (hy * 8 + hx);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the share of cells that have not changed compared to another signature.
+     *
+     * @param other the other signature
+     * @return the similarity from 0 (every cell changed) to 1 (no cell changed)
+     */
+    public float similarity(@NonNull LumaSignature other) {
+        int changed = 0;
+        for (int i = 0; i < CELLS; i++) {
+            int difference = (cells[i] - mean) - (other.cells[i] - other.mean);
+            if ((difference > CELL_TOLERANCE) || (difference < -CELL_TOLERANCE)) {
+                changed++;
+            }
+        }
+        return 1.0f - changed / (float) CELLS;
+    }
+
+    /**
+     * Copies another signature.
+     *
+     * @param other the signature to copy
+     */
+    public void set(@NonNull LumaSignature other) {
+        System.arraycopy(other.cells, 0, cells, 0, CELLS);
+        mean = other.mean;
+        hash = other.hash;
+    }
+
+    /**
+     * Returns the average hash: bit {@code y * 8 + x} is set if cell (x, y) of an 8x8 grid is at
+     * least as bright as the mean.
+     *
+     * @return the hash
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the mean brightness of the cells.
+     *
+     * @return the mean brightness from 0 to 255
+     */
+    public int getMean() {
+        return mean;
+    }
+}
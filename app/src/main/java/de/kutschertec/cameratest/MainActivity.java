@@ -17,6 +17,9 @@ import android.os.Bundle;
 import android.view.TextureView;
 import android.view.Window;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -28,7 +31,13 @@ public class MainActivity extends AppCompatActivity {
 
     private final Logger logger = new Logger(this);
 
+    private AsyncLogSink logSink;
+    private EventLog eventLog;
     private CameraController cameraController;
+    private MjpegServer mjpegServer;
+    private FrameBus.Subscription mjpegSubscription;
+    private SegmentRecorder segmentRecorder;
+    private FrameBus.Subscription recorderSubscription;
 
     private Thread workerThread;
 
@@ -52,6 +61,19 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+
+        // keep logcat writes off the camera and UI threads
+        logSink = new AsyncLogSink(new AndroidLogSink(), CameraTestConstants.LOG_BUFFER_CAPACITY, AsyncLogSink.OverflowPolicy.DROP);
+        Logger.setSink(logSink);
+
+        try {
+            eventLog = new EventLog(new File(getFilesDir(), CameraTestConstants.EVENT_LOG_FILE), CameraTestConstants.EVENT_LOG_CAPACITY);
+            Logger.setEventLog(eventLog);
+        } catch (IOException e) {
+            logger.error("Error creating event log.", e);
+            eventLog = null;
+        }
+
         requestWindowFeature(Window.FEATURE_NO_TITLE);
         setContentView(R.layout.activity_main);
 
@@ -76,11 +98,40 @@ public class MainActivity extends AppCompatActivity {
             Thread.interrupted();
         }
 
+        if (mjpegServer != null) {
+            logger.debug("Stopping MJPEG server.");
+            mjpegSubscription.cancel();
+            mjpegServer.stop();
+            logger.debug("Stopping MJPEG server ... done.");
+        }
+
+        if (segmentRecorder != null) {
+            logger.debug("Stopping recorder.");
+            recorderSubscription.cancel();
+            segmentRecorder.close();
+            logger.debug("Stopping recorder ... done.");
+        }
+
         logger.debug("Removing lifecyle observers.");
         getLifecycle().removeObserver(cameraController);
         logger.debug("Removing lifecyle observers ... done.");
 
         logger.verbose("MainActivity.onDestroy() ... done.");
+
+        if (eventLog != null) {
+            Logger.setEventLog(null);
+            try {
+                eventLog.close();
+            } catch (IOException e) {
+                logger.error("Error closing event log.", e);
+            }
+        }
+
+        Logger.setSink(new AndroidLogSink());
+        if (logSink.getDroppedRecords() > 0) {
+            logger.warn("Dropped log records: {}", logSink.getDroppedRecords());
+        }
+        logSink.close();
     }
 
     @Override
@@ -124,7 +175,7 @@ public class MainActivity extends AppCompatActivity {
         logger.debug("Determine device rotation.");
         TextureView textureView = findViewById(R.id.previewView);
         int deviceRotation = getWindowManager().getDefaultDisplay().getRotation();
-        logger.debug("DeviceRotation=" + deviceRotation);
+        logger.debug("DeviceRotation={}", deviceRotation);
         logger.debug("Determine device rotation ... done.");
 
         logger.debug("Creating camera2 component.");
@@ -132,5 +183,47 @@ public class MainActivity extends AppCompatActivity {
         getLifecycle().addObserver(cameraController);
 //        cameraController.setOnWatchDogHandler(this::watchdogTriggered);
         logger.debug("Creating camera2 component ... done.");
+
+        if (CameraTestConstants.MJPEG_ENABLED) {
+            startMjpegServer();
+        }
+        if (CameraTestConstants.RECORDING_ENABLED) {
+            startRecorder();
+        }
+    }
+
+    private void startRecorder() {
+        logger.debug("Starting recorder.");
+        try {
+            segmentRecorder = new SegmentRecorder(new File(getFilesDir(), CameraTestConstants.RECORDING_DIRECTORY),
+                    CameraTestConstants.RECORDING_SEGMENT_SIZE, CameraTestConstants.RECORDING_SIZE_BUDGET);
+            // the recording gets every frame while the recorder keeps up, new frames are dropped when it
+            // falls behind by a whole queue
+            cameraController.setImageAcquisition(ImageAcquisition.processAll(CameraTestConstants.RECORDING_MAX_IMAGES));
+            recorderSubscription = cameraController.getFrameBus().subscribe(segmentRecorder,
+                    DeliveryPolicy.dropNewest(CameraTestConstants.RECORDING_QUEUE_CAPACITY));
+        } catch (IOException e) {
+            logger.error("Error starting recorder.", e);
+            segmentRecorder = null;
+        }
+        logger.debug("Starting recorder ... done.");
+    }
+
+    private void startMjpegServer() {
+        logger.debug("Starting MJPEG server.");
+        if (CameraTestConstants.MJPEG_NETWORK_ACCESS && BuildConfig.DEBUG) {
+            logger.warn("MJPEG stream is reachable from the network without authentication.");
+            mjpegServer = new MjpegServer(new InetSocketAddress(CameraTestConstants.MJPEG_PORT));
+        } else {
+            mjpegServer = new MjpegServer(CameraTestConstants.MJPEG_PORT);
+        }
+        try {
+            mjpegServer.start();
+            mjpegSubscription = cameraController.getFrameBus().subscribe(mjpegServer, DeliveryPolicy.latestOnly());
+        } catch (IOException e) {
+            logger.error("Error starting MJPEG server.", e);
+            mjpegServer = null;
+        }
+        logger.debug("Starting MJPEG server ... done.");
     }
 }
@@ -0,0 +1,545 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Embedded, non-blocking HTTP server that streams camera frames as {@code
+ * multipart/x-mixed-replace} (MJPEG) to any number of clients.
+ * <p>
+ * The server is a {@link FrameListener} and should be subscribed to the {@link FrameBus} with
+ * {@link DeliveryPolicy#latestOnly()}. The part header of every frame is encoded once, and the
+ * header, the leased frame data and the part trailer are written to every client with a single
+ * gathering write, without copying the frame. A client that is still busy writing an older frame
+ * skips all frames in between and continues with the latest one, so slow clients never buffer.
+ * <p>
+ * The stream is not authenticated. Unless an address is given, the server only listens on the
+ * loopback interface, where it can be reached with {@code adb forward}.
+ */
+public class MjpegServer implements FrameListener {
+    private static final String BOUNDARY = "mjpegframe";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int MAX_REQUEST_SIZE = 4096;
+
+    private static final byte[] RESPONSE_HEADER = ("HTTP/1.0 200 OK\r\n"
+            + "Server: " + CameraTestConstants.APPNAME + "\r\n"
+            + "Connection: close\r\n"
+            + "Cache-Control: no-cache, no-store, must-revalidate\r\n"
+            + "Pragma: no-cache\r\n"
+            + "Content-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY + "\r\n"
+            + "\r\n").getBytes(ASCII);
+    private static final byte[] PART_TRAILER = "\r\n".getBytes(ASCII);
+
+    private final Logger logger = new Logger(this);
+
+    private final InetSocketAddress address;
+    private final AtomicReference<FrameLease> pendingFrame = new AtomicReference<>(null);
+    private final List<Client> clients = new ArrayList<>();
+
+    private final Object selectorLock = new Object();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running = false;
+
+    private EncodedFrame latestFrame = null;
+
+    /**
+     * A frame with its encoded part header, shared by all clients.
+     */
+    private static class EncodedFrame {
+        private final FrameLease lease;
+        private final ByteBuffer header;
+        private final long sequence;
+        private int references = 1;
+
+        private EncodedFrame(FrameLease lease) {
+            this.lease = lease;
+            this.sequence = lease.getSequence();
+            this.header = ByteBuffer.wrap(("--" + BOUNDARY + "\r\n"
+                    + "Content-Type: image/jpeg\r\n"
+                    + "Content-Length: " + lease.getSize() + "\r\n"
+                    + "X-Timestamp: " + lease.getTimestamp() + "\r\n"
+                    + "\r\n").getBytes(ASCII));
+        }
+
+        private void retain() {
+            references++;
+        }
+
+        private void release() {
+            if (--references == 0) {
+                lease.close();
+            }
+        }
+    }
+
+    /**
+     * The state of a single connected client. Only accessed by the selector thread, except for
+     * the statistics.
+     */
+    private static class Client {
+        private final SocketChannel channel;
+        private final String remoteAddress;
+        private final long connectedAt = System.nanoTime();
+        private final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+        private final ByteBuffer[] parts = new ByteBuffer[3];
+
+        private boolean streaming = false;
+        private ByteBuffer responseHeader = null;
+        private EncodedFrame frame = null;
+        private long lastSequence = 0;
+
+        private volatile long bytesSent = 0;
+        private volatile long framesSent = 0;
+        private volatile long framesSkipped = 0;
+        private volatile long lag = 0;
+
+        private Client(SocketChannel channel) {
+            this.channel = channel;
+            this.remoteAddress = String.valueOf(channel.socket().getRemoteSocketAddress());
+        }
+    }
+
+    /**
+     * Snapshot of the statistics of a single client.
+     */
+    public static final class ClientStatistics {
+        private final String remoteAddress;
+        private final long bytesSent;
+        private final long framesSent;
+        private final long framesSkipped;
+        private final long lag;
+        private final long connectedNanos;
+
+        private ClientStatistics(Client client, long now) {
+            this.remoteAddress = client.remoteAddress;
+            this.bytesSent = client.bytesSent;
+            this.framesSent = client.framesSent;
+            this.framesSkipped = client.framesSkipped;
+            this.lag = client.lag;
+            this.connectedNanos = now - client.connectedAt;
+        }
+
+        /**
+         * Returns the remote address of the client.
+         *
+         * @return the remote address of the client
+         */
+        @NonNull
+        public String getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        /**
+         * Returns the number of bytes sent to the client.
+         *
+         * @return the number of bytes sent to the client
+         */
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * Returns the number of complete frames sent to the client.
+         *
+         * @return the number of complete frames sent to the client
+         */
+        public long getFramesSent() {
+            return framesSent;
+        }
+
+        /**
+         * Returns the number of frames the client skipped because it was still busy with an
+         * older frame.
+         *
+         * @return the number of skipped frames
+         */
+        public long getFramesSkipped() {
+            return framesSkipped;
+        }
+
+        /**
+         * Returns the number of frames the client is behind the latest frame.
+         *
+         * @return the number of frames the client is behind the latest frame
+         */
+        public long getLag() {
+            return lag;
+        }
+
+        /**
+         * Returns the average throughput to the client since it connected.
+         *
+         * @return the average throughput in bytes per second
+         */
+        public double getThroughput() {
+            return (connectedNanos > 0) ? bytesSent * 1e9 / connectedNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return remoteAddress + "[frames=" + framesSent + ";skipped=" + framesSkipped + ";lag=" + lag
+                    + ";throughput=" + (long) getThroughput() + "B/s]";
+        }
+    }
+
+    /**
+     * Create a new instance that listens on the loopback interface.
+     *
+     * @param port the port to listen on, {@code 0} to choose a free port
+     */
+    public MjpegServer(int port) {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param address the address to listen on, e.g. the wildcard address to accept clients from
+     *                the network
+     */
+    public MjpegServer(@NonNull InetSocketAddress address) {
+        this.address = address;
+    }
+
+    /**
+     * Opens the server socket and starts the selector thread.
+     *
+     * @throws IOException if the server socket cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        logger.verbose("MjpegServer.start()");
+        if (running) {
+            return;
+        }
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(address);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        logger.info("MJPEG server listening on port {}", getPort());
+
+        running = true;
+        selectorThread = new Thread(this::run, "MjpegServer");
+        selectorThread.start();
+        logger.verbose("MjpegServer.start() ... done.");
+    }
+
+    /**
+     * Stops the selector thread and disconnects all clients.
+     */
+    public synchronized void stop() {
+        logger.verbose("MjpegServer.stop()");
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            logger.error("Error while waiting for the MJPEG server thread to finish.", e);
+            Thread.currentThread().interrupt();
+        }
+        selectorThread = null;
+        logger.verbose("MjpegServer.stop() ... done.");
+    }
+
+    /**
+     * Returns the local port of the server socket.
+     *
+     * @return the local port of the server socket or {@code -1} if the server is not running
+     */
+    public int getPort() {
+        ServerSocketChannel channel = serverChannel;
+        return ((channel != null) && channel.isOpen()) ? channel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of all connected clients.
+     *
+     * @return the statistics of all connected clients
+     */
+    @NonNull
+    public List<ClientStatistics> getClientStatistics() {
+        long now = System.nanoTime();
+        synchronized (clients) {
+            List<ClientStatistics> statistics = new ArrayList<>(clients.size());
+            for (Client client : clients) {
+                if (client.streaming) {
+                    statistics.add(new ClientStatistics(client, now));
+                }
+            }
+            return statistics;
+        }
+    }
+
+    @Override
+    public void onFrame(@NonNull FrameLease frame) {
+        if (!running) {
+            return;
+        }
+
+        FrameLease previous = pendingFrame.getAndSet(frame.retain());
+        if (previous != null) {
+            previous.close();
+        }
+
+        synchronized (selectorLock) {
+            if (selector.isOpen()) {
+                selector.wakeup();
+            }
+        }
+
+        // the server might have been stopped in the meantime, don't leak the frame then
+        if (!running) {
+            previous = pendingFrame.getAndSet(null);
+            if (previous != null) {
+                previous.close();
+            }
+        }
+    }
+
+    private void run() {
+        logger.verbose("MjpegServer.run()");
+        try {
+            while (running) {
+                selector.select();
+
+                FrameLease frame = pendingFrame.getAndSet(null);
+                if (frame != null) {
+                    onNewFrame(frame);
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Client client = (Client) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                read(key, client);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key, client);
+                            }
+                        } catch (IOException e) {
+                            logger.debug("MJPEG client {} disconnected: {}", client.remoteAddress, e.getMessage());
+                            disconnect(key, client);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error in MJPEG server loop.", e);
+        } finally {
+            shutdown();
+        }
+        logger.verbose("MjpegServer.run() ... done.");
+    }
+
+    private void onNewFrame(FrameLease frame) {
+        EncodedFrame previous = latestFrame;
+        latestFrame = new EncodedFrame(frame);
+        if (previous != null) {
+            previous.release();
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (!(attachment instanceof Client) || !key.isValid()) {
+                continue;
+            }
+
+            Client client = (Client) attachment;
+            if (!client.streaming) {
+                continue;
+            }
+
+            if (client.frame == null) {
+                startFrame(key, client);
+            } else {
+                client.lag = latestFrame.sequence - client.frame.sequence;
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Client client = new Client(channel);
+        channel.register(selector, SelectionKey.OP_READ, client);
+        synchronized (clients) {
+            clients.add(client);
+        }
+        logger.debug("MJPEG client connected: {}", client.remoteAddress);
+    }
+
+    private void read(SelectionKey key, Client client) throws IOException {
+        if (client.streaming) {
+            // discard anything the client sends after its request
+            client.request.clear();
+            if (client.channel.read(client.request) < 0) {
+                throw new IOException("end of stream");
+            }
+            return;
+        }
+
+        if (client.channel.read(client.request) < 0) {
+            throw new IOException("end of stream");
+        }
+        if (isRequestComplete(client.request)) {
+            client.streaming = true;
+            client.responseHeader = ByteBuffer.wrap(RESPONSE_HEADER);
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else if (!client.request.hasRemaining()) {
+            throw new IOException("request too large");
+        }
+    }
+
+    private static boolean isRequestComplete(ByteBuffer request) {
+        for (int i = 3; i < request.position(); i++) {
+            if ((request.get(i - 3) == '\r') && (request.get(i - 2) == '\n')
+                    && (request.get(i - 1) == '\r') && (request.get(i) == '\n')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void write(SelectionKey key, Client client) throws IOException {
+        if (client.responseHeader != null) {
+            client.bytesSent += client.channel.write(client.responseHeader);
+            if (client.responseHeader.hasRemaining()) {
+                return;
+            }
+            client.responseHeader = null;
+
+            startFrame(key, client);
+            return;
+        }
+
+        if (client.frame == null) {
+            key.interestOps(SelectionKey.OP_READ);
+            return;
+        }
+
+        client.bytesSent += client.channel.write(client.parts);
+        if (client.parts[2].hasRemaining()) {
+            return;
+        }
+
+        // the frame is complete, continue with the latest frame if the client fell behind
+        client.framesSent++;
+        client.lastSequence = client.frame.sequence;
+        client.frame.release();
+        client.frame = null;
+        startFrame(key, client);
+    }
+
+    private void startFrame(SelectionKey key, Client client) {
+        EncodedFrame frame = latestFrame;
+        if ((frame == null) || (frame.sequence <= client.lastSequence)) {
+            client.lag = 0;
+            key.interestOps(SelectionKey.OP_READ);
+            return;
+        }
+
+        if (client.lastSequence > 0) {
+            client.framesSkipped += frame.sequence - client.lastSequence - 1;
+        }
+        client.lag = 0;
+
+        frame.retain();
+        client.frame = frame;
+        client.parts[0] = frame.header.duplicate();
+        client.parts[1] = frame.lease.getBuffer().duplicate();
+        client.parts[2] = ByteBuffer.wrap(PART_TRAILER);
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void disconnect(SelectionKey key, Client client) {
+        key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            logger.debug("Error closing MJPEG client connection.", e);
+        }
+
+        if (client.frame != null) {
+            client.frame.release();
+            client.frame = null;
+        }
+
+        synchronized (clients) {
+            clients.remove(client);
+        }
+        logger.info(() -> "MJPEG client disconnected: " + new ClientStatistics(client, System.nanoTime()));
+    }
+
+    private void shutdown() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Client) {
+                disconnect(key, (Client) key.attachment());
+            }
+        }
+
+        if (latestFrame != null) {
+            latestFrame.release();
+            latestFrame = null;
+        }
+
+        FrameLease frame = pendingFrame.getAndSet(null);
+        if (frame != null) {
+            frame.close();
+        }
+
+        closeQuietly(serverChannel);
+        synchronized (selectorLock) {
+            closeQuietly(selector);
+        }
+        logger.info("MJPEG server stopped.");
+    }
+
+    private void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.debug("Error closing MJPEG server resource.", e);
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the regions of a frame that have moved since the previous frame.
+ * <p>
+ * The luma plane is split into tiles of {@link #TILE_SIZE} pixels. For every tile, the mean and
+ * the variance of the difference to the previous frame are computed in parallel on a
+ * {@link ForkJoinPool}, one task per row of tiles. A tile has moved if its variance exceeds the
+ * variance threshold, or if its mean differs from the mean of the whole frame by more than the
+ * difference threshold, so that a change of the exposure does not count as motion. Adjacent moved
+ * tiles are merged into regions, whose bounding boxes the frames of the frame pipeline are tagged
+ * with; a frame has at most {@link #MAX_REGIONS} regions, further regions are merged into the
+ * last one.
+ * <p>
+ * The tile arrays, the copy of the previous frame and the tasks are reused from frame to frame
+ * and only reallocated when the resolution changes.
+ */
+public class MotionAnalyzer implements YuvFrameListener, Closeable {
+    /**
+     * The edge length of a tile in pixels.
+     */
+    public static final int TILE_SIZE = 32;
+
+    /**
+     * The maximum number of regions of a frame.
+     */
+    public static final int MAX_REGIONS = 8;
+
+    /**
+     * The default difference of the mean of a tile from the mean of the frame above which a tile
+     * has moved, in luma levels.
+     */
+    public static final float DEFAULT_DIFFERENCE_THRESHOLD = 10.0f;
+
+    /**
+     * The default variance of the difference within a tile above which a tile has moved, well
+     * above the variance of the sensor noise.
+     */
+    public static final float DEFAULT_VARIANCE_THRESHOLD = 100.0f;
+
+    private final ForkJoinPool pool;
+    private final RecursiveAction frameTask = new FrameTask();
+    private TileRowTask[] rowTasks = new TileRowTask[0];
+    private final LatencyHistogram analysisTimes = new LatencyHistogram();
+
+    private volatile float differenceThreshold = DEFAULT_DIFFERENCE_THRESHOLD;
+    private volatile float varianceThreshold = DEFAULT_VARIANCE_THRESHOLD;
+
+    // the state of the analysis, only used by the analyzing thread and its tasks
+    private int width = 0;
+    private int height = 0;
+    private int columns = 0;
+    private int rows = 0;
+    private byte[] previous = new byte[0];
+    private float[] differences = new float[0];
+    private float[] variances = new float[0];
+    private int[] labels = new int[0];
+    private int[] stack = new int[0];
+    private final int[] regions = new int[4 * MAX_REGIONS];
+
+    private ByteBuffer luma;
+    private int offset;
+    private int rowStride;
+    private int pixelStride;
+
+    // the latest result, guarded by this
+    private boolean hasPrevious = false;
+    private final int[] latestRegions = new int[4 * MAX_REGIONS];
+    private int latestRegionCount = 0;
+    private long analyzedFrames = 0;
+    private long framesWithMotion = 0;
+
+    /**
+     * Computes the tiles of one row.
+     */
+    private class TileRowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int row;
+
+        TileRowTask(int row) {
+            this.row = row;
+        }
+
+        @Override
+        protected void compute() {
+            analyzeRow(row);
+        }
+    }
+
+    /**
+     * Computes all rows of tiles in parallel.
+     */
+    private class FrameTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            invokeAll(rowTasks);
+        }
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param parallelism the number of worker threads, e.g. the number of available cores
+     */
+    public MotionAnalyzer(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Sets the difference of the mean of a tile from the mean of the frame above which a tile has
+     * moved.
+     *
+     * @param threshold the threshold in luma levels
+     */
+    public void setDifferenceThreshold(float threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Invalid difference threshold: " + threshold);
+        }
+        this.differenceThreshold = threshold;
+    }
+
+    /**
+     * Returns the difference of the mean of a tile from the mean of the frame above which a tile
+     * has moved.
+     *
+     * @return the threshold in luma levels
+     */
+    public float getDifferenceThreshold() {
+        return differenceThreshold;
+    }
+
+    /**
+     * Sets the variance of the difference within a tile above which a tile has moved.
+     *
+     * @param threshold the threshold in squared luma levels
+     */
+    public void setVarianceThreshold(float threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Invalid variance threshold: " + threshold);
+        }
+        this.varianceThreshold = threshold;
+    }
+
+    /**
+     * Returns the variance of the difference within a tile above which a tile has moved.
+     *
+     * @return the threshold in squared luma levels
+     */
+    public float getVarianceThreshold() {
+        return varianceThreshold;
+    }
+
+    /**
+     * Forgets the previous frame, e.g. at the start of a capture session, so that the next frame
+     * is only stored for comparison.
+     */
+    public synchronized void reset() {
+        hasPrevious = false;
+        latestRegionCount = 0;
+    }
+
+    @Override
+    public void onYuvFrame(@NonNull YuvFrame frame) {
+        YuvFrame.Plane plane = frame.getPlane(YuvFrame.Y);
+        analyze(plane.getBuffer(), 0, frame.getWidth(), frame.getHeight(), plane.getRowStride(), plane.getPixelStride());
+    }
+
+    /**
+     * Compares a luma plane with the previous one and stores it for the next comparison. Must not
+     * be called concurrently.
+     *
+     * @param luma        the luma plane, which is read with absolute gets
+     * @param offset      the index of the first sample
+     * @param width       the width of the frame in pixels
+     * @param height      the height of the frame in pixels
+     * @param rowStride   the distance between the starts of two rows
+     * @param pixelStride the distance between two samples of a row
+     * @return the number of moved regions, 0 for the first frame
+     */
+    public int analyze(@NonNull ByteBuffer luma, int offset, int width, int height, int rowStride, int pixelStride) {
+        long start = System.nanoTime();
+        boolean compare;
+        synchronized (this) {
+            if ((width != this.width) || (height != this.height)) {
+                resize(width, height);
+                hasPrevious = false;
+            }
+            compare = hasPrevious;
+            hasPrevious = true;
+        }
+
+        this.luma = luma;
+        this.offset = offset;
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        frameTask.reinitialize();
+        for (TileRowTask task : rowTasks) {
+            task.reinitialize();
+        }
+        pool.invoke(frameTask);
+        this.luma = null;
+
+        int regionCount = compare ? findRegions() : 0;
+        synchronized (this) {
+            System.arraycopy(regions, 0, latestRegions, 0, 4 * regionCount);
+            latestRegionCount = regionCount;
+            analyzedFrames++;
+            if (regionCount > 0) {
+                framesWithMotion++;
+            }
+        }
+        analysisTimes.record(System.nanoTime() - start);
+        return regionCount;
+    }
+
+    /**
+     * Tags the metadata of a frame with the regions of the latest analysis.
+     *
+     * @param metadata the metadata of the frame
+     */
+    public synchronized void tag(@NonNull FrameMetadata metadata) {
+        metadata.setMotionRegions(latestRegions, latestRegionCount);
+    }
+
+    /**
+     * Returns the times it took to analyze a frame.
+     *
+     * @return the analysis times in nanoseconds
+     */
+    @NonNull
+    public LatencyHistogram getAnalysisTimes() {
+        return analysisTimes;
+    }
+
+    /**
+     * Returns the number of analyzed frames.
+     *
+     * @return the number of analyzed frames
+     */
+    public synchronized long getAnalyzedFrames() {
+        return analyzedFrames;
+    }
+
+    /**
+     * Returns the number of analyzed frames with at least one moved region.
+     *
+     * @return the number of frames with motion
+     */
+    public synchronized long getFramesWithMotion() {
+        return framesWithMotion;
+    }
+
+    /**
+     * Stops the worker threads. The analyzer must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "MotionAnalyzer[parallelism=" + pool.getParallelism() + ";tiles=" + columns + "x" + rows
+                + ";regions=" + latestRegionCount + ";analyzed=" + analyzedFrames + ";motion=" + framesWithMotion
+                + ";analysis=" + analysisTimes.getPercentile(99) / 1000 + "us]";
+    }
+
+    private void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        previous = new byte[width * height];
+        differences = new float[columns * rows];
+        variances = new float[columns * rows];
+        labels = new int[columns * rows];
+        stack = new int[columns * rows];
+        rowTasks = new TileRowTask[rows];
+        for (int row = 0; row < rows; row++) {
+            rowTasks[row] = new TileRowTask(row);
+        }
+    }
+
+    /**
+     * Computes the difference statistics of the tiles of a row and stores their pixels as the
+     * previous frame. The rows of tiles do not overlap, so the tasks need no synchronization.
+     */
+    private void analyzeRow(int row) {
+        int top = row * TILE_SIZE;
+        int bottom = Math.min(top + TILE_SIZE, height);
+        for (int column = 0; column < columns; column++) {
+            int left = column * TILE_SIZE;
+            int right = Math.min(left + TILE_SIZE, width);
+            int sum = 0;
+            int squareSum = 0;
+            for (int y = top; y < bottom; y++) {
+                int source = offset + y * rowStride + left * pixelStride;
+                int target = y * width + left;
+                for (int x = left; x < right; x++) {
+                    int value = luma.get(source) & 0xFF;
+                    int difference = value - (previous[target] & 0xFF);
+                    sum += difference;
+                    squareSum += difference * difference;
+                    previous[target] = (byte) value;
+                    source += pixelStride;
+                    target++;
+                }
+            }
+
+            int pixels = (right - left) * (bottom - top);
+            float mean = (float) sum / pixels;
+            int tile = row * columns + column;
+            differences[tile] = mean;
+            variances[tile] = (float) squareSum / pixels - mean * mean;
+        }
+    }
+
+    /**
+     * Merges the moved tiles into regions with a flood fill over 4-connected tiles.
+     *
+     * @return the number of regions
+     */
+    private int findRegions() {
+        int tiles = columns * rows;
+        float frameMean = 0;
+        for (int tile = 0; tile < tiles; tile++) {
+            frameMean += differences[tile];
+        }
+        frameMean /= tiles;
+
+        float difference = differenceThreshold;
+        float variance = varianceThreshold;
+        for (int tile = 0; tile < tiles; tile++) {
+            boolean moved = (variances[tile] > variance) || (Math.abs(differences[tile] - frameMean) > difference);
+            // 0 marks a moved tile without a region, -1 a tile that has not moved
+            labels[tile] = moved ? 0 : -1;
+        }
+
+        int regionCount = 0;
+        for (int seed = 0; seed < tiles; seed++) {
+            if (labels[seed] != 0) {
+                continue;
+            }
+            int region = Math.min(regionCount, MAX_REGIONS - 1);
+            int minColumn = columns;
+            int minRow = rows;
+            int maxColumn = -1;
+            int maxRow = -1;
+
+            int size = 0;
+            stack[size++] = seed;
+            labels[seed] = region + 1;
+            while (size > 0) {
+                int tile = stack[--size];
+                int column = tile % columns;
+                int row = tile / columns;
+                minColumn = Math.min(minColumn, column);
+                minRow = Math.min(minRow, row);
+                maxColumn = Math.max(maxColumn, column);
+                maxRow = Math.max(maxRow, row);
+
+                // every tile is pushed once, so the stack cannot overflow
+                if ((column > 0) && (labels[tile - 1] == 0)) {
+                    labels[tile - 1] = region + 1;
+                    stack[size++] = tile - 1;
+                }
+                if ((column < columns - 1) && (labels[tile + 1] == 0)) {
+                    labels[tile + 1] = region + 1;
+                    stack[size++] = tile + 1;
+                }
+                if ((row > 0) && (labels[tile - columns] == 0)) {
+                    labels[tile - columns] = region + 1;
+                    stack[size++] = tile - columns;
+                }
+                if ((row < rows - 1) && (labels[tile + columns] == 0)) {
+                    labels[tile + columns] = region + 1;
+                    stack[size++] = tile + columns;
+                }
+            }
+
+            int left = minColumn * TILE_SIZE;
+            int top = minRow * TILE_SIZE;
+            int right = Math.min((maxColumn + 1) * TILE_SIZE, width);
+            int bottom = Math.min((maxRow + 1) * TILE_SIZE, height);
+            if (regionCount < MAX_REGIONS) {
+                regions[4 * region] = left;
+                regions[4 * region + 1] = top;
+                regions[4 * region + 2] = right;
+                regions[4 * region + 3] = bottom;
+                regionCount++;
+            } else {
+                regions[4 * region] = Math.min(regions[4 * region], left);
+                regions[4 * region + 1] = Math.min(regions[4 * region + 1], top);
+                regions[4 * region + 2] = Math.max(regions[4 * region + 2], right);
+                regions[4 * region + 3] = Math.max(regions[4 * region + 3], bottom);
+            }
+        }
+        return regionCount;
+    }
+}
@@ -0,0 +1,112 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The size of a level of a {@link FramePyramid}, either a fraction of the source frame or a fixed
+ * size. Levels are never larger than the source frame.
+ */
+public final class PyramidLevel {
+    /**
+     * Half the width and height of the source frame.
+     */
+    public static final PyramidLevel HALF = scaled(2);
+
+    /**
+     * A quarter of the width and height of the source frame.
+     */
+    public static final PyramidLevel QUARTER = scaled(4);
+
+    /**
+     * A fixed 160x120 thumbnail.
+     */
+    public static final PyramidLevel THUMBNAIL = fixed(160, 120);
+
+    private final int divisor;
+    private final int width;
+    private final int height;
+
+    private PyramidLevel(int divisor, int width, int height) {
+        this.divisor = divisor;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns a level that divides the size of the source frame.
+     *
+     * @param divisor the divisor of the width and the height
+     * @return the level
+     */
+    @NonNull
+    public static PyramidLevel scaled(int divisor) {
+        if (divisor < 1) {
+            throw new IllegalArgumentException("Invalid divisor: " + divisor);
+        }
+        return new PyramidLevel(divisor, 0, 0);
+    }
+
+    /**
+     * Returns a level of a fixed size. The aspect ratio of the source frame is not preserved.
+     *
+     * @param width  the width of the level
+     * @param height the height of the level
+     * @return the level
+     */
+    @NonNull
+    public static PyramidLevel fixed(int width, int height) {
+        if ((width < 1) || (height < 1)) {
+            throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+        }
+        return new PyramidLevel(0, width, height);
+    }
+
+    /**
+     * Returns the width of the level for a source frame.
+     *
+     * @param sourceWidth the width of the source frame
+     * @return the width of the level
+     */
+    public int getWidth(int sourceWidth) {
+        return resolve(sourceWidth, width);
+    }
+
+    /**
+     * Returns the height of the level for a source frame.
+     *
+     * @param sourceHeight the height of the source frame
+     * @return the height of the level
+     */
+    public int getHeight(int sourceHeight) {
+        return resolve(sourceHeight, height);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PyramidLevel)) {
+            return false;
+        }
+        PyramidLevel other = (PyramidLevel) o;
+        return (divisor == other.divisor) && (width == other.width) && (height == other.height);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * divisor + width) + height;
+    }
+
+    @Override
+    public String toString() {
+        return (divisor > 0) ? "1/" + divisor : width + "x" + height;
+    }
+
+    private int resolve(int source, int fixed) {
+        if (divisor > 0) {
+            return Math.max(1, source / divisor);
+        }
+        return Math.min(fixed, source);
+    }
+}
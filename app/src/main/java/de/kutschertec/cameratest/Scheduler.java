@@ -0,0 +1,25 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Runs tasks after a delay on a shared thread, e.g. the camera {@link android.os.Handler}, so
+ * that timers do not need a thread of their own.
+ */
+public interface Scheduler {
+    /**
+     * Schedules a task. A task that is already scheduled may run twice, cancel it first to move
+     * its deadline.
+     *
+     * @param task       the task to run
+     * @param delayNanos the delay in nanoseconds
+     */
+    void schedule(@NonNull Runnable task, long delayNanos);
+
+    /**
+     * Removes all pending runs of a task.
+     *
+     * @param task the task to cancel
+     */
+    void cancel(@NonNull Runnable task);
+}
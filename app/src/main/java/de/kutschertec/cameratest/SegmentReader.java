@@ -0,0 +1,207 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Cursor over the records written by a {@link SegmentRecorder}.
+ * <p>
+ * The reader maps one segment at a time read-only and returns the frame data as a slice of the
+ * mapping, without copying. Reading a segment stops at its first incomplete or corrupt record.
+ * Timestamps are expected to increase across records, which allows {@link #seek(long)} to pick the
+ * segment by its first timestamp.
+ */
+public class SegmentReader {
+    private final Logger logger = new Logger(this);
+
+    private final File[] segments;
+    private final byte[] chunk = new byte[8192];
+    private final CRC32 crc = new CRC32();
+
+    private int segmentIndex = -1;
+    private MappedByteBuffer segment = null;
+
+    private long timestamp;
+    private ByteBuffer data;
+    private long corruptRecords = 0;
+
+    /**
+     * Create a new instance, positioned before the first record. Segments created after this
+     * call are not seen by the reader.
+     *
+     * @param directory the directory of the segment files
+     */
+    public SegmentReader(@NonNull File directory) {
+        this.segments = SegmentRecorder.listSegments(directory);
+    }
+
+    /**
+     * Positions the reader on the first record with a timestamp at or after the given timestamp.
+     *
+     * @param timestamp the sensor timestamp in nanoseconds
+     * @return {@code true} if such a record exists
+     * @throws IOException if a segment cannot be read
+     */
+    public boolean seek(long timestamp) throws IOException {
+        // find the last segment that starts at or before the timestamp
+        int low = 0;
+        int high = segments.length - 1;
+        int start = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long first = readFirstTimestamp(segments[middle]);
+            if (first <= timestamp) {
+                start = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        openSegment(start - 1);
+        while (next()) {
+            if (this.timestamp >= timestamp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advances the reader to the next valid record.
+     *
+     * @return {@code true} if the reader is positioned on a record, {@code false} at the end of the
+     * log
+     * @throws IOException if a segment cannot be read
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if ((segment != null) && readRecord()) {
+                return true;
+            }
+            if (segmentIndex + 1 >= segments.length) {
+                data = null;
+                return false;
+            }
+            openSegment(segmentIndex);
+        }
+    }
+
+    /**
+     * Returns the sensor timestamp of the current record.
+     *
+     * @return the sensor timestamp of the current record in nanoseconds
+     */
+    public long getTimestamp() {
+        checkRecord();
+        return timestamp;
+    }
+
+    /**
+     * Returns a read-only view of the frame data of the current record. The view stays valid
+     * until the segment has been deleted by the recorder.
+     *
+     * @return a read-only view of the frame data of the current record
+     */
+    @NonNull
+    public ByteBuffer getData() {
+        checkRecord();
+        return data;
+    }
+
+    /**
+     * Returns the number of corrupt records found so far. Reading a segment stops at its first
+     * corrupt record.
+     *
+     * @return the number of corrupt records
+     */
+    public long getCorruptRecords() {
+        return corruptRecords;
+    }
+
+    private void openSegment(int previousIndex) throws IOException {
+        segmentIndex = previousIndex + 1;
+        segment = null;
+        if (segmentIndex >= segments.length) {
+            return;
+        }
+
+        File file = segments[segmentIndex];
+        if (!file.exists()) {
+            // evicted by the recorder in the meantime
+            logger.debug("Segment {} has been evicted.", file.getName());
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+    }
+
+    private boolean readRecord() {
+        int start = segment.position();
+        if ((segment.remaining() < SegmentRecorder.RECORD_HEADER_SIZE)
+                || (segment.getInt(start) != SegmentRecorder.RECORD_MAGIC)) {
+            segment = null;
+            return false;
+        }
+
+        int length = segment.getInt(start + 4);
+        if ((length < 0) || (length > segment.remaining() - SegmentRecorder.RECORD_HEADER_SIZE)) {
+            corruptRecords++;
+            segment = null;
+            return false;
+        }
+
+        ByteBuffer record = segment.duplicate();
+        record.position(start + SegmentRecorder.RECORD_HEADER_SIZE);
+        record.limit(start + SegmentRecorder.RECORD_HEADER_SIZE + length);
+        ByteBuffer slice = record.slice().asReadOnlyBuffer();
+
+        if (computeCrc(slice.duplicate()) != segment.getInt(start + 16)) {
+            corruptRecords++;
+            segment = null;
+            return false;
+        }
+
+        timestamp = segment.getLong(start + 8);
+        data = slice;
+        segment.position(start + SegmentRecorder.RECORD_HEADER_SIZE + length);
+        return true;
+    }
+
+    private int computeCrc(ByteBuffer buffer) {
+        crc.reset();
+        while (buffer.hasRemaining()) {
+            int count = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+        }
+        return (int) crc.getValue();
+    }
+
+    private static long readFirstTimestamp(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if ((raf.length() < SegmentRecorder.RECORD_HEADER_SIZE) || (raf.readInt() != SegmentRecorder.RECORD_MAGIC)) {
+                return Long.MAX_VALUE;
+            }
+            raf.seek(8);
+            return raf.readLong();
+        } catch (IOException e) {
+            // evicted in the meantime, treat it like an empty segment
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private void checkRecord() {
+        if (data == null) {
+            throw new IllegalStateException("Reader is not positioned on a record.");
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Records every camera frame into a rolling log of fixed-size, memory-mapped segment files.
+ * <p>
+ * Every record consists of a header and the frame data. The header contains a magic number, the
+ * length of the data, the sensor timestamp and a CRC32 of the data. The magic number is written
+ * last, so a record that was interrupted by a crash is never mistaken for a complete one. When the
+ * current segment is full, a new one is started; the oldest segments are deleted as soon as all
+ * segments together exceed the size budget. Use {@link SegmentReader} to read the records.
+ * <p>
+ * The recorder is a {@link FrameListener} and should be subscribed to the {@link FrameBus} with a
+ * bounded queue, so that writing never happens on the camera thread.
+ */
+public class SegmentRecorder implements FrameListener {
+    static final int RECORD_MAGIC = 0x4A504547;
+    static final int RECORD_HEADER_SIZE = 4 + 4 + 8 + 4;
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int CRC_CHUNK_SIZE = 8192;
+
+    private final Logger logger = new Logger(this);
+
+    private final File directory;
+    private final int segmentSize;
+    private final long sizeBudget;
+
+    private final ArrayDeque<File> segments = new ArrayDeque<>();
+    private final byte[] chunk = new byte[CRC_CHUNK_SIZE];
+    private final CRC32 crc = new CRC32();
+
+    private long nextSegmentId = 0;
+    private MappedByteBuffer segment = null;
+
+    private final AtomicLong recordedFrames = new AtomicLong(0);
+    private final AtomicLong recordedBytes = new AtomicLong(0);
+    private final AtomicLong rejectedFrames = new AtomicLong(0);
+    private final AtomicLong evictedSegments = new AtomicLong(0);
+
+    /**
+     * Create a new instance. Existing segments in the directory are kept and count towards the
+     * size budget, new records are appended to a new segment.
+     *
+     * @param directory   the directory of the segment files
+     * @param segmentSize the size of each segment file in bytes
+     * @param sizeBudget  the maximum total size of all segment files in bytes
+     * @throws IOException if the directory cannot be created
+     */
+    public SegmentRecorder(@NonNull File directory, int segmentSize, long sizeBudget) throws IOException {
+        if (segmentSize <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        if (sizeBudget < segmentSize) {
+            throw new IllegalArgumentException("Size budget smaller than one segment: " + sizeBudget);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create recording directory " + directory);
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sizeBudget = sizeBudget;
+
+        for (File file : listSegments(directory)) {
+            segments.addLast(file);
+            nextSegmentId = Math.max(nextSegmentId, getSegmentId(file) + 1);
+        }
+        logger.debug("Found {} existing segments in {}", segments.size(), directory);
+    }
+
+    @Override
+    public void onFrame(@NonNull FrameLease frame) {
+        try {
+            append(frame.getBuffer().duplicate(), frame.getTimestamp());
+        } catch (IOException e) {
+            logger.error("Error recording frame.", e);
+        }
+    }
+
+    /**
+     * Appends the remaining bytes of the given buffer as a new record.
+     *
+     * @param data      the frame data
+     * @param timestamp the sensor timestamp of the frame in nanoseconds
+     * @return {@code true} if the frame has been recorded, {@code false} if it is larger than a
+     * segment
+     * @throws IOException if a new segment cannot be created
+     */
+    public synchronized boolean append(@NonNull ByteBuffer data, long timestamp) throws IOException {
+        int length = data.remaining();
+        if (length > segmentSize - RECORD_HEADER_SIZE) {
+            rejectedFrames.incrementAndGet();
+            return false;
+        }
+
+        if ((segment == null) || (segment.remaining() < RECORD_HEADER_SIZE + length)) {
+            rollSegment();
+        }
+
+        // copy the data and compute its checksum in one pass
+        int start = segment.position();
+        segment.position(start + RECORD_HEADER_SIZE);
+        crc.reset();
+        while (data.hasRemaining()) {
+            int count = Math.min(chunk.length, data.remaining());
+            data.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+            segment.put(chunk, 0, count);
+        }
+
+        segment.putInt(start + 4, length);
+        segment.putLong(start + 8, timestamp);
+        segment.putInt(start + 16, (int) crc.getValue());
+        segment.putInt(start, RECORD_MAGIC);
+
+        recordedFrames.incrementAndGet();
+        recordedBytes.addAndGet(length);
+        return true;
+    }
+
+    /**
+     * Writes all records of the current segment to the storage device.
+     */
+    public synchronized void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Flushes the current segment and stops appending to it. A following append starts a new
+     * segment.
+     */
+    public synchronized void close() {
+        flush();
+        segment = null;
+    }
+
+    private void rollSegment() throws IOException {
+        flush();
+
+        File file = new File(directory, getSegmentName(nextSegmentId++));
+        logger.debug("Starting new segment {}", file.getName());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(segmentSize);
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segments.addLast(file);
+
+        while ((long) segments.size() * segmentSize > sizeBudget) {
+            File oldest = segments.pollFirst();
+            logger.debug("Evicting segment {}", oldest.getName());
+            if (!oldest.delete()) {
+                logger.warn("Cannot delete segment {}", oldest);
+            }
+            evictedSegments.incrementAndGet();
+        }
+    }
+
+    @NonNull
+    static String getSegmentName(long id) {
+        return String.format(Locale.US, "%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+    }
+
+    static long getSegmentId(@NonNull File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Returns the segment files of a directory, oldest first.
+     *
+     * @param directory the directory of the segment files
+     * @return the segment files, oldest first
+     */
+    @NonNull
+    static File[] listSegments(@NonNull File directory) {
+        File[] files = directory.listFiles(file -> file.isFile()
+                && file.getName().startsWith(SEGMENT_PREFIX) && file.getName().endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+
+        // the ids are zero-padded, so the names sort in the order the segments were created
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Returns the number of recorded frames.
+     *
+     * @return the number of recorded frames
+     */
+    public long getRecordedFrames() {
+        return recordedFrames.get();
+    }
+
+    /**
+     * Returns the number of recorded frame bytes, without record headers.
+     *
+     * @return the number of recorded frame bytes
+     */
+    public long getRecordedBytes() {
+        return recordedBytes.get();
+    }
+
+    /**
+     * Returns the number of frames that were not recorded because they are larger than a segment.
+     *
+     * @return the number of rejected frames
+     */
+    public long getRejectedFrames() {
+        return rejectedFrames.get();
+    }
+
+    /**
+     * Returns the number of segments deleted to stay within the size budget.
+     *
+     * @return the number of evicted segments
+     */
+    public long getEvictedSegments() {
+        return evictedSegments.get();
+    }
+}
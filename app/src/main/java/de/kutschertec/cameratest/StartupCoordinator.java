@@ -0,0 +1,195 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Coordinates the camera startup, so that the slow steps run in parallel.
+ * <p>
+ * {@link #start()} immediately asks the backend to load the camera characteristics and open the
+ * device, while the preview surface is still being created. The capture session is created as
+ * soon as both the device and the surface are ready, in whatever order they arrive. If only one of
+ * them is lost, e.g. when the device is reopened, the session is created again once it is back.
+ * <p>
+ * Every startup is recorded in a {@link StartupTrace}.
+ */
+public class StartupCoordinator {
+    private final Clock clock;
+    private final Backend backend;
+    private final LatencyHistogram timesToFirstFrame = new LatencyHistogram();
+
+    private boolean running = false;
+    private boolean deviceOpened = false;
+    private boolean surfaceReady = false;
+    private boolean sessionRequested = false;
+    private StartupTrace trace = null;
+
+    /**
+     * The camera operations the coordinator triggers.
+     */
+    public interface Backend {
+        /**
+         * Loads the camera characteristics and starts opening the device. The backend reports the
+         * progress with {@link #onCharacteristicsLoaded()} and {@link #onDeviceOpened()}.
+         */
+        void openDevice();
+
+        /**
+         * Creates the capture session. Called once both the device and the surface are ready.
+         */
+        void createSession();
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param clock   the clock for the startup traces
+     * @param backend performs the camera operations
+     */
+    public StartupCoordinator(@NonNull Clock clock, @NonNull Backend backend) {
+        this.clock = clock;
+        this.backend = backend;
+    }
+
+    /**
+     * Starts a new startup and opens the device. The surface may still be unavailable.
+     */
+    public void start() {
+        synchronized (this) {
+            running = true;
+            deviceOpened = false;
+            sessionRequested = false;
+            trace = new StartupTrace(clock);
+            if (surfaceReady) {
+                trace.mark(StartupTrace.Milestone.SURFACE_READY);
+            }
+        }
+        backend.openDevice();
+    }
+
+    /**
+     * Stops the coordinator, e.g. when the camera is closed on purpose. Reports arriving
+     * afterwards are ignored until the next {@link #start()}.
+     */
+    public synchronized void stop() {
+        running = false;
+        deviceOpened = false;
+        sessionRequested = false;
+    }
+
+    /**
+     * Returns whether a startup has been started and not stopped.
+     *
+     * @return {@code true} if the coordinator is running
+     */
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Reports that the camera characteristics have been loaded.
+     */
+    public synchronized void onCharacteristicsLoaded() {
+        mark(StartupTrace.Milestone.CHARACTERISTICS_LOADED);
+    }
+
+    /**
+     * Reports that the camera device has been opened.
+     */
+    public void onDeviceOpened() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            deviceOpened = true;
+            mark(StartupTrace.Milestone.DEVICE_OPENED);
+        }
+        createSessionIfReady();
+    }
+
+    /**
+     * Reports that the camera device has been closed or lost. The session is created again when
+     * the device has been reopened.
+     */
+    public synchronized void onDeviceClosed() {
+        deviceOpened = false;
+        sessionRequested = false;
+    }
+
+    /**
+     * Reports that the preview surface is available.
+     */
+    public void onSurfaceReady() {
+        synchronized (this) {
+            surfaceReady = true;
+            if (!running) {
+                return;
+            }
+            mark(StartupTrace.Milestone.SURFACE_READY);
+        }
+        createSessionIfReady();
+    }
+
+    /**
+     * Reports that the preview surface has been destroyed.
+     */
+    public synchronized void onSurfaceDestroyed() {
+        surfaceReady = false;
+        sessionRequested = false;
+    }
+
+    /**
+     * Reports that the capture session has been configured.
+     */
+    public synchronized void onSessionConfigured() {
+        mark(StartupTrace.Milestone.SESSION_CONFIGURED);
+    }
+
+    /**
+     * Reports the first frame of a session.
+     *
+     * @return the trace of the startup if this is its first frame, or {@code null}
+     */
+    public synchronized StartupTrace onFirstFrame() {
+        if ((trace != null) && trace.mark(StartupTrace.Milestone.FIRST_FRAME)) {
+            timesToFirstFrame.record(trace.getTimeToFirstFrame());
+            return trace;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the trace of the current or last startup.
+     *
+     * @return the trace of the current or last startup, or {@code null} before the first start
+     */
+    public synchronized StartupTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Returns the times to the first frame of all startups.
+     *
+     * @return the times to the first frame in nanoseconds
+     */
+    @NonNull
+    public LatencyHistogram getTimesToFirstFrame() {
+        return timesToFirstFrame;
+    }
+
+    private void createSessionIfReady() {
+        synchronized (this) {
+            if (!running || !deviceOpened || !surfaceReady || sessionRequested) {
+                return;
+            }
+            sessionRequested = true;
+            mark(StartupTrace.Milestone.SESSION_CREATE);
+        }
+        backend.createSession();
+    }
+
+    private void mark(StartupTrace.Milestone milestone) {
+        if (trace != null) {
+            trace.mark(milestone);
+        }
+    }
+}
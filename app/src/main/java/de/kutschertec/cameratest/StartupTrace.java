@@ -0,0 +1,120 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Timestamps of the milestones of one camera startup, relative to its start.
+ */
+public class StartupTrace {
+    /**
+     * The milestones of a camera startup.
+     */
+    public enum Milestone {
+        /**
+         * The startup has begun.
+         */
+        START,
+
+        /**
+         * The camera characteristics have been loaded and the outputs have been set up.
+         */
+        CHARACTERISTICS_LOADED,
+
+        /**
+         * The camera device has been opened.
+         */
+        DEVICE_OPENED,
+
+        /**
+         * The preview surface is available.
+         */
+        SURFACE_READY,
+
+        /**
+         * The capture session has been created.
+         */
+        SESSION_CREATE,
+
+        /**
+         * The capture session has been configured.
+         */
+        SESSION_CONFIGURED,
+
+        /**
+         * The first frame has arrived.
+         */
+        FIRST_FRAME
+    }
+
+    private final Clock clock;
+    private final long startTime;
+    private final long[] times = new long[Milestone.values().length];
+
+    /**
+     * Create a new instance and mark the {@link Milestone#START}.
+     *
+     * @param clock the clock to take the timestamps from
+     */
+    public StartupTrace(@NonNull Clock clock) {
+        this.clock = clock;
+        for (int i = 0; i < times.length; i++) {
+            times[i] = -1;
+        }
+        this.startTime = clock.nanoTime();
+        times[Milestone.START.ordinal()] = 0;
+    }
+
+    /**
+     * Marks a milestone. Only the first time a milestone is reached is kept.
+     *
+     * @param milestone the milestone that has been reached
+     * @return {@code true} if the milestone has been reached for the first time
+     */
+    public synchronized boolean mark(@NonNull Milestone milestone) {
+        if (times[milestone.ordinal()] >= 0) {
+            return false;
+        }
+        times[milestone.ordinal()] = clock.nanoTime() - startTime;
+        return true;
+    }
+
+    /**
+     * Returns the time a milestone has been reached.
+     *
+     * @param milestone the milestone
+     * @return the nanoseconds from the start to the milestone, or -1 if it has not been reached
+     */
+    public synchronized long getTime(@NonNull Milestone milestone) {
+        return times[milestone.ordinal()];
+    }
+
+    /**
+     * Returns the time to the first frame.
+     *
+     * @return the nanoseconds from the start to the first frame, or -1 if there was no frame yet
+     */
+    public long getTimeToFirstFrame() {
+        return getTime(Milestone.FIRST_FRAME);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder trace = new StringBuilder("StartupTrace[");
+        for (Milestone milestone : Milestone.values()) {
+            if (milestone != Milestone.START) {
+                if (milestone.ordinal() > 1) {
+                    trace.append(';');
+                }
+                trace.append(milestone).append('=');
+                long time = times[milestone.ordinal()];
+                if (time >= 0) {
+                    trace.append(time / 1000000).append("ms");
+                } else {
+                    trace.append('-');
+                }
+            }
+        }
+        trace.append(']');
+        return trace.toString();
+    }
+}
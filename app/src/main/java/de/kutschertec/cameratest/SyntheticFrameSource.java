@@ -0,0 +1,241 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link FrameSource} that generates frames on its own thread, following the intervals and sizes
+ * of a {@link FrameTrace}, so that the frame path can be load tested without a camera.
+ * <p>
+ * JPEG frames are structurally valid JPEG streams of the traced size: a start of image marker,
+ * comment segments holding the frame number and filler, and an end of image marker. They cannot
+ * be decoded to an image. YUV frames have the size given by the resolution and show a diagonal
+ * gradient that moves by one pixel per frame.
+ * <p>
+ * Frames are timed against {@link System#nanoTime()}. If the sink falls behind by more than a
+ * frame interval, late frames are skipped and counted, like a camera drops frames nobody reads.
+ */
+public class SyntheticFrameSource implements FrameSource {
+    private static final int MAX_SEGMENT_SIZE = 2 + 65535;
+    private static final int MIN_JPEG_SIZE = 8;
+
+    private final Format format;
+    private final int width;
+    private final int height;
+    private final FrameTrace trace;
+    private final boolean loop;
+
+    private final AtomicLong emittedFrames = new AtomicLong(0);
+    private final AtomicLong skippedFrames = new AtomicLong(0);
+
+    private volatile boolean running = false;
+    private Thread thread = null;
+
+    /**
+     * Create a new instance.
+     *
+     * @param format the format of the frames
+     * @param width  the width of the frames in pixels
+     * @param height the height of the frames in pixels
+     * @param trace  the intervals and, for JPEG, the sizes of the frames
+     * @param loop   {@code true} to replay the trace until the source is stopped
+     */
+    public SyntheticFrameSource(@NonNull Format format, int width, int height, @NonNull FrameTrace trace, boolean loop) {
+        if ((width <= 0) || (height <= 0) || ((width & 1) != 0) || ((height & 1) != 0)) {
+            throw new IllegalArgumentException("Invalid resolution: " + width + "x" + height);
+        }
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.trace = trace;
+        this.loop = loop;
+    }
+
+    @NonNull
+    @Override
+    public Format getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of frames delivered to the sink.
+     *
+     * @return the number of delivered frames
+     */
+    public long getEmittedFrames() {
+        return emittedFrames.get();
+    }
+
+    /**
+     * Returns the number of frames that have been skipped because the sink was too slow.
+     *
+     * @return the number of skipped frames
+     */
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    @Override
+    public synchronized void start(@NonNull FrameSink sink) {
+        if (thread != null) {
+            throw new IllegalStateException("Already started.");
+        }
+        running = true;
+        thread = new Thread(() -> run(sink), "SyntheticFrameSource");
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            join();
+            thread = null;
+        }
+    }
+
+    /**
+     * Waits until the trace has been replayed, or the source has been stopped.
+     */
+    public void join() {
+        Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+        }
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(FrameSink sink) {
+        int frames = trace.getFrameCount();
+        int capacity = (format == Format.JPEG) ? Math.max(MIN_JPEG_SIZE, trace.getMaxFrameSize()) : getYuvSize(width, height);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+        byte[] row = createGradientRow(width);
+
+        long frameNumber = 0;
+        long deadline = System.nanoTime();
+        while (running && (frames > 0)) {
+            int index = (int) (frameNumber % frames);
+            if ((index == 0) && (frameNumber > 0) && !loop) {
+                break;
+            }
+            deadline += trace.getInterval(index);
+            frameNumber++;
+
+            long now = System.nanoTime();
+            while (running && (now < deadline)) {
+                LockSupport.parkNanos(deadline - now);
+                now = System.nanoTime();
+            }
+            if (!running) {
+                break;
+            }
+
+            // the next frame is already due, the sink could not keep up
+            if (loop || (frameNumber < frames)) {
+                long nextInterval = trace.getInterval((int) (frameNumber % frames));
+                if ((nextInterval > 0) && (now - deadline >= nextInterval)) {
+                    skippedFrames.incrementAndGet();
+                    continue;
+                }
+            }
+
+            buffer.clear();
+            if (format == Format.JPEG) {
+                fillJpeg(buffer, trace.getFrameSize(index), frameNumber);
+            } else {
+                fillYuv(buffer, width, height, row, frameNumber);
+            }
+            buffer.flip();
+            sink.onFrame(buffer, deadline, now, now - deadline);
+            emittedFrames.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the size of a YUV 4:2:0 frame without padding.
+     *
+     * @param width  the width of the frame
+     * @param height the height of the frame
+     * @return the size in bytes
+     */
+    static int getYuvSize(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    /**
+     * Writes a JPEG stream of comment segments.
+     *
+     * @param buffer      the buffer to write to
+     * @param size        the size of the stream, at least {@link #MIN_JPEG_SIZE}
+     * @param frameNumber the frame number written into the first comment
+     */
+    static void fillJpeg(@NonNull ByteBuffer buffer, int size, long frameNumber) {
+        size = Math.max(MIN_JPEG_SIZE, size);
+        buffer.put((byte) 0xFF).put((byte) 0xD8);
+
+        int remaining = size - 4;
+        boolean first = true;
+        while (remaining > 0) {
+            int segment = Math.min(remaining, MAX_SEGMENT_SIZE);
+            if ((remaining - segment > 0) && (remaining - segment < 4)) {
+                // leave room for a complete last segment
+                segment -= 4;
+            }
+            buffer.put((byte) 0xFF).put((byte) 0xFE);
+            buffer.putShort((short) (segment - 2));
+            int payload = segment - 4;
+            if (first && (payload >= 8)) {
+                buffer.putLong(frameNumber);
+                payload -= 8;
+            }
+            first = false;
+            for (int i = 0; i < payload; i++) {
+                // any byte but 0xFF
+                buffer.put((byte) (i & 0x7F));
+            }
+            remaining -= segment;
+        }
+
+        buffer.put((byte) 0xFF).put((byte) 0xD9);
+    }
+
+    private static byte[] createGradientRow(int width) {
+        byte[] row = new byte[width + 256];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = (byte) i;
+        }
+        return row;
+    }
+
+    private static void fillYuv(ByteBuffer buffer, int width, int height, byte[] row, long frameNumber) {
+        int shift = (int) (frameNumber & 0xFF);
+        for (int y = 0; y < height; y++) {
+            buffer.put(row, (shift + y) & 0xFF, width);
+        }
+        int chroma = width * height / 2;
+        for (int i = 0; i < chroma; i++) {
+            buffer.put((byte) 128);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An uncompressed YUV 4:2:0 frame with the plane layout of the camera, i.e. the row and pixel
+ * strides of the {@code YUV_420_888} image it has been copied from. The plane buffers are reused
+ * for the next frame, they only grow if a frame does not fit.
+ */
+public class YuvFrame {
+    /**
+     * The index of the luma plane.
+     */
+    public static final int Y = 0;
+
+    /**
+     * The index of the blue difference chroma plane.
+     */
+    public static final int U = 1;
+
+    /**
+     * The index of the red difference chroma plane.
+     */
+    public static final int V = 2;
+
+    private final Plane[] planes = {new Plane(), new Plane(), new Plane()};
+    private int width;
+    private int height;
+    private long timestamp;
+    private long sequence;
+
+    /**
+     * A plane of a {@link YuvFrame}.
+     */
+    public static class Plane {
+        private ByteBuffer storage = ByteBuffer.allocateDirect(0);
+        private ByteBuffer view = storage.asReadOnlyBuffer();
+        private int rowStride;
+        private int pixelStride;
+
+        /**
+         * Returns a read-only view of the plane data, from position 0 to the end of the data.
+         * Samples are addressed as {@code y * rowStride + x * pixelStride}.
+         *
+         * @return the plane data
+         */
+        @NonNull
+        public ByteBuffer getBuffer() {
+            return view;
+        }
+
+        /**
+         * Returns the distance between the starts of two rows.
+         *
+         * @return the row stride in bytes
+         */
+        public int getRowStride() {
+            return rowStride;
+        }
+
+        /**
+         * Returns the distance between two samples of a row.
+         *
+         * @return the pixel stride in bytes
+         */
+        public int getPixelStride() {
+            return pixelStride;
+        }
+
+        /**
+         * Returns a sample of the plane.
+         *
+         * @param x the column of the sample, in plane coordinates
+         * @param y the row of the sample, in plane coordinates
+         * @return the sample value from 0 to 255
+         */
+        public int get(int x, int y) {
+            return view.get(y * rowStride + x * pixelStride) & 0xFF;
+        }
+
+        /**
+         * Copies the data of a camera plane, from its position to its limit. The position of the
+         * source is left unchanged.
+         *
+         * @param source      the plane data
+         * @param rowStride   the row stride of the source
+         * @param pixelStride the pixel stride of the source
+         */
+        public void copyFrom(@NonNull ByteBuffer source, int rowStride, int pixelStride) {
+            int size = source.remaining();
+            if (storage.capacity() < size) {
+                storage = ByteBuffer.allocateDirect(size);
+                view = storage.asReadOnlyBuffer();
+            }
+
+            int position = source.position();
+            storage.clear();
+            storage.put(source);
+            source.position(position);
+
+            view.limit(size);
+            view.position(0);
+            this.rowStride = rowStride;
+            this.pixelStride = pixelStride;
+        }
+    }
+
+    /**
+     * Returns a plane of the frame.
+     *
+     * @param index {@link #Y}, {@link #U} or {@link #V}
+     * @return the plane
+     */
+    @NonNull
+    public Plane getPlane(int index) {
+        return planes[index];
+    }
+
+    /**
+     * Sets the properties of the frame, before its planes are copied.
+     *
+     * @param width     the width of the frame in pixels
+     * @param height    the height of the frame in pixels
+     * @param timestamp the timestamp of the frame
+     * @param sequence  the number of the frame in its stream
+     */
+    public void set(int width, int height, long timestamp, long sequence) {
+        this.width = width;
+        this.height = height;
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Returns the width of the frame.
+     *
+     * @return the width of the frame in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the frame.
+     *
+     * @return the height of the frame in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the sensor timestamp of the frame.
+     *
+     * @return the timestamp of the frame in nanoseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the number of the frame in its stream.
+     *
+     * @return the sequence number of the frame
+     */
+    public long getSequence() {
+        return sequence;
+    }
+}
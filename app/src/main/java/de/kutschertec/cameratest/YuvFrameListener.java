@@ -0,0 +1,16 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Listener that receives the uncompressed frames of a {@link YuvStream}.
+ */
+public interface YuvFrameListener {
+    /**
+     * Called on the analysis thread for the latest YUV frame. The frame is reused after this
+     * method returns, listeners that need the pixels for longer have to copy them.
+     *
+     * @param frame the frame
+     */
+    void onYuvFrame(@NonNull YuvFrame frame);
+}
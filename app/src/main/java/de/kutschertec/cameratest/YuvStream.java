@@ -0,0 +1,161 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+
+/**
+ * Hands uncompressed frames from the camera thread to an analysis thread, latest frame only.
+ * <p>
+ * The stream owns three reusable {@link YuvFrame}s: one the producer fills, one pending and one
+ * the listener analyzes. Publishing replaces a pending frame the listener has not picked up yet,
+ * so a slow listener only skips frames and never stalls the camera.
+ */
+public class YuvStream implements Closeable {
+    private static final int FRAMES = 3;
+
+    private final Logger logger = new Logger(this);
+
+    private final YuvFrameListener listener;
+    private final ArrayDeque<YuvFrame> freeFrames = new ArrayDeque<>(FRAMES);
+    private final Thread thread;
+
+    private YuvFrame pending = null;
+    private boolean closed = false;
+    private long sequence = 0;
+    private long deliveredFrames = 0;
+    private long droppedFrames = 0;
+
+    /**
+     * Create a new instance and start its analysis thread.
+     *
+     * @param listener the listener that receives the frames
+     */
+    public YuvStream(@NonNull YuvFrameListener listener) {
+        this.listener = listener;
+        for (int i = 0; i < FRAMES; i++) {
+            freeFrames.add(new YuvFrame());
+        }
+
+        this.thread = new Thread(this::run, "YuvAnalysis");
+        this.thread.start();
+    }
+
+    /**
+     * Takes a free frame for the producer to fill. It has to be handed back with
+     * {@link #publish(YuvFrame)} or {@link #recycle(YuvFrame)}.
+     *
+     * @param width     the width of the frame in pixels
+     * @param height    the height of the frame in pixels
+     * @param timestamp the timestamp of the frame
+     * @return a free frame, or {@code null} if the stream has been closed
+     */
+    @Nullable
+    public synchronized YuvFrame obtainFrame(int width, int height, long timestamp) {
+        if (closed) {
+            return null;
+        }
+        YuvFrame frame = freeFrames.poll();
+        if (frame != null) {
+            frame.set(width, height, timestamp, sequence++);
+        }
+        return frame;
+    }
+
+    /**
+     * Hands a filled frame to the analysis thread, replacing a pending one.
+     *
+     * @param frame a frame taken with {@link #obtainFrame(int, int, long)}
+     */
+    public synchronized void publish(@NonNull YuvFrame frame) {
+        if (closed) {
+            freeFrames.add(frame);
+            return;
+        }
+        if (pending != null) {
+            freeFrames.add(pending);
+            droppedFrames++;
+        }
+        pending = frame;
+        notifyAll();
+    }
+
+    /**
+     * Gives back a frame that has not been filled.
+     *
+     * @param frame a frame taken with {@link #obtainFrame(int, int, long)}
+     */
+    public synchronized void recycle(@NonNull YuvFrame frame) {
+        freeFrames.add(frame);
+    }
+
+    /**
+     * Returns the number of frames the listener has analyzed.
+     *
+     * @return the number of delivered frames
+     */
+    public synchronized long getDeliveredFrames() {
+        return deliveredFrames;
+    }
+
+    /**
+     * Returns the number of frames replaced before the listener picked them up.
+     *
+     * @return the number of dropped frames
+     */
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Stops the analysis thread after the listener has finished its current frame. A pending
+     * frame is dropped.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            YuvFrame frame;
+            synchronized (this) {
+                while ((pending == null) && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                frame = pending;
+                pending = null;
+            }
+
+            try {
+                listener.onYuvFrame(frame);
+            } catch (RuntimeException e) {
+                logger.error("Error in YUV frame listener.", e);
+            }
+
+            synchronized (this) {
+                freeFrames.add(frame);
+                deliveredFrames++;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Precomputed table of crop regions for the digital zoom of a camera.
+ * <p>
+ * The zoom level ranges from 0 (no zoom) to {@link #getMaxZoomLevel()} (maximum digital zoom) and
+ * maps linearly to the magnification. The table holds the crop offsets at {@link #STEPS} + 1 evenly
+ * spaced zoom levels, lookups interpolate between the two nearest entries. Crop regions are
+ * centered on the active pixel array and their offsets are aligned to {@link #ALIGNMENT} pixels.
+ * Lookups do not allocate, so they can be done for every frame of a zoom ramp.
+ */
+public class ZoomTable {
+    /**
+     * The number of intervals of the table.
+     */
+    public static final int STEPS = 1024;
+
+    /**
+     * The alignment of the crop offsets in pixels.
+     */
+    public static final int ALIGNMENT = 4;
+
+    private final int activeArrayWidth;
+    private final int activeArrayHeight;
+    private final float maxZoomLevel;
+    private final int[] leftOffsets = new int[STEPS + 1];
+    private final int[] topOffsets = new int[STEPS + 1];
+
+    /**
+     * Create a new instance.
+     *
+     * @param activeArrayWidth  the width of the active pixel array
+     * @param activeArrayHeight the height of the active pixel array
+     * @param maxDigitalZoom    the maximum digital zoom factor of the camera
+     * @param maxZoomLevel      the zoom level that corresponds to the maximum digital zoom factor
+     */
+    public ZoomTable(int activeArrayWidth, int activeArrayHeight, float maxDigitalZoom, float maxZoomLevel) {
+        if ((activeArrayWidth <= 0) || (activeArrayHeight <= 0)) {
+            throw new IllegalArgumentException("Invalid active array size: " + activeArrayWidth + "x" + activeArrayHeight);
+        }
+        if ((maxDigitalZoom < 1) || (maxZoomLevel <= 0)) {
+            throw new IllegalArgumentException("Invalid maximum zoom: " + maxDigitalZoom + "/" + maxZoomLevel);
+        }
+
+        this.activeArrayWidth = activeArrayWidth;
+        this.activeArrayHeight = activeArrayHeight;
+        this.maxZoomLevel = maxZoomLevel;
+
+        for (int i = 0; i <= STEPS; i++) {
+            double magnification = 1 + (maxDigitalZoom - 1) * i / (double) STEPS;
+            leftOffsets[i] = (int) ((activeArrayWidth - activeArrayWidth / magnification) / 2);
+            topOffsets[i] = (int) ((activeArrayHeight - activeArrayHeight / magnification) / 2);
+        }
+    }
+
+    /**
+     * Returns the zoom level that corresponds to the maximum digital zoom factor.
+     *
+     * @return the maximum zoom level
+     */
+    public float getMaxZoomLevel() {
+        return maxZoomLevel;
+    }
+
+    /**
+     * Returns the crop region for a zoom level. Zoom levels outside of {@code 0..getMaxZoomLevel()}
+     * are clamped.
+     *
+     * @param zoomLevel the zoom level
+     * @param region    receives left, top, right and bottom of the crop region, must have a length
+     *                  of at least 4
+     */
+    public void getCropRegion(float zoomLevel, @NonNull int[] region) {
+        float position = zoomLevel / maxZoomLevel * STEPS;
+        if (!(position > 0)) {
+            // also catches NaN
+            position = 0;
+        } else if (position > STEPS) {
+            position = STEPS;
+        }
+
+        int index = (int) position;
+        float fraction = position - index;
+        int next = Math.min(index + 1, STEPS);
+
+        int left = interpolate(leftOffsets[index], leftOffsets[next], fraction);
+        int top = interpolate(topOffsets[index], topOffsets[next], fraction);
+        left -= left % ALIGNMENT;
+        top -= top % ALIGNMENT;
+
+        region[0] = left;
+        region[1] = top;
+        region[2] = activeArrayWidth - left;
+        region[3] = activeArrayHeight - top;
+    }
+
+    private static int interpolate(int a, int b, float fraction) {
+        return a + (int) ((b - a) * fraction);
+    }
+}
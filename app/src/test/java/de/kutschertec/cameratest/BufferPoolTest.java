@@ -0,0 +1,134 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link BufferPool}.
+ */
+public class BufferPoolTest {
+    private static final int KB = 1024;
+
+    @Test
+    public void acquire_roundsUpToSizeClass() {
+        BufferPool pool = new BufferPool(12, 20, 4 * 1024 * KB);
+
+        assertEquals(4 * KB, pool.acquire(1).capacity());
+        assertEquals(4 * KB, pool.acquire(4 * KB).capacity());
+        assertEquals(8 * KB, pool.acquire(4 * KB + 1).capacity());
+        assertEquals(1024 * KB, pool.acquire(1000 * KB).capacity());
+        assertTrue(pool.acquire(KB).isDirect());
+
+        // larger than the largest size class
+        assertEquals(2000 * KB, pool.acquire(2000 * KB).capacity());
+    }
+
+    @Test
+    public void acquire_afterRelease_reusesBuffer() {
+        BufferPool pool = new BufferPool(12, 20, 4 * 1024 * KB);
+
+        ByteBuffer buffer = pool.acquire(5 * KB);
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        ByteBuffer reused = pool.acquire(7 * KB);
+
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(reused.capacity(), reused.limit());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void release_foreignBuffer_isEvicted() {
+        BufferPool pool = new BufferPool(12, 20, 4 * 1024 * KB);
+
+        pool.release(ByteBuffer.allocate(4 * KB));
+        pool.release(ByteBuffer.allocateDirect(5 * KB));
+
+        assertEquals(2, pool.getEvictions());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void release_beyondBudget_isEvicted() {
+        BufferPool pool = new BufferPool(12, 20, 64 * KB);
+
+        ByteBuffer first = pool.acquire(64 * KB);
+        ByteBuffer second = pool.acquire(64 * KB);
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(64 * KB, pool.getPooledBytes());
+        assertEquals(1, pool.getEvictions());
+    }
+
+    @Test
+    public void trim_evictsBuffersAboveHighWaterMark() {
+        BufferPool pool = new BufferPool(12, 20, 4 * 1024 * KB);
+
+        // a burst of four concurrent large buffers, e.g. while the resolution was high
+        ByteBuffer[] large = new ByteBuffer[4];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = pool.acquire(500 * KB);
+        }
+        for (ByteBuffer buffer : large) {
+            pool.release(buffer);
+        }
+        assertEquals(4 * 512 * KB, pool.getPooledBytes());
+
+        // the first trim keeps what the burst needed, the next period does not need any of it
+        pool.trim();
+        assertEquals(4 * 512 * KB, pool.getPooledBytes());
+        pool.release(pool.acquire(500 * KB));
+        pool.trim();
+
+        assertEquals(512 * KB, pool.getPooledBytes());
+        assertEquals(3, pool.getEvictions());
+
+        pool.trim();
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void frameExchange_changingFrameSizes_recyclesThroughPool() {
+        BufferPool pool = new BufferPool(12, 24, 16 * 1024 * KB);
+        FrameExchange exchange = new FrameExchange(pool, 4 * KB);
+
+        // low resolution, then high resolution, then back to low resolution
+        publish(exchange, 100, 20 * KB);
+        publish(exchange, 100, 900 * KB);
+        long missesAtHighResolution = pool.getMisses();
+        publish(exchange, 100, 900 * KB);
+        assertEquals(missesAtHighResolution, pool.getMisses());
+
+        publish(exchange, 100, 20 * KB);
+        pool.trim();
+        publish(exchange, 100, 20 * KB);
+        pool.trim();
+
+        // only the buffers for the small frames are left, the large ones have been evicted
+        assertTrue(pool.getPooledBytes() < 1024 * KB);
+        assertTrue(pool.getHits() > 0);
+        assertTrue(pool.getEvictions() > 0);
+    }
+
+    private static void publish(FrameExchange exchange, int count, int size) {
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        for (int i = 0; i < count; i++) {
+            frame.clear();
+            exchange.publish(frame, i);
+
+            // keep one reader busy with every other frame
+            if ((i % 2) == 0) {
+                FrameLease lease = exchange.acquireLatest();
+                assertNotNull(lease);
+                lease.close();
+            }
+        }
+    }
+}
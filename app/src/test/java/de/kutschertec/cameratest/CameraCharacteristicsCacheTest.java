@@ -0,0 +1,120 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link CameraCharacteristicsCache} with a fake loader.
+ */
+public class CameraCharacteristicsCacheTest {
+
+    @Test
+    public void characteristics_areLoadedOnce() {
+        FakeLoader loader = new FakeLoader();
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(loader);
+
+        CameraCharacteristicsSnapshot first = cache.get("0");
+        assertNotNull(first);
+        assertSame(first, cache.get("0"));
+        assertEquals(1, loader.snapshotLoads);
+        assertEquals(1, cache.getHits());
+
+        assertEquals(Arrays.asList("0", "1"), cache.getCameraIds());
+        cache.getCameraIds();
+        assertEquals(1, loader.idLoads);
+    }
+
+    @Test
+    public void invalidate_forcesReload() {
+        FakeLoader loader = new FakeLoader();
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(loader);
+        cache.getCameraIds();
+        cache.get("0");
+        cache.get("1");
+        assertTrue(cache.isKnownCamera("1"));
+        assertFalse(cache.isKnownCamera("2"));
+
+        cache.invalidate("0");
+        cache.get("0");
+        cache.get("1");
+        assertEquals(3, loader.snapshotLoads);
+        assertFalse(cache.isKnownCamera("0"));
+        cache.getCameraIds();
+        assertEquals(2, loader.idLoads);
+
+        cache.invalidateAll();
+        cache.get("1");
+        assertEquals(4, loader.snapshotLoads);
+
+        // a camera that may have gone only reloads the ID list
+        cache.invalidateCameraIds();
+        assertFalse(cache.isKnownCamera("1"));
+        cache.get("1");
+        cache.getCameraIds();
+        assertEquals(4, loader.snapshotLoads);
+        assertEquals(3, loader.idLoads);
+    }
+
+    @Test
+    public void failedLoad_isRetried() {
+        FakeLoader loader = new FakeLoader();
+        loader.fail = true;
+        CameraCharacteristicsCache cache = new CameraCharacteristicsCache(loader);
+
+        assertNull(cache.get("0"));
+        assertTrue(cache.getCameraIds().isEmpty());
+
+        loader.fail = false;
+        assertNotNull(cache.get("0"));
+        assertEquals(2, cache.getCameraIds().size());
+        assertEquals(2, loader.snapshotLoads);
+        assertEquals(2, loader.idLoads);
+    }
+
+    @Test
+    public void outputSize_coversRequestedSize() {
+        List<CameraCharacteristicsSnapshot.OutputSize> sizes = Arrays.asList(
+                new CameraCharacteristicsSnapshot.OutputSize(1920, 1080),
+                new CameraCharacteristicsSnapshot.OutputSize(320, 240),
+                new CameraCharacteristicsSnapshot.OutputSize(640, 480));
+
+        assertEquals(new CameraCharacteristicsSnapshot.OutputSize(640, 480), CameraCharacteristicsSnapshot.chooseOutputSize(sizes, 400, 300));
+        assertEquals(new CameraCharacteristicsSnapshot.OutputSize(320, 240), CameraCharacteristicsSnapshot.chooseOutputSize(sizes, 320, 240));
+        assertEquals(new CameraCharacteristicsSnapshot.OutputSize(1920, 1080), CameraCharacteristicsSnapshot.chooseOutputSize(sizes, 4000, 3000));
+        assertNull(CameraCharacteristicsSnapshot.chooseOutputSize(Collections.<CameraCharacteristicsSnapshot.OutputSize>emptyList(), 1, 1));
+    }
+
+    private static class FakeLoader implements CameraCharacteristicsCache.Loader {
+        private boolean fail = false;
+        private int idLoads = 0;
+        private int snapshotLoads = 0;
+
+        @Override
+        public String[] loadCameraIds() throws Exception {
+            idLoads++;
+            if (fail) {
+                throw new Exception("camera service not available");
+            }
+            return new String[]{"0", "1"};
+        }
+
+        @Override
+        public CameraCharacteristicsSnapshot load(String cameraId) throws Exception {
+            snapshotLoads++;
+            if (fail) {
+                throw new Exception("camera service not available");
+            }
+            return new CameraCharacteristicsSnapshot(cameraId, 1,
+                    Collections.singletonList(new CameraCharacteristicsSnapshot.OutputSize(320, 240)),
+                    Collections.singletonList(new CameraCharacteristicsSnapshot.OutputSize(640, 480)),
+                    Collections.singletonList(new CameraCharacteristicsSnapshot.OutputSize(640, 480)),
+                    Collections.singletonList(new CameraCharacteristicsSnapshot.FpsRange(15, 30)),
+                    90, 0, 4000, 3000, 4.0f);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link LumaSignature}, {@link ChangeDetector} and the only-on-change delivery of the
+ * {@link FrameBus}.
+ */
+public class ChangeDetectorTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private final Random random = new Random(23);
+
+    @Test
+    public void noiseAndExposure_areNoChange() {
+        LumaSignature a = signature(scene(0, 0, false));
+        LumaSignature b = signature(scene(4, 0, false));
+        LumaSignature brighter = signature(scene(4, 30, false));
+
+        assertEquals(1.0f, a.similarity(a), 0);
+        assertTrue(a.similarity(b) > 0.99f);
+        assertTrue(a.similarity(brighter) > 0.99f);
+        assertEquals(a.getHash(), b.getHash());
+    }
+
+    @Test
+    public void newObject_isChange() {
+        LumaSignature a = signature(scene(4, 0, false));
+        LumaSignature b = signature(scene(4, 0, true));
+
+        assertTrue(a.similarity(b) < ChangeDetector.DEFAULT_THRESHOLD);
+        assertNotEquals(a.getHash(), b.getHash());
+    }
+
+    @Test
+    public void change_isTaggedOnce() {
+        ChangeDetector detector = new ChangeDetector();
+        FrameMetadata metadata = new FrameMetadata();
+
+        // nothing analyzed yet, every frame counts as changed
+        assertTrue(detector.tag(metadata));
+        assertTrue(detector.tag(metadata));
+        assertEquals(FrameMetadata.UNKNOWN_SIMILARITY, metadata.getSimilarity(), 0);
+
+        detector.onYuvFrame(scene(4, 0, false));
+        assertTrue(detector.tag(metadata));
+        for (int i = 0; i < 5; i++) {
+            detector.onYuvFrame(scene(4, 0, false));
+            assertFalse(detector.tag(metadata));
+            assertTrue(metadata.getSimilarity() > 0.99f);
+        }
+
+        detector.onYuvFrame(scene(4, 0, true));
+        assertTrue(detector.tag(metadata));
+        assertFalse(detector.tag(metadata));
+        detector.onYuvFrame(scene(4, 0, true));
+        assertFalse(detector.tag(metadata));
+
+        assertEquals(2, detector.getChanges());
+        assertEquals(8, detector.getAnalysisTimes().getCount());
+        assertTrue(detector.getUnchangedFrames() >= 6);
+
+        detector.reset();
+        assertTrue(detector.tag(metadata));
+    }
+
+    @Test
+    public void threshold_controlsSensitivity() {
+        ChangeDetector detector = new ChangeDetector();
+        detector.setThreshold(0);
+        detector.onYuvFrame(scene(4, 0, false));
+        detector.onYuvFrame(scene(4, 0, true));
+        assertEquals(1, detector.getChanges());
+    }
+
+    @Test
+    public void onlyOnChange_suppressesUnchangedFrames() throws InterruptedException {
+        FrameExchange exchange = new FrameExchange(new BufferPool(), 1024);
+        FrameBus bus = new FrameBus();
+        AtomicInteger delivered = new AtomicInteger(0);
+        FrameBus.Subscription subscription = bus.subscribe(frame -> delivered.incrementAndGet(), DeliveryPolicy.onlyOnChange());
+
+        FrameMetadata metadata = new FrameMetadata();
+        for (int i = 0; i < 10; i++) {
+            metadata.setChange(0.5f, i % 5 == 0);
+            exchange.publish(ByteBuffer.allocate(16), i, metadata);
+            try (FrameLease lease = exchange.acquireLatest()) {
+                bus.publish(lease);
+            }
+            // wait for the delivery, so that the latest-only queue does not drop frames
+            while (delivered.get() + subscription.getSuppressedFrames() < i + 1) {
+                Thread.sleep(1);
+            }
+        }
+        bus.shutdown();
+
+        assertEquals(2, delivered.get());
+        assertEquals(8, subscription.getSuppressedFrames());
+    }
+
+    private static LumaSignature signature(YuvFrame frame) {
+        LumaSignature signature = new LumaSignature();
+        YuvFrame.Plane luma = frame.getPlane(YuvFrame.Y);
+        signature.compute(luma.getBuffer(), 0, frame.getWidth(), frame.getHeight(), luma.getRowStride(), luma.getPixelStride());
+        return signature;
+    }
+
+    /**
+     * Returns a frame of a textured workbench, optionally with noise, an exposure offset and an
+     * object in a tenth of the image.
+     */
+    private YuvFrame scene(int noise, int exposure, boolean object) {
+        int rowStride = WIDTH + 32;
+        byte[] luma = new byte[rowStride * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int value = 90 + (x / 40 + y / 40) % 4 * 20 + exposure;
+                if (object && (x >= 400) && (x < 600) && (y >= 100) && (y < 250)) {
+                    value = 20;
+                }
+                if (noise > 0) {
+                    value += random.nextInt(2 * noise + 1) - noise;
+                }
+                luma[y * rowStride + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+
+        YuvFrame frame = new YuvFrame();
+        frame.set(WIDTH, HEIGHT, 0, 0);
+        frame.getPlane(YuvFrame.Y).copyFrom(ByteBuffer.wrap(luma), rowStride, 1);
+        return frame;
+    }
+}
@@ -0,0 +1,102 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link EventLog}, {@link EventLogDecoder} and {@link EventLogSummary}.
+ */
+public class EventLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void events_canBeDecoded() throws IOException {
+        File file = folder.newFile();
+        EventLog log = new EventLog(file, 16);
+        log.log(CameraEvents.OPEN, 640, 480);
+        log.log(CameraEvents.DEVICE_OPENED);
+        log.log(CameraEvents.ERROR, 3);
+        log.log(42, 1, 2, 3, 4);
+        log.close();
+
+        List<EventLogDecoder.Event> events = EventLogDecoder.decode(file);
+        assertEquals(4, events.size());
+
+        EventLogDecoder.Event open = events.get(0);
+        assertEquals(0, open.getSequence());
+        assertEquals(CameraEvents.OPEN, open.getEventId());
+        assertEquals(2, open.getFieldCount());
+        assertEquals(640, open.getField(0));
+        assertEquals(480, open.getField(1));
+        assertEquals(Thread.currentThread().getId(), open.getThreadId());
+
+        assertEquals(0, events.get(1).getFieldCount());
+        assertEquals(3, events.get(2).getField(0));
+        assertEquals(4, events.get(3).getField(3));
+        assertTrue(events.get(3).getTimestamp() >= open.getTimestamp());
+    }
+
+    @Test
+    public void fullRing_keepsNewestEvents() throws IOException {
+        File file = folder.newFile();
+        EventLog log = new EventLog(file, 8);
+        for (int i = 0; i < 20; i++) {
+            log.log(CameraEvents.WATCHDOG, i);
+        }
+        log.close();
+
+        List<EventLogDecoder.Event> events = EventLogDecoder.decode(file);
+        assertEquals(8, events.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(12 + i, events.get(i).getField(0));
+            assertEquals(12 + i, events.get(i).getSequence());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFile_isRejected() throws IOException {
+        EventLogDecoder.decode(folder.newFile());
+    }
+
+    @Test
+    public void summary_computesPhaseDurations() {
+        List<EventLogDecoder.Event> events = Arrays.asList(
+                event(0, 1000, CameraEvents.OPEN),
+                event(1, 3000, CameraEvents.DEVICE_OPENED),
+                event(2, 3500, CameraEvents.SESSION_CREATE),
+                event(3, 4500, CameraEvents.SESSION_CONFIGURED),
+                event(4, 9500, CameraEvents.FIRST_FRAME),
+                event(5, 20000, CameraEvents.WATCHDOG),
+                event(6, 20000, CameraEvents.RESTART),
+                event(7, 21000, CameraEvents.SESSION_CREATE),
+                event(8, 22000, CameraEvents.SESSION_CONFIGURED),
+                event(9, 26000, CameraEvents.FIRST_FRAME),
+                event(10, 26000, CameraEvents.RECOVERED));
+
+        EventLogSummary summary = new EventLogSummary();
+        summary.add(events);
+
+        assertEquals(2000, summary.getDurations("open device").getMax());
+        assertEquals(2, summary.getDurations("configure session").getCount());
+        assertEquals(1000, summary.getDurations("configure session").getMax());
+        assertEquals(8500, summary.getDurations("startup").getMax());
+        assertEquals(1, summary.getDurations("startup").getCount());
+        assertEquals(6000, summary.getDurations("restart").getMax());
+        assertEquals(6000, summary.getDurations("watchdog recovery").getMax());
+        assertEquals(5000, summary.getDurations("first frame").getMax());
+    }
+
+    private static EventLogDecoder.Event event(long sequence, long timestamp, int eventId) {
+        return new EventLogDecoder.Event(sequence, timestamp, 1, eventId, new long[0]);
+    }
+}
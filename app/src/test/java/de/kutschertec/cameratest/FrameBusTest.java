@@ -0,0 +1,182 @@
+package de.kutschertec.cameratest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link FrameBus}.
+ */
+public class FrameBusTest {
+    private FrameExchange exchange;
+    private FrameBus bus;
+
+    @Before
+    public void setUp() {
+        exchange = new FrameExchange(new BufferPool(), 16);
+        bus = new FrameBus();
+    }
+
+    @After
+    public void tearDown() {
+        bus.shutdown();
+    }
+
+    @Test
+    public void slowSubscriber_doesNotStallFastSubscriber() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(100);
+
+        FrameBus.Subscription slow = bus.subscribe(frame -> awaitQuietly(release), DeliveryPolicy.latestOnly());
+        FrameBus.Subscription fast = bus.subscribe(frame -> fastDone.countDown(), DeliveryPolicy.dropOldest(200));
+
+        publish(100);
+
+        assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+        assertEquals(100, fast.getDeliveredFrames());
+        assertEquals(0, fast.getDroppedFrames());
+
+        // the slow subscriber is stuck on its first frame and only keeps the latest one pending
+        assertEquals(0, slow.getDeliveredFrames());
+        assertTrue(slow.getDroppedFrames() >= 98);
+        release.countDown();
+    }
+
+    @Test
+    public void dropOldest_keepsNewestFrames() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute(() -> awaitQuietly(blocked));
+
+        List<Long> sequences = new CopyOnWriteArrayList<>();
+        FrameBus.Subscription subscription = bus.subscribe(frame -> sequences.add(frame.getSequence()), DeliveryPolicy.dropOldest(3), executor);
+
+        publish(10);
+        blocked.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(3, subscription.getDeliveredFrames());
+        assertEquals(7, subscription.getDroppedFrames());
+        assertEquals(8L, (long) sequences.get(0));
+        assertEquals(10L, (long) sequences.get(2));
+    }
+
+    @Test
+    public void everyNth_skipsFrames() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        List<Long> sequences = new CopyOnWriteArrayList<>();
+        FrameBus.Subscription subscription = bus.subscribe(frame -> sequences.add(frame.getSequence()), DeliveryPolicy.everyNth(4), executor);
+
+        for (int i = 0; i < 12; i++) {
+            publish(1);
+            // let the executor catch up, so that no offered frame is dropped
+            Thread.sleep(5);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(3, subscription.getDeliveredFrames());
+        assertEquals(9, subscription.getSkippedFrames());
+        assertEquals(0, subscription.getDroppedFrames());
+        assertEquals(1L, (long) sequences.get(0));
+        assertEquals(5L, (long) sequences.get(1));
+    }
+
+    @Test
+    public void dropNewest_deliversEveryFrameWithinCapacity() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        List<Long> sequences = new CopyOnWriteArrayList<>();
+        FrameBus.Subscription subscription = bus.subscribe(frame -> {
+            sequences.add(frame.getSequence());
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, DeliveryPolicy.dropNewest(64), executor);
+
+        publish(50);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(50, subscription.getDeliveredFrames());
+        assertEquals(0, subscription.getDroppedFrames());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i + 1, (long) sequences.get(i));
+        }
+    }
+
+    @Test
+    public void dropNewest_dropsNewFramesWhenFull() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute(() -> awaitQuietly(blocked));
+
+        List<Long> sequences = new CopyOnWriteArrayList<>();
+        FrameBus.Subscription subscription = bus.subscribe(frame -> sequences.add(frame.getSequence()), DeliveryPolicy.dropNewest(3), executor);
+
+        // returns although the subscriber is stuck
+        publish(10);
+        blocked.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        // the queued frames are kept, the new frames are lost and counted
+        assertEquals(3, subscription.getDeliveredFrames());
+        assertEquals(7, subscription.getOverflowedFrames());
+        assertEquals(7, subscription.getDroppedFrames());
+        assertEquals(3, sequences.size());
+        assertEquals(1L, (long) sequences.get(0));
+        assertEquals(3L, (long) sequences.get(2));
+    }
+
+    @Test
+    public void cancel_releasesQueuedFrames() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute(() -> awaitQuietly(blocked));
+
+        FrameBus.Subscription subscription = bus.subscribe(frame -> {
+        }, DeliveryPolicy.dropOldest(5), executor);
+        publish(5);
+        subscription.cancel();
+        blocked.countDown();
+        executor.shutdown();
+        publish(1);
+
+        assertFalse(bus.hasSubscribers());
+        assertEquals(5, subscription.getDroppedFrames());
+
+        // only the latest frame is still referenced, by the exchange itself
+        assertEquals(5, exchange.getRecycledFrames());
+    }
+
+    private void publish(int count) {
+        for (int i = 0; i < count; i++) {
+            exchange.publish(ByteBuffer.wrap(new byte[]{(byte) i}), i);
+            FrameLease frame = exchange.acquireLatest();
+            assertNotNull(frame);
+            bus.publish(frame);
+            frame.close();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stress test for {@link FrameExchange}, running a producer and several readers concurrently.
+ */
+public class FrameExchangeTest {
+    private static final int FRAMES = 20000;
+    private static final int READERS = 4;
+
+    @Test
+    public void acquireLatest_beforePublish_returnsNull() {
+        FrameExchange exchange = new FrameExchange(new BufferPool(), 16);
+
+        assertNull(exchange.acquireLatest());
+    }
+
+    @Test
+    public void acquireLatest_returnsLatestFrameWithoutCopy() {
+        FrameExchange exchange = new FrameExchange(new BufferPool(), 4);
+
+        exchange.publish(ByteBuffer.wrap(new byte[]{1, 2}), 100);
+        exchange.publish(ByteBuffer.wrap(new byte[]{3, 4, 5, 6, 7, 8}), 200);
+        try (FrameLease lease = exchange.acquireLatest()) {
+            assertEquals(2, lease.getSequence());
+            assertEquals(200, lease.getTimestamp());
+            assertEquals(6, lease.getSize());
+            assertEquals(3, lease.getBuffer().get(0));
+            assertTrue(lease.getBuffer().isReadOnly());
+        }
+        assertEquals(2, exchange.getCopies());
+        assertEquals(1, exchange.getSupersededFrames());
+        assertEquals(1, exchange.getLeases());
+    }
+
+    @Test
+    public void lease_keepsFrameUntilLastHolderReleases() {
+        FrameExchange exchange = new FrameExchange(new BufferPool(), 4);
+        exchange.publish(ByteBuffer.wrap(new byte[]{1}), 1);
+
+        FrameLease first = exchange.acquireLatest();
+        FrameLease second = first.retain();
+        exchange.publish(ByteBuffer.wrap(new byte[]{2}), 2);
+        exchange.publish(ByteBuffer.wrap(new byte[]{3}), 3);
+
+        // the first frame is still held, only the superseded second frame has been recycled
+        assertEquals(1, exchange.getRecycledFrames());
+        assertEquals(1, first.getBuffer().get(0));
+
+        first.close();
+        first.close();
+        assertEquals(1, exchange.getRecycledFrames());
+        assertEquals(1, second.getBuffer().get(0));
+
+        second.close();
+        assertEquals(2, exchange.getRecycledFrames());
+    }
+
+    @Test
+    public void lease_recordsHoldWhenClosed() throws InterruptedException {
+        FrameExchange exchange = new FrameExchange(new BufferPool(), 4);
+        FrameStats stats = new FrameStats(exchange);
+        exchange.publish(ByteBuffer.wrap(new byte[]{1}), 1);
+
+        FrameLease first = exchange.acquireLatest();
+        FrameLease second = first.retain();
+        Thread.sleep(5);
+        first.close();
+        first.close();
+        assertEquals(1, stats.getHold().getCount());
+        assertTrue(stats.getHold().getMax() >= 5000000L);
+
+        // a retained lease, e.g. of a bus subscriber, is a hold of its own
+        second.close();
+        assertEquals(2, exchange.getHoldTimes().getCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lease_afterClose_throws() {
+        FrameExchange exchange = new FrameExchange(new BufferPool(), 4);
+        exchange.publish(ByteBuffer.wrap(new byte[]{1}), 1);
+
+        FrameLease lease = exchange.acquireLatest();
+        lease.close();
+        lease.getBuffer();
+    }
+
+    @Test
+    public void stress_producerAndReaders_noTornReadsOrDrops() throws InterruptedException {
+        FrameExchange exchange = new FrameExchange(new BufferPool(), 16, READERS * 2);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong tornReads = new AtomicLong(0);
+        AtomicLong outOfOrderReads = new AtomicLong(0);
+        AtomicLong reads = new AtomicLong(0);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            Thread reader = new Thread(() -> {
+                long lastSequence = 0;
+                awaitQuietly(start);
+                while (running.get()) {
+                    try (FrameLease lease = exchange.acquireLatest()) {
+                        if (lease == null) {
+                            continue;
+                        }
+                        if (lease.getSequence() < lastSequence) {
+                            outOfOrderReads.incrementAndGet();
+                        }
+                        lastSequence = lease.getSequence();
+
+                        // validate twice, the producer must not touch the frame while we hold it
+                        if (!isIntact(lease)) {
+                            tornReads.incrementAndGet();
+                        }
+                        try (FrameLease copy = lease.retain()) {
+                            Thread.yield();
+                            if (!isIntact(copy)) {
+                                tornReads.incrementAndGet();
+                            }
+                        }
+                        reads.incrementAndGet();
+                    }
+                }
+            }, "Reader-" + i);
+            reader.start();
+            readers.add(reader);
+        }
+
+        Thread producer = new Thread(() -> {
+            awaitQuietly(start);
+            for (int sequence = 1; sequence <= FRAMES; sequence++) {
+                // vary the frame size so that the frames have to grow while readers are active
+                exchange.publish(createFrame(sequence, 8 + (sequence % 512)), sequence * 1000L);
+            }
+        }, "Producer");
+        producer.start();
+
+        start.countDown();
+        producer.join();
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertEquals(0, tornReads.get());
+        assertEquals(0, outOfOrderReads.get());
+        assertTrue(reads.get() > 0);
+
+        // the producer never drops a frame and every frame but the latest has been recycled
+        try (FrameLease lease = exchange.acquireLatest()) {
+            assertEquals(FRAMES, lease.getSequence());
+        }
+        assertEquals(FRAMES, exchange.getPublishedFrames());
+        assertEquals(FRAMES - 1, exchange.getRecycledFrames());
+
+        // one copy into the exchange per frame, none on the reader side
+        assertEquals(FRAMES, exchange.getCopies());
+
+        // frames are only allocated while all others are in use by the producer and the readers
+        assertTrue(exchange.getAllocatedFrames() <= READERS + 2);
+    }
+
+    private static ByteBuffer createFrame(int sequence, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(sequence);
+        buffer.putInt(size);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) sequence);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static boolean isIntact(FrameLease frame) {
+        ByteBuffer buffer = frame.getBuffer();
+        int sequence = buffer.getInt(0);
+        int size = buffer.getInt(4);
+        if ((sequence != frame.getSequence()) || (size != buffer.remaining())
+                || (frame.getTimestamp() != sequence * 1000L)) {
+            return false;
+        }
+
+        for (int i = 8; i < size; i++) {
+            if (buffer.get(i) != (byte) sequence) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
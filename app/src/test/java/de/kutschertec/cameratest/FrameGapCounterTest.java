@@ -0,0 +1,121 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link FrameGapCounter} and {@link ImageAcquisition}.
+ */
+public class FrameGapCounterTest {
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(33);
+
+    @Test
+    public void steadyFrames_haveNoGaps() {
+        FrameGapCounter counter = new FrameGapCounter();
+        long timestamp = 1000;
+        for (int i = 0; i < 100; i++) {
+            // up to 20% jitter
+            assertEquals(0, counter.onFrame(timestamp));
+            timestamp += INTERVAL + ((i % 3) - 1) * INTERVAL / 5;
+        }
+
+        assertEquals(0, counter.getMissedFrames());
+        assertEquals(0, counter.getGaps());
+        assertEquals(INTERVAL, counter.getFrameIntervalNanos(), INTERVAL / 10);
+    }
+
+    @Test
+    public void gaps_countMissedFrames() {
+        FrameGapCounter counter = new FrameGapCounter();
+        long timestamp = 0;
+        for (int i = 0; i < 10; i++) {
+            counter.onFrame(timestamp += INTERVAL);
+        }
+
+        assertEquals(1, counter.onFrame(timestamp += 2 * INTERVAL));
+        assertEquals(0, counter.onFrame(timestamp += INTERVAL));
+        assertEquals(4, counter.onFrame(timestamp += 5 * INTERVAL + INTERVAL / 4));
+        assertEquals(5, counter.getMissedFrames());
+        assertEquals(2, counter.getGaps());
+
+        // the gaps have not changed the estimate
+        assertEquals(INTERVAL, counter.getFrameIntervalNanos());
+    }
+
+    @Test
+    public void firstGap_isCorrected() {
+        FrameGapCounter counter = new FrameGapCounter();
+        long timestamp = 0;
+        counter.onFrame(timestamp);
+        counter.onFrame(timestamp += 2 * INTERVAL);
+        counter.onFrame(timestamp += INTERVAL);
+        assertEquals(INTERVAL, counter.getFrameIntervalNanos());
+
+        assertEquals(2, counter.onFrame(timestamp += 3 * INTERVAL));
+    }
+
+    @Test
+    public void frameDuration_countsLossFromStart() {
+        // every second frame is lost from the first one on, the average alone learns twice the interval
+        FrameGapCounter learned = new FrameGapCounter();
+        FrameGapCounter reported = new FrameGapCounter();
+        reported.setFrameDuration(INTERVAL);
+        long timestamp = 0;
+        for (int i = 0; i < 10; i++) {
+            learned.onFrame(timestamp);
+            reported.onFrame(timestamp);
+            timestamp += 2 * INTERVAL;
+        }
+
+        assertEquals(0, learned.getMissedFrames());
+        assertEquals(9, reported.getMissedFrames());
+        assertEquals(INTERVAL, reported.getFrameIntervalNanos());
+
+        reported.setFrameDuration(0);
+        assertEquals(2 * INTERVAL, reported.getFrameIntervalNanos());
+    }
+
+    @Test
+    public void restart_skipsPause() {
+        FrameGapCounter counter = new FrameGapCounter();
+        long timestamp = 0;
+        for (int i = 0; i < 10; i++) {
+            counter.onFrame(timestamp += INTERVAL);
+        }
+
+        counter.restart();
+        assertEquals(0, counter.onFrame(timestamp += TimeUnit.SECONDS.toNanos(2)));
+        assertEquals(0, counter.onFrame(timestamp += INTERVAL));
+        assertEquals(0, counter.getMissedFrames());
+
+        // timestamps of another time base are ignored
+        assertEquals(0, counter.onFrame(0));
+        assertEquals(0, counter.getMissedFrames());
+    }
+
+    @Test
+    public void frameStats_countMissedFrames() {
+        FrameStats stats = new FrameStats(new FrameExchange(new BufferPool(), 16));
+        stats.recordTimestamp(0);
+        stats.recordTimestamp(INTERVAL);
+        stats.recordTimestamp(4 * INTERVAL);
+
+        assertEquals(2, stats.getMissedFrames());
+        assertTrue(stats.toString().contains("missed=2"));
+    }
+
+    @Test
+    public void imageAcquisition_checksDepth() {
+        assertEquals(ImageAcquisition.Mode.ALL, ImageAcquisition.processAll(1).getMode());
+        assertEquals(6, ImageAcquisition.processAll(6).getMaxImages());
+        assertEquals(ImageAcquisition.Mode.LATEST, ImageAcquisition.latestOnly(2).getMode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void latestOnly_needsTwoImages() {
+        ImageAcquisition.latestOnly(1);
+    }
+}
@@ -0,0 +1,200 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link FramePipeline}, {@link SyntheticFrameSource} and {@link FrameTrace}.
+ */
+public class FramePipelineTest {
+    private FrameExchange exchange;
+    private FrameBus bus;
+    private FrameStats stats;
+    private FrameWatchdog watchdog;
+    private MotionAnalyzer motionAnalyzer;
+    private FramePipeline pipeline;
+
+    @Before
+    public void setUp() {
+        exchange = new FrameExchange(new BufferPool(), 65535);
+        bus = new FrameBus();
+        stats = new FrameStats(exchange);
+        watchdog = new FrameWatchdog(Clock.SYSTEM, new IdleScheduler(), stage -> fail("Unexpected recovery " + stage));
+        StartupCoordinator coordinator = new StartupCoordinator(Clock.SYSTEM, new StartupCoordinator.Backend() {
+            @Override
+            public void openDevice() {
+            }
+
+            @Override
+            public void createSession() {
+            }
+        });
+        motionAnalyzer = new MotionAnalyzer(2);
+        pipeline = new FramePipeline(exchange, bus, stats, watchdog, coordinator, new ChangeDetector(), motionAnalyzer);
+    }
+
+    @After
+    public void tearDown() {
+        bus.shutdown();
+        motionAnalyzer.close();
+    }
+
+    @Test
+    public void syntheticFrames_passThePipeline() {
+        // a subscriber makes the pipeline lease and push every frame
+        bus.subscribe(frame -> frame.getSize(), DeliveryPolicy.dropOldest(1000));
+
+        FrameTrace trace = FrameTrace.generate(100, 500, 0.2f, 20000, 1);
+        SyntheticFrameSource source = new SyntheticFrameSource(FrameSource.Format.JPEG, 640, 480, trace, false);
+        watchdog.arm();
+        source.start(pipeline);
+        source.join();
+        source.stop();
+
+        assertEquals(100, source.getEmittedFrames() + source.getSkippedFrames());
+        assertEquals(source.getEmittedFrames(), stats.getFrames());
+        assertEquals(source.getEmittedFrames(), exchange.getPublishedFrames());
+        assertEquals(source.getEmittedFrames(), stats.getCallbackToCopy().getCount());
+
+        FrameLease latest = exchange.acquireLatest();
+        assertNotNull(latest);
+        assertEquals(20000, latest.getBuffer().remaining());
+        latest.close();
+    }
+
+    @Test
+    public void frozenPipeline_publishesNothing() {
+        pipeline.setFrozen(true);
+        FrameTrace trace = FrameTrace.generate(10, 1000, 0, 100, 1);
+        SyntheticFrameSource source = new SyntheticFrameSource(FrameSource.Format.JPEG, 640, 480, trace, false);
+        source.start(pipeline);
+        source.join();
+        source.stop();
+
+        assertEquals(0, exchange.getPublishedFrames());
+    }
+
+    @Test
+    public void recordedTrace_isReplayed() {
+        FrameTrace recorded = new FrameTrace();
+        FrameTrace trace = FrameTrace.generate(20, 1000, 0, 0, 1);
+        SyntheticFrameSource source = new SyntheticFrameSource(FrameSource.Format.YUV_420, 64, 48, trace, false);
+        source.start(new FrameTrace.Recorder(recorded, pipeline));
+        source.join();
+        source.stop();
+
+        assertEquals(source.getEmittedFrames(), recorded.getFrameCount());
+        for (int i = 0; i < recorded.getFrameCount(); i++) {
+            assertEquals(SyntheticFrameSource.getYuvSize(64, 48), recorded.getFrameSize(i));
+        }
+        assertEquals(0, recorded.getInterval(0));
+    }
+
+    @Test
+    public void stoppedLoop_endsPromptly() {
+        FrameTrace trace = FrameTrace.generate(4, 200, 0, 1000, 1);
+        SyntheticFrameSource source = new SyntheticFrameSource(FrameSource.Format.JPEG, 640, 480, trace, true);
+        source.start(pipeline);
+        while (source.getEmittedFrames() < 10) {
+            Thread.yield();
+        }
+        source.stop();
+
+        long emitted = source.getEmittedFrames();
+        assertTrue(emitted >= 10);
+        assertEquals(emitted, exchange.getPublishedFrames());
+    }
+
+    @Test
+    public void frames_carryMetadata() {
+        byte[] plane = new byte[32 * 16];
+        YuvFrame yuv = new YuvFrame();
+        yuv.set(32, 16, 0, 0);
+        for (int i = 0; i < 3; i++) {
+            yuv.getPlane(i).copyFrom(ByteBuffer.wrap(plane), (i == YuvFrame.Y) ? 32 : 16, 1);
+        }
+        JpegEncoder encoder = new JpegEncoder();
+        encoder.encode(yuv, 50);
+
+        pipeline.setJpegOrientation(270);
+        pipeline.onFrame(encoder.getOutput(), 1234, System.nanoTime(), -1);
+
+        try (FrameLease lease = exchange.acquireLatest()) {
+            FrameMetadata metadata = lease.getMetadata();
+            assertTrue(metadata.isValid());
+            assertEquals(32, metadata.getWidth());
+            assertEquals(16, metadata.getHeight());
+            assertEquals(270, metadata.getJpegOrientation());
+            assertEquals(1234, metadata.getTimestamp());
+        }
+
+        // a frame without a JPEG header still has its capture properties
+        pipeline.onFrame(ByteBuffer.allocate(100), 5678, System.nanoTime(), -1);
+        try (FrameLease lease = exchange.acquireLatest()) {
+            assertFalse(lease.getMetadata().isValid());
+            assertEquals(5678, lease.getMetadata().getTimestamp());
+        }
+    }
+
+    @Test
+    public void syntheticJpeg_isValidStream() {
+        for (int size : new int[]{8, 9, 100, 65541, 65542, 65543, 200000}) {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            SyntheticFrameSource.fillJpeg(buffer, size, 42);
+            assertEquals(size, buffer.position());
+
+            assertEquals(0xFFD8, buffer.getShort(0) & 0xFFFF);
+            int offset = 2;
+            while (offset < size - 2) {
+                assertEquals(0xFFFE, buffer.getShort(offset) & 0xFFFF);
+                offset += 2 + (buffer.getShort(offset + 2) & 0xFFFF);
+            }
+            assertEquals(size - 2, offset);
+            assertEquals(0xFFD9, buffer.getShort(offset) & 0xFFFF);
+        }
+    }
+
+    @Test
+    public void trace_canBeWrittenAndRead() throws IOException {
+        FrameTrace trace = FrameTrace.generate(50, 30, 0.1f, 12345, 7);
+        trace.addStalls(10, TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(trace.getInterval(10) > TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(trace.getInterval(11) < TimeUnit.MILLISECONDS.toNanos(500));
+
+        StringWriter writer = new StringWriter();
+        trace.write(writer);
+        FrameTrace read = FrameTrace.read(new StringReader(writer.toString()));
+
+        assertEquals(trace.getFrameCount(), read.getFrameCount());
+        for (int i = 0; i < trace.getFrameCount(); i++) {
+            assertEquals(trace.getInterval(i), read.getInterval(i));
+            assertEquals(trace.getFrameSize(i), read.getFrameSize(i));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedTrace_isRejected() throws IOException {
+        FrameTrace.read(new StringReader("1000 12\nabc\n"));
+    }
+
+    private static class IdleScheduler implements Scheduler {
+        @Override
+        public void schedule(@NonNull Runnable task, long delayNanos) {
+        }
+
+        @Override
+        public void cancel(@NonNull Runnable task) {
+        }
+    }
+}
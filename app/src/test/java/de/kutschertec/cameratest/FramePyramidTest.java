@@ -0,0 +1,145 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link Downscaler}, {@link PyramidLevel} and {@link FramePyramid}.
+ */
+public class FramePyramidTest {
+
+    @Test
+    public void downscaler_averagesBlocks() {
+        ByteBuffer source = ByteBuffer.wrap(new byte[]{
+                0, 2, 10, 20,
+                4, 6, 30, 40});
+        byte[] destination = new byte[2];
+
+        Downscaler downscaler = new Downscaler();
+        downscaler.configure(4, 2, 2, 1);
+        downscaler.scale(source, 0, 4, 1, destination, 0);
+
+        assertEquals(3, destination[0]);
+        assertEquals(25, destination[1]);
+        assertEquals(0, source.position());
+    }
+
+    @Test
+    public void downscaler_honorsStrides() {
+        // interleaved chroma, every second byte belongs to the other plane, rows are padded
+        ByteBuffer source = ByteBuffer.wrap(new byte[]{
+                10, 99, 20, 99, 30, 99, 40, 0, 0,
+                50, 99, 60, 99, 70, 99, (byte) 200});
+        byte[] destination = new byte[3];
+
+        Downscaler downscaler = new Downscaler();
+        downscaler.configure(4, 2, 2, 1);
+        downscaler.scale(source, 0, 9, 2, destination, 1);
+
+        assertEquals(35, destination[1]);
+        assertEquals(85, destination[2] & 0xFF);
+    }
+
+    @Test
+    public void downscaler_keepsUniformPlanes() {
+        byte[] plane = new byte[17 * 13];
+        byte[] destination = new byte[5 * 4];
+        Downscaler downscaler = new Downscaler();
+        downscaler.configure(17, 13, 5, 4);
+        for (int value = 0; value < 256; value++) {
+            Arrays.fill(plane, (byte) value);
+            downscaler.scale(ByteBuffer.wrap(plane), 0, 17, 1, destination, 0);
+            for (byte b : destination) {
+                assertEquals(value, b & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void downscaler_keepsUniformPlanesAtLargeScale() {
+        // a thumbnail of a full 8 MP sensor image, where the span areas exceed 300 pixels
+        ByteBuffer plane = ByteBuffer.allocateDirect(3264 * 2448);
+        byte[] destination = new byte[160 * 120];
+        Downscaler downscaler = new Downscaler();
+        downscaler.configure(3264, 2448, 160, 120);
+        for (int value : new int[]{0, 1, 127, 128, 254, 255}) {
+            while (plane.hasRemaining()) {
+                plane.put((byte) value);
+            }
+            plane.clear();
+            downscaler.scale(plane, 0, 3264, 1, destination, 0);
+            for (byte b : destination) {
+                assertEquals(value, b & 0xFF);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void downscaler_rejectsUpscaling() {
+        new Downscaler().configure(160, 120, 320, 240);
+    }
+
+    @Test
+    public void levels_resolveAgainstSource() {
+        assertEquals(320, PyramidLevel.HALF.getWidth(640));
+        assertEquals(120, PyramidLevel.QUARTER.getHeight(480));
+        assertEquals(160, PyramidLevel.THUMBNAIL.getWidth(640));
+        assertEquals(100, PyramidLevel.THUMBNAIL.getHeight(100));
+        assertEquals(PyramidLevel.scaled(2), PyramidLevel.HALF);
+    }
+
+    @Test
+    public void pyramid_publishesEveryLevel() {
+        FramePyramid pyramid = new FramePyramid(new BufferPool());
+        pyramid.setLevels(Arrays.asList(PyramidLevel.THUMBNAIL, PyramidLevel.HALF, PyramidLevel.QUARTER));
+        FramePyramid direct = new FramePyramid(new BufferPool());
+        direct.setLevels(Collections.singletonList(PyramidLevel.QUARTER));
+
+        YuvFrame frame = frame(640, 480);
+        pyramid.onYuvFrame(frame);
+        direct.onYuvFrame(frame);
+
+        assertEquals(160, pyramid.getWidth(0));
+        assertEquals(120, pyramid.getHeight(0));
+        assertEquals(320, pyramid.getWidth(1));
+        try (FrameLease half = pyramid.acquireLatest(1)) {
+            assertEquals(320 * 240 * 3 / 2, half.getSize());
+            assertEquals(42L, half.getTimestamp());
+        }
+
+        // the quarter level is scaled from the half level, which only adds rounding errors
+        try (FrameLease quarter = pyramid.acquireLatest(2); FrameLease expected = direct.acquireLatest(0)) {
+            assertEquals(expected.getSize(), quarter.getSize());
+            for (int i = 0; i < expected.getSize(); i++) {
+                int difference = (quarter.getBuffer().get(i) & 0xFF) - (expected.getBuffer().get(i) & 0xFF);
+                assertTrue(Math.abs(difference) <= 1);
+            }
+        }
+        assertNull(pyramid.acquireLatest(3));
+        assertEquals(1, pyramid.getProcessedFrames());
+    }
+
+    private static YuvFrame frame(int width, int height) {
+        YuvFrame frame = new YuvFrame();
+        frame.set(width, height, 42, 0);
+        byte[] luma = new byte[width * height];
+        for (int i = 0; i < luma.length; i++) {
+            luma[i] = (byte) ((i % width) ^ (i / width));
+        }
+        byte[] chroma = new byte[width * height / 2];
+        for (int i = 0; i < chroma.length; i++) {
+            chroma[i] = (byte) (i * 7);
+        }
+        frame.getPlane(YuvFrame.Y).copyFrom(ByteBuffer.wrap(luma), width, 1);
+        ByteBuffer u = ByteBuffer.wrap(chroma);
+        u.position(1);
+        frame.getPlane(YuvFrame.U).copyFrom(u, width, 2);
+        frame.getPlane(YuvFrame.V).copyFrom(ByteBuffer.wrap(chroma, 0, chroma.length - 1), width, 2);
+        return frame;
+    }
+}
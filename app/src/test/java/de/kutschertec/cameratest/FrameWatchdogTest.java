@@ -0,0 +1,294 @@
+package de.kutschertec.cameratest;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link FrameWatchdog} with a fake clock, a fake scheduler and a fake frame source, and
+ * {@link CameraRecovery} with a fake camera.
+ */
+public class FrameWatchdogTest {
+    private static final long FRAME_INTERVAL = TimeUnit.MILLISECONDS.toNanos(33);
+
+    private FakeScheduler scheduler;
+    private List<FrameWatchdog.Stage> actions;
+    private FrameWatchdog watchdog;
+
+    @Before
+    public void setUp() {
+        scheduler = new FakeScheduler();
+        actions = new ArrayList<>();
+        watchdog = new FrameWatchdog(scheduler, scheduler, actions::add);
+    }
+
+    @Test
+    public void threshold_followsFrameRate() {
+        watchdog.arm();
+        assertEquals(FrameWatchdog.INITIAL_STALL_NANOS, watchdog.getStallThresholdNanos());
+
+        run(TimeUnit.SECONDS.toNanos(2), FRAME_INTERVAL);
+        long fastThreshold = watchdog.getStallThresholdNanos();
+        assertEquals(FrameWatchdog.MIN_STALL_NANOS, fastThreshold);
+
+        long slowInterval = TimeUnit.MILLISECONDS.toNanos(200);
+        run(TimeUnit.SECONDS.toNanos(20), slowInterval);
+        long slowThreshold = watchdog.getStallThresholdNanos();
+        assertTrue(slowThreshold >= FrameWatchdog.STALL_MULTIPLIER * slowInterval);
+        assertTrue(slowThreshold < 2 * FrameWatchdog.STALL_MULTIPLIER * slowInterval);
+
+        assertTrue(actions.isEmpty());
+    }
+
+    @Test
+    public void flowingFrames_causeNoWakeups() {
+        watchdog.arm();
+        run(TimeUnit.SECONDS.toNanos(60), FRAME_INTERVAL);
+
+        assertEquals(0, watchdog.getWakeups());
+        assertTrue(actions.isEmpty());
+        // the timer is only moved, never piles up
+        assertEquals(1, scheduler.tasks.size());
+    }
+
+    @Test
+    public void stall_escalatesStages() {
+        watchdog.arm();
+        run(TimeUnit.SECONDS.toNanos(2), FRAME_INTERVAL);
+
+        run(TimeUnit.SECONDS.toNanos(20), 0);
+        assertTrue(actions.size() > 3);
+        assertEquals(FrameWatchdog.Stage.REISSUE_REQUEST, actions.get(0));
+        assertEquals(FrameWatchdog.Stage.REBUILD_SESSION, actions.get(1));
+        for (int i = 2; i < actions.size(); i++) {
+            // the last stage is repeated
+            assertEquals(FrameWatchdog.Stage.REOPEN_DEVICE, actions.get(i));
+        }
+        assertEquals(1, watchdog.getActions(FrameWatchdog.Stage.REISSUE_REQUEST));
+        assertEquals(actions.size() - 2, watchdog.getActions(FrameWatchdog.Stage.REOPEN_DEVICE));
+        // one wakeup per action instead of polling
+        assertEquals(actions.size(), watchdog.getWakeups());
+    }
+
+    @Test
+    public void firstAction_afterThreshold() {
+        watchdog.arm();
+        run(TimeUnit.SECONDS.toNanos(2), FRAME_INTERVAL);
+        watchdog.onFrame();
+        long lastFrame = scheduler.now;
+
+        while (actions.isEmpty()) {
+            scheduler.runNext();
+        }
+        assertEquals(FrameWatchdog.MIN_STALL_NANOS, scheduler.now - lastFrame, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void recovery_isRecordedPerStage() {
+        watchdog.arm();
+        run(TimeUnit.SECONDS.toNanos(2), FRAME_INTERVAL);
+
+        while (actions.size() < 2) {
+            scheduler.runNext();
+        }
+        assertEquals(FrameWatchdog.Stage.REBUILD_SESSION, watchdog.getStage());
+
+        scheduler.now += TimeUnit.MILLISECONDS.toNanos(500);
+        assertEquals(FrameWatchdog.Stage.REBUILD_SESSION, watchdog.onFrame());
+        assertNull(watchdog.getStage());
+        assertNull(watchdog.onFrame());
+
+        assertEquals(0, watchdog.getRecoveryTimes(FrameWatchdog.Stage.REISSUE_REQUEST).getCount());
+        LatencyHistogram recoveryTimes = watchdog.getRecoveryTimes(FrameWatchdog.Stage.REBUILD_SESSION);
+        assertEquals(1, recoveryTimes.getCount());
+        assertTrue(recoveryTimes.getMax() >= FrameWatchdog.RECOVERY_GRACE_NANOS);
+
+        // frames arrive again, no further action
+        int count = actions.size();
+        run(TimeUnit.SECONDS.toNanos(5), FRAME_INTERVAL);
+        assertEquals(count, actions.size());
+    }
+
+    @Test
+    public void disarmed_doesNothing() {
+        run(TimeUnit.SECONDS.toNanos(10), 0);
+        assertTrue(actions.isEmpty());
+
+        watchdog.arm();
+        run(TimeUnit.SECONDS.toNanos(2), FRAME_INTERVAL);
+        watchdog.disarm();
+        assertTrue(scheduler.tasks.isEmpty());
+        run(TimeUnit.SECONDS.toNanos(10), 0);
+        assertTrue(actions.isEmpty());
+    }
+
+    @Test
+    public void firstFrame_getsStartupThreshold() {
+        watchdog.arm();
+        run(FrameWatchdog.STARTUP_STALL_NANOS, 0);
+        assertTrue(actions.isEmpty());
+
+        scheduler.runNext();
+        assertEquals(1, actions.size());
+    }
+
+    @Test
+    public void disconnect_reopensDevice() {
+        FakeCamera camera = new FakeCamera();
+        watchdog = new FrameWatchdog(scheduler, scheduler, new CameraRecovery(camera));
+        watchdog.arm();
+        run(TimeUnit.SECONDS.toNanos(2), FRAME_INTERVAL);
+
+        // the device is disconnected, every stage reopens it instead of touching the session
+        camera.deviceOpen = false;
+        while (camera.actions.isEmpty()) {
+            scheduler.runNext();
+        }
+        assertEquals(FrameWatchdog.Stage.REISSUE_REQUEST, watchdog.getStage());
+        assertEquals("reopen", camera.actions.get(0));
+
+        // the open is in flight, its state callback must not be waited for
+        camera.opening = true;
+        run(TimeUnit.SECONDS.toNanos(10), 0);
+        assertEquals(1, camera.actions.size());
+
+        camera.opening = false;
+        camera.deviceOpen = true;
+        run(TimeUnit.SECONDS.toNanos(3), 0);
+        assertEquals("reopen", camera.actions.get(1));
+        run(TimeUnit.SECONDS.toNanos(2), FRAME_INTERVAL);
+        assertNull(watchdog.getStage());
+    }
+
+    @Test
+    public void missingSurface_defersRebuild() {
+        FakeCamera camera = new FakeCamera();
+        CameraRecovery recovery = new CameraRecovery(camera);
+        watchdog = new FrameWatchdog(scheduler, scheduler, recovery);
+        camera.previewSurface = false;
+        watchdog.arm();
+
+        while (watchdog.getActions(FrameWatchdog.Stage.REBUILD_SESSION) == 0) {
+            scheduler.runNext();
+        }
+        assertEquals(1, camera.actions.size());
+        assertEquals("reissue", camera.actions.get(0));
+        assertEquals(1, recovery.getSkippedActions());
+
+        camera.previewSurface = true;
+        while (watchdog.getActions(FrameWatchdog.Stage.REOPEN_DEVICE) == 0) {
+            scheduler.runNext();
+        }
+        assertEquals("reopen", camera.actions.get(1));
+    }
+
+    /**
+     * Advances the clock to the end of the given duration, running due timers and delivering
+     * frames at the given interval.
+     *
+     * @param duration      the time to run
+     * @param frameInterval the frame interval, 0 to deliver no frames
+     */
+    private void run(long duration, long frameInterval) {
+        long end = scheduler.now + duration;
+        long nextFrame = (frameInterval > 0) ? scheduler.now + frameInterval : Long.MAX_VALUE;
+        while (true) {
+            long next = Math.min(Math.min(end, nextFrame), scheduler.nextDeadline());
+            if (next == end) {
+                scheduler.now = end;
+                return;
+            } else if (next == nextFrame) {
+                scheduler.now = nextFrame;
+                nextFrame += frameInterval;
+                watchdog.onFrame();
+            } else {
+                scheduler.runNext();
+            }
+        }
+    }
+
+    private static class FakeCamera implements CameraRecovery.Camera {
+        private final List<String> actions = new ArrayList<>();
+        private boolean deviceOpen = true;
+        private boolean opening = false;
+        private boolean previewSurface = true;
+
+        @Override
+        public boolean isDeviceOpen() {
+            return deviceOpen;
+        }
+
+        @Override
+        public boolean isOpening() {
+            return opening;
+        }
+
+        @Override
+        public boolean hasPreviewSurface() {
+            return previewSurface;
+        }
+
+        @Override
+        public void reissueRequest() {
+            actions.add("reissue");
+        }
+
+        @Override
+        public void rebuildSession() {
+            actions.add("rebuild");
+        }
+
+        @Override
+        public void reopenDevice() {
+            actions.add("reopen");
+        }
+    }
+
+    private static class FakeScheduler implements Clock, Scheduler {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private final List<Long> deadlines = new ArrayList<>();
+        private long now = 0;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void schedule(@NonNull Runnable task, long delayNanos) {
+            tasks.add(task);
+            deadlines.add(now + delayNanos);
+        }
+
+        @Override
+        public void cancel(@NonNull Runnable task) {
+            for (int i = tasks.size() - 1; i >= 0; i--) {
+                if (tasks.get(i) == task) {
+                    tasks.remove(i);
+                    deadlines.remove(i);
+                }
+            }
+        }
+
+        long nextDeadline() {
+            long next = Long.MAX_VALUE;
+            for (long deadline : deadlines) {
+                next = Math.min(next, deadline);
+            }
+            return next;
+        }
+
+        void runNext() {
+            int index = deadlines.indexOf(nextDeadline());
+            now = Math.max(now, deadlines.remove(index));
+            tasks.remove(index).run();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link JpegEncoder}, {@link JpegQualityController} and {@link JpegEncodeStage} with
+ * synthetic YUV frames.
+ */
+public class JpegEncoderTest {
+
+    @Test
+    public void encodedFrame_canBeDecoded() throws IOException {
+        YuvFrame frame = frame(64, 48, 0);
+        JpegEncoder encoder = new JpegEncoder();
+        encoder.encode(frame, 90);
+
+        BufferedImage image = decode(encoder.getOutput());
+        assertEquals(64, image.getWidth());
+        assertEquals(48, image.getHeight());
+        assertTrue(meanLumaError(frame, image) < 3);
+    }
+
+    @Test
+    public void oddSizes_areEncoded() throws IOException {
+        YuvFrame frame = frame(33, 17, 3);
+        JpegEncoder encoder = new JpegEncoder();
+        encoder.encode(frame, 75);
+
+        BufferedImage image = decode(encoder.getOutput());
+        assertEquals(33, image.getWidth());
+        assertEquals(17, image.getHeight());
+        assertTrue(meanLumaError(frame, image) < 5);
+    }
+
+    @Test
+    public void i420Images_areEncoded() throws IOException {
+        FramePyramid pyramid = new FramePyramid(new BufferPool());
+        pyramid.setLevels(Collections.singletonList(PyramidLevel.HALF));
+        pyramid.onYuvFrame(frame(64, 48, 0));
+
+        JpegEncoder encoder = new JpegEncoder();
+        try (FrameLease level = pyramid.acquireLatest(0)) {
+            encoder.encodeI420(level.getBuffer(), 32, 24, 80);
+        }
+        assertEquals(32, decode(encoder.getOutput()).getWidth());
+    }
+
+    @Test
+    public void quality_controlsSize() {
+        YuvFrame frame = frame(128, 96, 0);
+        JpegEncoder encoder = new JpegEncoder();
+        int low = encoder.encode(frame, 20);
+        int high = encoder.encode(frame, 95);
+        assertTrue(high > low);
+        assertEquals(95, encoder.getQuality());
+
+        // the output buffer is reused once it is large enough
+        ByteBuffer output = encoder.getOutput();
+        encoder.encode(frame, 50);
+        assertSame(output, encoder.getOutput());
+    }
+
+    @Test
+    public void qualityController_convergesToTargetSize() {
+        JpegEncoder encoder = new JpegEncoder();
+        int target = encoder.encode(frame(128, 96, 0), 40);
+
+        JpegQualityController controller = new JpegQualityController(target);
+        int size = 0;
+        for (int i = 0; i < 30; i++) {
+            size = encoder.encode(frame(128, 96, i), controller.getQuality());
+            controller.update(size);
+        }
+        assertEquals(target, size, target * 0.25);
+    }
+
+    @Test
+    public void stage_encodesEveryOutput() throws IOException {
+        JpegEncodeStage stage = new JpegEncodeStage(new BufferPool(), 2);
+        JpegEncodeStage.Output local = stage.addOutput(JpegSettings.quality(90));
+        JpegEncodeStage.Output uplink = stage.addOutput(JpegSettings.targetSize(1500));
+
+        for (int i = 0; i < 20; i++) {
+            stage.onYuvFrame(frame(128, 96, i));
+        }
+        stage.close();
+
+        assertEquals(20, local.getEncodedFrames());
+        assertEquals(20, uplink.getEncodeTimes().getCount());
+        assertEquals(90, local.getLastQuality());
+        assertTrue(uplink.getLastQuality() < 90);
+        try (FrameLease lease = uplink.acquireLatest()) {
+            assertEquals(uplink.getLastSize(), lease.getSize());
+            assertEquals(128, decode(lease.getBuffer()).getWidth());
+        }
+    }
+
+    private static BufferedImage decode(ByteBuffer jpeg) throws IOException {
+        byte[] data = new byte[jpeg.remaining()];
+        jpeg.duplicate().get(data);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+        assertNotNull(image);
+        return image;
+    }
+
+    private static double meanLumaError(YuvFrame frame, BufferedImage image) {
+        double error = 0;
+        for (int y = 0; y < frame.getHeight(); y++) {
+            for (int x = 0; x < frame.getWidth(); x++) {
+                int rgb = image.getRGB(x, y);
+                double luma = 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+                error += Math.abs(luma - frame.getPlane(YuvFrame.Y).get(x, y));
+            }
+        }
+        return error / (frame.getWidth() * frame.getHeight());
+    }
+
+    /**
+     * Returns a smooth synthetic frame with some detail, shifted by the given phase.
+     */
+    private static YuvFrame frame(int width, int height, int phase) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        byte[] luma = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double value = 128 + 60 * Math.sin((x + phase) / 5.0) * Math.cos(y / 7.0) + (x + y) % 16;
+                luma[y * width + x] = (byte) value;
+            }
+        }
+        byte[] u = new byte[chromaWidth * chromaHeight];
+        byte[] v = new byte[chromaWidth * chromaHeight];
+        for (int i = 0; i < u.length; i++) {
+            u[i] = (byte) (128 + (i % chromaWidth) - chromaWidth / 2);
+            v[i] = (byte) (128 - (i / chromaWidth));
+        }
+
+        YuvFrame frame = new YuvFrame();
+        frame.set(width, height, phase, phase);
+        frame.getPlane(YuvFrame.Y).copyFrom(ByteBuffer.wrap(luma), width, 1);
+        frame.getPlane(YuvFrame.U).copyFrom(ByteBuffer.wrap(u), chromaWidth, 1);
+        frame.getPlane(YuvFrame.V).copyFrom(ByteBuffer.wrap(v), chromaWidth, 1);
+        return frame;
+    }
+}
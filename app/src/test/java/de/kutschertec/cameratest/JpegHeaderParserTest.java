@@ -0,0 +1,201 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link JpegHeaderParser} and {@link FrameMetadata}.
+ */
+public class JpegHeaderParserTest {
+    private static final int FUZZ_ITERATIONS = 50000;
+
+    @Test
+    public void encodedFrame_isParsed() {
+        ByteBuffer jpeg = encode(40, 24);
+        int position = jpeg.position();
+
+        FrameMetadata metadata = new FrameMetadata();
+        assertTrue(JpegHeaderParser.parse(jpeg, metadata));
+
+        assertEquals(40, metadata.getWidth());
+        assertEquals(24, metadata.getHeight());
+        assertEquals(3, metadata.getComponents());
+        assertEquals(8, metadata.getPrecision());
+        assertEquals(0, metadata.getRestartInterval());
+        assertEquals(FrameMetadata.NO_EXIF_ORIENTATION, metadata.getExifOrientation());
+        assertTrue(metadata.getHeaderLength() > 0);
+        assertTrue(metadata.getHeaderLength() < jpeg.remaining());
+        assertEquals(position, jpeg.position());
+    }
+
+    @Test
+    public void exifAndRestartInterval_areParsed() {
+        FrameMetadata metadata = new FrameMetadata();
+
+        assertTrue(JpegHeaderParser.parse(withSegments(encode(16, 16), exif(true, 6), restartInterval(4)), metadata));
+        assertEquals(6, metadata.getExifOrientation());
+        assertEquals(4, metadata.getRestartInterval());
+
+        assertTrue(JpegHeaderParser.parse(withSegments(encode(16, 16), exif(false, 8)), metadata));
+        assertEquals(8, metadata.getExifOrientation());
+        assertEquals(0, metadata.getRestartInterval());
+    }
+
+    @Test
+    public void bufferPosition_isRespected() {
+        ByteBuffer jpeg = encode(32, 8);
+        ByteBuffer shifted = ByteBuffer.allocate(jpeg.remaining() + 10);
+        shifted.position(10);
+        shifted.put(jpeg.duplicate());
+        shifted.position(10);
+
+        FrameMetadata metadata = new FrameMetadata();
+        assertTrue(JpegHeaderParser.parse(shifted, metadata));
+        assertEquals(32, metadata.getWidth());
+        assertEquals(10, shifted.position());
+    }
+
+    @Test
+    public void truncatedFrame_isInvalid() {
+        ByteBuffer jpeg = encode(16, 16);
+        FrameMetadata metadata = new FrameMetadata();
+        JpegHeaderParser.parse(jpeg, metadata);
+        int headerLength = metadata.getHeaderLength();
+
+        jpeg.limit(headerLength - 1);
+        assertFalse(JpegHeaderParser.parse(jpeg, metadata));
+        assertFalse(metadata.isValid());
+        assertFalse(JpegHeaderParser.parse(ByteBuffer.allocate(0), metadata));
+    }
+
+    @Test
+    public void fuzzedFrames_neverThrow() {
+        byte[] valid = bytes(withSegments(encode(24, 16), exif(true, 3), restartInterval(2)));
+        Random random = new Random(22);
+        FrameMetadata metadata = new FrameMetadata();
+
+        for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+            byte[] data;
+            if (i % 10 == 0) {
+                data = new byte[random.nextInt(64)];
+                random.nextBytes(data);
+            } else {
+                // only the header matters, keep the fuzzed inputs small
+                data = Arrays.copyOf(valid, Math.min(valid.length, 700));
+                for (int j = 1 + random.nextInt(4); j > 0; j--) {
+                    int index = random.nextInt(data.length);
+                    data[index] = (random.nextInt(4) == 0) ? (byte) 0xFF : (byte) random.nextInt(256);
+                }
+                data = Arrays.copyOf(data, random.nextInt(data.length + 1));
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(data).asReadOnlyBuffer();
+            boolean parsed = JpegHeaderParser.parse(buffer, metadata);
+
+            assertEquals(0, buffer.position());
+            assertEquals(data.length, buffer.limit());
+            assertEquals(parsed, metadata.isValid());
+            if (parsed) {
+                assertTrue(metadata.getHeaderLength() <= data.length);
+                assertTrue(metadata.getWidth() <= 0xFFFF);
+                assertTrue((metadata.getExifOrientation() >= 0) && (metadata.getExifOrientation() <= 8));
+            }
+        }
+    }
+
+    @Test
+    public void parsing_doesNotAllocate() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+
+        ByteBuffer jpeg = withSegments(encode(16, 16), exif(false, 1), restartInterval(8));
+        FrameMetadata metadata = new FrameMetadata();
+        for (int i = 0; i < 100000; i++) {
+            JpegHeaderParser.parse(jpeg, metadata);
+        }
+
+        // the minimum of a few rounds filters out allocations of the JIT and the management bean
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long before = bean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 100000; i++) {
+                JpegHeaderParser.parse(jpeg, metadata);
+            }
+            allocated = Math.min(allocated, bean.getThreadAllocatedBytes(threadId) - before);
+        }
+
+        assertEquals(0, allocated);
+        assertTrue(metadata.isValid());
+    }
+
+    private static ByteBuffer encode(int width, int height) {
+        byte[] plane = new byte[width * height];
+        Arrays.fill(plane, (byte) 100);
+        YuvFrame frame = new YuvFrame();
+        frame.set(width, height, 0, 0);
+        for (int i = 0; i < 3; i++) {
+            frame.getPlane(i).copyFrom(ByteBuffer.wrap(plane), (i == YuvFrame.Y) ? width : width / 2, 1);
+        }
+
+        JpegEncoder encoder = new JpegEncoder();
+        encoder.encode(frame, 50);
+        return ByteBuffer.wrap(bytes(encoder.getOutput()));
+    }
+
+    /**
+     * Inserts segments directly after the SOI marker.
+     */
+    private static ByteBuffer withSegments(ByteBuffer jpeg, byte[]... segments) {
+        byte[] data = bytes(jpeg);
+        int size = data.length;
+        for (byte[] segment : segments) {
+            size += segment.length;
+        }
+        ByteBuffer result = ByteBuffer.allocate(size);
+        result.put(data, 0, 2);
+        for (byte[] segment : segments) {
+            result.put(segment);
+        }
+        result.put(data, 2, data.length - 2);
+        result.flip();
+        return result;
+    }
+
+    private static byte[] exif(boolean littleEndian, int orientation) {
+        ByteBuffer segment = ByteBuffer.allocate(2 + 2 + 6 + 8 + 2 + 2 * 12 + 4);
+        segment.order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        segment.put((byte) 0xFF).put((byte) 0xE1);
+        segment.put((byte) ((segment.capacity() - 2) >> 8)).put((byte) (segment.capacity() - 2));
+        segment.put(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        segment.put(littleEndian ? new byte[]{'I', 'I'} : new byte[]{'M', 'M'});
+        segment.putShort((short) 42);
+        segment.putInt(8);
+        segment.putShort((short) 2);
+        // image width as a long, then the orientation as a short
+        segment.putShort((short) 0x0100).putShort((short) 4).putInt(1).putInt(640);
+        segment.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        segment.putInt(0);
+        return segment.array();
+    }
+
+    private static byte[] restartInterval(int interval) {
+        return new byte[]{(byte) 0xFF, (byte) 0xDD, 0, 4, (byte) (interval >> 8), (byte) interval};
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+}
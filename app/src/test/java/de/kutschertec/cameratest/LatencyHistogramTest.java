@@ -0,0 +1,122 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link LatencyHistogram} and {@link FrameStats}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_areContiguousAndBoundTheirValues() {
+        int previous = -1;
+        for (long value = 0; value < 1000000; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index == previous || index == previous + 1);
+            assertTrue(LatencyHistogram.bucketUpperBound(index) >= value);
+            previous = index;
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            long upperBound = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value));
+            assertTrue(upperBound >= value);
+            assertTrue(upperBound - value <= value / LatencyHistogram.SUB_BUCKETS);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void percentiles_areWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000000L, histogram.getMax());
+        assertEquals(500500000L, histogram.getMean());
+        assertWithin(500000000L, histogram.getPercentile(50));
+        assertWithin(990000000L, histogram.getPercentile(99));
+        assertEquals(1000000000L, histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void negativeValues_areRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void recording_doesNotAllocate() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+
+        FrameStats stats = new FrameStats(new FrameExchange(new BufferPool(), 1024));
+        for (int i = 0; i < 100000; i++) {
+            recordFrame(stats, i);
+        }
+
+        // the minimum of a few rounds filters out allocations of the JIT and the management bean
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long before = bean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 100000; i++) {
+                recordFrame(stats, i);
+            }
+            allocated = Math.min(allocated, bean.getThreadAllocatedBytes(threadId) - before);
+        }
+
+        assertEquals(0, allocated);
+        assertEquals(600000, stats.getFrames());
+    }
+
+    @Test
+    public void unknownSensorLatency_isNotRecorded() {
+        FrameStats stats = new FrameStats(new FrameExchange(new BufferPool(), 1024));
+        stats.recordFrame(-1, 1000);
+        stats.recordFrame(2000, 1000);
+
+        assertEquals(2, stats.getFrames());
+        assertEquals(1, stats.getSensorToCallback().getCount());
+        assertEquals(2, stats.getCallbackToCopy().getCount());
+    }
+
+    @Test
+    public void fps_isSampledFromFrameCount() {
+        FrameStats stats = new FrameStats(new FrameExchange(new BufferPool(), 1024));
+        stats.sample(1000000000L);
+        for (int i = 0; i < 30; i++) {
+            stats.recordFrame(-1, 0);
+        }
+        stats.sample(2000000000L);
+
+        assertEquals(30.0f, stats.getFps(), 0.001f);
+    }
+
+    private static void recordFrame(FrameStats stats, int i) {
+        stats.recordFrame(i * 1000L, i * 100L);
+        stats.recordRead(i * 10L);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / LatencyHistogram.SUB_BUCKETS);
+    }
+}
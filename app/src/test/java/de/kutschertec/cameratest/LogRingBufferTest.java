@@ -0,0 +1,154 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link LogRingBuffer} and {@link AsyncLogSink}.
+ */
+public class LogRingBufferTest {
+    private static final int PRODUCERS = 4;
+    private static final int RECORDS_PER_PRODUCER = 20000;
+
+    @Test
+    public void records_arePolledInOrder() {
+        LogRingBuffer buffer = new LogRingBuffer(4);
+        CollectingSink sink = new CollectingSink();
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(Logger.Level.INFO, "tag", "message " + i, null));
+            }
+            assertFalse(buffer.offer(Logger.Level.INFO, "tag", "overflow", null));
+
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.poll(sink));
+            }
+            assertFalse(buffer.poll(sink));
+            assertTrue(buffer.isEmpty());
+        }
+
+        assertEquals(12, sink.messages.size());
+        assertEquals("message 3", sink.messages.get(11));
+    }
+
+    @Test
+    public void capacity_isRoundedUpToPowerOfTwo() {
+        assertEquals(8, new LogRingBuffer(5).getCapacity());
+        assertEquals(1, new LogRingBuffer(1).getCapacity());
+    }
+
+    @Test
+    public void concurrentProducers_loseNothing() throws InterruptedException {
+        LogRingBuffer buffer = new LogRingBuffer(64);
+        CollectingSink sink = new CollectingSink();
+        CountDownLatch done = new CountDownLatch(PRODUCERS);
+
+        for (int p = 0; p < PRODUCERS; p++) {
+            String prefix = p + ":";
+            new Thread(() -> {
+                for (int i = 0; i < RECORDS_PER_PRODUCER; i++) {
+                    String message = prefix + i;
+                    while (!buffer.offer(Logger.Level.DEBUG, "tag", message, null)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+
+        while ((done.getCount() > 0) || !buffer.isEmpty()) {
+            buffer.poll(sink);
+        }
+
+        assertEquals(PRODUCERS * RECORDS_PER_PRODUCER, sink.messages.size());
+        // the records of each producer keep their order
+        int[] next = new int[PRODUCERS];
+        for (String message : sink.messages) {
+            int separator = message.indexOf(':');
+            int producer = Integer.parseInt(message.substring(0, separator));
+            assertEquals(next[producer]++, Integer.parseInt(message.substring(separator + 1)));
+        }
+    }
+
+    @Test
+    public void dropPolicy_countsDroppedRecords() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CollectingSink target = new CollectingSink() {
+            @Override
+            public void write(Logger.Level level, String tag, String message, Throwable t) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(level, tag, message, t);
+            }
+        };
+        AsyncLogSink sink = new AsyncLogSink(target, 4, AsyncLogSink.OverflowPolicy.DROP);
+
+        for (int i = 0; i < 100; i++) {
+            sink.write(Logger.Level.INFO, "tag", "message " + i, null);
+        }
+        assertTrue(sink.getDroppedRecords() > 0);
+
+        release.countDown();
+        sink.close();
+        assertEquals(100, target.messages.size() + sink.getDroppedRecords());
+    }
+
+    @Test
+    public void blockPolicy_losesNothing() {
+        CollectingSink target = new CollectingSink();
+        AsyncLogSink sink = new AsyncLogSink(target, 4, AsyncLogSink.OverflowPolicy.BLOCK);
+
+        for (int i = 0; i < 1000; i++) {
+            sink.write(Logger.Level.INFO, "tag", "message " + i, null);
+        }
+        sink.close();
+
+        assertEquals(0, sink.getDroppedRecords());
+        assertEquals(1000, target.messages.size());
+        assertEquals("message 999", target.messages.get(999));
+    }
+
+    @Test
+    public void idleDrainThread_waitsForRecords() throws InterruptedException {
+        CollectingSink target = new CollectingSink();
+        AsyncLogSink sink = new AsyncLogSink(target, 4, AsyncLogSink.OverflowPolicy.DROP);
+        try {
+            Thread.sleep(300);
+            // an idle sink parks until the next record instead of polling
+            assertTrue(sink.getWakeups() <= 1);
+
+            sink.write(Logger.Level.INFO, "tag", "message", null);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (target.size() == 0) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(1);
+            }
+            assertEquals("message", target.messages.get(0));
+        } finally {
+            sink.close();
+        }
+    }
+
+    private static class CollectingSink implements LogSink {
+        private final List<String> messages = new ArrayList<>();
+
+        @Override
+        public synchronized void write(Logger.Level level, String tag, String message, Throwable t) {
+            messages.add(message);
+        }
+
+        synchronized int size() {
+            return messages.size();
+        }
+    }
+}
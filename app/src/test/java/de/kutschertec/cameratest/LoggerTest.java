@@ -0,0 +1,129 @@
+package de.kutschertec.cameratest;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the message formatting of {@link Logger} and that disabled levels do not allocate.
+ */
+public class LoggerTest {
+    private static final int ITERATIONS = 100000;
+
+    @After
+    public void tearDown() {
+        Logger.setGlobalLogLevel(Logger.Level.INFO);
+    }
+
+    @Test
+    public void placeholders_areReplacedInOrder() {
+        Logger logger = new Logger(LoggerTest.class);
+        String prefix = LoggerTest.class.getCanonicalName() + " - ";
+
+        assertEquals(prefix + "size=42 bytes", logger.formatMessage("size={} bytes", 42L));
+        assertEquals(prefix + "zoom=1.5", logger.formatMessage("zoom={}", 1.5));
+        assertEquals(prefix + "camera 0", logger.formatMessage("camera {}", "0"));
+        assertEquals(prefix + "640x480", logger.formatMessage("{}x{}", 640L, 480L));
+        assertEquals(prefix + "a null b", logger.formatMessage("a {} b", (Object) null));
+        assertEquals(prefix + "x and y!", logger.formatMessage("{} and {}!", "x", "y"));
+    }
+
+    @Test
+    public void missingPlaceholders_ignoreArguments() {
+        Logger logger = new Logger(LoggerTest.class);
+        String prefix = LoggerTest.class.getCanonicalName() + " - ";
+
+        assertEquals(prefix + "no placeholder", logger.formatMessage("no placeholder", 1L));
+        assertEquals(prefix + "only 1", logger.formatMessage("only {}", 1L, 2L));
+        assertEquals(prefix + "1 {} x", logger.formatMessage("{} {} x", 1L));
+    }
+
+    @Test
+    public void throwable_isPassedWithFormattedMessage() {
+        LogSink previous = Logger.getSink();
+        String[] messages = new String[1];
+        Throwable[] throwables = new Throwable[1];
+        Logger.setSink((level, tag, message, t) -> {
+            messages[0] = message;
+            throwables[0] = t;
+        });
+        try {
+            Exception e = new Exception("test");
+            new Logger(LoggerTest.class).error("Error loading camera {}", "0", e);
+
+            assertEquals(LoggerTest.class.getCanonicalName() + " - Error loading camera 0", messages[0]);
+            assertSame(e, throwables[0]);
+        } finally {
+            Logger.setSink(previous);
+        }
+    }
+
+    @Test
+    public void anonymousClass_usesBinaryName() {
+        Object anonymous = new Object() {
+        };
+        Logger logger = new Logger(anonymous);
+
+        assertEquals(anonymous.getClass().getName() + " - message", logger.formatMessage("message", 1L));
+    }
+
+    @Test
+    public void disabledLevels_doNotAllocate() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+
+        Logger.setGlobalLogLevel(Logger.Level.INFO);
+        Logger logger = new Logger(LoggerTest.class);
+        Object argument = new Object();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            logDisabled(logger, i, argument);
+        }
+
+        // the minimum of a few rounds filters out allocations of the JIT and the management bean
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long before = bean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ITERATIONS; i++) {
+                logDisabled(logger, i, argument);
+            }
+            allocated = Math.min(allocated, bean.getThreadAllocatedBytes(threadId) - before);
+        }
+
+        assertEquals(0, allocated);
+    }
+
+    @Test
+    public void supplier_isOnlyCalledIfEnabled() {
+        Logger logger = new Logger(LoggerTest.class);
+        int[] calls = new int[1];
+
+        logger.debug(() -> {
+            calls[0]++;
+            return "debug";
+        });
+        assertEquals(0, calls[0]);
+
+        logger.setLogLevel(Logger.Level.DEBUG);
+        logger.debug(() -> {
+            calls[0]++;
+            return "debug";
+        });
+        assertEquals(1, calls[0]);
+    }
+
+    private static void logDisabled(Logger logger, int i, Object argument) {
+        logger.verbose("Frame {} available.", i);
+        logger.debug("Frame {} of {} bytes.", i, 4096);
+        logger.debug("Zoom level {}", 0.5f);
+        logger.debug("Frame {} from {}", argument, argument);
+        logger.debug(() -> "never built");
+    }
+}
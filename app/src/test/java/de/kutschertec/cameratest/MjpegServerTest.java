@@ -0,0 +1,171 @@
+package de.kutschertec.cameratest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link MjpegServer} against a synthetic frame source and a plain socket client.
+ */
+public class MjpegServerTest {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private FrameExchange exchange;
+    private MjpegServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        exchange = new FrameExchange(new BufferPool(), 1024);
+        server = new MjpegServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void client_receivesMultipartStream() throws IOException {
+        try (Socket socket = connect()) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertEquals("HTTP/1.0 200 OK", readLine(in));
+            String contentType = readHeaders(in);
+            assertTrue(contentType.startsWith("multipart/x-mixed-replace; boundary="));
+            String boundary = contentType.substring(contentType.indexOf('=') + 1);
+
+            for (int i = 1; i <= 3; i++) {
+                publish(i, 1000 * i);
+                byte[] part = readPart(in, boundary);
+                assertEquals(1000 * i, part.length);
+                assertEquals((byte) i, part[0]);
+                assertEquals((byte) i, part[part.length - 1]);
+            }
+
+            List<MjpegServer.ClientStatistics> statistics = awaitFramesSent(3);
+            assertEquals(1, statistics.size());
+            assertEquals(3, statistics.get(0).getFramesSent());
+            assertTrue(statistics.get(0).getBytesSent() > 6000);
+            assertTrue(statistics.get(0).getThroughput() > 0);
+        }
+    }
+
+    @Test
+    public void slowClient_skipsFramesWithoutStallingOthers() throws IOException {
+        try (Socket slow = connect(); Socket fast = connect()) {
+            DataInputStream fastIn = new DataInputStream(fast.getInputStream());
+            readLine(fastIn);
+            String contentType = readHeaders(fastIn);
+            String boundary = contentType.substring(contentType.indexOf('=') + 1);
+
+            // the slow client never reads, so its socket buffers fill up with the first frames
+            for (int i = 1; i <= 50; i++) {
+                publish(i, 256 * 1024);
+                byte[] part = readPart(fastIn, boundary);
+                assertEquals((byte) i, part[0]);
+            }
+
+            MjpegServer.ClientStatistics slowStatistics = null;
+            for (MjpegServer.ClientStatistics statistics : server.getClientStatistics()) {
+                if (statistics.getRemoteAddress().endsWith(":" + slow.getLocalPort())) {
+                    slowStatistics = statistics;
+                }
+            }
+            assertNotNull(slowStatistics);
+            assertTrue(slowStatistics.getFramesSent() < 50);
+            assertTrue(slowStatistics.getLag() > 0);
+
+            // frames held by the slow client are still leased, everything else has been recycled
+            assertTrue(exchange.getRecycledFrames() >= 45);
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(5000);
+        socket.setReceiveBufferSize(64 * 1024);
+        OutputStream out = socket.getOutputStream();
+        out.write("GET /stream HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(ASCII));
+        out.flush();
+        return socket;
+    }
+
+    // the server counts a frame after its last write returned, which may be after the client read it
+    private List<MjpegServer.ClientStatistics> awaitFramesSent(long frames) {
+        long deadline = System.currentTimeMillis() + 5000;
+        List<MjpegServer.ClientStatistics> statistics = server.getClientStatistics();
+        while (!statistics.isEmpty() && (statistics.get(0).getFramesSent() < frames) && (System.currentTimeMillis() < deadline)) {
+            Thread.yield();
+            statistics = server.getClientStatistics();
+        }
+        return statistics;
+    }
+
+    private void publish(int value, int size) {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) value);
+        exchange.publish(ByteBuffer.wrap(data), value * 1000L);
+
+        try (FrameLease frame = exchange.acquireLatest()) {
+            assertNotNull(frame);
+            server.onFrame(frame);
+        }
+    }
+
+    private static String readHeaders(InputStream in) throws IOException {
+        String contentType = null;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            if (line.startsWith("Content-Type: ")) {
+                contentType = line.substring("Content-Type: ".length());
+            }
+        }
+        assertNotNull(contentType);
+        return contentType;
+    }
+
+    private static byte[] readPart(DataInputStream in, String boundary) throws IOException {
+        assertEquals("--" + boundary, readLine(in));
+        int contentLength = -1;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            if (line.startsWith("Content-Length: ")) {
+                contentLength = Integer.parseInt(line.substring("Content-Length: ".length()));
+            }
+        }
+
+        byte[] part = new byte[contentLength];
+        in.readFully(part);
+        assertEquals("", readLine(in));
+        return part;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new IOException("end of stream");
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return new String(line.toByteArray(), ASCII);
+    }
+}
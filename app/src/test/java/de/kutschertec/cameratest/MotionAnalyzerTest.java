@@ -0,0 +1,226 @@
+package de.kutschertec.cameratest;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link MotionAnalyzer} and the motion regions of {@link FrameMetadata}.
+ */
+public class MotionAnalyzerTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private final Random random = new Random(24);
+    private final MotionAnalyzer analyzer = new MotionAnalyzer(4);
+
+    @After
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    @Test
+    public void noiseAndExposure_areNoMotion() {
+        assertEquals(0, analyze(analyzer, scene(4, 0)));
+        assertEquals(0, analyze(analyzer, scene(4, 0)));
+        assertEquals(0, analyze(analyzer, scene(4, 30)));
+        assertEquals(3, analyzer.getAnalyzedFrames());
+        assertEquals(0, analyzer.getFramesWithMotion());
+    }
+
+    @Test
+    public void movingObject_isRegion() {
+        analyze(analyzer, scene(4, 0));
+        assertEquals(1, analyze(analyzer, scene(4, 0, 100, 100, 60, 40)));
+
+        FrameMetadata metadata = new FrameMetadata();
+        analyzer.tag(metadata);
+        assertEquals(1, metadata.getMotionRegionCount());
+        assertEquals(96, metadata.getMotionRegionLeft(0));
+        assertEquals(96, metadata.getMotionRegionTop(0));
+        assertEquals(160, metadata.getMotionRegionRight(0));
+        assertEquals(160, metadata.getMotionRegionBottom(0));
+
+        // the object moves on, both the old and the new position have changed
+        assertEquals(1, analyze(analyzer, scene(4, 0, 140, 100, 60, 40)));
+        analyzer.tag(metadata);
+        assertEquals(96, metadata.getMotionRegionLeft(0));
+        assertEquals(224, metadata.getMotionRegionRight(0));
+        assertEquals(2, analyzer.getFramesWithMotion());
+    }
+
+    @Test
+    public void separateObjects_areSeparateRegions() {
+        analyze(analyzer, scene(4, 0));
+        ByteBuffer frame = scene(4, 0, 0, 0, 50, 50);
+        paint(frame, WIDTH, 600, 440, 40, 40, 255);
+        assertEquals(2, analyze(analyzer, frame));
+
+        FrameMetadata metadata = new FrameMetadata();
+        analyzer.tag(metadata);
+        FrameMetadata copy = new FrameMetadata();
+        copy.set(metadata);
+        assertEquals(2, copy.getMotionRegionCount());
+        assertEquals(0, copy.getMotionRegionLeft(0));
+        assertEquals(64, copy.getMotionRegionRight(0));
+        assertEquals(576, copy.getMotionRegionLeft(1));
+        assertEquals(WIDTH, copy.getMotionRegionRight(1));
+        assertEquals(HEIGHT, copy.getMotionRegionBottom(1));
+
+        copy.clear();
+        assertEquals(0, copy.getMotionRegionCount());
+    }
+
+    @Test
+    public void excessRegions_areMerged() {
+        analyze(analyzer, scene(4, 0));
+        ByteBuffer frame = scene(4, 0);
+        for (int i = 0; i < MotionAnalyzer.MAX_REGIONS + 2; i++) {
+            paint(frame, WIDTH, 64 * (i % 5), 128 * (i / 5), 20, 20, 255);
+        }
+        assertEquals(MotionAnalyzer.MAX_REGIONS, analyze(analyzer, frame));
+
+        FrameMetadata metadata = new FrameMetadata();
+        analyzer.tag(metadata);
+        int last = MotionAnalyzer.MAX_REGIONS - 1;
+        assertEquals(128, metadata.getMotionRegionLeft(last));
+        assertEquals(128, metadata.getMotionRegionTop(last));
+        assertEquals(288, metadata.getMotionRegionRight(last));
+        assertEquals(160, metadata.getMotionRegionBottom(last));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void missingRegion_isRejected() {
+        new FrameMetadata().getMotionRegionLeft(0);
+    }
+
+    @Test
+    public void reset_forgetsPreviousFrame() {
+        analyze(analyzer, scene(4, 0));
+        analyze(analyzer, scene(4, 0, 100, 100, 60, 40));
+        analyzer.reset();
+
+        FrameMetadata metadata = new FrameMetadata();
+        analyzer.tag(metadata);
+        assertEquals(0, metadata.getMotionRegionCount());
+        assertEquals(0, analyze(analyzer, scene(4, 0)));
+
+        // a new resolution starts over as well
+        ByteBuffer small = ByteBuffer.allocateDirect(320 * 240);
+        assertEquals(0, analyzer.analyze(small, 0, 320, 240, 320, 1));
+    }
+
+    @Test
+    public void strides_areRespected() {
+        ByteBuffer first = scene(0, 0);
+        ByteBuffer second = scene(0, 0, 300, 200, 40, 40);
+        MotionAnalyzer sequential = new MotionAnalyzer(1);
+        try {
+            analyze(sequential, first);
+            assertEquals(1, analyze(sequential, second));
+
+            // every second byte of a padded row is a sample
+            int rowStride = 2 * WIDTH + 16;
+            analyzer.analyze(interleave(first, rowStride), 8, WIDTH, HEIGHT, rowStride, 2);
+            assertEquals(1, analyzer.analyze(interleave(second, rowStride), 8, WIDTH, HEIGHT, rowStride, 2));
+
+            FrameMetadata expected = new FrameMetadata();
+            FrameMetadata actual = new FrameMetadata();
+            sequential.tag(expected);
+            analyzer.tag(actual);
+            assertEquals(expected.getMotionRegionLeft(0), actual.getMotionRegionLeft(0));
+            assertEquals(expected.getMotionRegionTop(0), actual.getMotionRegionTop(0));
+            assertEquals(expected.getMotionRegionRight(0), actual.getMotionRegionRight(0));
+            assertEquals(expected.getMotionRegionBottom(0), actual.getMotionRegionBottom(0));
+        } finally {
+            sequential.close();
+        }
+    }
+
+    @Test
+    public void analysis_reusesTileArrays() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+
+        ByteBuffer still = scene(4, 0);
+        ByteBuffer moved = scene(4, 0, 100, 100, 60, 40);
+        FrameMetadata metadata = new FrameMetadata();
+        for (int i = 0; i < 200; i++) {
+            analyze(analyzer, (i % 2 == 0) ? still : moved);
+            analyzer.tag(metadata);
+        }
+
+        // the minimum of a few rounds filters out allocations of the JIT and the management bean
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long before = bean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 50; i++) {
+                analyze(analyzer, (i % 2 == 0) ? still : moved);
+                analyzer.tag(metadata);
+            }
+            allocated = Math.min(allocated, bean.getThreadAllocatedBytes(threadId) - before);
+        }
+
+        // the pool may allocate a small node to wait for the tasks, but no tile data or frame copy
+        assertTrue(allocated / 50 < 256);
+        assertEquals(1, metadata.getMotionRegionCount());
+    }
+
+    private static int analyze(MotionAnalyzer analyzer, ByteBuffer luma) {
+        return analyzer.analyze(luma, 0, WIDTH, HEIGHT, WIDTH, 1);
+    }
+
+    /**
+     * Creates a luma plane with a horizontal gradient and sensor noise.
+     */
+    private ByteBuffer scene(int noise, int brightness) {
+        ByteBuffer luma = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int value = 40 + x * 150 / WIDTH + brightness;
+                if (noise > 0) {
+                    value += random.nextInt(2 * noise + 1) - noise;
+                }
+                luma.put(y * WIDTH + x, (byte) Math.max(0, Math.min(255, value)));
+            }
+        }
+        return luma;
+    }
+
+    /**
+     * Creates a scene with a white object.
+     */
+    private ByteBuffer scene(int noise, int brightness, int left, int top, int width, int height) {
+        ByteBuffer luma = scene(noise, brightness);
+        paint(luma, WIDTH, left, top, width, height, 255);
+        return luma;
+    }
+
+    private static void paint(ByteBuffer luma, int rowStride, int left, int top, int width, int height, int value) {
+        for (int y = top; y < top + height; y++) {
+            for (int x = left; x < left + width; x++) {
+                luma.put(y * rowStride + x, (byte) value);
+            }
+        }
+    }
+
+    private static ByteBuffer interleave(ByteBuffer luma, int rowStride) {
+        ByteBuffer interleaved = ByteBuffer.allocateDirect(8 + rowStride * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                interleaved.put(8 + y * rowStride + 2 * x, luma.get(y * WIDTH + x));
+                interleaved.put(8 + y * rowStride + 2 * x + 1, (byte) 0x80);
+            }
+        }
+        return interleaved;
+    }
+}
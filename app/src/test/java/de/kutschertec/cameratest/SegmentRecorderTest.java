@@ -0,0 +1,154 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link SegmentRecorder} and {@link SegmentReader} against a temporary directory.
+ */
+public class SegmentRecorderTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordedFrames_canBeReadBack() throws IOException {
+        File directory = folder.newFolder();
+        SegmentRecorder recorder = new SegmentRecorder(directory, SEGMENT_SIZE, 100 * SEGMENT_SIZE);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(recorder.append(createFrame(i, 100 + i * 10), i * 1000L));
+        }
+        recorder.close();
+
+        SegmentReader reader = new SegmentReader(directory);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(reader.next());
+            assertEquals(i * 1000L, reader.getTimestamp());
+            assertFrame(i, 100 + i * 10, reader.getData());
+        }
+        assertFalse(reader.next());
+        assertEquals(0, reader.getCorruptRecords());
+        assertTrue(SegmentRecorder.listSegments(directory).length > 1);
+    }
+
+    @Test
+    public void seek_findsFirstRecordAtOrAfterTimestamp() throws IOException {
+        File directory = folder.newFolder();
+        SegmentRecorder recorder = new SegmentRecorder(directory, SEGMENT_SIZE, 100 * SEGMENT_SIZE);
+        for (int i = 0; i < 100; i++) {
+            recorder.append(createFrame(i, 500), i * 1000L);
+        }
+
+        SegmentReader reader = new SegmentReader(directory);
+        assertTrue(reader.seek(42000));
+        assertEquals(42000, reader.getTimestamp());
+        assertFrame(42, 500, reader.getData());
+
+        assertTrue(reader.seek(42500));
+        assertEquals(43000, reader.getTimestamp());
+
+        assertTrue(reader.seek(-1));
+        assertEquals(0, reader.getTimestamp());
+
+        assertFalse(reader.seek(100000));
+    }
+
+    @Test
+    public void sizeBudget_evictsOldestSegments() throws IOException {
+        File directory = folder.newFolder();
+        SegmentRecorder recorder = new SegmentRecorder(directory, SEGMENT_SIZE, 3 * SEGMENT_SIZE);
+        for (int i = 0; i < 100; i++) {
+            recorder.append(createFrame(i, 1000), i * 1000L);
+        }
+
+        assertEquals(3, SegmentRecorder.listSegments(directory).length);
+        assertTrue(recorder.getEvictedSegments() > 0);
+
+        // only the newest frames are left
+        SegmentReader reader = new SegmentReader(directory);
+        assertTrue(reader.next());
+        assertTrue(reader.getTimestamp() > 80000);
+        long last = 0;
+        do {
+            last = reader.getTimestamp();
+        } while (reader.next());
+        assertEquals(99000, last);
+    }
+
+    @Test
+    public void oversizedFrame_isRejected() throws IOException {
+        SegmentRecorder recorder = new SegmentRecorder(folder.newFolder(), SEGMENT_SIZE, 2 * SEGMENT_SIZE);
+
+        assertFalse(recorder.append(ByteBuffer.allocate(SEGMENT_SIZE), 0));
+        assertEquals(1, recorder.getRejectedFrames());
+    }
+
+    @Test
+    public void corruptRecord_stopsReadingSegment() throws IOException {
+        File directory = folder.newFolder();
+        SegmentRecorder recorder = new SegmentRecorder(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE);
+        for (int i = 0; i < 3; i++) {
+            recorder.append(createFrame(i, 100), i);
+        }
+        recorder.close();
+
+        // flip a byte in the data of the second record
+        File segment = SegmentRecorder.listSegments(directory)[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            long offset = 2 * SegmentRecorder.RECORD_HEADER_SIZE + 100 + 50;
+            raf.seek(offset);
+            int value = raf.read();
+            raf.seek(offset);
+            raf.write(value ^ 0xFF);
+        }
+
+        SegmentReader reader = new SegmentReader(directory);
+        assertTrue(reader.next());
+        assertFalse(reader.next());
+        assertEquals(1, reader.getCorruptRecords());
+    }
+
+    @Test
+    public void reopenedRecorder_appendsNewSegment() throws IOException {
+        File directory = folder.newFolder();
+        SegmentRecorder recorder = new SegmentRecorder(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE);
+        recorder.append(createFrame(1, 100), 1);
+        recorder.close();
+
+        recorder = new SegmentRecorder(directory, SEGMENT_SIZE, 10 * SEGMENT_SIZE);
+        recorder.append(createFrame(2, 100), 2);
+        recorder.close();
+
+        SegmentReader reader = new SegmentReader(directory);
+        assertTrue(reader.next());
+        assertEquals(1, reader.getTimestamp());
+        assertTrue(reader.next());
+        assertEquals(2, reader.getTimestamp());
+        assertFalse(reader.next());
+    }
+
+    private static ByteBuffer createFrame(int value, int size) {
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++) {
+            frame.put((byte) (value + i));
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private static void assertFrame(int value, int size, ByteBuffer data) {
+        assertEquals(size, data.remaining());
+        for (int i = 0; i < size; i++) {
+            assertEquals((byte) (value + i), data.get(data.position() + i));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link StartupCoordinator} and {@link StartupTrace} with a fake camera backend.
+ */
+public class StartupCoordinatorTest {
+    private static final long CHARACTERISTICS_TIME = ms(80);
+    private static final long OPEN_TIME = ms(300);
+    private static final long SURFACE_TIME = ms(250);
+    private static final long SESSION_TIME = ms(150);
+    private static final long FRAME_TIME = ms(50);
+
+    private FakeCamera camera;
+    private StartupCoordinator coordinator;
+
+    @Before
+    public void setUp() {
+        camera = new FakeCamera();
+        coordinator = new StartupCoordinator(camera, camera);
+    }
+
+    @Test
+    public void deviceOpensWhileSurfaceIsCreated() {
+        coordinator.start();
+        assertEquals(1, camera.opens);
+        camera.at(SURFACE_TIME, coordinator::onSurfaceReady);
+        camera.runAll();
+
+        StartupTrace trace = coordinator.getTrace();
+        assertEquals(1, camera.sessions);
+        assertEquals(CHARACTERISTICS_TIME, trace.getTime(StartupTrace.Milestone.CHARACTERISTICS_LOADED));
+        assertEquals(SURFACE_TIME, trace.getTime(StartupTrace.Milestone.SURFACE_READY));
+        assertEquals(CHARACTERISTICS_TIME + OPEN_TIME, trace.getTime(StartupTrace.Milestone.DEVICE_OPENED));
+
+        // the surface is hidden behind the device opening, a serial startup would take
+        // SURFACE_TIME longer
+        long timeToFirstFrame = CHARACTERISTICS_TIME + OPEN_TIME + SESSION_TIME + FRAME_TIME;
+        assertEquals(timeToFirstFrame, trace.getTimeToFirstFrame());
+        assertTrue(trace.getTimeToFirstFrame() < SURFACE_TIME + CHARACTERISTICS_TIME + OPEN_TIME + SESSION_TIME + FRAME_TIME);
+        assertEquals(1, coordinator.getTimesToFirstFrame().getCount());
+    }
+
+    @Test
+    public void lateSurface_createsSessionWhenReady() {
+        coordinator.start();
+        camera.at(ms(1000), coordinator::onSurfaceReady);
+        camera.runAll();
+
+        StartupTrace trace = coordinator.getTrace();
+        assertEquals(1, camera.sessions);
+        assertEquals(ms(1000), trace.getTime(StartupTrace.Milestone.SESSION_CREATE));
+        assertEquals(ms(1000) + SESSION_TIME + FRAME_TIME, trace.getTimeToFirstFrame());
+    }
+
+    @Test
+    public void availableSurface_isReadyAtStart() {
+        coordinator.onSurfaceReady();
+        coordinator.start();
+        camera.runAll();
+
+        StartupTrace trace = coordinator.getTrace();
+        assertEquals(0, trace.getTime(StartupTrace.Milestone.SURFACE_READY));
+        assertEquals(CHARACTERISTICS_TIME + OPEN_TIME, trace.getTime(StartupTrace.Milestone.SESSION_CREATE));
+    }
+
+    @Test
+    public void reopenedDevice_getsNewSession() {
+        coordinator.onSurfaceReady();
+        coordinator.start();
+        camera.runAll();
+        long timeToFirstFrame = coordinator.getTrace().getTimeToFirstFrame();
+
+        coordinator.onDeviceClosed();
+        camera.openDevice();
+        camera.runAll();
+
+        assertEquals(2, camera.sessions);
+        // the trace keeps the first startup
+        assertEquals(timeToFirstFrame, coordinator.getTrace().getTimeToFirstFrame());
+        assertEquals(1, coordinator.getTimesToFirstFrame().getCount());
+    }
+
+    @Test
+    public void stoppedStartup_createsNoSession() {
+        coordinator.onSurfaceReady();
+        coordinator.start();
+        camera.at(ms(10), coordinator::stop);
+        camera.runAll();
+
+        assertFalse(coordinator.isRunning());
+        assertEquals(0, camera.sessions);
+        assertEquals(-1, coordinator.getTrace().getTimeToFirstFrame());
+    }
+
+    @Test
+    public void trace_keepsFirstMark() {
+        StartupTrace trace = new StartupTrace(camera);
+        camera.now = ms(5);
+        assertTrue(trace.mark(StartupTrace.Milestone.DEVICE_OPENED));
+        camera.now = ms(9);
+        assertFalse(trace.mark(StartupTrace.Milestone.DEVICE_OPENED));
+        assertEquals(ms(5), trace.getTime(StartupTrace.Milestone.DEVICE_OPENED));
+        assertEquals(-1, trace.getTime(StartupTrace.Milestone.FIRST_FRAME));
+        assertTrue(trace.toString().contains("DEVICE_OPENED=5ms"));
+    }
+
+    private static long ms(long milliseconds) {
+        return TimeUnit.MILLISECONDS.toNanos(milliseconds);
+    }
+
+    /**
+     * Camera backend that completes its operations after fixed delays on a simulated clock.
+     */
+    private class FakeCamera implements Clock, StartupCoordinator.Backend {
+        private final List<Long> times = new ArrayList<>();
+        private final List<Runnable> tasks = new ArrayList<>();
+        private long now = 0;
+        private int opens = 0;
+        private int sessions = 0;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void openDevice() {
+            opens++;
+            at(now + CHARACTERISTICS_TIME, coordinator::onCharacteristicsLoaded);
+            at(now + CHARACTERISTICS_TIME + OPEN_TIME, coordinator::onDeviceOpened);
+        }
+
+        @Override
+        public void createSession() {
+            sessions++;
+            at(now + SESSION_TIME, coordinator::onSessionConfigured);
+            at(now + SESSION_TIME + FRAME_TIME, coordinator::onFirstFrame);
+        }
+
+        void at(long time, Runnable task) {
+            int index = 0;
+            while ((index < times.size()) && (times.get(index) <= time)) {
+                index++;
+            }
+            times.add(index, time);
+            tasks.add(index, task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                now = times.remove(0);
+                tasks.remove(0).run();
+            }
+        }
+    }
+}
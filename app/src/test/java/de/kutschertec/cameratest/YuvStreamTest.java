@@ -0,0 +1,95 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link YuvFrame} and {@link YuvStream}.
+ */
+public class YuvStreamTest {
+
+    @Test
+    public void planes_keepTheirStrides() {
+        YuvFrame frame = new YuvFrame();
+        // 4x2 luma with padded rows
+        ByteBuffer luma = ByteBuffer.wrap(new byte[]{
+                1, 2, 3, 4, 0, 0,
+                5, 6, 7, 8});
+        // interleaved chroma as in NV21, the U plane starts one byte after the V plane
+        ByteBuffer chroma = ByteBuffer.wrap(new byte[]{(byte) 200, 100, (byte) 201, 101});
+        ByteBuffer u = chroma.duplicate();
+        u.position(1);
+
+        frame.getPlane(YuvFrame.Y).copyFrom(luma, 6, 1);
+        frame.getPlane(YuvFrame.U).copyFrom(u, 4, 2);
+        frame.getPlane(YuvFrame.V).copyFrom(chroma, 4, 2);
+
+        assertEquals(0, luma.position());
+        assertEquals(1, u.position());
+        assertEquals(10, frame.getPlane(YuvFrame.Y).getBuffer().remaining());
+        assertEquals(6, frame.getPlane(YuvFrame.Y).getRowStride());
+        assertEquals(4, frame.getPlane(YuvFrame.Y).get(3, 0));
+        assertEquals(7, frame.getPlane(YuvFrame.Y).get(2, 1));
+        assertEquals(2, frame.getPlane(YuvFrame.U).getPixelStride());
+        assertEquals(101, frame.getPlane(YuvFrame.U).get(1, 0));
+        assertEquals(201, frame.getPlane(YuvFrame.V).get(1, 0));
+        assertTrue(frame.getPlane(YuvFrame.Y).getBuffer().isReadOnly());
+    }
+
+    @Test
+    public void planeBuffer_isReused() {
+        YuvFrame.Plane plane = new YuvFrame().getPlane(YuvFrame.Y);
+        plane.copyFrom(ByteBuffer.allocate(100), 10, 1);
+        ByteBuffer buffer = plane.getBuffer();
+        plane.copyFrom(ByteBuffer.allocate(50), 10, 1);
+
+        assertSame(buffer, plane.getBuffer());
+        assertEquals(50, plane.getBuffer().remaining());
+    }
+
+    @Test
+    public void slowListener_getsLatestFrame() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> sequences = new ArrayList<>();
+        YuvStream stream = new YuvStream(frame -> {
+            synchronized (sequences) {
+                sequences.add(frame.getSequence());
+            }
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        stream.publish(stream.obtainFrame(4, 2, 0));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 5; i++) {
+            YuvFrame frame = stream.obtainFrame(4, 2, i);
+            assertNotNull(frame);
+            stream.publish(frame);
+        }
+        assertEquals(4, stream.getDroppedFrames());
+
+        release.countDown();
+        while (stream.getDeliveredFrames() < 2) {
+            Thread.sleep(1);
+        }
+        stream.close();
+
+        synchronized (sequences) {
+            assertEquals(2, sequences.size());
+            assertEquals(5L, (long) sequences.get(1));
+        }
+        assertNull(stream.obtainFrame(4, 2, 6));
+    }
+}
@@ -0,0 +1,80 @@
+package de.kutschertec.cameratest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the crop regions of {@link ZoomTable} for some sample active array sizes.
+ */
+public class ZoomTableTest {
+    private static final int[][] ACTIVE_ARRAYS = {{4000, 3000}, {4208, 3120}, {3264, 2448}, {1921, 1081}};
+
+    @Test
+    public void cropRegions_areAlignedCenteredAndInBounds() {
+        int[] region = new int[4];
+        for (int[] activeArray : ACTIVE_ARRAYS) {
+            int width = activeArray[0];
+            int height = activeArray[1];
+            ZoomTable table = new ZoomTable(width, height, 4.0f, 40.0f);
+
+            int previousWidth = Integer.MAX_VALUE;
+            for (float zoomLevel = 0; zoomLevel <= 40.0f; zoomLevel += 0.01f) {
+                table.getCropRegion(zoomLevel, region);
+                int cropWidth = region[2] - region[0];
+                int cropHeight = region[3] - region[1];
+
+                assertEquals(0, region[0] % ZoomTable.ALIGNMENT);
+                assertEquals(0, region[1] % ZoomTable.ALIGNMENT);
+                assertEquals(width - region[2], region[0]);
+                assertEquals(height - region[3], region[1]);
+                assertTrue(region[0] >= 0 && region[1] >= 0);
+                // never zooms beyond the maximum digital zoom
+                assertTrue(cropWidth >= width / 4);
+                assertTrue(cropHeight >= height / 4);
+                // zooming in never widens the crop region
+                assertTrue(cropWidth <= previousWidth);
+                previousWidth = cropWidth;
+            }
+        }
+    }
+
+    @Test
+    public void cropRegion_coversFullRange() {
+        int[] region = new int[4];
+        ZoomTable table = new ZoomTable(4000, 3000, 4.0f, 40.0f);
+
+        table.getCropRegion(0, region);
+        assertArrayEquals(new int[]{0, 0, 4000, 3000}, region);
+
+        table.getCropRegion(40.0f, region);
+        assertArrayEquals(new int[]{1500, 1124, 2500, 1876}, region);
+
+        // half way the magnification is 2.5
+        table.getCropRegion(20.0f, region);
+        assertEquals(1200, region[0]);
+        assertEquals(900, region[1]);
+    }
+
+    @Test
+    public void zoomLevel_isClamped() {
+        int[] expected = new int[4];
+        int[] region = new int[4];
+        ZoomTable table = new ZoomTable(4000, 3000, 4.0f, 40.0f);
+
+        table.getCropRegion(0, expected);
+        table.getCropRegion(-5.0f, region);
+        assertArrayEquals(expected, region);
+        table.getCropRegion(Float.NaN, region);
+        assertArrayEquals(expected, region);
+
+        table.getCropRegion(40.0f, expected);
+        table.getCropRegion(100.0f, region);
+        assertArrayEquals(expected, region);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidActiveArray_isRejected() {
+        new ZoomTable(0, 3000, 4.0f, 40.0f);
+    }
+}
@@ -0,0 +1,53 @@
+package de.kutschertec.cameratest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks taking frame buffers from the {@link BufferPool} against allocating them, at the
+ * JPEG sizes of the camera resolutions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BufferPoolBenchmark {
+    @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private int size;
+    private BufferPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        size = FramePayloads.jpegSize(resolution);
+        pool = new BufferPool();
+        pool.release(pool.acquire(size));
+    }
+
+    @Benchmark
+    public ByteBuffer pooled() {
+        ByteBuffer buffer = pool.acquire(size);
+        pool.release(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer allocateDirect() {
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    @Benchmark
+    public ByteBuffer allocateHeap() {
+        return ByteBuffer.allocate(size);
+    }
+}
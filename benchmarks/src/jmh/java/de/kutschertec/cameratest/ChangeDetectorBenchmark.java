@@ -0,0 +1,63 @@
+package de.kutschertec.cameratest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the change detection on the luma plane of the camera resolutions: computing the
+ * {@link LumaSignature} of a frame and comparing it with the reference of the
+ * {@link ChangeDetector}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChangeDetectorBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private int width;
+    private int height;
+    private ByteBuffer luma;
+    private LumaSignature signature;
+    private ChangeDetector detector;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int separator = resolution.indexOf('x');
+        width = Integer.parseInt(resolution.substring(0, separator));
+        height = Integer.parseInt(resolution.substring(separator + 1));
+
+        byte[] pixels = new byte[width * height];
+        new Random(42).nextBytes(pixels);
+        luma = ByteBuffer.allocateDirect(pixels.length);
+        luma.put(pixels);
+        luma.flip();
+
+        signature = new LumaSignature();
+        signature.compute(luma, 0, width, height, width, 1);
+        detector = new ChangeDetector();
+        detector.analyze(signature);
+    }
+
+    @Benchmark
+    public long signature() {
+        signature.compute(luma, 0, width, height, width, 1);
+        return signature.getHash();
+    }
+
+    @Benchmark
+    public float analyze() {
+        return detector.analyze(signature);
+    }
+}
@@ -0,0 +1,102 @@
+package de.kutschertec.cameratest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the handoff of camera frames through the {@link FrameExchange}: the copy of the
+ * image in the camera callback and the leases of the readers, with one and with several readers.
+ * {@link #copyPerRead(Blackhole)} is the per-reader copy the exchange replaced, as a baseline.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameHandoffBenchmark {
+    @Param({"320x240", "640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    private ByteBuffer payload;
+    private FrameExchange exchange;
+    private long timestamp = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = FramePayloads.jpeg(resolution);
+        exchange = new FrameExchange(new BufferPool(), payload.remaining());
+        exchange.publish(payload.duplicate(), timestamp);
+    }
+
+    /**
+     * The copy of the camera image into the exchange, without readers.
+     */
+    @Benchmark
+    public void publish() {
+        exchange.publish(payload.duplicate(), ++timestamp);
+    }
+
+    @Benchmark
+    @Group("singleReader")
+    @GroupThreads(1)
+    public void singleReaderPublish() {
+        exchange.publish(payload.duplicate(), ++timestamp);
+    }
+
+    @Benchmark
+    @Group("singleReader")
+    @GroupThreads(1)
+    public void singleReaderRead(Blackhole blackhole) {
+        read(blackhole);
+    }
+
+    @Benchmark
+    @Group("multiReader")
+    @GroupThreads(1)
+    public void multiReaderPublish() {
+        exchange.publish(payload.duplicate(), ++timestamp);
+    }
+
+    @Benchmark
+    @Group("multiReader")
+    @GroupThreads(3)
+    public void multiReaderRead(Blackhole blackhole) {
+        read(blackhole);
+    }
+
+    /**
+     * A reader that copies the latest frame into a buffer of its own.
+     */
+    @Benchmark
+    public void copyPerRead(Blackhole blackhole) {
+        FrameLease lease = exchange.acquireLatest();
+        if (lease != null) {
+            ByteBuffer copy = ByteBuffer.allocate(lease.getSize());
+            copy.put(lease.getBuffer());
+            lease.close();
+            blackhole.consume(copy);
+        }
+    }
+
+    private void read(Blackhole blackhole) {
+        FrameLease lease = exchange.acquireLatest();
+        if (lease != null) {
+            ByteBuffer buffer = lease.getBuffer();
+            // touch the start and the end of the frame, like a consumer checking the markers
+            blackhole.consume(buffer.get(buffer.position()));
+            blackhole.consume(buffer.get(buffer.limit() - 1));
+            lease.close();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package de.kutschertec.cameratest;
+
+import java.nio.ByteBuffer;
+
+/**
+ * JPEG payloads of realistic size for the benchmarks.
+ */
+final class FramePayloads {
+    /**
+     * Average size of a camera JPEG in bits per pixel, at the default quality.
+     */
+    private static final int BITS_PER_PIXEL = 2;
+
+    private FramePayloads() {
+    }
+
+    /**
+     * Returns the typical JPEG size of a resolution.
+     *
+     * @param resolution the resolution, e.g. "1920x1080"
+     * @return the size in bytes
+     */
+    static int jpegSize(String resolution) {
+        int separator = resolution.indexOf('x');
+        int width = Integer.parseInt(resolution.substring(0, separator));
+        int height = Integer.parseInt(resolution.substring(separator + 1));
+        return width * height * BITS_PER_PIXEL / 8;
+    }
+
+    /**
+     * Creates a JPEG payload in a direct buffer, like the planes of a camera image.
+     *
+     * @param resolution the resolution, e.g. "1920x1080"
+     * @return the flipped payload
+     */
+    static ByteBuffer jpeg(String resolution) {
+        int size = jpegSize(resolution);
+        ByteBuffer payload = ByteBuffer.allocateDirect(size);
+        SyntheticFrameSource.fillJpeg(payload, size, 0);
+        payload.flip();
+        return payload;
+    }
+}
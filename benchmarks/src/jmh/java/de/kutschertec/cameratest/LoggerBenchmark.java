@@ -0,0 +1,80 @@
+package de.kutschertec.cameratest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the logging calls of the frame path: disabled levels, enabled levels with a
+ * synchronous and an asynchronous sink, and the binary event log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LoggerBenchmark {
+    @Param({"SYNC", "ASYNC"})
+    public String sinkType;
+
+    private final Logger logger = new Logger(LoggerBenchmark.class);
+    private AsyncLogSink asyncSink;
+    private EventLog eventLog;
+    private File eventLogFile;
+    private long frame = 0;
+    private volatile long written = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        LogSink target = (level, tag, message, t) -> written += message.length();
+        if ("ASYNC".equals(sinkType)) {
+            asyncSink = new AsyncLogSink(target, 1024, AsyncLogSink.OverflowPolicy.DROP);
+            Logger.setSink(asyncSink);
+        } else {
+            Logger.setSink(target);
+        }
+        Logger.setGlobalLogLevel(Logger.Level.INFO);
+
+        eventLogFile = File.createTempFile("events", ".bin");
+        eventLog = new EventLog(eventLogFile, 65536);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (asyncSink != null) {
+            asyncSink.close();
+        }
+        eventLog.close();
+        eventLogFile.delete();
+    }
+
+    @Benchmark
+    public void disabledConcatenated() {
+        // what the verbose calls of the frame path cost before parameterized logging
+        logger.verbose("Frame " + (++frame) + " published.");
+    }
+
+    @Benchmark
+    public void disabledParameterized() {
+        logger.verbose("Frame {} published.", ++frame);
+    }
+
+    @Benchmark
+    public void enabledParameterized() {
+        logger.info("Frame {} published.", ++frame);
+    }
+
+    @Benchmark
+    public void event() {
+        eventLog.log(CameraEvents.FIRST_FRAME, ++frame);
+    }
+}
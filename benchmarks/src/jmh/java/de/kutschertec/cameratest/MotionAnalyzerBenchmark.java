@@ -0,0 +1,70 @@
+package de.kutschertec.cameratest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the tiled motion analysis of the {@link MotionAnalyzer} on one worker thread against
+ * all available cores. The frames alternate between two luma planes, so every frame is compared.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MotionAnalyzerBenchmark {
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String resolution;
+
+    /**
+     * The number of worker threads, 0 for the number of available cores.
+     */
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private int width;
+    private int height;
+    private ByteBuffer[] frames;
+    private int frame;
+    private MotionAnalyzer analyzer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int separator = resolution.indexOf('x');
+        width = Integer.parseInt(resolution.substring(0, separator));
+        height = Integer.parseInt(resolution.substring(separator + 1));
+
+        Random random = new Random(42);
+        frames = new ByteBuffer[2];
+        for (int i = 0; i < frames.length; i++) {
+            byte[] pixels = new byte[width * height];
+            random.nextBytes(pixels);
+            frames[i] = ByteBuffer.allocateDirect(pixels.length);
+            frames[i].put(pixels);
+            frames[i].flip();
+        }
+
+        analyzer = new MotionAnalyzer((parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    @Benchmark
+    public int analyze() {
+        frame ^= 1;
+        return analyzer.analyze(frames[frame], 0, width, height, width, 1);
+    }
+}